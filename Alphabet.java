@@ -1,7 +1,12 @@
 package enigma;
 
+import java.util.Arrays;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Characters are Unicode code
+ *  points, so an alphabet may hold supplementary characters and tens of
+ *  thousands of symbols; both directions of the mapping are primitive
+ *  tables of the narrowest width that fits.
  *  @author Vineet Vashist
  */
 class Alphabet {
@@ -9,18 +14,56 @@ class Alphabet {
     /** A new alphabet containing CHARS.  Character number #k has index
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
-        _alphachars = chars;
-        if (_alphachars.contains(" ") || _alphachars.contains("*")
-                || _alphachars.contains(")") || _alphachars.contains("(")) {
-            throw new EnigmaException("Invalid characters found, "
-                   + "cannot have ' ' '*','(' and ')' as characters ");
+        this(chars.codePoints().toArray(), true);
+    }
+
+    /** A new alphabet containing the code points CODEPOINTS, which are
+     *  checked for reserved characters iff CHECK. */
+    private Alphabet(int[] codePoints, boolean check) {
+        int max = 0;
+        for (int cp : codePoints) {
+            if (check && (cp == ' ' || cp == '*' || cp == '(' || cp == ')')) {
+                throw new EnigmaException("Invalid characters found, "
+                       + "cannot have ' ' '*','(' and ')' as characters ");
+            }
+            max = Math.max(max, cp);
+        }
+        int n = codePoints.length;
+        _bmp = max <= Character.MAX_VALUE;
+        _symbols = IntTable.create(n, max);
+        for (int i = 0; i < n; i += 1) {
+            _symbols.set(i, codePoints[i]);
         }
 
-        for (int i = 0; i < _alphachars.length(); i++) {
-            for (int j = i + 1; j < _alphachars.length(); j++) {
-                if (_alphachars.charAt(i) == _alphachars.charAt(j)) {
-                    throw new EnigmaException("There are duplicate alphabets "
-                            + "present in the config file at");
+        if (max < DENSE_LIMIT || max / DENSITY < n) {
+            _dense = IntTable.create(max + 1, n);
+            _members = new long[(max >> LOG_WORD_BITS) + 1];
+            for (int i = 0; i < n; i += 1) {
+                if (_dense.get(codePoints[i]) != 0) {
+                    throw duplicate();
+                }
+                _dense.set(codePoints[i], i + 1);
+                _members[codePoints[i] >> LOG_WORD_BITS] |=
+                    1L << codePoints[i];
+            }
+            _sorted = null;
+            _sortedIndex = null;
+        } else {
+            _dense = null;
+            _members = null;
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i += 1) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) ->
+                Integer.compare(codePoints[a], codePoints[b]));
+            _sorted = new int[n];
+            _sortedIndex = IntTable.create(n, n);
+            for (int i = 0; i < n; i += 1) {
+                _sorted[i] = codePoints[order[i]];
+                _sortedIndex.set(i, order[i]);
+                if (i > 0 && _sorted[i] == _sorted[i - 1]) {
+                    throw duplicate();
                 }
             }
         }
@@ -31,27 +74,56 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** Return an alphabet of all 256 byte values, in which the character
+     *  with index K is (char) K.  Unlike other alphabets it includes the
+     *  characters reserved in configuration files, so its rotors must be
+     *  built from mappings rather than cycles. */
+    static Alphabet bytes() {
+        int[] codePoints = new int[BYTE_VALUES];
+        for (int i = 0; i < codePoints.length; i += 1) {
+            codePoints[i] = i;
+        }
+        return new Alphabet(codePoints, false);
+    }
+
+    /** Return the error for a duplicated character. */
+    private static EnigmaException duplicate() {
+        return new EnigmaException("There are duplicate alphabets "
+                + "present in the config file at");
+    }
+
     /** Returns the size of the alphabet. */
     int size() {
-        return _alphachars.length();
+        return _symbols.length();
     }
 
     /** Returns true if preprocess(CH) is in this alphabet. */
     boolean contains(char ch) {
-        for (int i = 0; i < size(); i++) {
-            if (_alphachars.charAt(i) == ch) {
-                return true;
-            }
-        }
-        return false;
+        return indexOf(ch) >= 0;
+    }
+
+    /** Returns true iff the code point CODEPOINT is in this alphabet. */
+    boolean containsCodePoint(int codePoint) {
+        return indexOf(codePoint) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). */
+     *  0 <= INDEX < size().  The character must be in the Basic
+     *  Multilingual Plane; use toCodePoint otherwise. */
     char toChar(int index) {
+        int cp = toCodePoint(index);
+        if (cp > Character.MAX_VALUE) {
+            throw new EnigmaException("Alphabet character " + index
+                    + " is not a single char");
+        }
+        return (char) cp;
+    }
 
-        if (index >= 0 || index < size()) {
-            return _alphachars.charAt(index);
+    /** Returns the code point of character number INDEX in the alphabet,
+     *  where 0 <= INDEX < size(). */
+    int toCodePoint(int index) {
+        if (index >= 0 && index < size()) {
+            return _symbols.get(index);
         } else {
             throw new EnigmaException("Alphabet index out of bounds");
         }
@@ -60,16 +132,136 @@ class Alphabet {
     /** Returns the index of character preprocess(CH), which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        for (int i = 0; i < size(); i++) {
-            if (_alphachars.charAt(i) == ch) {
+        return toIndex(ch);
+    }
+
+    /** Returns the index of the code point CODEPOINT, which must be in
+     *  the alphabet.  This is the inverse of toCodePoint(). */
+    int toIndex(int codePoint) {
+        int index = indexOf(codePoint);
+        if (index < 0) {
+            throw missing(codePoint, "");
+        }
+        return index;
+    }
+
+    /** Put the indices of the code points of TEXT into OUT from 0 on,
+     *  returning their number.  TEXT is validated as a whole first, so
+     *  that the lookups need no checks; if it has a character not in the
+     *  alphabet, the error names the first and its position.  OUT must
+     *  have room for TEXT.length() indices. */
+    int toIndices(CharSequence text, int[] out) {
+        int bad = firstInvalid(text);
+        if (bad >= 0) {
+            throw missing(Character.codePointAt(text, bad),
+                          " at position " + bad);
+        }
+        int n = 0;
+        for (int i = 0; i < text.length(); n += 1) {
+            int cp = text.charAt(i);
+            if (Character.isSurrogate((char) cp)) {
+                cp = Character.codePointAt(text, i);
+                i += Character.charCount(cp);
+            } else {
+                i += 1;
+            }
+            out[n] = _dense != null ? _dense.get(cp) - 1 : indexOf(cp);
+        }
+        return n;
+    }
+
+    /** Return the offset in TEXT of the first character not in the
+     *  alphabet, or -1 if there is none.  Dense alphabets test a bit set
+     *  of their code points. */
+    int firstInvalid(CharSequence text) {
+        long[] members = _members;
+        for (int i = 0; i < text.length(); ) {
+            int cp = Character.codePointAt(text, i);
+            boolean member = members == null ? indexOf(cp) >= 0
+                : (cp >> LOG_WORD_BITS) < members.length
+                  && (members[cp >> LOG_WORD_BITS] & (1L << cp)) != 0;
+            if (!member) {
                 return i;
             }
+            i += Character.charCount(cp);
         }
-        throw new EnigmaException("Couldn't locate input char :" + ch
-                + " in the alphabet [" + _alphachars + "]");
+        return -1;
+    }
 
+    /** Return the characters with the indices INDICES[FROM..TO-1], all
+     *  of which must be in range; they are not checked. */
+    String toString(int[] indices, int from, int to) {
+        IntTable symbols = _symbols;
+        if (_bmp) {
+            char[] chars = new char[to - from];
+            for (int i = from; i < to; i += 1) {
+                chars[i - from] = (char) symbols.get(indices[i]);
+            }
+            return new String(chars);
+        }
+        StringBuilder result = new StringBuilder(to - from);
+        for (int i = from; i < to; i += 1) {
+            result.appendCodePoint(symbols.get(indices[i]));
+        }
+        return result.toString();
+    }
+
+    /** Return the error for the code point CODEPOINT, not in the
+     *  alphabet, found at WHERE. */
+    EnigmaException missing(int codePoint, String where) {
+        return new EnigmaException("Couldn't locate input char :"
+                + new String(Character.toChars(codePoint)) + where
+                + " in the alphabet [" + this + "]");
     }
 
-    /**String that contains the alphabet of the machine.*/
-    private String _alphachars;
+    /** Returns the index of the code point CODEPOINT, or -1 if it is not
+     *  in the alphabet. */
+    int indexOf(int codePoint) {
+        if (_dense != null) {
+            if (codePoint < 0 || codePoint >= _dense.length()) {
+                return -1;
+            }
+            return _dense.get(codePoint) - 1;
+        }
+        int i = Arrays.binarySearch(_sorted, codePoint);
+        return i < 0 ? -1 : _sortedIndex.get(i);
+    }
+
+    @Override
+    public String toString() {
+        return new String(_symbols.toArray(), 0, size());
+    }
+
+    /** Number of distinct byte values. */
+    static final int BYTE_VALUES = 256;
+
+    /** Code points below this are always looked up in a dense table. */
+    private static final int DENSE_LIMIT = 0x10000;
+
+    /** Above DENSE_LIMIT, largest ratio of the highest code point to the
+     *  alphabet size for which a dense lookup table is used. */
+    private static final int DENSITY = 8;
+
+    /** Log base 2 of the bits in a word of _members. */
+    private static final int LOG_WORD_BITS = 6;
+
+    /** Code point of each character, by index. */
+    private final IntTable _symbols;
+
+    /** Index plus one of each code point up to the largest in the
+     *  alphabet (0 if absent), or null for a sparse alphabet. */
+    private final IntTable _dense;
+
+    /** Bit set of the code points in the alphabet, or null for a sparse
+     *  alphabet. */
+    private final long[] _members;
+
+    /** True iff every character is a single char. */
+    private final boolean _bmp;
+
+    /** Code points in increasing order, for a sparse alphabet. */
+    private final int[] _sorted;
+
+    /** Index of each code point in _sorted, for a sparse alphabet. */
+    private final IntTable _sortedIndex;
 }
@@ -0,0 +1,128 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet and IntTable classes.
+ *  @author Vineet Vashist
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Check that a table made by IntTable.create for values up to MAX
+     *  is a KIND and holds 0 and MAX. */
+    private static void checkTable(int max, String kind) {
+        IntTable table = IntTable.create(3, max);
+        assertEquals(kind, table.getClass().getSimpleName());
+        assertEquals(3, table.length());
+        assertArrayEquals(new int[3], table.toArray());
+        table.set(0, max);
+        table.set(1, max / 2);
+        table.set(2, max);
+        assertArrayEquals(new int[] {max, max / 2, max}, table.toArray());
+        assertEquals(max, table.get(2));
+    }
+
+    /** Check that ALPHABET holds exactly SYMBOLS, in order, and that
+     *  each lookup agrees with it, including for the code points
+     *  between them. */
+    private static void checkAlphabet(Alphabet alphabet, int[] symbols) {
+        assertEquals(symbols.length, alphabet.size());
+        String all = text(symbols);
+        assertEquals(all, alphabet.toString());
+        int[] indices = new int[all.length()];
+        assertEquals(symbols.length, alphabet.toIndices(all, indices));
+        assertEquals(-1, alphabet.firstInvalid(all));
+        for (int k = 0; k < symbols.length; k += 1) {
+            assertEquals(k, indices[k]);
+            assertEquals(k, alphabet.indexOf(symbols[k]));
+            assertEquals(k, alphabet.toIndex(symbols[k]));
+            assertEquals(symbols[k], alphabet.toCodePoint(k));
+            assertTrue(alphabet.containsCodePoint(symbols[k]));
+        }
+        assertEquals(all, alphabet.toString(indices, 0, symbols.length));
+        int least = Integer.MAX_VALUE, most = 0;
+        for (int cp : symbols) {
+            least = Math.min(least, cp);
+            most = Math.max(most, cp);
+        }
+        int absent = 0;
+        for (int cp = least - 1; cp <= most + 1; cp += 1) {
+            if (alphabet.indexOf(cp) < 0) {
+                absent += 1;
+                assertFalse(alphabet.containsCodePoint(cp));
+                if (cp >= 0 && Character.isValidCodePoint(cp)) {
+                    String bad = text(symbols[0], cp);
+                    assertEquals(Character.charCount(symbols[0]),
+                                 alphabet.firstInvalid(bad));
+                }
+            }
+        }
+        assertEquals(most - least + 3 - symbols.length, absent);
+        assertEquals(-1, alphabet.indexOf(-1));
+        assertEquals(-1, alphabet.indexOf(Integer.MAX_VALUE));
+    }
+
+    /** Check that an alphabet of SYMBOLS is rejected as having a
+     *  duplicate. */
+    private static void checkDuplicate(int[] symbols) {
+        try {
+            new Alphabet(text(symbols));
+            fail("accepted a duplicated character");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("duplicate"));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void tableWidths() {
+        checkTable(0, "Bytes");
+        checkTable(IntTable.BYTE_MAX, "Bytes");
+        checkTable(IntTable.BYTE_MAX + 1, "Shorts");
+        checkTable(IntTable.SHORT_MAX, "Shorts");
+        checkTable(IntTable.SHORT_MAX + 1, "Ints");
+        checkTable(Integer.MAX_VALUE, "Ints");
+    }
+
+    @Test
+    public void denseAndSparseLookup() {
+        checkAlphabet(new Alphabet("ZYXQA"), "ZYXQA".codePoints().toArray());
+        checkAlphabet(Alphabet.bytes(), codePoints(0, 1, 256));
+        int[] astral = {0x1D539, 0x1D538, 'A', 0x1D53B, 0x10400};
+        checkAlphabet(new Alphabet(text(astral)), astral);
+        int[] sparse = codePoints(0x10000, 1000, 100);
+        sparse[0] = 0x10FFFF;
+        checkAlphabet(new Alphabet(text(sparse)), sparse);
+    }
+
+    @Test
+    public void largeAlphabets() {
+        int[] dense = codePoints(0x10000, 1, 70000);
+        checkAlphabet(new Alphabet(text(dense)), dense);
+        int[] sparse = codePoints(0x10000, 9, 70000);
+        checkAlphabet(new Alphabet(text(sparse)), sparse);
+    }
+
+    @Test
+    public void duplicatesAreRejected() {
+        checkDuplicate("ABCA".codePoints().toArray());
+        checkDuplicate(new int[] {0x1D538, 'A', 0x1D538});
+        int[] sparse = codePoints(0x10000, 1000, 100);
+        sparse[99] = sparse[3];
+        checkDuplicate(sparse);
+        int[] dense = codePoints(0x10000, 1, 70000);
+        dense[69999] = dense[0];
+        checkDuplicate(dense);
+    }
+}
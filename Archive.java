@@ -0,0 +1,448 @@
+package enigma;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static java.nio.file.StandardCopyOption.*;
+import static java.nio.file.StandardOpenOption.*;
+import static enigma.EnigmaException.*;
+
+/** An archive of ciphertext that can be deciphered from any character
+ *  on, without replaying the machine from the start.  Alongside the
+ *  ciphertext, an archive keeps the settings line it was enciphered
+ *  under and, every INTERVAL characters, the rotor positions reached
+ *  there.  To decipher a range, a machine set up with the key jumps to
+ *  the positions at the last index entry before the range and converts
+ *  forward from there, so that no more than INTERVAL - 1 characters are
+ *  converted needlessly.  An open archive is memory-mapped, and any
+ *  number of threads may decipher ranges of it at once.  Alphabets may
+ *  have at most 256 characters.
+ *
+ *  <p>An archive file is big-endian: a header (magic, version, alphabet
+ *  size, rotor slots, interval and length of the settings line in bytes
+ *  as ints, then the number of characters and the offset of the index
+ *  as longs), the settings line in UTF-8 padded to a multiple of 8
+ *  bytes, the ciphertext as one byte per character, its index in the
+ *  alphabet, and the index: for each multiple of the interval up to the
+ *  number of characters, the positions of the rotors after the
+ *  reflector, one byte each.
+ *  @author Vineet Vashist
+ */
+public final class Archive {
+
+    /** Pack or read an archive as given by ARGS, one of
+     *      pack [--interval N] CONFIG ARCHIVE [INPUT]
+     *          encipher INPUT (default the standard input) into
+     *          ARCHIVE.  Its first line is a settings line, as for
+     *          Main; the characters of the rest, other than blanks and
+     *          line ends, are the text.
+     *      range CONFIG ARCHIVE FROM TO
+     *          print characters FROM to TO - 1 of the text of ARCHIVE.
+     *  CONFIG is the configuration file, as read by Main. */
+    public static void main(String... args) {
+        try {
+            if (args.length >= 3 && args[0].equals("pack")) {
+                int i = 1;
+                int interval = DEFAULT_INTERVAL;
+                if (args[i].equals("--interval")) {
+                    interval = Integer.parseInt(args[i + 1]);
+                    i += 2;
+                }
+                if (args.length - i == 2 || args.length - i == 3) {
+                    pack(CipherServer.readMachine(args[i]),
+                         Paths.get(args[i + 1]),
+                         args.length - i == 3 ? args[i + 2] : null,
+                         interval);
+                    return;
+                }
+            } else if (args.length == 5 && args[0].equals("range")) {
+                Archive archive = open(Paths.get(args[2]),
+                                       CipherServer.readMachine(args[1]));
+                System.out.println(archive.decipher(Long.parseLong(args[3]),
+                                                    Long.parseLong(args[4])));
+                return;
+            }
+            throw error("Usage: java enigma.Archive pack [--interval N] "
+                        + "CONFIG ARCHIVE [INPUT]%n"
+                        + "       java enigma.Archive range CONFIG ARCHIVE "
+                        + "FROM TO");
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Encipher the settings line and text in the file named INPUT (the
+     *  standard input if null) into ARCHIVE with machine M, recording
+     *  the rotor positions every INTERVAL characters. */
+    private static void pack(Machine m, Path archive, String input,
+                             int interval) {
+        try (InputStream in = input == null ? System.in
+                 : new FileInputStream(input)) {
+            LineReader lines = new LineReader(in);
+            if (!lines.hasNextLine()) {
+                throw error("no settings line");
+            }
+            try (Writer out = new Writer(archive, m, lines.nextLine(),
+                                         interval)) {
+                try {
+                    while (lines.hasNextLine()) {
+                        out.write(lines.nextLine().replaceAll("\\s", ""));
+                    }
+                } catch (RuntimeException excp) {
+                    out.abort();
+                    throw excp;
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", input);
+        }
+    }
+
+    /** Return the archive in FILE, mapped read-only, to be deciphered
+     *  with copies of M, which has the archive's configuration. */
+    static Archive open(Path file, Machine m) {
+        try (FileChannel in = FileChannel.open(file, READ)) {
+            long size = in.size();
+            ByteBuffer[] segments =
+                new ByteBuffer[(int) ((size >>> SEGMENT_BITS) + 1)];
+            for (int s = 0; s < segments.length; s += 1) {
+                long start = (long) s << SEGMENT_BITS;
+                segments[s] = in.map(FileChannel.MapMode.READ_ONLY, start,
+                                     Math.min(size - start, SEGMENT_SIZE));
+            }
+            return new Archive(segments, size, m);
+        } catch (IOException excp) {
+            throw error("could not map %s", file);
+        }
+    }
+
+    /** The archive in SEGMENTS, mapped from a file of SIZE bytes, for
+     *  the configuration of M. */
+    private Archive(ByteBuffer[] segments, long size, Machine m) {
+        _segments = segments;
+        ByteBuffer head = segments[0];
+        if (size < HEADER_BYTES || head.getInt(0) != MAGIC
+            || head.getInt(Integer.BYTES) != VERSION) {
+            throw error("not an archive");
+        }
+        int n = head.getInt(SIZE_FIELD);
+        _slots = head.getInt(SLOTS_FIELD);
+        _interval = head.getInt(INTERVAL_FIELD);
+        int settingsLength = head.getInt(SETTINGS_FIELD);
+        _length = head.getLong(LENGTH_FIELD);
+        _indexStart = head.getLong(INDEX_FIELD);
+        if (n != m.alphabet().size() || _slots != m.numRotors()) {
+            throw error("archive does not match the configuration");
+        }
+        byte[] settings = new byte[settingsLength];
+        head.get(HEADER_BYTES, settings);
+        _settings = new String(settings, StandardCharsets.UTF_8);
+        _textStart = HEADER_BYTES + pad(settingsLength);
+        if (_interval < 1 || _indexStart != _textStart + _length
+            || size < _indexStart + (_length / _interval + 1) * (_slots - 1)) {
+            throw error("archive truncated");
+        }
+        _prototype = m;
+    }
+
+    /** Return the number of characters in the archive. */
+    long length() {
+        return _length;
+    }
+
+    /** Return the settings line the archive was enciphered under. */
+    String settings() {
+        return _settings;
+    }
+
+    /** Return characters FROM to TO - 1 of the deciphered text. */
+    String decipher(long from, long to) {
+        if (from < 0 || to > _length || from > to) {
+            throw error("range %d-%d is outside the %d characters of the "
+                        + "archive", from, to, _length);
+        }
+        Machine m = _machine.get();
+        long entry = from / _interval;
+        int[] setting = new int[_slots - 1];
+        long at = _indexStart + entry * setting.length;
+        for (int k = 0; k < setting.length; k += 1) {
+            setting[k] = byteAt(at + k);
+        }
+        m.setRotors(setting);
+        for (long i = entry * _interval; i < from; i += 1) {
+            m.convert(byteAt(_textStart + i));
+        }
+        Alphabet alphabet = m.alphabet();
+        StringBuilder result = new StringBuilder((int) (to - from));
+        for (long i = from; i < to; i += 1) {
+            result.appendCodePoint(alphabet.toCodePoint(
+                m.convert(byteAt(_textStart + i))));
+        }
+        if (Metrics.ENABLED) {
+            Metrics.characters(to - entry * _interval);
+        }
+        return result.toString();
+    }
+
+    /** Return the unsigned byte at OFFSET in the file. */
+    private int byteAt(long offset) {
+        return _segments[(int) (offset >>> SEGMENT_BITS)]
+            .get((int) (offset & (SEGMENT_SIZE - 1))) & BYTE_MASK;
+    }
+
+    /** Return N rounded up to a multiple of 8. */
+    private static int pad(int n) {
+        return (n + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    /** A writer of an archive, to which text is added in pieces.  The
+     *  archive is written to a temporary file beside it, which closing
+     *  renames over it, so a failed or abandoned archive never replaces
+     *  the file. */
+    static final class Writer implements AutoCloseable {
+
+        /** A writer of the archive FILE, enciphering with M, which is
+         *  set up here by the settings line SETTINGS, and recording the
+         *  rotor positions every INTERVAL characters. */
+        Writer(Path file, Machine m, String settings, int interval) {
+            if (m.alphabet().size() > BYTE_VALUES) {
+                throw error("archives need alphabets of at most %d "
+                            + "characters", BYTE_VALUES);
+            }
+            if (interval < 1) {
+                throw error("the index interval must be positive");
+            }
+            Main.setUp(m, settings);
+            _machine = m;
+            _interval = interval;
+            _index = new byte[INDEX_CHUNK * (m.numRotors() - 1)];
+            byte[] settingsBytes = settings.getBytes(StandardCharsets.UTF_8);
+            _file = file;
+            try {
+                Path dir = file.toAbsolutePath().getParent();
+                _temp = Files.createTempFile(dir, file.getFileName() + ".",
+                                             ".tmp");
+                _out = FileChannel.open(_temp, WRITE);
+                _buffer.putInt(MAGIC).putInt(VERSION)
+                    .putInt(m.alphabet().size()).putInt(m.numRotors())
+                    .putInt(interval).putInt(settingsBytes.length)
+                    .putLong(0).putLong(0);
+                _buffer.put(settingsBytes);
+                _buffer.position(HEADER_BYTES + pad(settingsBytes.length));
+            } catch (IOException excp) {
+                abort();
+                throw error("could not open %s", file);
+            }
+        }
+
+        /** Encipher and add TEXT, whose characters must be in the
+         *  alphabet.  If that fails, the archive is abandoned (see
+         *  abort). */
+        void write(CharSequence text) {
+            if (_out == null) {
+                throw error("archive already closed");
+            }
+            Alphabet alphabet = _machine.alphabet();
+            try {
+                for (int i = 0; i < text.length(); ) {
+                    int cp = Character.codePointAt(text, i);
+                    i += Character.charCount(cp);
+                    if (_length % _interval == 0) {
+                        recordPositions();
+                    }
+                    if (!_buffer.hasRemaining()) {
+                        flush();
+                    }
+                    _buffer.put((byte) _machine.convert(
+                                    alphabet.toIndex(cp)));
+                    _length += 1;
+                }
+            } catch (RuntimeException excp) {
+                abort();
+                throw excp;
+            }
+        }
+
+        /** Abandon the archive: delete what has been written of it,
+         *  leaving the file as it was.  Closing then does nothing. */
+        void abort() {
+            try {
+                if (_out != null) {
+                    _out.close();
+                }
+                if (_temp != null) {
+                    Files.deleteIfExists(_temp);
+                }
+            } catch (IOException excp) {
+                /* Ignore */
+            }
+            _out = null;
+            _temp = null;
+        }
+
+        /** Write the index and header and put the archive in place of
+         *  the file, unless it has been abandoned. */
+        @Override
+        public void close() {
+            if (_out == null) {
+                return;
+            }
+            if (_length % _interval == 0) {
+                recordPositions();
+            }
+            try {
+                flush();
+                long indexStart = _out.position();
+                _out.write(ByteBuffer.wrap(_index, 0, _indexLength));
+                ByteBuffer counts = ByteBuffer.allocate(2 * Long.BYTES);
+                counts.putLong(_length).putLong(indexStart).flip();
+                _out.write(counts, LENGTH_FIELD);
+                _out.force(true);
+                _out.close();
+                _out = null;
+                Files.move(_temp, _file, ATOMIC_MOVE, REPLACE_EXISTING);
+                _temp = null;
+            } catch (IOException excp) {
+                abort();
+                throw error("could not write archive: %s",
+                            excp.getMessage());
+            }
+        }
+
+        /** Add the current rotor positions to the index. */
+        private void recordPositions() {
+            int slots = _machine.numRotors();
+            if (_indexLength == _index.length) {
+                _index = Arrays.copyOf(_index, 2 * _index.length);
+            }
+            for (int k = 1; k < slots; k += 1) {
+                _index[_indexLength] = (byte) _machine.rotor(k).setting();
+                _indexLength += 1;
+            }
+        }
+
+        /** Write out the buffered bytes. */
+        private void flush() {
+            _buffer.flip();
+            try {
+                while (_buffer.hasRemaining()) {
+                    _out.write(_buffer);
+                }
+            } catch (IOException excp) {
+                throw error("could not write archive: %s",
+                            excp.getMessage());
+            }
+            _buffer.clear();
+        }
+
+        /** The machine enciphering. */
+        private final Machine _machine;
+
+        /** Characters between index entries. */
+        private final int _interval;
+
+        /** The file the archive is to replace. */
+        private final Path _file;
+
+        /** The temporary file being written, or null once it has been
+         *  renamed or deleted. */
+        private Path _temp;
+
+        /** The temporary file, open for writing, or null once it has
+         *  been closed. */
+        private FileChannel _out;
+
+        /** Bytes not yet written. */
+        private final ByteBuffer _buffer =
+            ByteBuffer.allocate(WRITE_BUFFER);
+
+        /** The index so far. */
+        private byte[] _index;
+
+        /** Bytes of _index in use. */
+        private int _indexLength;
+
+        /** Characters written. */
+        private long _length;
+    }
+
+    /** Default characters between index entries. */
+    static final int DEFAULT_INTERVAL = 4096;
+
+    /** First int of an archive: "ENCA". */
+    private static final int MAGIC = 0x454e4341;
+
+    /** Archive format version. */
+    private static final int VERSION = 1;
+
+    /** Header field offsets, in bytes. */
+    private static final int SIZE_FIELD = 8, SLOTS_FIELD = 12,
+        INTERVAL_FIELD = 16, SETTINGS_FIELD = 20, LENGTH_FIELD = 24,
+        INDEX_FIELD = 32;
+
+    /** Bytes in the header. */
+    private static final int HEADER_BYTES = 40;
+
+    /** Log2 of the bytes of the file addressed by each mapped
+     *  segment. */
+    private static final int SEGMENT_BITS = 30;
+
+    /** Bytes of the file addressed by each mapped segment. */
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+
+    /** Index entries allocated at first. */
+    private static final int INDEX_CHUNK = 1024;
+
+    /** Size of the write buffer. */
+    private static final int WRITE_BUFFER = 1 << 16;
+
+    /** Number of byte values. */
+    private static final int BYTE_VALUES = 256;
+
+    /** Mask selecting the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** The mapped file, in segments of SEGMENT_SIZE bytes. */
+    private final ByteBuffer[] _segments;
+
+    /** Rotor slots. */
+    private final int _slots;
+
+    /** Characters between index entries. */
+    private final int _interval;
+
+    /** Number of characters. */
+    private final long _length;
+
+    /** Offset of the ciphertext. */
+    private final long _textStart;
+
+    /** Offset of the index. */
+    private final long _indexStart;
+
+    /** The settings line. */
+    private final String _settings;
+
+    /** The machine of the configuration, never used directly. */
+    private final Machine _prototype;
+
+    /** Each thread's machine, set up with the key. */
+    private final ThreadLocal<Machine> _machine =
+        ThreadLocal.withInitial(this::newMachine);
+
+    /** Return a machine set up with the key. */
+    private Machine newMachine() {
+        Machine m = _prototype.copy();
+        Main.setUp(m, _settings);
+        return m;
+    }
+}
@@ -0,0 +1,136 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Archive class.
+ *  @author Vineet Vashist
+ */
+public class ArchiveTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings line of the archives. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return an archive of TEXT, written in pieces from RAND with index
+     *  entries every INTERVAL characters. */
+    private static Archive archive(String text, Random rand, int interval)
+        throws Exception {
+        Path file = Files.createTempFile("archive", ".enc");
+        try (Archive.Writer out =
+                 new Archive.Writer(file, navalCatalog(), SETTINGS, interval)) {
+            for (int i = 0; i < text.length(); ) {
+                int end = Math.min(text.length(), i + rand.nextInt(3000));
+                out.write(text.substring(i, end));
+                i = end;
+            }
+        }
+        return Archive.open(file, navalCatalog());
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void decipherRanges() throws Exception {
+        Random rand = new Random(41);
+        String text = randomMessage(rand, 200000);
+        Archive archive = archive(text, rand, 1000);
+        assertEquals(text.length(), archive.length());
+        assertEquals(SETTINGS, archive.settings());
+        assertEquals(text, archive.decipher(0, text.length()));
+        for (int trial = 0; trial < 200; trial += 1) {
+            int from = rand.nextInt(text.length());
+            int to = from + rand.nextInt(Math.min(2500, text.length() - from));
+            assertEquals(text.substring(from, to),
+                         archive.decipher(from, to));
+        }
+        assertEquals("", archive.decipher(text.length(), text.length()));
+    }
+
+    @Test
+    public void concurrentRanges() throws Exception {
+        Random rand = new Random(42);
+        String text = randomMessage(rand, 100000);
+        Archive archive = archive(text, rand, Archive.DEFAULT_INTERVAL);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            ArrayList<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t += 1) {
+                long seed = rand.nextLong();
+                results.add(pool.submit(() -> {
+                    Random r = new Random(seed);
+                    for (int i = 0; i < 100; i += 1) {
+                        int from = r.nextInt(text.length());
+                        int to = Math.min(text.length(),
+                                          from + r.nextInt(500));
+                        if (!text.substring(from, to)
+                            .equals(archive.decipher(from, to))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void failedWritesLeaveTheFile() throws Exception {
+        Random rand = new Random(410);
+        String text = randomMessage(rand, 5000);
+        Path dir = Files.createTempDirectory("archive");
+        Path file = dir.resolve("old.enc");
+        Files.writeString(file, "old contents");
+        try (Archive.Writer out =
+                 new Archive.Writer(file, navalCatalog(), SETTINGS, 100)) {
+            out.write(text);
+            out.write("ABC1DEF");
+            fail("accepted a character not in the alphabet");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        assertEquals("old contents", Files.readString(file));
+
+        Path fresh = dir.resolve("new.enc");
+        try (Archive.Writer out =
+                 new Archive.Writer(fresh, navalCatalog(), SETTINGS, 100)) {
+            out.write(text);
+            out.abort();
+        }
+        assertFalse(Files.exists(fresh));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+
+        try (Archive.Writer out =
+                 new Archive.Writer(fresh, navalCatalog(), SETTINGS, 100)) {
+            out.write(text);
+        }
+        assertEquals(text, Archive.open(fresh, navalCatalog())
+                     .decipher(0, text.length()));
+    }
+}
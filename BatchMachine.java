@@ -0,0 +1,224 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** An engine that advances and encrypts many independent machines in
+ *  lockstep, one lane per machine.  Lanes may differ in rotor order,
+ *  settings and plugboard but must share alphabet size and slot count.
+ *  All per-lane state is kept lane-major in flat int arrays (rotor
+ *  positions as one int vector per slot, wirings as one gather table per
+ *  slot), so every inner loop runs the same instructions over all lanes.
+ *  A scalar fallback that drives each lane through its RotorTables is
+ *  used for a single lane or when the system property
+ *  enigma.batch.scalar is true.
+ *  @author Vineet Vashist
+ */
+class BatchMachine {
+
+    /** A batch engine with one lane per machine in LANES.  Each machine
+     *  must be fully configured; its state is copied here, so LANES may
+     *  share rotors and be reconfigured afterwards. */
+    BatchMachine(Machine... lanes) {
+        if (lanes.length == 0) {
+            throw error("batch needs at least one machine");
+        }
+        _lanes = lanes.length;
+        _alphabet = lanes[0].alphabet();
+        _tables = new RotorTables[_lanes];
+        for (int l = 0; l < _lanes; l += 1) {
+            _tables[l] = new RotorTables(lanes[l]);
+        }
+        _size = _tables[0].size();
+        _slots = _tables[0].numRotors();
+
+        _forward = new int[_slots][_lanes * 2 * _size];
+        _backward = new int[_slots][_lanes * 2 * _size];
+        _notch = new int[_slots][_lanes * _size];
+        _pawled = new int[_slots][_lanes];
+        _pos = new int[_slots][_lanes];
+        _plugboard = new int[_lanes * _size];
+        _x = new int[_lanes];
+        _active = new int[_lanes];
+
+        for (int l = 0; l < _lanes; l += 1) {
+            RotorTables t = _tables[l];
+            if (t.size() != _size || t.numRotors() != _slots) {
+                throw error("lane %d does not match the shape of lane 0", l);
+            }
+            int[] posn = t.positions();
+            for (int k = 0; k < _slots; k += 1) {
+                for (int i = 0; i < 2 * _size; i += 1) {
+                    _forward[k][l * 2 * _size + i] = t.forward(k)[i % _size];
+                    _backward[k][l * 2 * _size + i] =
+                        t.backward(k)[i % _size];
+                }
+                for (int i = 0; i < _size; i += 1) {
+                    _notch[k][l * _size + i] = t.notch(k)[i] ? 1 : 0;
+                }
+                _pawled[k][l] = t.pawled(k) ? 1 : 0;
+                _pos[k][l] = posn[k];
+            }
+            System.arraycopy(t.plugboard(), 0, _plugboard, l * _size, _size);
+        }
+    }
+
+    /** Return the number of lanes. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Return the current setting of slot K in lane LANE. */
+    int setting(int lane, int k) {
+        return _pos[k][lane];
+    }
+
+    /** Convert MSGS in place, where MSGS[L] is a message for lane L as
+     *  alphabet indices.  Messages may differ in length; a lane stops
+     *  advancing once its message is done. */
+    void convert(int[][] msgs) {
+        if (msgs.length != _lanes) {
+            throw error("expected %d messages, got %d", _lanes, msgs.length);
+        }
+        if (_lanes == 1 || SCALAR) {
+            convertScalar(msgs);
+        } else {
+            convertLanes(msgs);
+        }
+    }
+
+    /** Return the conversions of MSGS, one message per lane. */
+    String[] convert(String... msgs) {
+        int[][] idx = new int[msgs.length][];
+        for (int l = 0; l < msgs.length; l += 1) {
+            idx[l] = new int[msgs[l].length()];
+            for (int i = 0; i < idx[l].length; i += 1) {
+                idx[l][i] = _alphabet.toInt(msgs[l].charAt(i));
+            }
+        }
+        convert(idx);
+        String[] result = new String[msgs.length];
+        for (int l = 0; l < msgs.length; l += 1) {
+            char[] out = new char[idx[l].length];
+            for (int i = 0; i < out.length; i += 1) {
+                out[i] = _alphabet.toChar(idx[l][i]);
+            }
+            result[l] = new String(out);
+        }
+        return result;
+    }
+
+    /** Convert MSGS in place with all lanes in lockstep. */
+    void convertLanes(int[][] msgs) {
+        int maxLen = 0;
+        for (int[] m : msgs) {
+            maxLen = Math.max(maxLen, m.length);
+        }
+        int last = _slots - 1;
+        for (int t = 0; t < maxLen; t += 1) {
+            for (int l = 0; l < _lanes; l += 1) {
+                _active[l] = t < msgs[l].length ? 1 : 0;
+            }
+            for (int k = 1; k <= last; k += 1) {
+                int[] pos = _pos[k];
+                for (int l = 0; l < _lanes; l += 1) {
+                    int right = k == last
+                        ? 1 : _notch[k + 1][l * _size + _pos[k + 1][l]];
+                    int move = (_pawled[k][l] & right)
+                        | (_pawled[k - 1][l] & _notch[k][l * _size + pos[l]]);
+                    int p = pos[l] + (move & _active[l]);
+                    pos[l] = p - (((_size - 1 - p) >> SIGN) & _size);
+                }
+            }
+            for (int l = 0; l < _lanes; l += 1) {
+                _x[l] = _active[l] != 0
+                    ? _plugboard[l * _size + msgs[l][t]] : 0;
+            }
+            for (int k = last; k >= 0; k -= 1) {
+                gather(_forward[k], _pos[k]);
+            }
+            for (int k = 1; k <= last; k += 1) {
+                gather(_backward[k], _pos[k]);
+            }
+            for (int l = 0; l < _lanes; l += 1) {
+                if (_active[l] != 0) {
+                    msgs[l][t] = _plugboard[l * _size + _x[l]];
+                }
+            }
+        }
+    }
+
+    /** Convert MSGS in place one lane at a time through each lane's
+     *  RotorTables. */
+    void convertScalar(int[][] msgs) {
+        int[] posn = new int[_slots];
+        for (int l = 0; l < _lanes; l += 1) {
+            for (int k = 0; k < _slots; k += 1) {
+                posn[k] = _pos[k][l];
+            }
+            int[] m = msgs[l];
+            for (int i = 0; i < m.length; i += 1) {
+                m[i] = _tables[l].convert(posn, m[i]);
+            }
+            for (int k = 0; k < _slots; k += 1) {
+                _pos[k][l] = posn[k];
+            }
+        }
+    }
+
+    /** Replace each lane's signal in _x by its image under the doubled
+     *  per-lane TABLE of a slot whose per-lane settings are POS. */
+    private void gather(int[] table, int[] pos) {
+        int span = 2 * _size;
+        for (int l = 0; l < _lanes; l += 1) {
+            int e = table[l * span + _x[l] + pos[l]] - pos[l];
+            _x[l] = e + ((e >> SIGN) & _size);
+        }
+    }
+
+    /** True iff the lockstep path is disabled. */
+    private static final boolean SCALAR =
+        Boolean.getBoolean("enigma.batch.scalar");
+
+    /** Shift that turns a negative int into all ones. */
+    private static final int SIGN = 31;
+
+    /** Alphabet of lane 0, used for String conversion. */
+    private final Alphabet _alphabet;
+
+    /** Number of lanes. */
+    private final int _lanes;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Number of slots, including the reflector. */
+    private final int _slots;
+
+    /** Per-lane snapshots, used by the scalar fallback. */
+    private final RotorTables[] _tables;
+
+    /** Per slot, the lane-major forward wirings, each repeated twice so
+     *  that an index plus a setting never needs wrapping. */
+    private final int[][] _forward;
+
+    /** Per slot, the lane-major inverse wirings, doubled as _forward. */
+    private final int[][] _backward;
+
+    /** Per slot, the lane-major notch flags (0 or 1) by setting. */
+    private final int[][] _notch;
+
+    /** Per slot, 1 in the lanes where that slot has a pawl. */
+    private final int[][] _pawled;
+
+    /** Per slot, the current setting in every lane. */
+    private final int[][] _pos;
+
+    /** Lane-major plugboard mappings. */
+    private final int[] _plugboard;
+
+    /** Per-lane signal being routed through the rotors. */
+    private final int[] _x;
+
+    /** Per-lane flag (0 or 1) telling whether the lane has input left. */
+    private final int[] _active;
+}
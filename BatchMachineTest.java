@@ -0,0 +1,164 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the BatchMachine class.
+ *  @author Vineet Vashist
+ */
+public class BatchMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Check that a batch of LANES random keys and messages, run through
+     *  BatchMachine with the lockstep path iff LOCKSTEP, agrees with
+     *  Machine.convert in every lane. */
+    private void checkAgainstMachine(int lanes, boolean lockstep) {
+        Random rand = new Random(lanes * 31 + (lockstep ? 1 : 0));
+        Machine[] machines = new Machine[lanes];
+        String[] expected = new String[lanes];
+        int[][] msgs = new int[lanes][];
+        for (int l = 0; l < lanes; l += 1) {
+            String[] key = randomKey(rand);
+            String msg = randomMessage(rand, rand.nextInt(2000));
+            machines[l] = machineFor(key);
+            expected[l] = machineFor(key).convert(msg);
+            msgs[l] = new int[msg.length()];
+            for (int i = 0; i < msgs[l].length; i += 1) {
+                msgs[l][i] = UPPER.toInt(msg.charAt(i));
+            }
+        }
+        BatchMachine batch = new BatchMachine(machines);
+        if (lockstep) {
+            batch.convertLanes(msgs);
+        } else {
+            batch.convertScalar(msgs);
+        }
+        for (int l = 0; l < lanes; l += 1) {
+            StringBuilder got = new StringBuilder();
+            for (int c : msgs[l]) {
+                got.append(UPPER.toChar(c));
+            }
+            assertEquals(msg("lane " + l, "lockstep=%b", lockstep),
+                         expected[l], got.toString());
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void lockstepMatchesMachine() {
+        checkAgainstMachine(1, true);
+        checkAgainstMachine(7, true);
+        checkAgainstMachine(16, true);
+    }
+
+    @Test
+    public void scalarMatchesMachine() {
+        checkAgainstMachine(1, false);
+        checkAgainstMachine(16, false);
+    }
+
+    @Test
+    public void stringBatch() {
+        Machine a = navalMachine(new String[] {"B", "Beta", "III", "IV",
+            "I"}, "AXLE", "(HQ) (EX) (IP) (TR) (BY)");
+        Machine b = navalMachine(new String[] {"B", "Beta", "I", "II",
+            "III"}, "AAAA", "");
+        String[] out = new BatchMachine(a, b).convert("FROMHISSHOULDER",
+                                                       "HELLOWORLD");
+        assertEquals("QVPQSOKOILPUBKJ", out[0]);
+        assertEquals("ILBDAAMTAZ", out[1]);
+    }
+
+    @Test
+    public void resumesAcrossCalls() {
+        String[] key = randomKey(new Random(5));
+        String msg = randomMessage(new Random(6), 700);
+        String expected = machineFor(key).convert(msg);
+        BatchMachine batch = new BatchMachine(machineFor(key),
+                                              machineFor(key));
+        String[] first = batch.convert(msg.substring(0, 300),
+                                       msg.substring(0, 300));
+        String[] second = batch.convert(msg.substring(300),
+                                        msg.substring(300));
+        assertEquals(expected, first[0] + second[0]);
+        assertEquals(expected, first[1] + second[1]);
+    }
+
+    @Test
+    public void uncheckedMatchesInterpreted() {
+        Random rand = new Random(44);
+        for (int trial = 0; trial < 20; trial += 1) {
+            String[] key = randomKey(rand);
+            String msg = randomMessage(rand, 1 + rand.nextInt(3000));
+            Machine interpreted = machineFor(key);
+            interpreted.setInterpreted(true);
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < msg.length(); i += 1) {
+                expected.append(UPPER.toChar(
+                    interpreted.convert(UPPER.toInt(msg.charAt(i)))));
+            }
+            Machine compiled = machineFor(key);
+            int[] symbols = new int[msg.length()];
+            assertEquals(msg.length(), UPPER.toIndices(msg, symbols));
+            for (int i = 0; i < symbols.length; ) {
+                int end = Math.min(symbols.length, i + rand.nextInt(500));
+                compiled.convert(symbols, i, end);
+                i = end;
+            }
+            assertEquals(expected.toString(),
+                         UPPER.toString(symbols, 0, symbols.length));
+            assertEquals(expected.toString(), machineFor(key).convert(msg));
+        }
+        try {
+            navalMachine(new String[] {"B", "Beta", "I", "II", "III"},
+                         "AAAA", "").convert("HELLOWoRLD");
+            fail("accepted a lower-case character");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("o at position 6"));
+        }
+    }
+
+    @Test
+    public void ringsInEveryEngine() {
+        Machine m = navalMachine(new String[] {"B", "Beta", "I", "II", "III"},
+                                 "AAAA", "");
+        m.setRings("ABBB");
+        assertEquals("EWTYX", m.convert("AAAAA"));
+        assertEquals("ABBB", m.rings());
+        assertEquals("AAAF", m.positions());
+        Random rand = new Random(46);
+        for (int trial = 0; trial < 20; trial += 1) {
+            String[] key = randomKey(rand);
+            String rings = randomMessage(rand, 4);
+            String msg = randomMessage(rand, 1 + rand.nextInt(2000));
+            Machine interpreted = machineFor(key);
+            interpreted.setInterpreted(true);
+            interpreted.setRings(rings);
+            String expected = interpreted.convert(msg);
+            Machine compiled = machineFor(key);
+            compiled.setRings(rings);
+            assertEquals(rings, expected, compiled.convert(msg));
+            Machine offHeap = machineFor(key);
+            offHeap.setTables(OffHeapTables.build(offHeap));
+            offHeap.setRings(rings);
+            assertEquals(rings, expected, offHeap.convert(msg));
+            Machine parsed = machineFor(key);
+            Main.setUp(parsed, String.format("* %s %s %s %s %s %s %s %s",
+                                             key[0], key[1], key[2], key[3],
+                                             key[4], key[5], rings, key[6]));
+            assertEquals(rings, expected, parsed.convert(msg));
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.function.IntUnaryOperator;
+
+import static enigma.EnigmaException.*;
+
+/** Timing comparisons between the engines of the simulator.
+ *  @author Vineet Vashist
+ */
+public final class Benchmark {
+
+    /** Time the engines as specified by ARGS, where
+     *  ARGS[0] names a configuration file, ARGS[1] is a settings line as
+     *  in the input of Main, and the optional ARGS[2] is the number of
+     *  characters to convert per run (default 1000000).  With --rotors
+     *  as ARGS[0], instead times random machines of growing numbers of
+     *  rotors, converting ARGS[1] characters per run if it is given. */
+    public static void main(String... args) {
+        try {
+            if (args.length > 0 && args[0].equals("--rotors")) {
+                if (args.length > 2) {
+                    throw error("Usage: java enigma.Benchmark --rotors "
+                                + "[CHARS]");
+                }
+                rotors(args.length > 1
+                       ? Integer.parseInt(args[1]) : DEFAULT_CHARS);
+                return;
+            }
+            if (args.length < 2 || args.length > 3) {
+                throw error("Usage: java enigma.Benchmark CONFIG SETTINGS "
+                            + "[CHARS]");
+            }
+            int chars = args.length > 2
+                ? Integer.parseInt(args[2]) : DEFAULT_CHARS;
+            new Benchmark(args[0], args[1], chars).compiled();
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A benchmark of machines read from the configuration file named
+     *  CONFIG, set up by the settings line SETTINGS, converting CHARS
+     *  random characters per run. */
+    Benchmark(String config, String settings, int chars) {
+        _config = config;
+        _settings = settings;
+        _msg = message(chars, machine().alphabet().size());
+    }
+
+    /** A benchmark of machines not read from a file, converting CHARS
+     *  random characters of a 26-character alphabet per run. */
+    private Benchmark(int chars) {
+        _config = _settings = null;
+        _msg = message(chars, UPPER.length());
+    }
+
+    /** Return CHARS random indices in an alphabet of SIZE. */
+    private static int[] message(int chars, int size) {
+        Random rand = new Random(chars);
+        int[] msg = new int[chars];
+        for (int i = 0; i < chars; i += 1) {
+            msg[i] = rand.nextInt(size);
+        }
+        return msg;
+    }
+
+    /** Compare, for random machines of growing numbers of slots, every
+     *  moving rotor with a pawl and one notch, the cost per character of
+     *  a CarryMachine with that of stepping and converting through every
+     *  slot, as RotorTables does, converting CHARS characters per run,
+     *  and print the results. */
+    static void rotors(int chars) {
+        Benchmark bench = new Benchmark(chars);
+        Random rand = new Random(1);
+        System.out.printf("%6s %12s %12s%n", "slots", "carry", "every slot");
+        for (int slots : STACK_SLOTS) {
+            Machine m = stack(slots, slots - 1, 1, rand);
+            CarryMachine carry = new CarryMachine(new RotorTables(m));
+            RotorTables tables = new RotorTables(m);
+            int[] posn = tables.positions();
+            System.out.printf("%6d %9.2f ns %9.2f ns%n", slots,
+                              bench.nanosPerChar(carry::convert),
+                              bench.nanosPerChar(c -> tables.convert(posn,
+                                                                     c)));
+        }
+    }
+
+    /** Return a machine of SLOTS slots over the upper-case alphabet with
+     *  random rotors from RAND at random settings: a reflector, fixed
+     *  rotors, and PAWLS moving rotors at the right, each with NOTCHES
+     *  notches, all with pawls. */
+    static Machine stack(int slots, int pawls, int notches, Random rand) {
+        Alphabet alphabet = new Alphabet(UPPER);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[slots];
+        StringBuilder setting = new StringBuilder();
+        for (int k = 0; k < slots; k += 1) {
+            names[k] = "R" + k;
+            ArrayList<Character> chars = new ArrayList<>();
+            for (char c : UPPER.toCharArray()) {
+                chars.add(c);
+            }
+            Collections.shuffle(chars, rand);
+            StringBuilder cycles = new StringBuilder();
+            if (k == 0) {
+                for (int i = 0; i < chars.size(); i += 2) {
+                    cycles.append('(').append(chars.get(i))
+                        .append(chars.get(i + 1)).append(')');
+                }
+                rotors.add(new Reflector(names[k],
+                    new Permutation(cycles.toString(), alphabet)));
+                continue;
+            }
+            cycles.append('(');
+            for (char c : chars) {
+                cycles.append(c);
+            }
+            cycles.append(')');
+            Permutation perm = new Permutation(cycles.toString(), alphabet);
+            if (k < slots - pawls) {
+                rotors.add(new FixedRotor(names[k], perm));
+            } else {
+                rotors.add(new MovingRotor(names[k], perm,
+                    UPPER.substring(0, notches)));
+            }
+            setting.append(UPPER.charAt(rand.nextInt(UPPER.length())));
+        }
+        Machine m = new Machine(alphabet, slots, pawls, rotors);
+        m.insertRotors(names);
+        m.setRotors(setting.toString());
+        return m;
+    }
+
+    /** Return a fresh machine configured from my configuration file and
+     *  settings line. */
+    Machine machine() {
+        try {
+            Main main = new Main(new Scanner(new File(_config)),
+                                 InputStream.nullInputStream(),
+                                 System.out);
+            Machine m = main.readConfig();
+            Main.setUp(m, _settings);
+            return m;
+        } catch (IOException excp) {
+            throw error("could not open %s", _config);
+        }
+    }
+
+    /** Compare the interpreted Machine.convert with the compiled rotor
+     *  stack and with off-heap tables, and print the results. */
+    void compiled() {
+        Machine interpreted = machine();
+        interpreted.setInterpreted(true);
+        Machine compiled = machine();
+        compiled.setInterpreted(false);
+        Machine offHeap = machine();
+        offHeap.setTables(OffHeapTables.build(offHeap));
+        double slow = nanosPerChar(interpreted);
+        double fast = nanosPerChar(compiled);
+        double tables = nanosPerChar(offHeap);
+        System.out.printf("interpreted %8.2f ns/char%n", slow);
+        System.out.printf("compiled    %8.2f ns/char%n", fast);
+        System.out.printf("off-heap    %8.2f ns/char%n", tables);
+        System.out.printf("speedup     %8.2fx%n", slow / fast);
+    }
+
+    /** Return the best time per character, in nanoseconds, of M over
+     *  several runs of my message, after warming up. */
+    double nanosPerChar(Machine m) {
+        return nanosPerChar(m::convert);
+    }
+
+    /** Return the best time per character, in nanoseconds, of CONVERT
+     *  over several runs of my message, after warming up. */
+    double nanosPerChar(IntUnaryOperator convert) {
+        int sink = 0;
+        for (int r = 0; r < WARMUP_RUNS; r += 1) {
+            sink += run(convert);
+        }
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < TIMED_RUNS; r += 1) {
+            long start = System.nanoTime();
+            sink += run(convert);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if (sink == 1) {
+            System.out.print("");
+        }
+        return (double) best / _msg.length;
+    }
+
+    /** Convert my message with CONVERT and return a checksum of the
+     *  result. */
+    private int run(IntUnaryOperator convert) {
+        int sum = 0;
+        for (int c : _msg) {
+            sum += convert.applyAsInt(c);
+        }
+        return sum;
+    }
+
+    /** Default number of characters per run. */
+    private static final int DEFAULT_CHARS = 1000000;
+
+    /** Number of untimed runs before timing. */
+    private static final int WARMUP_RUNS = 5;
+
+    /** Number of timed runs. */
+    private static final int TIMED_RUNS = 5;
+
+    /** Numbers of slots timed by rotors. */
+    private static final int[] STACK_SLOTS = {5, 10, 25, 50, 100, 250, 500};
+
+    /** Characters of the machines of rotors. */
+    private static final String UPPER = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    /** Name of the configuration file. */
+    private final String _config;
+
+    /** Settings line applied to every machine. */
+    private final String _settings;
+
+    /** Message converted in each run, as alphabet indices. */
+    private final int[] _msg;
+}
@@ -0,0 +1,311 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Scanner;
+
+import static java.nio.file.StandardOpenOption.*;
+import static enigma.EnigmaException.*;
+
+/** Enigma simulator over arbitrary binary data.  The alphabet is the 256
+ *  byte values, so every input byte is a symbol and no text decoding is
+ *  done; input and output files are memory-mapped and converted buffer
+ *  to buffer.
+ *
+ *  A byte configuration file has the slot and pawl counts on its first
+ *  line, followed by one rotor per line:
+ *      NAME TYPE SOURCE
+ *  where TYPE is M followed by comma-separated hex notches (moving), N
+ *  (fixed) or R (reflector), and SOURCE is either seed=N, for a wiring
+ *  generated from the random seed N, or file=PATH, for a wiring read as
+ *  256 raw bytes from PATH (relative to the configuration file).  Blank
+ *  lines and lines starting with # are ignored.
+ *
+ *  A byte settings line names the rotors as in a text settings line,
+ *  then gives the rotor positions as two hex digits each, then
+ *  optionally the plugboard as comma-separated pairs of swapped hex
+ *  bytes:
+ *      * B Beta I II III 00A1FF10 4142,5A61
+ *  @author Vineet Vashist
+ */
+public final class ByteMain {
+
+    /** Convert a binary file as specified by ARGS, where ARGS[0] names a
+     *  byte configuration file, ARGS[1] is a byte settings line, ARGS[2]
+     *  names the input file and ARGS[3] the output file. */
+    ByteMain(String[] args) {
+        if (args.length != 4) {
+            throw error("Usage: java enigma.Main --bytes CONFIG SETTINGS "
+                        + "INPUT OUTPUT");
+        }
+        _config = new File(args[0]);
+        _settings = args[1];
+        _input = Paths.get(args[2]);
+        _output = Paths.get(args[3]);
+    }
+
+    /** A reader of the byte configuration file CONFIG only. */
+    ByteMain(File config) {
+        _config = config;
+        _settings = null;
+        _input = _output = null;
+    }
+
+    /** Configure a byte machine from _config and _settings and convert
+     *  _input into _output. */
+    void process() {
+        Machine M = readConfig();
+        setUp(M, _settings);
+        try (FileChannel in = FileChannel.open(_input, READ);
+             FileChannel out = FileChannel.open(_output, READ, WRITE,
+                                                CREATE, TRUNCATE_EXISTING)) {
+            long size = in.size();
+            for (long pos = 0; pos < size; pos += _chunk) {
+                long len = Math.min(_chunk, size - pos);
+                MappedByteBuffer src =
+                    in.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                MappedByteBuffer dst =
+                    out.map(FileChannel.MapMode.READ_WRITE, pos, len);
+                M.convert(src, dst);
+            }
+        } catch (IOException excp) {
+            throw error("could not convert %s to %s: %s", _input, _output,
+                        excp.getMessage());
+        }
+    }
+
+    /** Map and convert at most CHUNK bytes of the files at once, rather
+     *  than CHUNK_SIZE. */
+    void setChunkSize(long chunk) {
+        _chunk = chunk;
+    }
+
+    /** Return a byte machine configured from the byte configuration file
+     *  _config. */
+    Machine readConfig() {
+        try (Scanner config = new Scanner(_config)) {
+            ArrayList<String> lines = new ArrayList<>();
+            while (config.hasNextLine()) {
+                String line = config.nextLine().trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    lines.add(line);
+                }
+            }
+            if (lines.isEmpty()) {
+                throw error("configuration file truncated");
+            }
+            Scanner counts = new Scanner(lines.get(0));
+            int numRotors = counts.nextInt();
+            int pawls = counts.nextInt();
+            Collection<Rotor> allRotors = new ArrayList<>();
+            for (int i = 1; i < lines.size(); i += 1) {
+                allRotors.add(readRotor(lines.get(i)));
+            }
+            return new Machine(BYTES, numRotors, pawls, allRotors);
+        } catch (IOException excp) {
+            throw error("could not open %s", _config);
+        } catch (NoSuchElementException excp) {
+            throw error("bad byte configuration header");
+        }
+    }
+
+    /** Return the rotor described by the configuration line LINE. */
+    private Rotor readRotor(String line) {
+        String[] parts = line.split("\\s+");
+        if (parts.length != 3) {
+            throw error("bad rotor description: %s", line);
+        }
+        String name = parts[0], type = parts[1];
+        boolean reflector = type.startsWith("R");
+        Permutation perm = PermutationPool.intern(
+            new Permutation(wiring(parts[2], reflector), BYTES));
+        switch (type.charAt(0)) {
+        case 'M':
+            StringBuilder notches = new StringBuilder();
+            if (type.length() > 1) {
+                for (String n : type.substring(1).split(",")) {
+                    notches.append((char) hexByte(n));
+                }
+            }
+            return new MovingRotor(name, perm, notches.toString());
+        case 'N':
+            return new FixedRotor(name, perm);
+        case 'R':
+            return new Reflector(name, perm);
+        default:
+            throw error("bad rotor type: %s", line);
+        }
+    }
+
+    /** Return the wiring given by SOURCE, which must be an involution
+     *  without fixed points iff REFLECTOR. */
+    private int[] wiring(String source, boolean reflector) {
+        int[] result;
+        if (source.startsWith("seed=")) {
+            long seed;
+            try {
+                seed = Long.parseLong(source.substring("seed=".length()));
+            } catch (NumberFormatException excp) {
+                throw error("bad wiring seed: %s", source);
+            }
+            result = reflector ? randomReflector(seed) : randomRotor(seed);
+        } else if (source.startsWith("file=")) {
+            result = loadWiring(source.substring("file=".length()));
+        } else {
+            throw error("bad wiring source: %s", source);
+        }
+        if (reflector) {
+            for (int i = 0; i < result.length; i += 1) {
+                if (result[i] == i || result[result[i]] != i) {
+                    throw error("reflector %s is not a pairing", source);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the 256-byte wiring stored in the file named NAME. */
+    private int[] loadWiring(String name) {
+        File file = new File(name);
+        if (!file.isAbsolute()) {
+            file = new File(_config.getAbsoluteFile().getParentFile(), name);
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            if (bytes.length != Alphabet.BYTE_VALUES) {
+                throw error("%s has %d bytes, not %d", name, bytes.length,
+                            Alphabet.BYTE_VALUES);
+            }
+            int[] result = new int[bytes.length];
+            for (int i = 0; i < bytes.length; i += 1) {
+                result[i] = bytes[i] & BYTE_MASK;
+            }
+            return result;
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a random byte permutation generated from SEED. */
+    static int[] randomRotor(long seed) {
+        int[] result = identity();
+        Random rand = new Random(seed);
+        for (int i = result.length - 1; i > 0; i -= 1) {
+            int j = rand.nextInt(i + 1);
+            int t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Return a random pairing of the byte values generated from SEED,
+     *  suitable for a reflector. */
+    static int[] randomReflector(long seed) {
+        int[] order = randomRotor(seed);
+        int[] result = new int[order.length];
+        for (int i = 0; i < order.length; i += 2) {
+            result[order[i]] = order[i + 1];
+            result[order[i + 1]] = order[i];
+        }
+        return result;
+    }
+
+    /** Return the identity mapping of the byte values. */
+    private static int[] identity() {
+        int[] result = new int[Alphabet.BYTE_VALUES];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = i;
+        }
+        return result;
+    }
+
+    /** Set M according to the byte settings line SETTINGS. */
+    static void setUp(Machine M, String settings) {
+        String[] parts = settings.trim().split("\\s+");
+        int slots = M.numRotors();
+        if (!parts[0].equals("*") || parts.length < slots + 2
+            || parts.length > slots + 3) {
+            throw error("bad byte settings line: %s", settings);
+        }
+        String[] rotors = new String[slots];
+        System.arraycopy(parts, 1, rotors, 0, slots);
+        M.insertRotors(rotors);
+
+        String posn = parts[slots + 1];
+        if (posn.length() != 2 * (slots - 1)) {
+            throw error("need %d hex positions, found %s", slots - 1, posn);
+        }
+        StringBuilder setting = new StringBuilder();
+        for (int i = 0; i < posn.length(); i += 2) {
+            setting.append((char) hexByte(posn.substring(i, i + 2)));
+        }
+        M.setRotors(setting.toString());
+
+        int[] plugboard = identity();
+        if (parts.length == slots + 3) {
+            for (String pair : parts[slots + 2].split(",")) {
+                if (pair.length() != 4) {
+                    throw error("bad plugboard pair: %s", pair);
+                }
+                int a = hexByte(pair.substring(0, 2));
+                int b = hexByte(pair.substring(2));
+                if (plugboard[a] != a || plugboard[b] != b || a == b) {
+                    throw error("byte plugged twice in %s", pair);
+                }
+                plugboard[a] = b;
+                plugboard[b] = a;
+            }
+        }
+        M.setPlugboard(new Permutation(plugboard, BYTES));
+    }
+
+    /** Return the byte value of the hex string HEX. */
+    private static int hexByte(String hex) {
+        try {
+            int v = Integer.parseInt(hex, HEX);
+            if (v < 0 || v > BYTE_MASK) {
+                throw error("not a byte: %s", hex);
+            }
+            return v;
+        } catch (NumberFormatException excp) {
+            throw error("not a hex byte: %s", hex);
+        }
+    }
+
+    /** The byte alphabet shared by all byte machines. */
+    static final Alphabet BYTES = Alphabet.bytes();
+
+    /** Default largest region of a file mapped at once. */
+    static final long CHUNK_SIZE = 1L << 26;
+
+    /** Mask selecting the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Radix of positions and plugboard pairs. */
+    private static final int HEX = 16;
+
+    /** Byte configuration file. */
+    private final File _config;
+
+    /** Byte settings line. */
+    private final String _settings;
+
+    /** Input file. */
+    private final Path _input;
+
+    /** Output file. */
+    private final Path _output;
+
+    /** Largest region of a file mapped at once. */
+    private long _chunk = CHUNK_SIZE;
+}
@@ -0,0 +1,166 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the ByteMain class.
+ *  @author Vineet Vashist
+ */
+public class ByteMainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A byte configuration of five slots and three pawls. */
+    private static final String CONFIG =
+        "# Test rotors\n5 3\n"
+        + "B R seed=1\nC R seed=11\nBeta N seed=2\n"
+        + "I M00,80 seed=3\nII M10 seed=4\nIII MFF seed=5\nIV M seed=6\n";
+
+    /** A byte settings line for CONFIG. */
+    private static final String SETTINGS =
+        "* B Beta I II III 00A1FF10 4142,5A61,00FF";
+
+    /** Return a new directory holding the byte configuration file
+     *  "bytes.conf" with the contents CONFIG. */
+    private static Path setUp() throws Exception {
+        Path dir = Files.createTempDirectory("bytes");
+        Files.writeString(dir.resolve("bytes.conf"), CONFIG);
+        return dir;
+    }
+
+    /** Return a ByteMain converting the file INPUT in DIR to OUTPUT with
+     *  SETTINGS. */
+    private static ByteMain byteMain(Path dir, String settings,
+                                     String input, String output) {
+        return new ByteMain(new String[] {
+            dir.resolve("bytes.conf").toString(), settings,
+            dir.resolve(input).toString(), dir.resolve(output).toString(),
+        });
+    }
+
+    /** Convert the file INPUT in DIR to OUTPUT with SETTINGS, mapping
+     *  CHUNK bytes at a time. */
+    private static void convert(Path dir, String settings, String input,
+                                String output, long chunk) {
+        ByteMain main = byteMain(dir, settings, input, output);
+        main.setChunkSize(chunk);
+        main.process();
+    }
+
+    /** Return BYTES as converted one at a time by an interpreted machine
+     *  configured from the file "bytes.conf" in DIR with SETTINGS. */
+    private static byte[] reference(Path dir, String settings,
+                                    byte[] bytes) {
+        Machine m =
+            new ByteMain(dir.resolve("bytes.conf").toFile()).readConfig();
+        m.setInterpreted(true);
+        ByteMain.setUp(m, settings);
+        byte[] result = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i += 1) {
+            result[i] = (byte) m.convert(bytes[i] & 0xff);
+        }
+        return result;
+    }
+
+    /** Check that converting with the settings line SETTINGS is
+     *  rejected with a message containing EXPECTED. */
+    private static void checkBadSettings(Path dir, String settings,
+                                         String expected) {
+        try {
+            convert(dir, settings, "input", "output",
+                    ByteMain.CHUNK_SIZE);
+            fail("accepted " + settings);
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage(),
+                       excp.getMessage().contains(expected));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void allByteValuesRoundTrip() throws Exception {
+        Path dir = setUp();
+        byte[] input = new byte[256 * 40];
+        for (int i = 0; i < input.length; i += 1) {
+            input[i] = (byte) i;
+        }
+        Files.write(dir.resolve("input"), input);
+        convert(dir, SETTINGS, "input", "cipher", ByteMain.CHUNK_SIZE);
+        byte[] cipher = Files.readAllBytes(dir.resolve("cipher"));
+        assertArrayEquals(reference(dir, SETTINGS, input), cipher);
+        boolean[] seen = new boolean[256];
+        for (byte b : cipher) {
+            seen[b & 0xff] = true;
+        }
+        for (int v = 0; v < seen.length; v += 1) {
+            assertTrue("byte " + v + " never produced", seen[v]);
+        }
+
+        convert(dir, SETTINGS, "cipher", "plain", ByteMain.CHUNK_SIZE);
+        assertArrayEquals(input, Files.readAllBytes(dir.resolve("plain")));
+    }
+
+    @Test
+    public void chunkBoundaries() throws Exception {
+        Path dir = setUp();
+        byte[] input = new byte[10000];
+        new Random(28).nextBytes(input);
+        Files.write(dir.resolve("input"), input);
+        byte[] expected = reference(dir, SETTINGS, input);
+        for (long chunk : new long[] {1, 255, 4096, 9999, 10000, 10001}) {
+            convert(dir, SETTINGS, "input", "output", chunk);
+            assertArrayEquals("chunk " + chunk, expected,
+                              Files.readAllBytes(dir.resolve("output")));
+        }
+        Files.write(dir.resolve("empty"), new byte[0]);
+        convert(dir, SETTINGS, "empty", "output", 4096);
+        assertEquals(0, Files.size(dir.resolve("output")));
+    }
+
+    @Test
+    public void malformedSettings() throws Exception {
+        Path dir = setUp();
+        Files.write(dir.resolve("input"), new byte[] {1, 2, 3});
+        checkBadSettings(dir, "B Beta I II III 00A1FF10",
+                         "bad byte settings line");
+        checkBadSettings(dir, "* B Beta I II III",
+                         "bad byte settings line");
+        checkBadSettings(dir, "* B Beta I II III 00A1FF10 4142 X",
+                         "bad byte settings line");
+        checkBadSettings(dir, "* B Beta I II III 00A1FF",
+                         "need 4 hex positions");
+        checkBadSettings(dir, "* B Beta I II III 00A1FFZZ",
+                         "not a hex byte: ZZ");
+        checkBadSettings(dir, "* B Beta I II III 00A1FF10 414",
+                         "bad plugboard pair: 414");
+        checkBadSettings(dir, "* B Beta I II III 00A1FF10 4142,4243",
+                         "byte plugged twice");
+        checkBadSettings(dir, "* B Beta I II III 00A1FF10 4141",
+                         "byte plugged twice");
+        checkBadSettings(dir, "* B Beta I II III 00A1FF10 41G2",
+                         "not a hex byte: G2");
+    }
+
+    @Test
+    public void malformedSeeds() throws Exception {
+        Path dir = setUp();
+        Files.write(dir.resolve("input"), new byte[] {1, 2, 3});
+        for (String seed : new String[] {"seed=", "seed=x1",
+                                         "seed=99999999999999999999"}) {
+            Files.writeString(dir.resolve("bytes.conf"),
+                              CONFIG.replace("seed=4", seed));
+            checkBadSettings(dir, SETTINGS, "bad wiring seed: " + seed);
+        }
+    }
+}
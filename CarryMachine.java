@@ -0,0 +1,260 @@
+package enigma;
+
+/** The engine of a Machine with a long rotor stack, whose cost per
+ *  character does not grow with the number of rotors.
+ *
+ *  <p>Stepping propagates carries instead of testing every slot.  The
+ *  notch of slot K matters only if slot K - 1 has a pawl; the slots
+ *  where it matters and that are at a notch are kept in a short list,
+ *  and only their neighbours and the rightmost rotor can move.  While
+ *  the list is empty, only the rightmost rotor moves, and a table of
+ *  distances to its next notch says for how many characters that will
+ *  stay so, without looking at any notch at all.
+ *
+ *  <p>The reflector and the rotors left of the rightmost LIVE are fused
+ *  into one table, rebuilt when one of them has moved.  To bound the
+ *  cost when they move often, a stale table is only rebuilt once at
+ *  least an alphabet's worth of characters has gone by since the last
+ *  rebuild; until then, characters take the whole stack.
+ *  @author Vineet Vashist
+ */
+final class CarryMachine extends CompiledMachine {
+
+    /** An engine for the machine described by TABLES. */
+    CarryMachine(RotorTables tables) {
+        super(tables.positions());
+        setPlugboard(tables.plugboard());
+        _size = tables.size();
+        _last = tables.numRotors() - 1;
+        _forward = new int[_last + 1][];
+        _backward = new int[_last + 1][];
+        _notch = new boolean[_last + 1][];
+        _pawled = new boolean[_last + 1];
+        _relevant = new boolean[_last + 1];
+        for (int k = 0; k <= _last; k += 1) {
+            _forward[k] = tables.forward(k);
+            _backward[k] = tables.backward(k);
+            _notch[k] = tables.notch(k);
+            _pawled[k] = tables.pawled(k);
+            _relevant[k] = k > 0 && tables.pawled(k - 1);
+        }
+        _gap = new int[_size];
+        boolean[] notch = _notch[_last];
+        int gap = Integer.MAX_VALUE;
+        for (int i = 2 * _size - 1; i >= 0; i -= 1) {
+            if (notch[i % _size]) {
+                gap = 0;
+            } else if (gap != Integer.MAX_VALUE) {
+                gap += 1;
+            }
+            if (i < _size) {
+                _gap[i] = gap;
+            }
+        }
+        _atNotch = new int[_last + 1];
+        _moves = new int[2 * (_last + 1)];
+        _moved = new boolean[_last + 1];
+        _cut = Math.max(0, _last - LIVE);
+        _fused = new int[_size];
+        positionsChanged();
+    }
+
+    @Override
+    void positionsChanged() {
+        _notches = 0;
+        for (int k = 1; k <= _last; k += 1) {
+            if (_relevant[k] && _notch[k][_posn[k]]) {
+                _atNotch[_notches] = k;
+                _notches += 1;
+            }
+        }
+        _quiet = 0;
+        fuse();
+    }
+
+    @Override
+    int convert(int c) {
+        step();
+        int[] posn = _posn;
+        int x = _plug[c];
+        int stop = _cut;
+        if (_stale) {
+            if (_sinceFused >= _size) {
+                fuse();
+            } else {
+                stop = 0;
+            }
+        }
+        if (_sinceFused < _size) {
+            _sinceFused += 1;
+        }
+        for (int k = _last; k > stop; k -= 1) {
+            x = pass(_forward[k], posn[k], x);
+        }
+        x = stop == 0 ? pass(_forward[0], posn[0], x) : _fused[x];
+        for (int k = stop + 1; k <= _last; k += 1) {
+            x = pass(_backward[k], posn[k], x);
+        }
+        return _plug[x];
+    }
+
+    /** Advance the rotors as RotorTables.step does. */
+    private void step() {
+        int[] posn = _posn;
+        int last = _last;
+        if (_quiet > 0) {
+            _quiet -= 1;
+            posn[last] = posn[last] + 1 == _size ? 0 : posn[last] + 1;
+            if (_quiet == 0 && _relevant[last]) {
+                _atNotch[0] = last;
+                _notches = 1;
+            }
+            return;
+        }
+
+        int n = 0;
+        if (_pawled[last]) {
+            n = move(last, n);
+        }
+        for (int i = 0; i < _notches; i += 1) {
+            int a = _atNotch[i];
+            n = move(a - 1, n);
+            n = move(a, n);
+        }
+        int kept = 0;
+        for (int i = 0; i < _notches; i += 1) {
+            if (!_moved[_atNotch[i]]) {
+                _atNotch[kept] = _atNotch[i];
+                kept += 1;
+            }
+        }
+        _notches = kept;
+        for (int i = 0; i < n; i += 1) {
+            int k = _moves[i];
+            _moved[k] = false;
+            posn[k] = posn[k] + 1 == _size ? 0 : posn[k] + 1;
+            if (_relevant[k] && _notch[k][posn[k]]) {
+                _atNotch[_notches] = k;
+                _notches += 1;
+            }
+            if (k <= _cut) {
+                _stale = true;
+            }
+        }
+        if (_notches == 0 && _pawled[last]) {
+            _quiet = _relevant[last] ? _gap[posn[last]] : Integer.MAX_VALUE;
+        }
+    }
+
+    /** Record in _moves[N] that slot K moves on this step, unless it
+     *  does not or is recorded already, returning the new number of
+     *  moves. */
+    private int move(int k, int n) {
+        if (k > 0 && !_moved[k] && movable(k)) {
+            _moved[k] = true;
+            _moves[n] = k;
+            return n + 1;
+        }
+        return n;
+    }
+
+    /** Return true iff slot K moves on this step, by the rules of
+     *  RotorTables.step. */
+    private boolean movable(int k) {
+        return (_pawled[k] && (k == _last || atNotch(k + 1)))
+            || (k > 0 && _pawled[k - 1] && atNotch(k));
+    }
+
+    /** Return true iff the notch of slot K is engaged. */
+    private boolean atNotch(int k) {
+        return _relevant[k] && _notch[k][_posn[k]];
+    }
+
+    /** Rebuild the table of the reflector and the slots up to _cut. */
+    private void fuse() {
+        int[] posn = _posn;
+        for (int x = 0; x < _size; x += 1) {
+            int y = x;
+            for (int k = _cut; k > 0; k -= 1) {
+                y = pass(_forward[k], posn[k], y);
+            }
+            y = pass(_forward[0], posn[0], y);
+            for (int k = 1; k <= _cut; k += 1) {
+                y = pass(_backward[k], posn[k], y);
+            }
+            _fused[x] = y;
+        }
+        _stale = false;
+        _sinceFused = 0;
+    }
+
+    /** Return the result of TABLE applied to X by a rotor at setting
+     *  POSN, wrapping without branches, which would be mispredicted
+     *  half the time. */
+    private int pass(int[] table, int posn, int x) {
+        int entry = x + posn - _size;
+        entry += (entry >> SIGN_SHIFT) & _size;
+        int exit = table[entry] - posn;
+        return exit + ((exit >> SIGN_SHIFT) & _size);
+    }
+
+    /** Number of rightmost slots never fused. */
+    static final int LIVE = 4;
+
+    /** Shift that turns a negative int into all ones. */
+    private static final int SIGN_SHIFT = 31;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Index of the rightmost slot. */
+    private final int _last;
+
+    /** Per-slot wiring at setting 0. */
+    private final int[][] _forward;
+
+    /** Per-slot inverse wiring at setting 0. */
+    private final int[][] _backward;
+
+    /** Per-slot notch flags, indexed by setting. */
+    private final boolean[][] _notch;
+
+    /** True for slots that have a pawl. */
+    private final boolean[] _pawled;
+
+    /** True for slots whose notches matter: those whose left neighbour
+     *  has a pawl. */
+    private final boolean[] _relevant;
+
+    /** Advances from each setting of the rightmost rotor until it is at
+     *  a notch, or Integer.MAX_VALUE if it has none. */
+    private final int[] _gap;
+
+    /** Slots whose notches matter and are engaged, _notches of them. */
+    private final int[] _atNotch;
+
+    /** Number of entries in _atNotch. */
+    private int _notches;
+
+    /** Steps to come on which only the rightmost rotor moves. */
+    private int _quiet;
+
+    /** Slots moving on the current step. */
+    private final int[] _moves;
+
+    /** True for the slots in _moves. */
+    private final boolean[] _moved;
+
+    /** Rightmost slot fused into _fused. */
+    private final int _cut;
+
+    /** Passage through the reflector and the slots up to _cut, both
+     *  ways. */
+    private final int[] _fused;
+
+    /** True iff a slot up to _cut has moved since _fused was built. */
+    private boolean _stale;
+
+    /** Characters converted since _fused was built. */
+    private int _sinceFused;
+}
@@ -0,0 +1,74 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.Benchmark.stack;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CarryMachine class.
+ *  @author Vineet Vashist
+ */
+public class CarryMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void matchesEverySlot() {
+        Random rand = new Random(45);
+        int[][] shapes = {
+            {3, 2, 1}, {6, 5, 1}, {12, 11, 1}, {12, 4, 2}, {40, 39, 3},
+            {40, 10, 26}, {120, 119, 1}, {120, 60, 13}, {9, 8, 0},
+        };
+        for (int[] shape : shapes) {
+            Machine m = stack(shape[0], shape[1], shape[2], rand);
+            RotorTables tables = new RotorTables(m);
+            int[] posn = tables.positions();
+            CarryMachine carry = new CarryMachine(tables);
+            for (int i = 0; i < 100000; i += 1) {
+                int c = rand.nextInt(tables.size());
+                assertEquals(String.format("slots %d pawls %d notches %d, "
+                                           + "character %d", shape[0],
+                                           shape[1], shape[2], i),
+                             tables.convert(posn, c), carry.convert(c));
+            }
+            assertArrayEquals(posn, carry.positions());
+        }
+    }
+
+    @Test
+    public void machineResets() {
+        Random rand = new Random(46);
+        Machine carried = stack(60, 59, 2, new Random(47));
+        Machine interpreted = stack(60, 59, 2, new Random(47));
+        interpreted.setInterpreted(true);
+        for (int round = 0; round < 5; round += 1) {
+            StringBuilder setting = new StringBuilder();
+            for (int k = 1; k < 60; k += 1) {
+                setting.append((char) ('A' + rand.nextInt(26)));
+            }
+            carried.setRotors(setting.toString());
+            interpreted.setRotors(setting.toString());
+            if (round > 0) {
+                String rings = setting.reverse().toString();
+                carried.setRings(rings);
+                interpreted.setRings(rings);
+            }
+            Permutation plugboard =
+                new Permutation(round % 2 == 0 ? "(AZ) (QT)" : "",
+                                carried.alphabet());
+            carried.setPlugboard(plugboard);
+            interpreted.setPlugboard(plugboard);
+            String msg = randomMessage(rand, 3000);
+            assertEquals(interpreted.convert(msg), carried.convert(msg));
+        }
+    }
+}
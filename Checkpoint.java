@@ -0,0 +1,159 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+import static java.nio.file.StandardCopyOption.*;
+import static java.nio.file.StandardOpenOption.*;
+import static enigma.EnigmaException.*;
+
+/** A record of how far a run of Main has got: the input and output
+ *  offsets at a line boundary, the settings line in effect, the rotor
+ *  positions reached, and a hash of the configuration and key, so that
+ *  an interrupted run can be resumed from it.  Checkpoints are small
+ *  property files, replaced atomically.
+ *  @author Vineet Vashist
+ */
+final class Checkpoint {
+
+    /** A checkpoint at byte INPUT of the input and byte OUTPUT of the
+     *  output, under the settings line SETTINGS with the rotors at
+     *  POSITIONS, for the key whose hash is KEY. */
+    Checkpoint(long input, long output, String settings, String positions,
+               String key) {
+        _input = input;
+        _output = output;
+        _settings = settings;
+        _positions = positions;
+        _key = key;
+    }
+
+    /** Return the checkpoint stored in FILE, or null if there is none.
+     *  A file that is cut short, even at a line end, is rejected: it
+     *  must hold every property and end with the END_MARK line that
+     *  write puts last. */
+    static Checkpoint read(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            String text = Files.readString(file, StandardCharsets.UTF_8);
+            if (!text.endsWith(END_MARK + "\n")) {
+                throw error("bad checkpoint file %s", file);
+            }
+            Properties props = new Properties();
+            props.load(new StringReader(text));
+            for (String name : PROPERTIES) {
+                if (props.getProperty(name) == null) {
+                    throw error("bad checkpoint file %s", file);
+                }
+            }
+            return new Checkpoint(Long.parseLong(props.getProperty("input")),
+                                  Long.parseLong(props.getProperty("output")),
+                                  props.getProperty("settings"),
+                                  props.getProperty("positions"),
+                                  props.getProperty("key"));
+        } catch (IOException | RuntimeException excp) {
+            throw error("bad checkpoint file %s", file);
+        }
+    }
+
+    /** Store me in FILE, by writing a temporary file beside it, forcing
+     *  it to disk, and renaming that over FILE. */
+    void write(Path file) {
+        Properties props = new Properties();
+        props.setProperty("input", Long.toString(_input));
+        props.setProperty("output", Long.toString(_output));
+        props.setProperty("settings", _settings);
+        props.setProperty("positions", _positions);
+        props.setProperty("key", _key);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (Writer out =
+                     Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                props.store(out, null);
+                out.write(END_MARK + "\n");
+            }
+            try (FileChannel synced = FileChannel.open(temp, WRITE)) {
+                synced.force(true);
+            }
+            Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s", file);
+        }
+    }
+
+    /** Return the hash identifying the configuration with contents
+     *  CONFIG under the settings line SETTINGS. */
+    static String keyHash(byte[] config, String settings) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(config);
+            digest.update((byte) 0);
+            digest.update(settings.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("no SHA-256 available");
+        }
+    }
+
+    /** Return the input offset. */
+    long input() {
+        return _input;
+    }
+
+    /** Return the output offset. */
+    long output() {
+        return _output;
+    }
+
+    /** Return the settings line in effect. */
+    String settings() {
+        return _settings;
+    }
+
+    /** Return the rotor positions, as for Machine.setRotors. */
+    String positions() {
+        return _positions;
+    }
+
+    /** Return the key hash. */
+    String key() {
+        return _key;
+    }
+
+    /** The properties a checkpoint file holds. */
+    private static final String[] PROPERTIES = {
+        "input", "output", "settings", "positions", "key",
+    };
+
+    /** The comment line ending a complete checkpoint file. */
+    private static final String END_MARK = "#end";
+
+    /** Input offset, at a line boundary. */
+    private final long _input;
+
+    /** Output offset. */
+    private final long _output;
+
+    /** Settings line in effect. */
+    private final String _settings;
+
+    /** Rotor positions reached. */
+    private final String _positions;
+
+    /** Hash of the configuration and settings line. */
+    private final String _key;
+}
@@ -0,0 +1,173 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Checkpoint and LineReader
+ *  classes, and for resuming runs of Main from checkpoints.
+ *  @author Vineet Vashist
+ */
+public class CheckpointTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Leave DIR as an interrupted checkpointed run over INPUT leaves
+     *  it: the run fails on a bad settings line placed after the first
+     *  checkpoint, which is then replaced by the rest of INPUT.  Check
+     *  that a checkpoint was left behind. */
+    private static void interrupt(Path dir, String input) throws Exception {
+        int cut = input.indexOf("\n*",
+                                (int) (Main.CHECKPOINT_INTERVAL * 3 / 2));
+        assertTrue(cut > 0);
+        Files.writeString(dir.resolve("input"),
+                          input.substring(0, cut + 1)
+                          + "* B Beta I II III AAA\n"
+                          + input.substring(cut + 1));
+        String msg = run(dir, "--checkpoint", "progress", "naval.conf",
+                         "input", "output");
+        assertTrue(msg, msg.contains("Rotor settings not defined"));
+        assertTrue(Files.exists(dir.resolve("progress")));
+        Files.writeString(dir.resolve("input"), input);
+    }
+
+    /** Check that a LineReader over BYTES returns the lines LINES,
+     *  reporting after each the offset at which the next starts, as
+     *  given by OFFSETS. */
+    private static void checkLines(byte[] bytes, String[] lines,
+                                   long[] offsets) {
+        LineReader reader = new LineReader(new ByteArrayInputStream(bytes),
+                                           StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.length; i += 1) {
+            assertTrue(reader.hasNextLine());
+            assertEquals(lines[i], reader.nextLine());
+            assertEquals(offsets[i], reader.offset());
+        }
+        assertFalse(reader.hasNextLine());
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkpointRoundTrip() throws Exception {
+        Path file = Files.createTempDirectory("checkpoint").resolve("cp");
+        assertNull(Checkpoint.read(file));
+        String settings = "* B Beta I II III AAAA";
+        String key = Checkpoint.keyHash(new byte[] {1, 2, 3}, settings);
+        new Checkpoint(12345678901L, 42, settings, "QRST", key).write(file);
+        Checkpoint cp = Checkpoint.read(file);
+        assertEquals(12345678901L, cp.input());
+        assertEquals(42, cp.output());
+        assertEquals(settings, cp.settings());
+        assertEquals("QRST", cp.positions());
+        assertEquals(key, cp.key());
+        assertFalse(Files.exists(file.resolveSibling("cp.tmp")));
+        assertFalse(key.equals(Checkpoint.keyHash(new byte[] {1, 2, 4},
+                                                  settings)));
+        assertFalse(key.equals(Checkpoint.keyHash(new byte[] {1, 2, 3},
+                                                  settings + " AAAB")));
+    }
+
+    @Test
+    public void tornCheckpointsAreRejected() throws Exception {
+        Path file = Files.createTempDirectory("checkpoint").resolve("cp");
+        new Checkpoint(1L << 40, 1L << 39, "* B Beta I II III AAAA",
+                       "ABCD", "0123").write(file);
+        byte[] whole = Files.readAllBytes(file);
+        for (int n = 0; n < whole.length; n += 1) {
+            Files.write(file, Arrays.copyOf(whole, n));
+            try {
+                Checkpoint.read(file);
+                fail("read a checkpoint cut to " + n + " bytes");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().startsWith("bad checkpoint"));
+            }
+        }
+        Files.writeString(file, "input=x\noutput=1\nsettings=*\n"
+                          + "positions=A\nkey=0\n#end\n");
+        try {
+            Checkpoint.read(file);
+            fail("read a corrupt checkpoint");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().startsWith("bad checkpoint"));
+        }
+    }
+
+    @Test
+    public void lineOffsets() {
+        String text = "AB\r\nC\u00e9\n\r\u20ac\ud83d\ude00\rZ\r\n\nlast";
+        checkLines(text.getBytes(StandardCharsets.UTF_8),
+                   new String[] {
+                       "AB", "C\u00e9", "", "\u20ac\ud83d\ude00", "Z", "",
+                       "last",
+                   },
+                   new long[] {4, 8, 9, 17, 20, 21, 25});
+
+        byte[] big = new byte[200000];
+        Arrays.fill(big, (byte) 'A');
+        big[65535] = '\r';
+        big[65536] = '\n';
+        checkLines(big,
+                   new String[] {"A".repeat(65535), "A".repeat(134463)},
+                   new long[] {65537, 200000});
+
+        LineReader reader = new LineReader(new ByteArrayInputStream(
+            text.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+        reader.skip(9);
+        assertEquals(9, reader.offset());
+        assertEquals("\u20ac\ud83d\ude00", reader.nextLine());
+        assertEquals(17, reader.offset());
+    }
+
+    @Test
+    public void resumeMatchesUninterruptedRun() throws Exception {
+        String input = randomInput(new Random(31),
+                                   (int) (3 * Main.CHECKPOINT_INTERVAL));
+        Path dir = setUp(input);
+        assertNull(run(dir, "naval.conf", "input", "expected"));
+        byte[] expected = Files.readAllBytes(dir.resolve("expected"));
+
+        interrupt(dir, input);
+        long done = Files.size(dir.resolve("output"));
+        assertTrue(done > 0 && done < expected.length);
+        assertNull(run(dir, "--checkpoint", "progress", "--resume",
+                       "naval.conf", "input", "output"));
+        assertArrayEquals(expected, Files.readAllBytes(dir.resolve("output")));
+        assertFalse(Files.exists(dir.resolve("progress")));
+
+        assertNull(run(dir, "--checkpoint", "progress", "--resume",
+                       "naval.conf", "input", "again"));
+        assertArrayEquals(expected, Files.readAllBytes(dir.resolve("again")));
+    }
+
+    @Test
+    public void resumeChecksKey() throws Exception {
+        String input = randomInput(new Random(32),
+                                   (int) (2 * Main.CHECKPOINT_INTERVAL));
+        Path dir = setUp(input);
+        interrupt(dir, input);
+        byte[] partial = Files.readAllBytes(dir.resolve("output"));
+        String changed = navalConfig().replace("I MQ ", "I MR ");
+        assertFalse(changed.equals(navalConfig()));
+        Files.writeString(dir.resolve("naval.conf"), changed);
+        String msg = run(dir, "--checkpoint", "progress", "--resume",
+                         "naval.conf", "input", "output");
+        assertTrue(msg, msg.contains("is for a different configuration"));
+        assertArrayEquals(partial, Files.readAllBytes(dir.resolve("output")));
+        assertTrue(Files.exists(dir.resolve("progress")));
+    }
+}
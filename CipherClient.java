@@ -0,0 +1,80 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+import static enigma.EnigmaException.*;
+
+/** A connection to a CipherServer.  Requests are buffered as they are
+ *  sent, so several may be pipelined before their responses are
+ *  received, in the same order.
+ *  @author Vineet Vashist
+ */
+class CipherClient implements AutoCloseable {
+
+    /** A client of the server listening at ADDRESS, which may be an
+     *  internet or a Unix domain socket address. */
+    CipherClient(SocketAddress address) throws IOException {
+        _conn = SocketChannel.open(address);
+        _in = new DataInputStream(new BufferedInputStream(
+            Channels.newInputStream(_conn), BUFFER_SIZE));
+        _out = new DataOutputStream(new BufferedOutputStream(
+            Channels.newOutputStream(_conn), BUFFER_SIZE));
+    }
+
+    /** Send a request to convert MSG after applying the settings line
+     *  SETTINGS, or with the key left by the last request if SETTINGS is
+     *  empty. */
+    void send(String settings, String msg) throws IOException {
+        _out.writeByte(CipherServer.CONVERT);
+        CipherServer.writeString(_out, settings);
+        CipherServer.writeString(_out, msg);
+    }
+
+    /** Send a request for the server's latency statistics. */
+    void sendStats() throws IOException {
+        _out.writeByte(CipherServer.STATS);
+    }
+
+    /** Return the body of the next response, sending any requests still
+     *  buffered first.  A failed request is reported as an
+     *  EnigmaException. */
+    String receive() throws IOException {
+        _out.flush();
+        int status = _in.readUnsignedByte();
+        String body = CipherServer.readString(_in);
+        if (status != CipherServer.OK) {
+            throw error("server: %s", body);
+        }
+        return body;
+    }
+
+    /** Return MSG converted after applying SETTINGS, as for send. */
+    String convert(String settings, String msg) throws IOException {
+        send(settings, msg);
+        return receive();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _conn.close();
+    }
+
+    /** Size of the stream buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The connection. */
+    private final SocketChannel _conn;
+
+    /** Responses from the server. */
+    private final DataInputStream _in;
+
+    /** Requests to the server. */
+    private final DataOutputStream _out;
+}
@@ -0,0 +1,280 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running service that converts messages for clients over a
+ *  local socket, with the machine configuration read once.
+ *
+ *  <p>Each request and response is a frame.  A request is one byte,
+ *  CONVERT or STATS.  CONVERT is followed by a settings line and a
+ *  message, each an int byte count and that many bytes of UTF-8.  An
+ *  empty settings line leaves the key where the last request on the
+ *  connection left it; otherwise it is applied as by Main.setUp.  Blanks
+ *  in the message are dropped and the rest is converted.  STATS has no
+ *  body.  A response is a status byte, OK or FAILED, and a count and
+ *  UTF-8 bytes holding the converted message, the statistics, or an
+ *  error message.
+ *
+ *  <p>A client may send any number of requests before reading their
+ *  responses, which come back in order; responses are flushed only when
+ *  no further request is already buffered.  Each connection has its own
+ *  thread and its own copy of the machine, sharing its compiled rotor
+ *  stacks.
+ *  @author Vineet Vashist
+ */
+public final class CipherServer implements AutoCloseable {
+
+    /** Serve the configuration file ARGS[0] on the socket specified by
+     *  ARGS[1] and ARGS[2]: "--port N" for TCP on the loopback address
+     *  or "--socket PATH" for a Unix domain socket. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 3) {
+                throw error("Usage: java enigma.CipherServer CONFIG "
+                            + "(--port N | --socket PATH)");
+            }
+            ServerSocketChannel channel;
+            switch (args[1]) {
+            case "--port":
+                channel = openTcp(Integer.parseInt(args[2]));
+                break;
+            case "--socket":
+                channel = openUnix(Paths.get(args[2]));
+                break;
+            default:
+                throw error("unknown option %s", args[1]);
+            }
+            CipherServer server =
+                new CipherServer(readMachine(args[0]), channel);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                System.err.println(server.latencies().summary());
+                server.close();
+            }));
+            System.err.printf("serving on %s%n", channel.getLocalAddress());
+            server.serve();
+        } catch (EnigmaException | IOException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A server handing out copies of MACHINE to the connections accepted
+     *  on CHANNEL. */
+    CipherServer(Machine machine, ServerSocketChannel channel) {
+        _machine = machine;
+        _channel = channel;
+        _workers = threadPerTask("enigma-connection");
+    }
+
+    /** Return the machine configured by the file named CONFIG. */
+    static Machine readMachine(String config) {
+        try {
+            return new Main(new Scanner(new File(config)),
+                            InputStream.nullInputStream(), System.out)
+                .readConfig();
+        } catch (IOException excp) {
+            throw error("could not open %s", config);
+        }
+    }
+
+    /** Return a channel listening on PORT (0 for any free port) of the
+     *  loopback address. */
+    static ServerSocketChannel openTcp(int port) throws IOException {
+        return ServerSocketChannel.open().bind(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /** Return a channel listening on a Unix domain socket at PATH,
+     *  replacing any stale socket file there. */
+    static ServerSocketChannel openUnix(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        return ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+            .bind(UnixDomainSocketAddress.of(path));
+    }
+
+    /** Accept and serve connections until closed. */
+    void serve() {
+        while (_channel.isOpen()) {
+            SocketChannel conn;
+            try {
+                conn = _channel.accept();
+            } catch (IOException excp) {
+                break;
+            }
+            _workers.execute(() -> connection(conn));
+        }
+    }
+
+    /** Start serving in the background. */
+    void start() {
+        Thread acceptor = new Thread(this::serve, "enigma-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** Return the channel I accept connections on. */
+    ServerSocketChannel channel() {
+        return _channel;
+    }
+
+    /** Return the service times of the requests handled so far. */
+    Latencies latencies() {
+        return _latencies;
+    }
+
+    /** Stop accepting connections and abandon those open. */
+    @Override
+    public void close() {
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            /* Ignore */
+        }
+        _workers.shutdownNow();
+    }
+
+    /** Serve requests on CONN until the client closes it. */
+    private void connection(SocketChannel conn) {
+        Machine m = _machine.copy();
+        boolean keyed = false;
+        try (conn;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(
+                 Channels.newInputStream(conn), BUFFER_SIZE));
+             DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Channels.newOutputStream(conn),
+                                          BUFFER_SIZE))) {
+            while (true) {
+                int op;
+                try {
+                    op = in.readUnsignedByte();
+                } catch (EOFException excp) {
+                    break;
+                }
+                long start = System.nanoTime();
+                if (op == CONVERT) {
+                    String settings = readString(in);
+                    String msg = readString(in);
+                    try {
+                        if (!settings.isEmpty()) {
+                            Main.setUp(m, settings);
+                            keyed = true;
+                        } else if (!keyed) {
+                            throw error("no settings yet");
+                        }
+                        respond(out, OK,
+                                m.convert(msg.replace(" ", "")));
+                    } catch (RuntimeException excp) {
+                        respond(out, FAILED, String.valueOf(
+                            excp.getMessage()));
+                    }
+                    _latencies.record(System.nanoTime() - start);
+                } else if (op == STATS) {
+                    respond(out, OK, _latencies.summary());
+                } else {
+                    respond(out, FAILED, "unknown request " + op);
+                    break;
+                }
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException excp) {
+            /* The client has gone; nothing to report it to. */
+        }
+    }
+
+    /** Return a string read from IN as an int count and UTF-8 bytes. */
+    static String readString(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        if (n < 0 || n > MAX_FRAME) {
+            throw new IOException("bad frame length " + n);
+        }
+        byte[] bytes = new byte[n];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Write S to OUT as an int count and UTF-8 bytes. */
+    static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Write a response with STATUS and BODY to OUT. */
+    private static void respond(DataOutputStream out, int status,
+                                String body) throws IOException {
+        out.writeByte(status);
+        writeString(out, body);
+    }
+
+    /** Return an executor giving each task its own thread: a virtual
+     *  thread where the runtime has them, otherwise a pooled daemon
+     *  platform thread called NAME. */
+    static ExecutorService threadPerTask(String name) {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException excp) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Request code for a conversion. */
+    static final int CONVERT = 'C';
+
+    /** Request code for the latency statistics. */
+    static final int STATS = 'S';
+
+    /** Status of a successful response. */
+    static final int OK = 0;
+
+    /** Status of a failed request. */
+    static final int FAILED = 1;
+
+    /** Largest string accepted in a frame, in bytes. */
+    static final int MAX_FRAME = 1 << 26;
+
+    /** Size of the stream buffers of a connection. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The configured machine that connections copy. */
+    private final Machine _machine;
+
+    /** Channel accepting connections. */
+    private final ServerSocketChannel _channel;
+
+    /** Runs one task per connection. */
+    private final ExecutorService _workers;
+
+    /** Service times of conversion requests. */
+    private final Latencies _latencies = new Latencies();
+}
@@ -0,0 +1,107 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CipherServer class.
+ *  @author Vineet Vashist
+ */
+public class CipherServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a naval machine to serve. */
+    private static Machine serverMachine() {
+        return navalMachine(new String[] {"B", "Beta", "I", "II", "III"},
+                            "AAAA", "");
+    }
+
+    /** Send N pipelined requests with keys and messages from RAND over
+     *  CLIENT, then check all the responses. */
+    private static void pipeline(CipherClient client, Random rand, int n)
+        throws Exception {
+        ArrayList<String> expected = new ArrayList<>();
+        Machine m = null;
+        for (int i = 0; i < n; i += 1) {
+            String msg = randomMessage(rand, rand.nextInt(100));
+            if (m == null || rand.nextInt(4) == 0) {
+                String[] key = randomKey(rand);
+                m = machineFor(key);
+                client.send(settingsLine(key), msg);
+            } else {
+                client.send("", msg);
+            }
+            expected.add(m.convert(msg));
+        }
+        for (String e : expected) {
+            assertEquals(e, client.receive());
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void pipelinedTcp() throws Exception {
+        try (CipherServer server = new CipherServer(serverMachine(),
+                 CipherServer.openTcp(0))) {
+            server.start();
+            ExecutorService pool = Executors.newFixedThreadPool(4);
+            ArrayList<Future<?>> done = new ArrayList<>();
+            for (int c = 0; c < 4; c += 1) {
+                int seed = c;
+                done.add(pool.submit(() -> {
+                    try (CipherClient client = new CipherClient(
+                             server.channel().getLocalAddress())) {
+                        pipeline(client, new Random(seed), 200);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : done) {
+                f.get();
+            }
+            pool.shutdown();
+            assertEquals(800, server.latencies().count());
+        }
+    }
+
+    @Test
+    public void unixSocketAndErrors() throws Exception {
+        Path dir = Files.createTempDirectory("enigma");
+        Path socket = dir.resolve("server.sock");
+        try (CipherServer server = new CipherServer(serverMachine(),
+                 CipherServer.openUnix(socket));
+             CipherClient client = new CipherClient(
+                 server.channel().getLocalAddress())) {
+            server.start();
+            try {
+                client.convert("", "ABC");
+                fail("expected an error without settings");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+            pipeline(client, new Random(34), 50);
+            client.sendStats();
+            assertTrue(client.receive().startsWith("51 requests"));
+        } finally {
+            Files.deleteIfExists(socket);
+            Files.delete(dir);
+        }
+    }
+}
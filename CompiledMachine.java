@@ -0,0 +1,57 @@
+package enigma;
+
+/** The engine of a Machine whose rotor stack has been compiled into
+ *  something faster than its Rotor objects.  Subclasses are generated
+ *  at run time by a MachineCompiler, with the notches of one particular
+ *  rotor selection built in and its wirings in fields of their own, or
+ *  read them from OffHeapTables; only the rotor positions and the
+ *  plugboard live in this object.
+ *  @author Vineet Vashist
+ */
+abstract class CompiledMachine {
+
+    /** A compiled engine whose rotor settings, indexed by slot, are
+     *  POSN. */
+    CompiledMachine(int[] posn) {
+        _posn = posn;
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  the machine. */
+    abstract int convert(int c);
+
+    /** Convert SYMBOLS[FROM..TO-1], each an index in the alphabet, in
+     *  place, advancing the machine before each.  Nothing is checked.
+     *  Generated engines override this with a loop that keeps the rotor
+     *  settings in locals. */
+    void convert(int[] symbols, int from, int to) {
+        for (int i = from; i < to; i += 1) {
+            symbols[i] = convert(symbols[i]);
+        }
+    }
+
+    /** Return my rotor settings, indexed by slot.  The array is live:
+     *  changing it repositions the rotors. */
+    int[] positions() {
+        return _posn;
+    }
+
+    /** Note that the positions have been changed other than by
+     *  convert.  By default, does nothing. */
+    void positionsChanged() {
+    }
+
+    /** Set my plugboard to the mapping PLUGBOARD. */
+    void setPlugboard(int[] plugboard) {
+        _plug = plugboard;
+    }
+
+    /** Current rotor settings, indexed by slot.  Read and written by the
+     *  generated convert method. */
+    final int[] _posn;
+
+    /** Current plugboard mapping.  Read by the generated convert
+     *  method. */
+    int[] _plug;
+}
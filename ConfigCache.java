@@ -0,0 +1,71 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.function.Supplier;
+
+/** Machines configured from files, kept so that a file need only be
+ *  parsed again when it changes.  Each caller gets its own copy of the
+ *  cached machine, sharing its compiled rotor stacks.  May be used from
+ *  several threads.
+ *  @author Vineet Vashist
+ */
+class ConfigCache {
+
+    /** Return a machine configured from the file CONFIG, calling READ to
+     *  parse it if it is not cached or has changed since. */
+    Machine machine(Path config, Supplier<Machine> read) {
+        Path key = config.toAbsolutePath().normalize();
+        String stamp = stamp(key);
+        Entry entry;
+        synchronized (this) {
+            entry = _entries.get(key);
+            if (entry == null || stamp == null
+                || !entry._stamp.equals(stamp)) {
+                entry = new Entry(stamp, read.get());
+                if (stamp != null) {
+                    _entries.put(key, entry);
+                }
+            }
+        }
+        return entry._machine.copy();
+    }
+
+    /** Return the number of configurations cached. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Return a string that changes when the file FILE does, or null if
+     *  it cannot be read. */
+    private static String stamp(Path file) {
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(file, BasicFileAttributes.class);
+            return attrs.lastModifiedTime() + " " + attrs.size() + " "
+                + attrs.fileKey();
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** A cached machine and the stamp of the file it came from. */
+    private static class Entry {
+        /** A cache entry for MACHINE, from a file with STAMP. */
+        Entry(String stamp, Machine machine) {
+            _stamp = stamp;
+            _machine = machine;
+        }
+
+        /** Stamp of the file when parsed. */
+        private final String _stamp;
+        /** The machine configured from the file, never used directly. */
+        private final Machine _machine;
+    }
+
+    /** Cached machines, by absolute file name. */
+    private final HashMap<Path, Entry> _entries = new HashMap<>();
+}
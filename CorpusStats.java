@@ -0,0 +1,479 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static java.nio.file.StandardOpenOption.*;
+import static enigma.EnigmaException.*;
+
+/** Statistics of a corpus of text in an alphabet: the number of each
+ *  character, bigram and trigram, and the index of coincidence.  Text
+ *  is read in UTF-8 and normalized as by a Normalizer (by default,
+ *  dropping everything not in the alphabet); n-grams do not run across
+ *  line ends.  N-grams are only counted up to the longest whose table
+ *  has at most MAX_CELLS entries.
+ *
+ *  <p>Files are split into pieces of about SPLIT_SIZE bytes, each the
+ *  lines that start in a range of the file, which are memory-mapped and
+ *  counted by one worker per processor, run by a parallel stream.  Each
+ *  worker takes pieces from a shared counter until none are left and
+ *  counts them into its own arrays of longs, so that there are only as
+ *  many tables as workers however many pieces there are; the workers'
+ *  tables are summed at the end, and the result does not depend on how
+ *  the work was split.  No line may be longer than MAX_LINE bytes.
+ *
+ *  <p>The statistics are reported as lines of a name and values
+ *  separated by tabs, and can be written to an n-gram table file, which
+ *  load reads back.  A table file is big-endian: a header of ints
+ *  (magic, version, alphabet size, longest n-gram counted, length of
+ *  the alphabet in bytes), the alphabet in UTF-8 padded to a multiple of
+ *  8 bytes, and then, as longs, the number of characters and the count
+ *  of each n-gram, in order of length and then of the indices of their
+ *  characters, first character most significant.
+ *  @author Vineet Vashist
+ */
+public final class CorpusStats {
+
+    /** Count the files given by ARGS: options, then CONFIG FILE..., and
+     *  print the report.  CONFIG is a configuration file, as read by
+     *  Main, giving the alphabet.  The options are
+     *      --normalize SPEC  normalize the text as SPEC says (see
+     *                     Normalizer) rather than dropping everything
+     *                     not in the alphabet.
+     *      --table FILE   also write the n-gram table to FILE.
+     *      --top N        report the N most frequent bigrams and
+     *                     trigrams (default DEFAULT_TOP). */
+    public static void main(String... args) {
+        try {
+            String spec = "drop";
+            Path table = null;
+            int top = DEFAULT_TOP;
+            int i;
+            for (i = 0; i + 1 < args.length && args[i].startsWith("--");
+                 i += 2) {
+                if (args[i].equals("--normalize")) {
+                    spec = args[i + 1];
+                } else if (args[i].equals("--table")) {
+                    table = Paths.get(args[i + 1]);
+                } else if (args[i].equals("--top")) {
+                    top = Integer.parseInt(args[i + 1]);
+                } else {
+                    throw error("unknown option %s", args[i]);
+                }
+            }
+            if (args.length - i < 2) {
+                throw error("Usage: java enigma.CorpusStats [--normalize "
+                            + "SPEC] [--table FILE] [--top N] CONFIG "
+                            + "FILE...");
+            }
+            Alphabet alphabet = CipherServer.readMachine(args[i]).alphabet();
+            ArrayList<Path> files = new ArrayList<>();
+            for (int k = i + 1; k < args.length; k += 1) {
+                files.add(Paths.get(args[k]));
+            }
+            CorpusStats stats =
+                count(files, alphabet, Normalizer.parse(spec, alphabet),
+                      SPLIT_SIZE);
+            System.out.print(stats.report(top));
+            if (table != null) {
+                stats.write(table);
+            }
+            return;
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Statistics of nothing in ALPHABET, counting n-grams up to length
+     *  ORDER. */
+    private CorpusStats(Alphabet alphabet, int order) {
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        _counts = new long[order][];
+        long cells = 1;
+        for (int k = 0; k < order; k += 1) {
+            cells *= _size;
+            _counts[k] = new long[(int) cells];
+        }
+    }
+
+    /** Return the statistics of FILES, whose text is normalized by
+     *  NORMALIZER into ALPHABET, counted in splits of about SPLIT
+     *  bytes. */
+    static CorpusStats count(List<Path> files, Alphabet alphabet,
+                             Normalizer normalizer, long split) {
+        ArrayList<Split> splits = new ArrayList<>();
+        for (Path file : files) {
+            try (FileChannel in = FileChannel.open(file, READ)) {
+                long size = in.size();
+                for (long start = 0; start < size; start += split) {
+                    long from = Math.max(0, start - 1);
+                    long end = Math.min(size, start + split);
+                    long to = Math.min(size, end + MAX_LINE);
+                    splits.add(new Split(
+                        in.map(FileChannel.MapMode.READ_ONLY, from,
+                               to - from),
+                        start == 0, (int) (end - from), to == size));
+                }
+            } catch (IOException excp) {
+                throw error("could not map %s", file);
+            }
+        }
+        int order = order(alphabet.size());
+        int workers = Math.max(1, Math.min(splits.size(),
+            Runtime.getRuntime().availableProcessors()));
+        AtomicInteger next = new AtomicInteger();
+        return IntStream.range(0, workers).parallel()
+            .mapToObj(w -> {
+                CorpusStats stats = new CorpusStats(alphabet, order);
+                for (int i = next.getAndIncrement(); i < splits.size();
+                     i = next.getAndIncrement()) {
+                    stats.add(splits.get(i), normalizer);
+                }
+                return stats;
+            })
+            .reduce((a, b) -> {
+                a.merge(b);
+                return a;
+            }).get();
+    }
+
+    /** Return the statistics in the n-gram table file FILE. */
+    static CorpusStats load(Path file) {
+        try (FileChannel in = FileChannel.open(file, READ)) {
+            if (in.size() < HEADER_BYTES || in.size() > Integer.MAX_VALUE) {
+                throw error("%s is not an n-gram table", file);
+            }
+            ByteBuffer buffer =
+                in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if (buffer.getInt(0) != MAGIC
+                || buffer.getInt(Integer.BYTES) != VERSION) {
+                throw error("%s is not an n-gram table", file);
+            }
+            int size = buffer.getInt(SIZE_FIELD);
+            int order = buffer.getInt(ORDER_FIELD);
+            int length = buffer.getInt(ALPHABET_FIELD);
+            if (length < 0 || HEADER_BYTES + (long) length > in.size()) {
+                throw error("%s is truncated", file);
+            }
+            byte[] symbols = new byte[length];
+            buffer.get(HEADER_BYTES, symbols);
+            Alphabet alphabet =
+                new Alphabet(new String(symbols, StandardCharsets.UTF_8));
+            if (alphabet.size() != size || order < 1 || order > order(size)
+                || in.size() != tableBytes(length, size, order)) {
+                throw error("%s is truncated or corrupt", file);
+            }
+            CorpusStats result = new CorpusStats(alphabet, order);
+            buffer.position(HEADER_BYTES + pad(length));
+            result._characters = buffer.getLong();
+            for (long[] counts : result._counts) {
+                buffer.asLongBuffer().get(counts);
+                buffer.position(buffer.position()
+                                + counts.length * Long.BYTES);
+            }
+            return result;
+        } catch (IOException excp) {
+            throw error("could not map %s", file);
+        }
+    }
+
+    /** Write my n-gram table to FILE. */
+    void write(Path file) {
+        byte[] symbols = _alphabet.toString().getBytes(StandardCharsets.UTF_8);
+        long bytes = tableBytes(symbols.length, _size, _counts.length);
+        try (FileChannel out = FileChannel.open(file, CREATE, READ, WRITE,
+                                                TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer =
+                out.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(_size)
+                .putInt(_counts.length).putInt(symbols.length);
+            buffer.position(HEADER_BYTES);
+            buffer.put(symbols);
+            buffer.position(HEADER_BYTES + pad(symbols.length));
+            buffer.putLong(_characters);
+            for (long[] counts : _counts) {
+                buffer.asLongBuffer().put(counts);
+                buffer.position(buffer.position()
+                                + counts.length * Long.BYTES);
+            }
+            buffer.force();
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the length of the longest n-grams I count. */
+    int order() {
+        return _counts.length;
+    }
+
+    /** Return the number of characters counted. */
+    long characters() {
+        return _characters;
+    }
+
+    /** Return the number of times the n-gram NGRAM, of at most order()
+     *  characters in my alphabet, occurs. */
+    long count(String ngram) {
+        int[] symbols = new int[ngram.length()];
+        int n = _alphabet.toIndices(ngram, symbols);
+        if (n < 1 || n > order()) {
+            throw error("no counts of %d-grams", n);
+        }
+        int cell = 0;
+        for (int k = 0; k < n; k += 1) {
+            cell = cell * _size + symbols[k];
+        }
+        return _counts[n - 1][cell];
+    }
+
+    /** Return the index of coincidence: the chance that two characters
+     *  drawn from different places in the corpus are equal. */
+    double indexOfCoincidence() {
+        if (_characters < 2) {
+            return 0;
+        }
+        double pairs = 0;
+        for (long f : _counts[0]) {
+            pairs += (double) f * (f - 1);
+        }
+        return pairs / ((double) _characters * (_characters - 1));
+    }
+
+    /** Return my report, listing the TOP most frequent bigrams and
+     *  trigrams. */
+    String report(int top) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("alphabet\t%s%n", _alphabet));
+        out.append(String.format("characters\t%d%n", _characters));
+        double ioc = indexOfCoincidence();
+        out.append(String.format("ioc\t%.6f%n", ioc));
+        out.append(String.format("ioc_normalized\t%.4f%n", ioc * _size));
+        for (int c = 0; c < _size; c += 1) {
+            out.append(String.format("frequency\t%s\t%d\t%.6f%n",
+                                     ngram(1, c), _counts[0][c],
+                                     share(_counts[0][c])));
+        }
+        for (int k = 1; k < _counts.length; k += 1) {
+            String name = k == 1 ? "bigram" : "trigram";
+            for (int cell : top(_counts[k], top)) {
+                out.append(String.format("%s\t%s\t%d%n", name,
+                                         ngram(k + 1, cell),
+                                         _counts[k][cell]));
+            }
+        }
+        return out.toString();
+    }
+
+    /** Count the lines of SPLIT, normalized by NORMALIZER. */
+    private void add(Split split, Normalizer normalizer) {
+        ByteBuffer buffer = split._buffer;
+        int limit = buffer.limit();
+        int pos = 0;
+        if (!split._first) {
+            while (pos < limit && buffer.get(pos) != '\n') {
+                pos += 1;
+            }
+            pos += 1;
+        }
+        byte[] line = new byte[INITIAL_LINE];
+        int[] symbols = new int[INITIAL_LINE];
+        while (pos < split._end) {
+            int end = pos;
+            while (end < limit && buffer.get(end) != '\n') {
+                end += 1;
+            }
+            if (end == limit && !split._last) {
+                throw error("line longer than %d bytes", MAX_LINE);
+            }
+            int length = end - pos;
+            if (length > 0 && buffer.get(end - 1) == '\r') {
+                length -= 1;
+            }
+            if (line.length < length) {
+                line = new byte[Math.max(length, 2 * line.length)];
+                symbols = new int[line.length];
+            }
+            buffer.get(pos, line, 0, length);
+            add(symbols, normalizer.normalize(line, length,
+                                              StandardCharsets.UTF_8,
+                                              symbols, 0));
+            pos = end + 1;
+        }
+    }
+
+    /** Count SYMBOLS[0..N-1], a line of indices. */
+    private void add(int[] symbols, int n) {
+        int size = _size;
+        long[] unigrams = _counts[0];
+        long[] bigrams = _counts.length > 1 ? _counts[1] : null;
+        long[] trigrams = _counts.length > 2 ? _counts[2] : null;
+        int last = 0, pair = 0;
+        for (int i = 0; i < n; i += 1) {
+            int c = symbols[i];
+            unigrams[c] += 1;
+            if (i >= 1 && bigrams != null) {
+                if (i >= 2 && trigrams != null) {
+                    trigrams[pair * size + c] += 1;
+                }
+                pair = last * size + c;
+                bigrams[pair] += 1;
+            }
+            last = c;
+        }
+        _characters += n;
+    }
+
+    /** Add the counts of OTHER to mine. */
+    private void merge(CorpusStats other) {
+        _characters += other._characters;
+        for (int k = 0; k < _counts.length; k += 1) {
+            long[] mine = _counts[k], theirs = other._counts[k];
+            for (int cell = 0; cell < mine.length; cell += 1) {
+                mine[cell] += theirs[cell];
+            }
+        }
+    }
+
+    /** Return the fraction of the characters that COUNT is. */
+    private double share(long count) {
+        return _characters == 0 ? 0 : (double) count / _characters;
+    }
+
+    /** Return the N-gram in cell CELL of its table. */
+    private String ngram(int n, int cell) {
+        int[] codePoints = new int[n];
+        for (int k = n - 1; k >= 0; k -= 1) {
+            codePoints[k] = _alphabet.toCodePoint(cell % _size);
+            cell /= _size;
+        }
+        return new String(codePoints, 0, n);
+    }
+
+    /** Return the cells of the N largest nonzero COUNTS, largest first
+     *  and, among equals, lowest cell first. */
+    private static int[] top(long[] counts, int n) {
+        return IntStream.range(0, counts.length)
+            .filter(cell -> counts[cell] > 0).boxed()
+            .sorted((a, b) -> counts[a] != counts[b]
+                    ? Long.compare(counts[b], counts[a])
+                    : Integer.compare(a, b))
+            .limit(n).mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Return the length of the longest n-grams counted in an alphabet
+     *  of SIZE characters. */
+    private static int order(int size) {
+        int order = 0;
+        long cells = 1;
+        while (order < MAX_ORDER && cells * size <= MAX_CELLS) {
+            cells *= size;
+            order += 1;
+        }
+        if (order == 0) {
+            throw error("alphabet of %d characters is too large", size);
+        }
+        return order;
+    }
+
+    /** Return the size of a table file with an alphabet of LENGTH bytes
+     *  and SIZE characters and n-grams up to ORDER. */
+    private static long tableBytes(int length, int size, int order) {
+        long longs = 1;
+        long cells = 1;
+        for (int k = 0; k < order; k += 1) {
+            cells *= size;
+            longs += cells;
+        }
+        return HEADER_BYTES + pad(length) + longs * Long.BYTES;
+    }
+
+    /** Return N rounded up to a multiple of 8. */
+    private static int pad(int n) {
+        return (n + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    /** The lines of a file starting in a range of it, mapped. */
+    private static final class Split {
+        /** The lines starting in BUFFER[0..END-1], where BUFFER maps
+         *  the range and up to MAX_LINE bytes after it, reaching the end
+         *  of the file iff LAST.  Unless the range starts the file
+         *  (FIRST), BUFFER also maps the byte before it, and a line
+         *  starts in the range only after a line end. */
+        Split(ByteBuffer buffer, boolean first, int end, boolean last) {
+            _buffer = buffer;
+            _first = first;
+            _end = end;
+            _last = last;
+        }
+
+        /** The mapped bytes. */
+        private final ByteBuffer _buffer;
+        /** True iff the range starts the file. */
+        private final boolean _first;
+        /** End of the range in _buffer. */
+        private final int _end;
+        /** True iff _buffer reaches the end of the file. */
+        private final boolean _last;
+    }
+
+    /** Longest n-grams ever counted. */
+    static final int MAX_ORDER = 3;
+
+    /** Most entries in the table of one length of n-grams. */
+    static final int MAX_CELLS = 1 << 20;
+
+    /** Usual size of a split in bytes. */
+    static final long SPLIT_SIZE = 1L << 26;
+
+    /** Longest line, in bytes. */
+    static final int MAX_LINE = 1 << 24;
+
+    /** Default number of bigrams and trigrams reported. */
+    static final int DEFAULT_TOP = 20;
+
+    /** Initial size of the line buffers. */
+    private static final int INITIAL_LINE = 1 << 12;
+
+    /** First int of a table file: "ENGR". */
+    private static final int MAGIC = 0x454e4752;
+
+    /** Table file format version. */
+    private static final int VERSION = 1;
+
+    /** Header field positions, in bytes. */
+    private static final int SIZE_FIELD = 8, ORDER_FIELD = 12,
+        ALPHABET_FIELD = 16;
+
+    /** Size of the header in bytes. */
+    private static final int HEADER_BYTES = 24;
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Count of each n-gram, by length less one and then by its
+     *  characters' indices, first most significant. */
+    private final long[][] _counts;
+
+    /** Number of characters counted. */
+    private long _characters;
+}
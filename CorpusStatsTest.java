@@ -0,0 +1,149 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CorpusStats class.
+ *  @author Vineet Vashist
+ */
+public class CorpusStatsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a file holding LINES, each ended by a newline or, if CRLF,
+     *  a carriage return and newline. */
+    private static Path file(List<String> lines, boolean crlf)
+        throws Exception {
+        Path file = Files.createTempFile("corpus", ".txt");
+        Files.write(file, String.join(crlf ? "\r\n" : "\n", lines)
+                    .concat(crlf ? "\r\n" : "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    /** Add to COUNTS the number of each n-gram of 1 to 3 characters in
+     *  the lines of LINES, normalized by NORMALIZER. */
+    private static void countNaively(List<String> lines,
+                                     Normalizer normalizer,
+                                     HashMap<String, Long> counts) {
+        for (String line : lines) {
+            int[] symbols = new int[line.length()];
+            String text = UPPER.toString(symbols, 0,
+                                         normalizer.normalize(line, symbols,
+                                                              0));
+            for (int n = 1; n <= 3; n += 1) {
+                for (int i = 0; i + n <= text.length(); i += 1) {
+                    counts.merge(text.substring(i, i + n), 1L, Long::sum);
+                }
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void matchesNaiveCounts() throws Exception {
+        Random rand = new Random(49);
+        String pool = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcxyz .,'\u00e9";
+        ArrayList<List<String>> corpus = new ArrayList<>();
+        ArrayList<Path> files = new ArrayList<>();
+        for (int f = 0; f < 3; f += 1) {
+            ArrayList<String> lines = new ArrayList<>();
+            for (int i = 0; i < 200; i += 1) {
+                StringBuilder line = new StringBuilder();
+                int len = rand.nextInt(i % 50 == 0 ? 2000 : 80);
+                for (int k = 0; k < len; k += 1) {
+                    line.append(pool.charAt(rand.nextInt(pool.length())));
+                }
+                lines.add(line.toString());
+            }
+            corpus.add(lines);
+            files.add(file(lines, f == 1));
+        }
+        Normalizer normalizer = Normalizer.parse("fold,drop", UPPER);
+        HashMap<String, Long> expected = new HashMap<>();
+        for (List<String> lines : corpus) {
+            countNaively(lines, normalizer, expected);
+        }
+        long characters = 0;
+        for (String ngram : expected.keySet()) {
+            if (ngram.length() == 1) {
+                characters += expected.get(ngram);
+            }
+        }
+
+        String report = null;
+        for (long split : new long[] {1, 7, 100, CorpusStats.SPLIT_SIZE}) {
+            CorpusStats stats =
+                CorpusStats.count(files, UPPER, normalizer, split);
+            assertEquals(3, stats.order());
+            assertEquals(characters, stats.characters());
+            for (String ngram : new String[] {"A", "Z", "AB", "QQ", "THE",
+                                              "ZAZ", "XYZ"}) {
+                assertEquals(ngram + " split " + split,
+                             (long) expected.getOrDefault(ngram, 0L),
+                             stats.count(ngram));
+            }
+            for (String ngram : expected.keySet()) {
+                assertEquals(ngram, (long) expected.get(ngram),
+                             stats.count(ngram));
+            }
+            if (report == null) {
+                report = stats.report(10);
+            }
+            assertEquals(report, stats.report(10));
+        }
+    }
+
+    @Test
+    public void tableRoundTrip() throws Exception {
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add("AABB");
+        lines.add("");
+        lines.add("ABAB ABAB");
+        CorpusStats stats =
+            CorpusStats.count(List.of(file(lines, false)), UPPER,
+                              Normalizer.parse("drop", UPPER),
+                              CorpusStats.SPLIT_SIZE);
+        assertEquals(12, stats.characters());
+        assertEquals(2.0 * (6 * 5) / (12 * 11), stats.indexOfCoincidence(),
+                     1e-12);
+        assertEquals(5, stats.count("AB"));
+        assertEquals(1, stats.count("BB"));
+        assertEquals(0, stats.count("BBA"));
+        assertEquals(3, stats.count("BAB"));
+        String report = stats.report(3);
+        assertTrue(report.contains("characters\t12\n"));
+        assertTrue(report.contains("bigram\tAB\t5\n"));
+
+        Path table = Files.createTempFile("ngrams", ".table");
+        table.toFile().deleteOnExit();
+        stats.write(table);
+        CorpusStats loaded = CorpusStats.load(table);
+        assertEquals(report, loaded.report(3));
+        assertEquals(3, loaded.count("BAB"));
+        try {
+            CorpusStats.load(file(lines, false));
+            fail("loaded a text file");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("not an n-gram table"));
+        }
+    }
+}
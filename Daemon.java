@@ -0,0 +1,257 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.EnigmaException.*;
+
+/** A persistent process that runs Main on behalf of DaemonClient, so that
+ *  each run starts in a warm JVM, with the configurations it has already
+ *  parsed kept in a ConfigCache.
+ *
+ *  <p>A client connects to the daemon's Unix domain socket and sends its
+ *  working directory and arguments (as DataOutput UTF strings, after an
+ *  int count), then its standard input until it shuts down its side of
+ *  the connection.  The daemon sends back frames, each a type byte and
+ *  an int count: STDOUT or STDERR followed by that many bytes of output,
+ *  and finally EXIT, where the count is the exit code.
+ *  @author Vineet Vashist
+ */
+public final class Daemon {
+
+    /** Serve on the Unix domain socket given by ARGS: "--socket PATH",
+     *  optionally followed by "--idle SECONDS", the time without clients
+     *  after which to exit (default 600; 0 for never). */
+    public static void main(String... args) {
+        try {
+            if ((args.length != 2 && args.length != 4)
+                || !args[0].equals("--socket")
+                || (args.length == 4 && !args[2].equals("--idle"))) {
+                throw error("Usage: java enigma.Daemon --socket PATH "
+                            + "[--idle SECONDS]");
+            }
+            long idle = args.length == 4
+                ? Long.parseLong(args[3]) : DEFAULT_IDLE_SECONDS;
+            Path socket = Paths.get(args[1]);
+            Daemon daemon = new Daemon(CipherServer.openUnix(socket),
+                                       idle * MILLIS_PER_SECOND);
+            try {
+                daemon.serve();
+            } finally {
+                Files.deleteIfExists(socket);
+            }
+        } catch (EnigmaException | IOException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A daemon accepting clients on CHANNEL, which stops after
+     *  IDLEMILLIS milliseconds without any (never, if 0). */
+    Daemon(ServerSocketChannel channel, long idleMillis) {
+        _channel = channel;
+        _idleMillis = idleMillis;
+        _lastActive = System.currentTimeMillis();
+    }
+
+    /** Serve clients until idle for too long or closed. */
+    void serve() {
+        if (_idleMillis > 0) {
+            Thread watchdog = new Thread(this::watch, "enigma-idle");
+            watchdog.setDaemon(true);
+            watchdog.start();
+        }
+        while (_channel.isOpen()) {
+            SocketChannel conn;
+            try {
+                conn = _channel.accept();
+            } catch (IOException excp) {
+                break;
+            }
+            _active.incrementAndGet();
+            _workers.execute(() -> {
+                try {
+                    session(conn);
+                } finally {
+                    _lastActive = System.currentTimeMillis();
+                    _active.decrementAndGet();
+                }
+            });
+        }
+        _workers.shutdown();
+    }
+
+    /** Stop accepting clients. */
+    void close() {
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            /* Ignore */
+        }
+    }
+
+    /** Return the configurations parsed so far. */
+    ConfigCache cache() {
+        return _cache;
+    }
+
+    /** Close the channel once no client has been served for the idle
+     *  time. */
+    private void watch() {
+        while (_channel.isOpen()) {
+            long idle = System.currentTimeMillis() - _lastActive;
+            if (_active.get() == 0 && idle >= _idleMillis) {
+                close();
+                return;
+            }
+            try {
+                Thread.sleep(Math.min(_idleMillis, MILLIS_PER_SECOND));
+            } catch (InterruptedException excp) {
+                return;
+            }
+        }
+    }
+
+    /** Run Main for the client on CONN. */
+    private void session(SocketChannel conn) {
+        try (conn) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                DaemonClient.input(conn), BUFFER_SIZE));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(DaemonClient.output(conn),
+                                         BUFFER_SIZE));
+            Path dir = Paths.get(in.readUTF());
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i += 1) {
+                args[i] = in.readUTF();
+            }
+            PrintStream stdout = new PrintStream(new BufferedOutputStream(
+                new FrameStream(out, STDOUT), BUFFER_SIZE));
+            PrintStream stderr =
+                new PrintStream(new FrameStream(out, STDERR), true);
+            int code = run(args, dir, in, stdout, stderr);
+            stdout.flush();
+            stderr.flush();
+            synchronized (out) {
+                out.writeByte(EXIT);
+                out.writeInt(code);
+                out.flush();
+            }
+        } catch (IOException excp) {
+            /* The client has gone; nothing to report it to. */
+        }
+    }
+
+    /** Run Main with ARGS as from the directory DIR, with standard input
+     *  IN and standard output and error STDOUT and STDERR, returning the
+     *  exit code the one-shot command would have. */
+    private int run(String[] args, Path dir, DataInputStream in,
+                    PrintStream stdout, PrintStream stderr) {
+        Main main = null;
+        try {
+            main = new Main(args, dir, in, stdout, stderr);
+            main.setConfigCache(_cache);
+            main.process();
+            return 0;
+        } catch (EnigmaException excp) {
+            stderr.printf("Error: %s%n", excp.getMessage());
+            return 1;
+        } catch (RuntimeException excp) {
+            excp.printStackTrace(stderr);
+            return 1;
+        } finally {
+            if (main != null) {
+                main.close();
+            }
+        }
+    }
+
+    /** An output stream that writes what it is given as frames of one
+     *  type. */
+    private static class FrameStream extends OutputStream {
+
+        /** A stream writing frames of type TYPE to OUT. */
+        FrameStream(DataOutputStream out, int type) {
+            _out = out;
+            _type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (_out) {
+                _out.writeByte(_type);
+                _out.writeInt(len);
+                _out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (_out) {
+                _out.flush();
+            }
+        }
+
+        /** Where frames go. */
+        private final DataOutputStream _out;
+        /** Type of my frames. */
+        private final int _type;
+    }
+
+    /** Frame type for standard output. */
+    static final int STDOUT = 'O';
+
+    /** Frame type for standard error. */
+    static final int STDERR = 'E';
+
+    /** Frame type for the exit code. */
+    static final int EXIT = 'X';
+
+    /** Default idle time before exiting, in seconds. */
+    static final long DEFAULT_IDLE_SECONDS = 600;
+
+    /** Milliseconds per second. */
+    private static final long MILLIS_PER_SECOND = 1000;
+
+    /** Size of the stream buffers of a session. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Channel accepting clients. */
+    private final ServerSocketChannel _channel;
+
+    /** Idle time before closing, in milliseconds; 0 for never. */
+    private final long _idleMillis;
+
+    /** Time the last client finished, in milliseconds. */
+    private volatile long _lastActive;
+
+    /** Number of clients being served. */
+    private final AtomicInteger _active = new AtomicInteger();
+
+    /** Runs one session per client. */
+    private final ExecutorService _workers = Executors.newCachedThreadPool();
+
+    /** Configurations parsed so far. */
+    private final ConfigCache _cache = new ConfigCache();
+}
@@ -0,0 +1,199 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/** The thin command-line client of a Daemon: runs Main there, as if in
+ *  this process, forwarding the arguments, working directory and
+ *  standard streams.  Loads as few classes as it can.
+ *  @author Vineet Vashist
+ */
+public final class DaemonClient {
+
+    /** Run Main with ARGS[1..] in the daemon listening on the Unix domain
+     *  socket ARGS[0], or in this process if no daemon is listening
+     *  there, and exit as Main would. */
+    public static void main(String... args) {
+        if (args.length < 1) {
+            System.err.println("Usage: java enigma.DaemonClient SOCKET "
+                               + "ARGS...");
+            System.exit(1);
+        }
+        String[] rest = Arrays.copyOfRange(args, 1, args.length);
+        SocketChannel conn;
+        try {
+            if (rest.length > 0 && rest[0].equals("--bytes")) {
+                throw new IOException("byte mode runs locally");
+            }
+            conn = SocketChannel.open(UnixDomainSocketAddress.of(args[0]));
+        } catch (IOException excp) {
+            Main.main(rest);
+            return;
+        }
+        int code;
+        try (conn) {
+            code = run(conn, rest, System.in, System.out, System.err);
+        } catch (IOException excp) {
+            System.err.printf("Error: lost connection to daemon: %s%n",
+                              excp.getMessage());
+            code = 1;
+        }
+        System.out.flush();
+        System.exit(code);
+    }
+
+    /** Run Main with ARGS in the daemon connected by CONN, sending it IN
+     *  as standard input and copying its output and error to OUT and
+     *  ERR.  Return its exit code. */
+    static int run(SocketChannel conn, String[] args, InputStream in,
+                   OutputStream out, OutputStream err) throws IOException {
+        DataOutputStream request = new DataOutputStream(
+            new BufferedOutputStream(output(conn), BUFFER_SIZE));
+        request.writeUTF(Paths.get("").toAbsolutePath().toString());
+        request.writeInt(args.length);
+        for (String arg : args) {
+            request.writeUTF(arg);
+        }
+        request.flush();
+        if (readsStandardInput(args)) {
+            Thread pump = new Thread(() -> {
+                byte[] buf = new byte[BUFFER_SIZE];
+                try {
+                    for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                        request.write(buf, 0, n);
+                        request.flush();
+                    }
+                    conn.shutdownOutput();
+                } catch (IOException excp) {
+                    /* The daemon has finished without reading it all. */
+                }
+            }, "enigma-stdin");
+            pump.setDaemon(true);
+            pump.start();
+        } else {
+            conn.shutdownOutput();
+        }
+
+        DataInputStream response = new DataInputStream(
+            new BufferedInputStream(input(conn), BUFFER_SIZE));
+        byte[] buf = new byte[BUFFER_SIZE];
+        while (true) {
+            int type, n;
+            try {
+                type = response.readUnsignedByte();
+                n = response.readInt();
+            } catch (EOFException excp) {
+                throw new IOException("no exit code");
+            }
+            if (type == Daemon.EXIT) {
+                return n;
+            }
+            OutputStream dest = type == Daemon.STDERR ? err : out;
+            while (n > 0) {
+                int k = response.read(buf, 0, Math.min(n, buf.length));
+                if (k < 0) {
+                    throw new IOException("truncated output");
+                }
+                dest.write(buf, 0, k);
+                n -= k;
+            }
+            if (type == Daemon.STDERR || response.available() == 0) {
+                out.flush();
+                err.flush();
+            }
+        }
+    }
+
+    /** Return true iff Main, given ARGS, reads the standard input: that
+     *  is, if no input file follows the options and configuration file.
+     *  A thread left blocked reading a standard input that never ends
+     *  would otherwise delay the exit. */
+    static boolean readsStandardInput(String[] args) {
+        int i = 0;
+        while (i < args.length && args[i].startsWith("--")) {
+            i += args[i].equals("--resume")
+                || args[i].startsWith("--pipeline") ? 1 : 2;
+        }
+        return args.length - i < 2;
+    }
+
+    /** Return a stream reading from CONN.  Unlike the stream of
+     *  Channels.newInputStream, which holds the channel's blocking lock
+     *  while it waits, it lets another thread write to CONN meanwhile. */
+    static InputStream input(SocketChannel conn) {
+        return new ChannelInput(conn);
+    }
+
+    /** Return a stream writing to CONN, which, unlike the stream of
+     *  Channels.newOutputStream, may write while another thread is
+     *  waiting to read from CONN. */
+    static OutputStream output(SocketChannel conn) {
+        return new ChannelOutput(conn);
+    }
+
+    /** A stream reading straight from a blocking channel. */
+    private static final class ChannelInput extends InputStream {
+        /** A stream reading from CONN. */
+        ChannelInput(SocketChannel conn) {
+            _conn = conn;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & BYTE_MASK;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            return _conn.read(ByteBuffer.wrap(b, off, len));
+        }
+
+        /** The channel read. */
+        private final SocketChannel _conn;
+    }
+
+    /** A stream writing straight to a blocking channel. */
+    private static final class ChannelOutput extends OutputStream {
+        /** A stream writing to CONN. */
+        ChannelOutput(SocketChannel conn) {
+            _conn = conn;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+            while (buf.hasRemaining()) {
+                _conn.write(buf);
+            }
+        }
+
+        /** The channel written. */
+        private final SocketChannel _conn;
+    }
+
+    /** Mask selecting the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Size of the stream buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+}
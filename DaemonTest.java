@@ -0,0 +1,110 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Daemon and DaemonClient
+ *  classes.
+ *  @author Vineet Vashist
+ */
+public class DaemonTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return an input of N keys and messages from RAND. */
+    private static byte[] randomInput(Random rand, int n) {
+        StringBuilder input = new StringBuilder();
+        for (int k = 0; k < n; k += 1) {
+            input.append(settingsLine(randomKey(rand))).append('\n');
+            for (int m = 0; m < 10; m += 1) {
+                input.append(randomMessage(rand, rand.nextInt(200)))
+                    .append('\n');
+            }
+        }
+        return input.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return what one-shot Main writes to its standard output given
+     *  ARGS and standard input INPUT. */
+    private static byte[] oneShot(String[] args, byte[] input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Main main = new Main(args, Path.of(""),
+                             new ByteArrayInputStream(input),
+                             new PrintStream(out),
+                             new PrintStream(OutputStream.nullOutputStream()));
+        main.process();
+        main.close();
+        return out.toByteArray();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void clientStreamsStandardInput() throws Exception {
+        Path dir = Files.createTempDirectory("daemon");
+        Path config = dir.resolve("naval.conf");
+        Files.write(config,
+                    navalConfig().getBytes(StandardCharsets.UTF_8));
+        Path socket = dir.resolve("socket");
+        Daemon daemon = new Daemon(CipherServer.openUnix(socket), 0);
+        Thread server = new Thread(daemon::serve);
+        server.start();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            byte[] input = randomInput(new Random(34), 200);
+            String[][] runs = {
+                {config.toString()}, {"--pipeline", config.toString()},
+                {"--pipeline-stats", config.toString()},
+            };
+            for (String[] args : runs) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ByteArrayOutputStream err = new ByteArrayOutputStream();
+                Future<Integer> code = pool.submit(() -> {
+                    try (SocketChannel conn = SocketChannel.open(
+                             UnixDomainSocketAddress.of(socket))) {
+                        return DaemonClient.run(
+                            conn, args, new ByteArrayInputStream(input),
+                            out, err);
+                    }
+                });
+                assertEquals(0, (int) code.get(10, TimeUnit.SECONDS));
+                if (args[0].equals("--pipeline-stats")) {
+                    assertTrue(err.toString(),
+                               err.toString().startsWith("stage "));
+                    assertTrue(err.toString(),
+                               err.toString().contains("read>cnv"));
+                } else {
+                    assertEquals("", err.toString());
+                }
+                assertArrayEquals(oneShot(args, input), out.toByteArray());
+            }
+        } finally {
+            pool.shutdownNow();
+            daemon.close();
+            server.join();
+        }
+    }
+}
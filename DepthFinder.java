@@ -0,0 +1,367 @@
+package enigma;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** A finder of messages in depth: pairs enciphered with the same
+ *  stretch of keystream, because they were sent from the same key
+ *  position, or from positions a few characters apart.  Aligned at the
+ *  right offset, two such ciphertexts agree wherever their plaintexts
+ *  do, which happens about as often as in the language (the index of
+ *  coincidence), whereas unrelated ciphertexts agree about once per
+ *  alphabet size.  Every pair is scored at every offset in a range by
+ *  its coincidences over the overlap, against what chance would give.
+ *
+ *  <p>The messages are kept packed as bytes, one after another in one
+ *  array, so memory is linear in the corpus.  Coincidences are counted
+ *  eight characters at a time: two runs of eight are read as longs and
+ *  XORed, and the zero bytes of the result counted with a few masks and
+ *  a bit count.  The pairs are split by rows among the tasks of a
+ *  ForkJoinPool, and the pairs that score high enough are passed on as
+ *  they are found, never collected.  Alphabets may have at most 256
+ *  characters.
+ *  @author Vineet Vashist
+ */
+public final class DepthFinder {
+
+    /** Print the pairs in depth among the messages in the file ARGS[1],
+     *  one per line, whose characters (apart from blanks) are in the
+     *  alphabet of the configuration in the file ARGS[0].  ARGS[2] is
+     *  the least score to print, in standard deviations above chance
+     *  (default DEFAULT_SCORE), and ARGS[3] the largest offset to try
+     *  (default 0, only messages from the same position). */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2 || args.length > 4) {
+                throw error("Usage: java enigma.DepthFinder CONFIG "
+                            + "MESSAGES [SCORE [OFFSET]]");
+            }
+            Alphabet alphabet = CipherServer.readMachine(args[0]).alphabet();
+            double score;
+            int offset;
+            try {
+                score = args.length > 2 ? Double.parseDouble(args[2])
+                    : DEFAULT_SCORE;
+                offset = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+            } catch (NumberFormatException excp) {
+                throw error("bad score or offset");
+            }
+            DepthFinder finder = new DepthFinder(alphabet, offset, score);
+            try (FileInputStream in = new FileInputStream(args[1])) {
+                LineReader messages = new LineReader(in);
+                while (messages.hasNextLine()) {
+                    finder.add(messages.nextLine());
+                }
+            } catch (IOException excp) {
+                throw error("could not read %s", args[1]);
+            }
+            System.out.printf("%8s %8s %6s %8s %8s %7s%n", "first",
+                              "second", "offset", "overlap", "agree",
+                              "score");
+            finder.find(ForkJoinPool.commonPool(), r -> {
+                synchronized (System.out) {
+                    System.out.printf("%8d %8d %6d %8d %8d %7.2f%n",
+                                      r.first(), r.second(), r.offset(),
+                                      r.overlap(), r.coincidences(),
+                                      r.score());
+                }
+            });
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A finder for messages in ALPHABET, trying offsets from -OFFSET to
+     *  OFFSET and reporting the pairs that score at least SCORE. */
+    DepthFinder(Alphabet alphabet, int offset, double score) {
+        if (alphabet.size() > Alphabet.BYTE_VALUES) {
+            throw error("alphabet of %d characters is too large",
+                        alphabet.size());
+        }
+        if (offset < 0) {
+            throw error("negative offset");
+        }
+        _normalizer = Normalizer.parse("", alphabet);
+        _chance = 1.0 / alphabet.size();
+        _offset = offset;
+        _score = score;
+    }
+
+    /** A pair of messages, aligned at an offset, and its coincidences. */
+    static final class Result {
+        /** The result for messages FIRST < SECOND, where SECOND starts
+         *  OFFSET characters of keystream after FIRST, which agree in
+         *  COINCIDENCES of the OVERLAP characters they then share, for
+         *  a SCORE. */
+        Result(int first, int second, int offset, int overlap,
+               int coincidences, double score) {
+            _first = first;
+            _second = second;
+            _offset = offset;
+            _overlap = overlap;
+            _coincidences = coincidences;
+            _score = score;
+        }
+
+        /** Return the number of the first message. */
+        int first() {
+            return _first;
+        }
+
+        /** Return the number of the second message. */
+        int second() {
+            return _second;
+        }
+
+        /** Return how many characters of keystream the second message
+         *  starts after the first (negative if before). */
+        int offset() {
+            return _offset;
+        }
+
+        /** Return the number of characters aligned. */
+        int overlap() {
+            return _overlap;
+        }
+
+        /** Return the number of aligned characters that agree. */
+        int coincidences() {
+            return _coincidences;
+        }
+
+        /** Return the number of standard deviations by which
+         *  coincidences() exceeds what chance would give. */
+        double score() {
+            return _score;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d %d %d %d %d %.2f", _first, _second,
+                                 _offset, _overlap, _coincidences, _score);
+        }
+
+        /** First message. */
+        private final int _first;
+        /** Second message. */
+        private final int _second;
+        /** Offset of the second. */
+        private final int _offset;
+        /** Characters aligned. */
+        private final int _overlap;
+        /** Characters agreeing. */
+        private final int _coincidences;
+        /** Score. */
+        private final double _score;
+    }
+
+    /** Add the message TEXT, dropping blanks, returning its number, or
+     *  -1 if it is empty. */
+    int add(CharSequence text) {
+        if (_symbols.length < text.length()) {
+            _symbols = new int[text.length()];
+        }
+        int length = _normalizer.normalize(text, _symbols, 0);
+        if (length == 0) {
+            return -1;
+        }
+        if (_count + 1 == _start.length) {
+            _start = Arrays.copyOf(_start, 2 * _start.length);
+        }
+        int start = _start[_count];
+        if ((long) start + length > MAX_TEXT) {
+            throw error("messages too long to analyze");
+        }
+        if (start + length > _text.length) {
+            long capacity = Math.max(start + length, 2L * _text.length);
+            _text = Arrays.copyOf(_text, (int) Math.min(capacity, MAX_TEXT));
+        }
+        for (int i = 0; i < length; i += 1) {
+            _text[start + i] = (byte) _symbols[i];
+        }
+        _count += 1;
+        _start[_count] = start + length;
+        return _count - 1;
+    }
+
+    /** Return the number of messages added. */
+    int size() {
+        return _count;
+    }
+
+    /** Pass every pair of messages and offset that scores at least my
+     *  least score to OUT, from tasks run in POOL, returning when all
+     *  have been.  OUT may be called from several threads at once. */
+    void find(ForkJoinPool pool, Consumer<Result> out) {
+        int longest = 0;
+        for (int i = 0; i < _count; i += 1) {
+            longest = Math.max(longest, _start[i + 1] - _start[i]);
+        }
+        int[] least = new int[longest + 1];
+        for (int n = 1; n <= longest; n += 1) {
+            double sd = Math.sqrt(n * _chance * (1 - _chance));
+            int agree = (int) Math.max(0, Math.min(n + 1, Math.ceil(
+                n * _chance + _score * sd)));
+            while (agree > 0 && score(n, agree - 1) >= _score) {
+                agree -= 1;
+            }
+            while (agree <= n && score(n, agree) < _score) {
+                agree += 1;
+            }
+            least[n] = agree;
+        }
+        pool.invoke(new Rows(0, _count, least, out));
+    }
+
+    /** Return the pair of messages FIRST and SECOND aligned with SECOND
+     *  starting OFFSET characters of keystream after FIRST, or null if
+     *  they do not overlap. */
+    Result compare(int first, int second, int offset) {
+        int a = _start[first] + Math.max(0, offset);
+        int b = _start[second] + Math.max(0, -offset);
+        int overlap = Math.min(_start[first + 1] - a,
+                               _start[second + 1] - b);
+        if (overlap <= 0) {
+            return null;
+        }
+        int agree = coincidences(_text, a, b, overlap);
+        return new Result(first, second, offset, overlap, agree,
+                          score(overlap, agree));
+    }
+
+    /** Return the score of AGREE coincidences in OVERLAP characters. */
+    private double score(int overlap, int agree) {
+        double expected = overlap * _chance;
+        return (agree - expected) / Math.sqrt(expected * (1 - _chance));
+    }
+
+    /** Return the number of K in 0..LENGTH-1 for which TEXT[A + K] and
+     *  TEXT[B + K] are equal. */
+    static int coincidences(byte[] text, int a, int b, int length) {
+        int count = 0;
+        int k = 0;
+        for (; k + Long.BYTES <= length; k += Long.BYTES) {
+            long x = (long) LONGS.get(text, a + k)
+                ^ (long) LONGS.get(text, b + k);
+            long nonzero = ((x & LOW_BITS) + LOW_BITS) | x;
+            count += Long.bitCount(~nonzero & HIGH_BITS);
+        }
+        for (; k < length; k += 1) {
+            if (text[a + k] == text[b + k]) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** The comparisons of the messages in some rows with those after
+     *  them. */
+    private final class Rows extends RecursiveAction {
+        /** The task for rows LO..HI-1, passing results to OUT, where
+         *  LEAST[N] is the fewest coincidences in N characters that
+         *  score high enough. */
+        Rows(int lo, int hi, int[] least, Consumer<Result> out) {
+            _lo = lo;
+            _hi = hi;
+            _least = least;
+            _out = out;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > ROWS_PER_TASK) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Rows(_lo, mid, _least, _out),
+                          new Rows(mid, _hi, _least, _out));
+                return;
+            }
+            for (int i = _lo; i < _hi; i += 1) {
+                for (int j = i + 1; j < _count; j += 1) {
+                    for (int d = -_offset; d <= _offset; d += 1) {
+                        int a = _start[i] + Math.max(0, d);
+                        int b = _start[j] + Math.max(0, -d);
+                        int overlap = Math.min(_start[i + 1] - a,
+                                               _start[j + 1] - b);
+                        if (overlap > 0 && coincidences(_text, a, b, overlap)
+                            >= _least[overlap]) {
+                            _out.accept(compare(i, j, d));
+                        }
+                    }
+                }
+            }
+        }
+
+        /** First row. */
+        private final int _lo;
+        /** Row after the last. */
+        private final int _hi;
+        /** Fewest coincidences reported, by overlap. */
+        private final int[] _least;
+        /** Where results go. */
+        private final Consumer<Result> _out;
+
+        /** For serialization. */
+        private static final long serialVersionUID = 1L;
+    }
+
+    /** Default least score reported, in standard deviations. */
+    static final double DEFAULT_SCORE = 5;
+
+    /** Rows compared by one task. */
+    private static final int ROWS_PER_TASK = 8;
+
+    /** The low seven bits of each byte of a long. */
+    private static final long LOW_BITS = 0x7f7f7f7f7f7f7f7fL;
+
+    /** The high bit of each byte of a long. */
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /** Reads longs from byte arrays at any offset. */
+    private static final VarHandle LONGS = MethodHandles
+        .byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /** Turns message text into indices. */
+    private final Normalizer _normalizer;
+
+    /** Chance that two unrelated characters agree. */
+    private final double _chance;
+
+    /** Largest offset tried. */
+    private final int _offset;
+
+    /** Least score reported. */
+    private final double _score;
+
+    /** The messages, one after another, as indices. */
+    private byte[] _text = new byte[INITIAL_TEXT];
+
+    /** Where each message starts in _text, and where the last ends. */
+    private int[] _start = new int[INITIAL_MESSAGES];
+
+    /** Number of messages. */
+    private int _count;
+
+    /** Indices of the message being added. */
+    private int[] _symbols = new int[0];
+
+    /** Largest capacity of _text, leaving room to read a long past any
+     *  position in it. */
+    private static final int MAX_TEXT = Integer.MAX_VALUE - Long.BYTES;
+
+    /** Initial capacity of _text. */
+    private static final int INITIAL_TEXT = 1 << 16;
+
+    /** Initial capacity of _start. */
+    private static final int INITIAL_MESSAGES = 1 << 10;
+}
@@ -0,0 +1,117 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the DepthFinder class.
+ *  @author Vineet Vashist
+ */
+public class DepthFinderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Words of the plaintexts. */
+    private static final String[] WORDS = {
+        "THE", "OF", "AND", "TO", "IN", "IS", "THAT", "FOR", "IT", "AS",
+        "WITH", "WAS", "ON", "BE", "AT", "BY", "THIS", "HAD", "NOT", "ARE",
+        "BUT", "FROM", "OR", "HAVE", "AN", "THEY", "WHICH", "ONE", "WERE",
+        "ALL", "WE", "WHEN", "THERE", "CAN", "BEEN", "HAS", "MORE", "IF",
+        "NO", "OUT", "SO", "SAID", "WHAT", "UP", "ITS", "ABOUT", "INTO",
+        "THAN", "THEM", "ONLY", "OTHER", "NEW", "SOME", "COULD", "TIME",
+        "CONVOY", "WEATHER", "NORTH", "REPORT", "POSITION", "SQUARE",
+    };
+
+    /** Return a plaintext of LEN characters from RAND. */
+    private static String plaintext(Random rand, int len) {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < len) {
+            text.append(WORDS[rand.nextInt(WORDS.length)]);
+        }
+        return text.substring(0, len);
+    }
+
+    /** Return the number of K in 0..LENGTH-1 for which TEXT[A + K] and
+     *  TEXT[B + K] are equal, counted one by one. */
+    private static int naive(byte[] text, int a, int b, int length) {
+        int count = 0;
+        for (int k = 0; k < length; k += 1) {
+            count += text[a + k] == text[b + k] ? 1 : 0;
+        }
+        return count;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void countsCoincidences() {
+        Random rand = new Random(48);
+        byte[] text = new byte[300];
+        for (int trial = 0; trial < 2000; trial += 1) {
+            int values = 1 + rand.nextInt(Alphabet.BYTE_VALUES);
+            for (int i = 0; i < text.length; i += 1) {
+                text[i] = (byte) rand.nextInt(values);
+            }
+            int length = rand.nextInt(100);
+            int a = rand.nextInt(text.length - length);
+            int b = rand.nextInt(text.length - length);
+            assertEquals(naive(text, a, b, length),
+                         DepthFinder.coincidences(text, a, b, length));
+        }
+    }
+
+    @Test
+    public void findsDepths() {
+        Random rand = new Random(49);
+        String[] rotors = {"B", "Beta", "I", "II", "III"};
+        DepthFinder finder = new DepthFinder(UPPER, 6, 4.5);
+        Machine m = navalMachine(rotors, "AAAA", "(AQ) (BZ)");
+        finder.add(m.convert(plaintext(rand, 3000)));
+        m = navalMachine(rotors, "AAAA", "(AQ) (BZ)");
+        finder.add(m.convert(plaintext(rand, 2500)));
+        m = navalMachine(rotors, "AAAA", "(AQ) (BZ)");
+        m.convert("XXXXX");
+        finder.add(m.convert(plaintext(rand, 3000)));
+        for (int i = 0; i < 20; i += 1) {
+            String msg = machineFor(randomKey(rand))
+                .convert(plaintext(rand, 1000 + rand.nextInt(2000)));
+            StringBuilder grouped = new StringBuilder();
+            for (int k = 0; k < msg.length(); k += 5) {
+                grouped.append(msg, k, Math.min(msg.length(), k + 5))
+                    .append(' ');
+            }
+            finder.add(grouped);
+        }
+        assertEquals(-1, finder.add(" \t"));
+        assertEquals(23, finder.size());
+
+        TreeSet<String> found = new TreeSet<>();
+        finder.find(new ForkJoinPool(3), r -> {
+            synchronized (found) {
+                found.add(r.first() + " " + r.second() + " " + r.offset());
+            }
+        });
+        TreeSet<String> expected = new TreeSet<>();
+        expected.add("0 1 0");
+        expected.add("0 2 5");
+        expected.add("1 2 5");
+        assertEquals(expected, found);
+
+        DepthFinder.Result r = finder.compare(2, 0, -5);
+        assertEquals(2995, r.overlap());
+        assertTrue(r.score() > 4.5);
+        assertEquals(r.coincidences(), finder.compare(0, 2, 5).coincidences());
+        assertTrue(finder.compare(0, 3, 0).score() < 4.5);
+    }
+}
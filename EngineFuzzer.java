@@ -0,0 +1,731 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static enigma.EnigmaException.*;
+
+/** A differential fuzzer of the engines of the simulator.  It makes
+ *  random machines, each with its own random alphabet, rotor wirings,
+ *  notches, number of slots and pawls, rings, positions and plugboard,
+ *  and a random message, and converts the message with every engine
+ *  variant: the compiled stack, batch and string conversion, the carry
+ *  engine, the bare rotor tables, off-heap tables, the lanes of a batch
+ *  machine, and a machine saved and restored between chunks.  Each is
+ *  compared with the interpreted Machine.convert, the reference.  A case
+ *  on which a variant disagrees is shrunk: the message is cut after the
+ *  first difference, and slots, pawls, notches, plugboard pairs, rings,
+ *  positions and wirings are removed or reset for as long as the
+ *  variant still disagrees, so what is reported is a small machine that
+ *  shows the bug.  Each variant is also timed on each case, after
+ *  warming up, so that one run shows both wrong answers and slow
+ *  engines.
+ *  @author Vineet Vashist
+ */
+public final class EngineFuzzer {
+
+    /** Fuzz the engines as specified by ARGS: --seed N picks the random
+     *  cases (default 1), --cases N is their number (default
+     *  DEFAULT_CASES), and --chars N the length of each message (default
+     *  DEFAULT_CHARS).  Prints a line per case and variant, and the
+     *  shrunk failing cases; exits with status 1 if there are any. */
+    public static void main(String... args) {
+        try {
+            long seed = 1;
+            int cases = DEFAULT_CASES;
+            int chars = DEFAULT_CHARS;
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 == args.length) {
+                    throw error("Usage: java enigma.EngineFuzzer [--seed N] "
+                                + "[--cases N] [--chars N]");
+                }
+                try {
+                    switch (args[i]) {
+                    case "--seed":
+                        seed = Long.parseLong(args[i + 1]);
+                        break;
+                    case "--cases":
+                        cases = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--chars":
+                        chars = Integer.parseInt(args[i + 1]);
+                        break;
+                    default:
+                        throw error("unknown option: %s", args[i]);
+                    }
+                } catch (NumberFormatException excp) {
+                    throw error("bad number: %s", args[i + 1]);
+                }
+            }
+            if (cases < 0 || chars < 1) {
+                throw error("need a nonnegative number of cases and a "
+                            + "positive number of characters");
+            }
+            EngineFuzzer fuzzer = new EngineFuzzer(seed, chars, System.out);
+            if (fuzzer.run(cases) == 0) {
+                return;
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A fuzzer of random cases from SEED with messages of CHARS
+     *  characters, printing its results on OUT. */
+    EngineFuzzer(long seed, int chars, PrintStream out) {
+        _rand = new Random(seed);
+        _chars = chars;
+        _out = out;
+        _variants = variants();
+    }
+
+    /** Replace my variants by VARIANTS, engines by name. */
+    void setVariants(Map<String, Function<Case, Consumer<int[]>>> variants) {
+        _variants = variants;
+    }
+
+    /** Try every variant on CASES random cases, printing a line for
+     *  each case and variant, with its time per character and whether
+     *  it agreed with the reference, and each failing case, shrunk.
+     *  Return the number of failures. */
+    int run(int cases) {
+        int failures = 0;
+        _out.printf("case\tsize\tslots\tpawls\tvariant\tns/char\tresult%n");
+        for (int n = 0; n < cases; n += 1) {
+            Case c = random(_rand, _chars);
+            int[] expected = reference(c);
+            String prefix = String.format("%d\t%d\t%d\t%d", n, c.size(),
+                                          c.slots(), c.pawls());
+            _out.printf("%s\treference\t%.2f\tok%n", prefix,
+                        nanosPerChar(referenceVariant(c), c._message));
+            for (Map.Entry<String, Function<Case, Consumer<int[]>>> v
+                     : _variants.entrySet()) {
+                if (mismatch(c, expected, v.getValue()) < 0) {
+                    _out.printf("%s\t%s\t%.2f\tok%n", prefix, v.getKey(),
+                                nanosPerChar(v.getValue().apply(c),
+                                             c._message));
+                } else {
+                    failures += 1;
+                    _out.printf("%s\t%s\t-\tFAIL%n", prefix, v.getKey());
+                    report(n, v.getKey(), shrink(c, v.getValue()),
+                           v.getValue());
+                }
+            }
+        }
+        return failures;
+    }
+
+    /** Print the shrunk failing case C, number N, of VARIANT, called
+     *  NAME, as a configuration file and settings line for Main, each
+     *  line after a '#'. */
+    private void report(int n, String name, Case c,
+                        Function<Case, Consumer<int[]>> variant) {
+        int[] expected = reference(c);
+        int[] actual = c._message.clone();
+        String result;
+        try {
+            variant.apply(c).accept(actual);
+            result = c.alphabet().toString(actual, 0, actual.length);
+        } catch (RuntimeException excp) {
+            result = excp.toString();
+        }
+        Alphabet alphabet = c.alphabet();
+        _out.printf("# case %d fails %s%n", n, name);
+        for (String line : c.config().split("\n")) {
+            _out.printf("#   %s%n", line);
+        }
+        _out.printf("#   %s%n", c.settings());
+        _out.printf("# message  %s%n",
+                    alphabet.toString(c._message, 0, c._message.length));
+        _out.printf("# expected %s%n",
+                    alphabet.toString(expected, 0, expected.length));
+        _out.printf("# actual   %s%n", result);
+    }
+
+    /** A random machine and message: the wirings and notches of its
+     *  rotors, its rings, positions and plugboard, all as indices in its
+     *  alphabet, and the message to convert.  Slot 0 holds the
+     *  reflector, then come the fixed rotors and the pawls() moving
+     *  rotors. */
+    static final class Case {
+        /** The case of a machine over the alphabet of the code points
+         *  SYMBOLS with PAWLS pawls, whose slots hold rotors with the
+         *  mappings WIRING and the notch flags NOTCHES, whose rotors
+         *  after the reflector have ring settings RINGS and positions
+         *  POSITIONS, with plugboard PLUGBOARD, converting MESSAGE.  The
+         *  arrays become mine. */
+        Case(int[] symbols, int pawls, int[][] wiring, boolean[][] notches,
+             int[] rings, int[] positions, int[] plugboard, int[] message) {
+            _symbols = symbols;
+            _pawls = pawls;
+            _wiring = wiring;
+            _notches = notches;
+            _rings = rings;
+            _positions = positions;
+            _plugboard = plugboard;
+            _message = message;
+        }
+
+        /** Return the size of my alphabet. */
+        int size() {
+            return _symbols.length;
+        }
+
+        /** Return the number of slots. */
+        int slots() {
+            return _wiring.length;
+        }
+
+        /** Return the number of pawls. */
+        int pawls() {
+            return _pawls;
+        }
+
+        /** Return the message. */
+        int[] message() {
+            return _message;
+        }
+
+        /** Return a new alphabet of my symbols. */
+        Alphabet alphabet() {
+            return new Alphabet(new String(_symbols, 0, _symbols.length));
+        }
+
+        /** Return the notches of slot K as a string of characters. */
+        private String notches(int k) {
+            StringBuilder result = new StringBuilder();
+            for (int p = 0; p < size(); p += 1) {
+                if (_notches[k][p]) {
+                    result.appendCodePoint(_symbols[p]);
+                }
+            }
+            return result.toString();
+        }
+
+        /** Return my setting of rotor indices SETTING as a string. */
+        private String setting(int[] setting) {
+            return new String(Arrays.stream(setting)
+                              .map(p -> _symbols[p]).toArray(), 0,
+                              setting.length);
+        }
+
+        /** Return my MAPPING in cycle notation, leaving out fixed points
+         *  unless ALL. */
+        private String cycles(int[] mapping, boolean all) {
+            StringBuilder result = new StringBuilder();
+            boolean[] seen = new boolean[mapping.length];
+            for (int p = 0; p < mapping.length; p += 1) {
+                if (seen[p] || (!all && mapping[p] == p)) {
+                    continue;
+                }
+                result.append(result.length() == 0 ? "(" : " (");
+                for (int q = p; !seen[q]; q = mapping[q]) {
+                    seen[q] = true;
+                    result.appendCodePoint(_symbols[q]);
+                }
+                result.append(')');
+            }
+            return result.toString();
+        }
+
+        /** Return a new machine for this case, interpreted if
+         *  INTERPRETED, set up to convert the message. */
+        Machine machine(boolean interpreted) {
+            Alphabet alphabet = alphabet();
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            String[] names = new String[slots()];
+            for (int k = 0; k < slots(); k += 1) {
+                names[k] = "R" + k;
+                Permutation perm = new Permutation(_wiring[k], alphabet);
+                if (k == 0) {
+                    rotors.add(new Reflector(names[k], perm));
+                } else if (k < slots() - _pawls) {
+                    rotors.add(new FixedRotor(names[k], perm));
+                } else {
+                    rotors.add(new MovingRotor(names[k], perm, notches(k)));
+                }
+            }
+            Machine m = new Machine(alphabet, slots(), _pawls, rotors);
+            m.setInterpreted(interpreted);
+            m.insertRotors(names);
+            m.setRings(_rings);
+            m.setRotors(_positions);
+            m.setPlugboard(_plugboard.clone());
+            return m;
+        }
+
+        /** Return my machine as a configuration file for Main. */
+        String config() {
+            StringBuilder result = new StringBuilder();
+            result.append(new String(_symbols, 0, size())).append('\n');
+            result.append(slots()).append(' ').append(_pawls).append('\n');
+            for (int k = 0; k < slots(); k += 1) {
+                result.append('R').append(k).append(' ')
+                    .append(k == 0 ? "R" : k < slots() - _pawls ? "N"
+                            : "M" + notches(k))
+                    .append(' ').append(cycles(_wiring[k], true))
+                    .append('\n');
+            }
+            return result.toString();
+        }
+
+        /** Return my rotors, positions, rings and plugboard as a settings
+         *  line for Main. */
+        String settings() {
+            StringBuilder result = new StringBuilder("*");
+            for (int k = 0; k < slots(); k += 1) {
+                result.append(" R").append(k);
+            }
+            result.append(' ').append(setting(_positions));
+            result.append(' ').append(setting(_rings));
+            String plugboard = cycles(_plugboard, false);
+            if (!plugboard.isEmpty()) {
+                result.append(' ').append(plugboard);
+            }
+            return result.toString();
+        }
+
+        /** Return the cases one step simpler than this one, the likeliest
+         *  to shrink it most first. */
+        ArrayList<Case> simpler() {
+            ArrayList<Case> result = new ArrayList<>();
+            for (int k = 1; slots() > 2 && k < slots(); k += 1) {
+                result.add(without(k));
+            }
+            if (_pawls > 0) {
+                boolean[][] notches = _notches.clone();
+                notches[slots() - _pawls] = new boolean[size()];
+                result.add(new Case(_symbols, _pawls - 1, _wiring, notches,
+                                    _rings, _positions, _plugboard,
+                                    _message));
+            }
+            int[] zero = new int[_message.length];
+            if (!Arrays.equals(_message, zero)) {
+                result.add(new Case(_symbols, _pawls, _wiring, _notches,
+                                    _rings, _positions, _plugboard, zero));
+            }
+            if (!Arrays.equals(_plugboard, identity(size()))) {
+                result.add(new Case(_symbols, _pawls, _wiring, _notches,
+                                    _rings, _positions, identity(size()),
+                                    _message));
+            }
+            for (int p = 0; p < size(); p += 1) {
+                int q = _plugboard[p];
+                if (q > p) {
+                    int[] plugboard = _plugboard.clone();
+                    plugboard[p] = p;
+                    plugboard[q] = q;
+                    result.add(new Case(_symbols, _pawls, _wiring, _notches,
+                                        _rings, _positions, plugboard,
+                                        _message));
+                }
+            }
+            if (!Arrays.equals(_rings, new int[_rings.length])) {
+                result.add(new Case(_symbols, _pawls, _wiring, _notches,
+                                    new int[_rings.length], _positions,
+                                    _plugboard, _message));
+            }
+            if (!Arrays.equals(_positions, new int[_positions.length])) {
+                result.add(new Case(_symbols, _pawls, _wiring, _notches,
+                                    _rings, new int[_positions.length],
+                                    _plugboard, _message));
+            }
+            for (int k = 1; k < slots(); k += 1) {
+                for (int p = 0; p < size(); p += 1) {
+                    if (_notches[k][p]) {
+                        boolean[][] notches = _notches.clone();
+                        notches[k] = notches[k].clone();
+                        notches[k][p] = false;
+                        result.add(new Case(_symbols, _pawls, _wiring,
+                                            notches, _rings, _positions,
+                                            _plugboard, _message));
+                    }
+                }
+                if (!Arrays.equals(_wiring[k], identity(size()))) {
+                    int[][] wiring = _wiring.clone();
+                    wiring[k] = identity(size());
+                    result.add(new Case(_symbols, _pawls, wiring, _notches,
+                                        _rings, _positions, _plugboard,
+                                        _message));
+                }
+            }
+            return result;
+        }
+
+        /** Return this case with slot K, which is not the reflector,
+         *  removed. */
+        private Case without(int k) {
+            int pawls = k < slots() - _pawls ? _pawls : _pawls - 1;
+            return new Case(_symbols, pawls, remove(_wiring, k),
+                            remove(_notches, k), remove(_rings, k - 1),
+                            remove(_positions, k - 1), _plugboard,
+                            _message);
+        }
+
+        /** Return this case with its message cut to LENGTH characters. */
+        Case truncated(int length) {
+            return new Case(_symbols, _pawls, _wiring, _notches, _rings,
+                            _positions, _plugboard,
+                            Arrays.copyOf(_message, length));
+        }
+
+        /** Code points of the alphabet. */
+        private final int[] _symbols;
+        /** Number of pawls. */
+        private final int _pawls;
+        /** Mapping of the rotor in each slot. */
+        private final int[][] _wiring;
+        /** Notch flags of the rotor in each slot, by position. */
+        private final boolean[][] _notches;
+        /** Ring settings of the rotors after the reflector. */
+        private final int[] _rings;
+        /** Positions of the rotors after the reflector. */
+        private final int[] _positions;
+        /** Plugboard mapping. */
+        private final int[] _plugboard;
+        /** Message, as indices. */
+        private final int[] _message;
+    }
+
+    /** Return a random case from RAND with a message of CHARS
+     *  characters. */
+    static Case random(Random rand, int chars) {
+        int size = 2 + rand.nextInt(MAX_SIZE - 1);
+        int[] order = shuffled(SYMBOLS.length, rand);
+        int[] symbols = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            symbols[i] = SYMBOLS[order[i]];
+        }
+        int slots = 2 + rand.nextInt(MAX_CASE_SLOTS - 1);
+        int pawls = rand.nextInt(slots);
+        int[][] wiring = new int[slots][];
+        boolean[][] notches = new boolean[slots][size];
+        wiring[0] = involution(size, size / 2, rand);
+        for (int k = 1; k < slots; k += 1) {
+            wiring[k] = shuffled(size, rand);
+            if (k >= slots - pawls) {
+                int kind = rand.nextInt(NOTCH_KINDS);
+                for (int p = 0; p < size; p += 1) {
+                    notches[k][p] = kind == 2 ? rand.nextBoolean() : kind == 3;
+                }
+                if (kind == 1) {
+                    notches[k][rand.nextInt(size)] = true;
+                }
+            }
+        }
+        int[] rings = new int[slots - 1];
+        int[] positions = new int[slots - 1];
+        for (int k = 0; k < slots - 1; k += 1) {
+            rings[k] = rand.nextInt(size);
+            positions[k] = rand.nextInt(size);
+        }
+        int[] plugboard = involution(size, rand.nextInt(size / 2 + 1), rand);
+        int[] message = new int[chars];
+        for (int i = 0; i < chars; i += 1) {
+            message[i] = rand.nextInt(size);
+        }
+        return new Case(symbols, pawls, wiring, notches, rings, positions,
+                        plugboard, message);
+    }
+
+    /** Return the engine variants to be compared with the reference,
+     *  by name, each making from a case a converter of messages in
+     *  place, continuing from where the last left off. */
+    static Map<String, Function<Case, Consumer<int[]>>> variants() {
+        LinkedHashMap<String, Function<Case, Consumer<int[]>>> result =
+            new LinkedHashMap<>();
+        result.put("compiled", c -> {
+            Machine m = c.machine(false);
+            return msg -> {
+                for (int i = 0; i < msg.length; i += 1) {
+                    msg[i] = m.convert(msg[i]);
+                }
+            };
+        });
+        result.put("chunked", c -> {
+            Machine m = c.machine(false);
+            return msg -> chunks(msg, (from, to) -> m.convert(msg, from, to));
+        });
+        result.put("string", c -> {
+            Machine m = c.machine(false);
+            Alphabet alphabet = m.alphabet();
+            return msg -> alphabet.toIndices(
+                m.convert(alphabet.toString(msg, 0, msg.length)), msg);
+        });
+        result.put("resumed", c -> {
+            Machine m = c.machine(false);
+            return msg -> chunks(msg, (from, to) -> {
+                m.convert(msg, from, to);
+                m.setRotors(m.positions());
+            });
+        });
+        result.put("carry", c -> {
+            CarryMachine carry =
+                new CarryMachine(new RotorTables(c.machine(true)));
+            return msg -> {
+                for (int i = 0; i < msg.length; i += 1) {
+                    msg[i] = carry.convert(msg[i]);
+                }
+            };
+        });
+        result.put("tables", c -> {
+            RotorTables tables = new RotorTables(c.machine(true));
+            int[] posn = tables.positions();
+            return msg -> {
+                for (int i = 0; i < msg.length; i += 1) {
+                    msg[i] = tables.convert(posn, msg[i]);
+                }
+            };
+        });
+        result.put("off-heap", c -> {
+            Machine m = c.machine(true);
+            m.setTables(OffHeapTables.build(m));
+            return msg -> m.convert(msg, 0, msg.length);
+        });
+        result.put("batch-lanes", c -> {
+            BatchMachine batch =
+                new BatchMachine(c.machine(true), c.machine(true));
+            return msg -> {
+                int[][] lanes = {msg, msg.clone()};
+                batch.convertLanes(lanes);
+                if (!Arrays.equals(lanes[0], lanes[1])) {
+                    throw error("lanes of equal machines disagree");
+                }
+            };
+        });
+        result.put("batch-scalar", c -> {
+            BatchMachine batch = new BatchMachine(c.machine(true));
+            return msg -> batch.convertScalar(new int[][] {msg});
+        });
+        return result;
+    }
+
+    /** A conversion of part of a message. */
+    private interface Range {
+        /** Convert the characters FROM..TO-1. */
+        void convert(int from, int to);
+    }
+
+    /** Pass MSG to CONVERT in chunks of varying sizes. */
+    private static void chunks(int[] msg, Range convert) {
+        int size = 1;
+        for (int from = 0; from < msg.length; from += size) {
+            size = size % MAX_CHUNK + 1;
+            convert.convert(from, Math.min(msg.length, from + size));
+        }
+    }
+
+    /** Return a converter by the reference engine, the interpreted
+     *  Machine.convert, for C. */
+    static Consumer<int[]> referenceVariant(Case c) {
+        Machine m = c.machine(true);
+        return msg -> {
+            for (int i = 0; i < msg.length; i += 1) {
+                msg[i] = m.convert(msg[i]);
+            }
+        };
+    }
+
+    /** Return the conversion of the message of C by the reference. */
+    static int[] reference(Case c) {
+        int[] result = c._message.clone();
+        referenceVariant(c).accept(result);
+        return result;
+    }
+
+    /** Return the index of the first character at which VARIANT converts
+     *  the message of C differently from EXPECTED, the reference
+     *  conversion, the index of the last character if it fails outright,
+     *  or -1 if it agrees. */
+    static int mismatch(Case c, int[] expected,
+                        Function<Case, Consumer<int[]>> variant) {
+        int[] actual = c._message.clone();
+        try {
+            variant.apply(c).accept(actual);
+        } catch (RuntimeException excp) {
+            return Math.max(0, actual.length - 1);
+        }
+        return Arrays.mismatch(actual, expected);
+    }
+
+    /** Return C, on which VARIANT disagrees with the reference, made as
+     *  simple as possible while VARIANT still disagrees. */
+    static Case shrink(Case c, Function<Case, Consumer<int[]>> variant) {
+        int at = mismatch(c, reference(c), variant);
+        if (at < 0) {
+            return c;
+        }
+        c = c.truncated(at + 1);
+        for (boolean shrunk = true; shrunk;) {
+            shrunk = false;
+            for (Case simpler : c.simpler()) {
+                int[] expected;
+                try {
+                    expected = reference(simpler);
+                } catch (EnigmaException excp) {
+                    continue;
+                }
+                at = mismatch(simpler, expected, variant);
+                if (at >= 0) {
+                    c = simpler.truncated(at + 1);
+                    shrunk = true;
+                    break;
+                }
+            }
+        }
+        return c;
+    }
+
+    /** Return the best time per character, in nanoseconds, of CONVERT
+     *  over TIMED_RUNS runs of MSG, after warming up with at least
+     *  WARMUP_RUNS runs and WARMUP_CHARS characters. */
+    private static double nanosPerChar(Consumer<int[]> convert, int[] msg) {
+        int warmups = Math.max(WARMUP_RUNS, WARMUP_CHARS / msg.length);
+        for (int r = 0; r < warmups; r += 1) {
+            convert.accept(msg.clone());
+        }
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < TIMED_RUNS; r += 1) {
+            int[] copy = msg.clone();
+            long start = System.nanoTime();
+            convert.accept(copy);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / msg.length;
+    }
+
+    /** Return a random permutation of 0..N-1 from RAND. */
+    private static int[] shuffled(int n, Random rand) {
+        int[] result = identity(n);
+        for (int i = n - 1; i > 0; i -= 1) {
+            int j = rand.nextInt(i + 1);
+            int t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Return a random mapping of 0..N-1 from RAND that swaps PAIRS
+     *  pairs and fixes the rest. */
+    private static int[] involution(int n, int pairs, Random rand) {
+        int[] order = shuffled(n, rand);
+        int[] result = identity(n);
+        for (int i = 0; i < pairs; i += 1) {
+            result[order[2 * i]] = order[2 * i + 1];
+            result[order[2 * i + 1]] = order[2 * i];
+        }
+        return result;
+    }
+
+    /** Return the identity mapping of 0..N-1. */
+    private static int[] identity(int n) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = i;
+        }
+        return result;
+    }
+
+    /** Return A without its element K. */
+    private static int[] remove(int[] a, int k) {
+        int[] result = new int[a.length - 1];
+        System.arraycopy(a, 0, result, 0, k);
+        System.arraycopy(a, k + 1, result, k, result.length - k);
+        return result;
+    }
+
+    /** Return A without its element K. */
+    private static <T> T[] remove(T[] a, int k) {
+        T[] result = Arrays.copyOf(a, a.length - 1);
+        System.arraycopy(a, k + 1, result, k, result.length - k);
+        return result;
+    }
+
+    /** Return the code points from which alphabets are drawn: printable
+     *  ASCII apart from the characters that delimit cycles and settings,
+     *  Greek capitals, and letters outside the Basic Multilingual
+     *  Plane. */
+    private static int[] symbols() {
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int c = '!'; c <= '~'; c += 1) {
+            if (c != '(' && c != ')' && c != '*') {
+                result.add(c);
+            }
+        }
+        for (int c = GREEK_ALPHA; c <= GREEK_OMEGA; c += 1) {
+            if (c != GREEK_RESERVED) {
+                result.add(c);
+            }
+        }
+        for (int c = MATH_BOLD_A; c < MATH_BOLD_A + ASTRAL_SYMBOLS; c += 1) {
+            result.add(c);
+        }
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Default number of cases. */
+    static final int DEFAULT_CASES = 200;
+
+    /** Default length of the messages. */
+    static final int DEFAULT_CHARS = 5000;
+
+    /** Largest alphabet. */
+    static final int MAX_SIZE = 64;
+
+    /** Most slots in a case, enough for the carry engine to be used. */
+    static final int MAX_CASE_SLOTS = Machine.CARRY_SLOTS + 4;
+
+    /** Kinds of notch layout: none, one, random, and every position. */
+    private static final int NOTCH_KINDS = 4;
+
+    /** Largest chunk converted at once by the chunked variants. */
+    private static final int MAX_CHUNK = 37;
+
+    /** Least number of warm-up runs per case and variant. */
+    private static final int WARMUP_RUNS = 5;
+
+    /** Least number of characters converted to warm up a variant, so
+     *  that what is timed has been compiled. */
+    private static final int WARMUP_CHARS = 100000;
+
+    /** Timed runs per case and variant. */
+    private static final int TIMED_RUNS = 5;
+
+    /** GREEK CAPITAL LETTER ALPHA. */
+    private static final int GREEK_ALPHA = 0x391;
+
+    /** GREEK CAPITAL LETTER OMEGA. */
+    private static final int GREEK_OMEGA = 0x3a9;
+
+    /** The unassigned code point among the Greek capitals. */
+    private static final int GREEK_RESERVED = 0x3a2;
+
+    /** MATHEMATICAL BOLD CAPITAL A. */
+    private static final int MATH_BOLD_A = 0x1d400;
+
+    /** Number of letters from MATH_BOLD_A on in the pool. */
+    private static final int ASTRAL_SYMBOLS = 26;
+
+    /** Code points from which alphabets are drawn. */
+    private static final int[] SYMBOLS = symbols();
+
+    /** Source of the cases. */
+    private final Random _rand;
+
+    /** Length of the messages. */
+    private final int _chars;
+
+    /** Where results are printed. */
+    private final PrintStream _out;
+
+    /** Variants compared with the reference, by name. */
+    private Map<String, Function<Case, Consumer<int[]>>> _variants;
+}
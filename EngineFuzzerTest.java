@@ -0,0 +1,108 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/** The suite of all JUnit tests for the EngineFuzzer class.
+ *  @author Vineet Vashist
+ */
+public class EngineFuzzerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the machine described by the configuration and settings
+     *  line of C, read as Main reads them. */
+    private static Machine parsed(EngineFuzzer.Case c) {
+        Main main = new Main(new Scanner(c.config()),
+                             InputStream.nullInputStream(), System.out);
+        Machine m = main.readConfig();
+        Main.setUp(m, c.settings());
+        return m;
+    }
+
+    /** A compiled engine that wrongly ignores the ring settings. */
+    private static Consumer<int[]> ringless(EngineFuzzer.Case c) {
+        Machine m = c.machine(false);
+        m.setRings(new int[c.slots() - 1]);
+        return msg -> m.convert(msg, 0, msg.length);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void enginesAgree() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        EngineFuzzer fuzzer =
+            new EngineFuzzer(50, 300, new PrintStream(bytes, true));
+        assertEquals(0, fuzzer.run(12));
+        String[] lines = bytes.toString().split("\n");
+        int variants = EngineFuzzer.variants().size() + 1;
+        assertEquals(1 + 12 * variants, lines.length);
+        for (int i = 1; i < lines.length; i += 1) {
+            assertTrue(lines[i], lines[i].endsWith("\tok"));
+        }
+    }
+
+    @Test
+    public void configurationsRoundTrip() {
+        Random rand = new Random(50);
+        for (int i = 0; i < 20; i += 1) {
+            EngineFuzzer.Case c = EngineFuzzer.random(rand, 200);
+            int[] msg = c.message().clone();
+            parsed(c).convert(msg, 0, msg.length);
+            assertArrayEquals(EngineFuzzer.reference(c), msg);
+        }
+    }
+
+    @Test
+    public void shrinksFailures() {
+        Random rand = new Random(51);
+        EngineFuzzer.Case c = EngineFuzzer.random(rand, 500);
+        while (c.slots() < 5) {
+            c = EngineFuzzer.random(rand, 500);
+        }
+        Function<EngineFuzzer.Case, Consumer<int[]>> broken =
+            EngineFuzzerTest::ringless;
+        int[] expected = EngineFuzzer.reference(c);
+        assertTrue(EngineFuzzer.mismatch(c, expected, broken) >= 0);
+
+        EngineFuzzer.Case small = EngineFuzzer.shrink(c, broken);
+        assertEquals(2, small.slots());
+        assertEquals(0, small.pawls());
+        assertTrue(small.message().length <= c.message().length);
+        int at = EngineFuzzer.mismatch(small, EngineFuzzer.reference(small),
+                                       broken);
+        assertEquals(small.message().length - 1, at);
+        assertArrayEquals(new int[small.message().length], small.message());
+        int[] msg = small.message().clone();
+        parsed(small).convert(msg, 0, msg.length);
+        assertArrayEquals(EngineFuzzer.reference(small), msg);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        EngineFuzzer fuzzer =
+            new EngineFuzzer(51, 100, new PrintStream(bytes, true));
+        fuzzer.setVariants(Map.of("ringless", broken));
+        assertTrue(fuzzer.run(3) > 0);
+        String report = bytes.toString();
+        assertTrue(report.contains("\tringless\t-\tFAIL\n"));
+        assertTrue(report.contains("fails ringless\n"));
+        assertTrue(Arrays.stream(report.split("\n"))
+                   .anyMatch(line -> line.startsWith("#   * R0 R1 ")));
+    }
+}
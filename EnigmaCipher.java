@@ -0,0 +1,281 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.ProviderException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import javax.crypto.CipherSpi;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+
+import static enigma.EnigmaException.*;
+
+/** A stream cipher over bytes that runs a Machine.  For a machine whose
+ *  alphabet is the byte values (see ByteMain), each byte is a symbol;
+ *  otherwise each byte is taken as an ISO-8859-1 character, which must
+ *  be in the alphabet.  Enciphering and deciphering are the same
+ *  operation.  Buffers are converted directly, with no intermediate
+ *  copy, and may be converted in place.  After doFinal, the machine is
+ *  reset to its key, as the Cipher contract requires.
+ *  @author Vineet Vashist
+ */
+final class EnigmaCipher extends CipherSpi {
+
+    /** A cipher running copies of PROTOTYPE, which must not have its
+     *  rotors inserted. */
+    EnigmaCipher(Machine prototype) {
+        _machine = prototype.copy();
+        Alphabet alphabet = prototype.alphabet();
+        _bytes = isByteAlphabet(alphabet);
+        _toIndex = new int[Alphabet.BYTE_VALUES];
+        _toByte = new byte[alphabet.size()];
+        for (int b = 0; b < _toIndex.length; b += 1) {
+            _toIndex[b] = alphabet.indexOf(b);
+        }
+        for (int i = 0; i < _toByte.length; i += 1) {
+            int cp = alphabet.toCodePoint(i);
+            if (cp >= Alphabet.BYTE_VALUES) {
+                throw error("alphabet has characters that are not bytes");
+            }
+            _toByte[i] = (byte) cp;
+        }
+    }
+
+    /** Return true iff ALPHABET is the byte values in order. */
+    static boolean isByteAlphabet(Alphabet alphabet) {
+        if (alphabet.size() != Alphabet.BYTE_VALUES) {
+            return false;
+        }
+        for (int i = 0; i < Alphabet.BYTE_VALUES; i += 1) {
+            if (alphabet.toCodePoint(i) != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void engineSetMode(String mode)
+        throws NoSuchAlgorithmException {
+        if (!mode.equalsIgnoreCase("NONE")) {
+            throw new NoSuchAlgorithmException("only mode NONE: " + mode);
+        }
+    }
+
+    @Override
+    protected void engineSetPadding(String padding)
+        throws NoSuchPaddingException {
+        if (!padding.equalsIgnoreCase("NoPadding")) {
+            throw new NoSuchPaddingException("only NoPadding: " + padding);
+        }
+    }
+
+    @Override
+    protected int engineGetBlockSize() {
+        return 0;
+    }
+
+    @Override
+    protected int engineGetOutputSize(int inputLen) {
+        return inputLen;
+    }
+
+    @Override
+    protected byte[] engineGetIV() {
+        return null;
+    }
+
+    @Override
+    protected AlgorithmParameters engineGetParameters() {
+        return null;
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key, SecureRandom random)
+        throws InvalidKeyException {
+        if (!(key instanceof EnigmaKey)) {
+            throw new InvalidKeyException("not an EnigmaKey");
+        }
+        EnigmaKey k = (EnigmaKey) key;
+        if (k.numRotors() != _machine.numRotors()) {
+            throw new InvalidKeyException("key has " + k.numRotors()
+                                          + " rotors, not "
+                                          + _machine.numRotors());
+        }
+        try {
+            setUp(k);
+        } catch (EnigmaException excp) {
+            throw new InvalidKeyException(excp.getMessage(), excp);
+        }
+        _key = k;
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key,
+                              AlgorithmParameterSpec params,
+                              SecureRandom random)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (params != null) {
+            throw new InvalidAlgorithmParameterException("no parameters");
+        }
+        engineInit(opmode, key, random);
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key, AlgorithmParameters params,
+                              SecureRandom random)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (params != null) {
+            throw new InvalidAlgorithmParameterException("no parameters");
+        }
+        engineInit(opmode, key, random);
+    }
+
+    @Override
+    protected int engineGetKeySize(Key key) throws InvalidKeyException {
+        return key.getEncoded().length * Byte.SIZE;
+    }
+
+    @Override
+    protected byte[] engineUpdate(byte[] input, int inputOffset,
+                                  int inputLen) {
+        byte[] output = new byte[inputLen];
+        if (inputLen == 0) {
+            return output;
+        }
+        convert(ByteBuffer.wrap(input, inputOffset, inputLen),
+                ByteBuffer.wrap(output));
+        return output;
+    }
+
+    @Override
+    protected int engineUpdate(byte[] input, int inputOffset, int inputLen,
+                               byte[] output, int outputOffset)
+        throws ShortBufferException {
+        if (inputLen == 0) {
+            return 0;
+        }
+        if (output.length - outputOffset < inputLen) {
+            throw new ShortBufferException("need " + inputLen + " bytes");
+        }
+        if (input == output && outputOffset > inputOffset
+            && outputOffset < inputOffset + inputLen) {
+            input = Arrays.copyOfRange(input, inputOffset,
+                                       inputOffset + inputLen);
+            inputOffset = 0;
+        }
+        convert(ByteBuffer.wrap(input, inputOffset, inputLen),
+                ByteBuffer.wrap(output, outputOffset, inputLen));
+        return inputLen;
+    }
+
+    @Override
+    protected int engineUpdate(ByteBuffer input, ByteBuffer output)
+        throws ShortBufferException {
+        int n = input.remaining();
+        if (output.remaining() < n) {
+            throw new ShortBufferException("need " + n + " bytes");
+        }
+        convert(input, output);
+        return n;
+    }
+
+    @Override
+    protected byte[] engineDoFinal(byte[] input, int inputOffset,
+                                   int inputLen) {
+        try {
+            return engineUpdate(input, inputOffset, inputLen);
+        } finally {
+            reset();
+        }
+    }
+
+    @Override
+    protected int engineDoFinal(byte[] input, int inputOffset, int inputLen,
+                                byte[] output, int outputOffset)
+        throws ShortBufferException {
+        int n = engineUpdate(input, inputOffset, inputLen, output,
+                             outputOffset);
+        reset();
+        return n;
+    }
+
+    @Override
+    protected int engineDoFinal(ByteBuffer input, ByteBuffer output)
+        throws ShortBufferException {
+        int n = engineUpdate(input, output);
+        reset();
+        return n;
+    }
+
+    /** Convert the bytes remaining in IN into OUT, which has room for
+     *  them, advancing both.  IN and OUT may share their contents if
+     *  OUT's position is not after IN's. */
+    private void convert(ByteBuffer in, ByteBuffer out) {
+        if (_key == null) {
+            throw new IllegalStateException("cipher not initialized");
+        }
+        if (_bytes) {
+            _machine.convert(in, out);
+            return;
+        }
+        int n = in.remaining();
+        int from = in.position(), to = out.position();
+        for (int i = 0; i < n; i += 1) {
+            if (_toIndex[in.get(from + i) & BYTE_MASK] < 0) {
+                throw new ProviderException(String.format(
+                    "byte 0x%02x at offset %d is not in the alphabet",
+                    in.get(from + i) & BYTE_MASK, i));
+            }
+        }
+        for (int i = 0; i < n; i += 1) {
+            int c = _toIndex[in.get(from + i) & BYTE_MASK];
+            out.put(to + i, _toByte[_machine.convert(c)]);
+        }
+        in.position(from + n);
+        out.position(to + n);
+        if (Metrics.ENABLED) {
+            Metrics.characters(n);
+        }
+    }
+
+    /** Set my machine up according to KEY. */
+    private void setUp(EnigmaKey key) {
+        if (_bytes) {
+            ByteMain.setUp(_machine, key.settings());
+        } else {
+            Main.setUp(_machine, key.settings());
+        }
+    }
+
+    /** Return my machine to the state given by my key. */
+    private void reset() {
+        if (_key != null) {
+            setUp(_key);
+        }
+    }
+
+    /** Mask selecting the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** My own machine. */
+    private final Machine _machine;
+
+    /** True iff my machine's alphabet is the byte values. */
+    private final boolean _bytes;
+
+    /** Alphabet index of each byte, or -1. */
+    private final int[] _toIndex;
+
+    /** Byte of each alphabet index. */
+    private final byte[] _toByte;
+
+    /** Key I was initialized with, or null. */
+    private EnigmaKey _key;
+}
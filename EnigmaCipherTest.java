@@ -0,0 +1,169 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaCipher class.
+ *  @author Vineet Vashist
+ */
+public class EnigmaCipherTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a provider for the naval machine. */
+    private static EnigmaProvider navalProvider() {
+        return new EnigmaProvider(navalMachine(
+            new String[] {"B", "Beta", "I", "II", "III"}, "AAAA", ""));
+    }
+
+    /** Return the key for KEY, as from randomKey. */
+    private static EnigmaKey keyFor(String[] key) {
+        return new EnigmaKey(new String[] {key[0], key[1], key[2], key[3],
+                                           key[4]}, key[5], key[6]);
+    }
+
+    /** Return a machine over the byte values with five slots. */
+    private static Machine byteMachine() {
+        ArrayList<Rotor> all = new ArrayList<>();
+        Alphabet bytes = Alphabet.bytes();
+        all.add(new Reflector("R", new Permutation(
+            ByteMain.randomReflector(1), bytes)));
+        all.add(new FixedRotor("F", new Permutation(
+            ByteMain.randomRotor(2), bytes)));
+        for (int i = 0; i < 3; i += 1) {
+            all.add(new MovingRotor("M" + i, new Permutation(
+                ByteMain.randomRotor(3 + i), bytes), "\u0000\u0080"));
+        }
+        return new Machine(bytes, 5, 3, all);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void textMatchesMachine() throws Exception {
+        Random rand = new Random(37);
+        Cipher cipher = Cipher.getInstance("Enigma/NONE/NoPadding",
+                                           navalProvider());
+        for (int trial = 0; trial < 10; trial += 1) {
+            String[] key = randomKey(rand);
+            String msg = randomMessage(rand, 1 + rand.nextInt(200));
+            cipher.init(Cipher.ENCRYPT_MODE, keyFor(key));
+            int half = msg.length() / 2;
+            byte[] bytes = msg.getBytes(StandardCharsets.ISO_8859_1);
+            byte[] first = cipher.update(bytes, 0, half);
+            byte[] rest = cipher.doFinal(bytes, half, bytes.length - half);
+            assertEquals(machineFor(key).convert(msg),
+                         new String(first, StandardCharsets.ISO_8859_1)
+                         + new String(rest, StandardCharsets.ISO_8859_1));
+            assertArrayEquals(first, cipher.update(bytes, 0, half));
+        }
+    }
+
+    @Test
+    public void keysCarryRings() throws Exception {
+        Random rand = new Random(46);
+        Cipher cipher = Cipher.getInstance("Enigma", navalProvider());
+        for (int trial = 0; trial < 10; trial += 1) {
+            String[] key = randomKey(rand);
+            String rings = randomMessage(rand, 4);
+            String[] rotors = {key[0], key[1], key[2], key[3], key[4]};
+            EnigmaKey k = new EnigmaKey(rotors, key[5], rings, key[6]);
+            String line = String.join(" ", "*", key[0], key[1], key[2],
+                                      key[3], key[4], key[5], rings, key[6])
+                .trim();
+            assertEquals(line, k.settings());
+            assertEquals(k, EnigmaKey.parse(line, 5));
+            assertEquals(keyFor(key),
+                         EnigmaKey.parse(settingsLine(key), 5));
+
+            String msg = randomMessage(rand, 200);
+            Machine m = machineFor(key);
+            m.setRings(rings);
+            m.setRotors(key[5]);
+            cipher.init(Cipher.ENCRYPT_MODE, k);
+            byte[] secret =
+                cipher.doFinal(msg.getBytes(StandardCharsets.ISO_8859_1));
+            assertEquals(m.convert(msg),
+                         new String(secret, StandardCharsets.ISO_8859_1));
+        }
+        try {
+            new EnigmaKey(new String[] {"B", "Beta", "I", "II", "III"},
+                          "AAAA", "AB", "");
+            fail("accepted short rings");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("bad ring settings"));
+        }
+    }
+
+    @Test
+    public void badByteConvertsNothing() throws Exception {
+        Random rand = new Random(39);
+        String[] key = randomKey(rand);
+        String msg = randomMessage(rand, 100);
+        Cipher cipher = Cipher.getInstance("Enigma", navalProvider());
+        cipher.init(Cipher.ENCRYPT_MODE, keyFor(key));
+        byte[] bad = (msg.substring(0, 50) + "a")
+            .getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer in = ByteBuffer.wrap(bad);
+        ByteBuffer out = ByteBuffer.allocate(bad.length);
+        try {
+            cipher.update(in, out);
+            fail("converted a byte not in the alphabet");
+        } catch (java.security.ProviderException excp) {
+            assertTrue(excp.getMessage().contains("offset 50"));
+        }
+        assertEquals(0, in.position());
+        assertEquals(0, out.position());
+        byte[] good = cipher.doFinal(msg.getBytes(StandardCharsets.ISO_8859_1));
+        assertEquals(machineFor(key).convert(msg),
+                     new String(good, StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void bytesRoundTrip() throws Exception {
+        Random rand = new Random(38);
+        EnigmaProvider provider = new EnigmaProvider(byteMachine());
+        EnigmaKey key = EnigmaKey.parse("* R F M0 M1 M2 00ff7f10 4142,0001",
+                                        5);
+        byte[] plain = new byte[100000];
+        rand.nextBytes(plain);
+
+        Cipher enc = Cipher.getInstance("Enigma", provider);
+        enc.init(Cipher.ENCRYPT_MODE, key);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (CipherOutputStream out = new CipherOutputStream(sink, enc)) {
+            for (int i = 0; i < plain.length; i += 777) {
+                out.write(plain, i, Math.min(777, plain.length - i));
+            }
+        }
+        byte[] secret = sink.toByteArray();
+        assertEquals(plain.length, secret.length);
+        assertFalse(Arrays.equals(plain, secret));
+
+        Cipher dec = Cipher.getInstance("Enigma", provider);
+        dec.init(Cipher.DECRYPT_MODE, key);
+        ByteBuffer buf = ByteBuffer.allocateDirect(secret.length);
+        buf.put(secret).flip();
+        dec.doFinal(buf.duplicate(), buf.duplicate());
+        byte[] back = new byte[plain.length];
+        buf.get(back);
+        assertArrayEquals(plain, back);
+    }
+}
@@ -0,0 +1,134 @@
+package enigma;
+
+import java.nio.charset.StandardCharsets;
+import java.security.spec.KeySpec;
+import java.util.Arrays;
+import javax.crypto.SecretKey;
+
+import static enigma.EnigmaException.*;
+
+/** The key of an EnigmaCipher, and its own key spec: the rotors to
+ *  insert, left to right starting with the reflector, their initial
+ *  positions, their ring settings, and the plugboard, written as in a
+ *  settings line of Main for a text machine or of ByteMain for a byte
+ *  machine, which has no rings.  Its encoded
+ *  form is that settings line in UTF-8.
+ *  @author Vineet Vashist
+ */
+public final class EnigmaKey implements SecretKey, KeySpec {
+
+    /** A key inserting the rotors named ROTORS, set to POSITIONS, with
+     *  the plugboard PLUGBOARD (empty for none) and the default rings. */
+    public EnigmaKey(String[] rotors, String positions, String plugboard) {
+        this(rotors, positions, "", plugboard);
+    }
+
+    /** A key inserting the rotors named ROTORS, set to POSITIONS, with
+     *  the ring settings RINGS and the plugboard PLUGBOARD (each empty
+     *  for the default). */
+    public EnigmaKey(String[] rotors, String positions, String rings,
+                     String plugboard) {
+        if (rotors.length < 2 || positions.isEmpty()) {
+            throw error("a key needs rotors and positions");
+        }
+        rings = rings.trim();
+        if (!rings.isEmpty() && !isRings(rings, positions)) {
+            throw error("bad ring settings: %s", rings);
+        }
+        _rotors = rotors.clone();
+        _positions = positions;
+        _rings = rings;
+        _plugboard = plugboard.trim();
+    }
+
+    /** Return the key given by the settings line SETTINGS, for a machine
+     *  with SLOTS rotor slots.  As in Main.setUp, a field after the
+     *  positions that is as long as they are and does not start a
+     *  plugboard cycle holds the ring settings. */
+    public static EnigmaKey parse(String settings, int slots) {
+        String[] parts = settings.trim().split("\\s+", slots + 3);
+        if (parts.length < slots + 2 || !parts[0].equals("*")) {
+            throw error("bad settings line: %s", settings);
+        }
+        String positions = parts[slots + 1];
+        String rings = "";
+        String plugboard = parts.length > slots + 2 ? parts[slots + 2] : "";
+        String[] rest = plugboard.split("\\s+", 2);
+        if (isRings(rest[0], positions)) {
+            rings = rest[0];
+            plugboard = rest.length > 1 ? rest[1] : "";
+        }
+        return new EnigmaKey(Arrays.copyOfRange(parts, 1, slots + 1),
+                             positions, rings, plugboard);
+    }
+
+    /** Return true iff FIELD has the form of ring settings for rotors
+     *  set to POSITIONS. */
+    private static boolean isRings(String field, String positions) {
+        return !field.startsWith("(") && !field.contains(" ")
+            && field.codePointCount(0, field.length())
+               == positions.codePointCount(0, positions.length());
+    }
+
+    /** Return my settings line. */
+    public String settings() {
+        StringBuilder result = new StringBuilder("*");
+        for (String rotor : _rotors) {
+            result.append(' ').append(rotor);
+        }
+        result.append(' ').append(_positions);
+        if (!_rings.isEmpty()) {
+            result.append(' ').append(_rings);
+        }
+        if (!_plugboard.isEmpty()) {
+            result.append(' ').append(_plugboard);
+        }
+        return result.toString();
+    }
+
+    /** Return the number of rotors I insert. */
+    int numRotors() {
+        return _rotors.length;
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return EnigmaProvider.ALGORITHM;
+    }
+
+    @Override
+    public String getFormat() {
+        return "RAW";
+    }
+
+    @Override
+    public byte[] getEncoded() {
+        return settings().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof EnigmaKey
+            && ((EnigmaKey) obj).settings().equals(settings());
+    }
+
+    @Override
+    public int hashCode() {
+        return settings().hashCode();
+    }
+
+    /** For serialization. */
+    private static final long serialVersionUID = 1L;
+
+    /** Names of the rotors, reflector first. */
+    private final String[] _rotors;
+
+    /** Initial positions of the rotors after the reflector. */
+    private final String _positions;
+
+    /** Ring settings of the rotors after the reflector, or empty. */
+    private final String _rings;
+
+    /** Plugboard, or empty. */
+    private final String _plugboard;
+}
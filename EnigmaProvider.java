@@ -0,0 +1,62 @@
+package enigma;
+
+import java.io.File;
+import java.security.Provider;
+
+/** A security provider offering the Cipher "Enigma" (transformation
+ *  "Enigma/NONE/NoPadding"), backed by one machine configuration, so
+ *  that a Machine can be used through Cipher, CipherInputStream and
+ *  CipherOutputStream.  Keys are EnigmaKeys.  Each Cipher has its own
+ *  copy of the configured machine, sharing its compiled rotor stacks.
+ *  @author Vineet Vashist
+ */
+public final class EnigmaProvider extends Provider {
+
+    /** A provider of ciphers running copies of PROTOTYPE. */
+    EnigmaProvider(Machine prototype) {
+        super(NAME, "1.0", "Enigma rotor machine simulator");
+        _prototype = prototype;
+        putService(new CipherService());
+    }
+
+    /** Return a provider for the text configuration file named
+     *  CONFIG, as read by Main. */
+    public static EnigmaProvider forConfig(String config) {
+        return new EnigmaProvider(CipherServer.readMachine(config));
+    }
+
+    /** Return a provider for the byte configuration file named CONFIG,
+     *  as read by ByteMain. */
+    public static EnigmaProvider forByteConfig(String config) {
+        return new EnigmaProvider(new ByteMain(new File(config))
+                                  .readConfig());
+    }
+
+    /** The Cipher service, which makes EnigmaCiphers directly rather
+     *  than by reflection, so that they can share my machine. */
+    private final class CipherService extends Provider.Service {
+
+        /** The service for the "Enigma" Cipher. */
+        CipherService() {
+            super(EnigmaProvider.this, "Cipher", ALGORITHM,
+                  EnigmaCipher.class.getName(), null, null);
+        }
+
+        @Override
+        public Object newInstance(Object constructorParameter) {
+            return new EnigmaCipher(_prototype);
+        }
+    }
+
+    /** Name of this provider. */
+    public static final String NAME = "Enigma";
+
+    /** Name of the cipher algorithm. */
+    public static final String ALGORITHM = "Enigma";
+
+    /** For serialization. */
+    private static final long serialVersionUID = 1L;
+
+    /** Configured machine that ciphers copy. */
+    private final transient Machine _prototype;
+}
@@ -0,0 +1,129 @@
+package enigma;
+
+/** A fixed-length table of non-negative ints stored in the narrowest
+ *  primitive array (byte, short or int) that can hold its largest
+ *  value, so that alphabet and permutation tables stay proportional to
+ *  the alphabet rather than to the width of an int.
+ *  @author Vineet Vashist
+ */
+abstract class IntTable {
+
+    /** Return a table of LENGTH zeros able to hold values in
+     *  0..MAXVALUE. */
+    static IntTable create(int length, int maxValue) {
+        if (maxValue <= BYTE_MAX) {
+            return new Bytes(length);
+        } else if (maxValue <= SHORT_MAX) {
+            return new Shorts(length);
+        } else {
+            return new Ints(length);
+        }
+    }
+
+    /** Return the value at index I. */
+    abstract int get(int i);
+
+    /** Set the value at index I to V. */
+    abstract void set(int i, int v);
+
+    /** Return my length. */
+    abstract int length();
+
+    /** Return my contents as an int array. */
+    int[] toArray() {
+        int[] result = new int[length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = get(i);
+        }
+        return result;
+    }
+
+    /** A table of unsigned bytes. */
+    private static final class Bytes extends IntTable {
+        /** A table of LENGTH zeros. */
+        Bytes(int length) {
+            _values = new byte[length];
+        }
+
+        @Override
+        int get(int i) {
+            return _values[i] & BYTE_MAX;
+        }
+
+        @Override
+        void set(int i, int v) {
+            _values[i] = (byte) v;
+        }
+
+        @Override
+        int length() {
+            return _values.length;
+        }
+
+        /** The values. */
+        private final byte[] _values;
+    }
+
+    /** A table of unsigned shorts. */
+    private static final class Shorts extends IntTable {
+        /** A table of LENGTH zeros. */
+        Shorts(int length) {
+            _values = new short[length];
+        }
+
+        @Override
+        int get(int i) {
+            return _values[i] & SHORT_MAX;
+        }
+
+        @Override
+        void set(int i, int v) {
+            _values[i] = (short) v;
+        }
+
+        @Override
+        int length() {
+            return _values.length;
+        }
+
+        /** The values. */
+        private final short[] _values;
+    }
+
+    /** A table of ints. */
+    private static final class Ints extends IntTable {
+        /** A table of LENGTH zeros. */
+        Ints(int length) {
+            _values = new int[length];
+        }
+
+        @Override
+        int get(int i) {
+            return _values[i];
+        }
+
+        @Override
+        void set(int i, int v) {
+            _values[i] = v;
+        }
+
+        @Override
+        int length() {
+            return _values.length;
+        }
+
+        @Override
+        int[] toArray() {
+            return _values.clone();
+        }
+
+        /** The values. */
+        private final int[] _values;
+    }
+
+    /** Largest value of an unsigned byte. */
+    static final int BYTE_MAX = 0xff;
+
+    /** Largest value of an unsigned short. */
+    static final int SHORT_MAX = 0xffff;
+}
@@ -0,0 +1,372 @@
+package enigma;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+import static java.nio.file.StandardOpenOption.*;
+import static enigma.EnigmaException.*;
+
+/** A list of keys for one configuration, kept in a compact binary file
+ *  that is memory-mapped and indexed by key ID, so that selecting a key
+ *  and applying it to a machine is a hash lookup and a restore of the
+ *  machine's state, with no settings line to parse.  A key ID is a
+ *  number, or a date written YYYY-MM-DD, which stands for its epoch
+ *  day.  Alphabets may have at most 256 characters.
+ *
+ *  A key-sheet file is big-endian: a header of ints (magic, version,
+ *  alphabet size, rotor slots, key count, index capacity, length of the
+ *  names in bytes), the names of the configuration's rotors in UTF-8,
+ *  separated by newlines and padded to a multiple of 8 bytes, the index,
+ *  and the keys.  The index is an open-addressed hash table whose
+ *  entries are a key ID and one more than the number of its key (0 in
+ *  an empty entry), padded to INDEX_ENTRY bytes.  Each key is its ID,
+ *  then as bytes the number of the rotor in each slot among the names,
+ *  the setting of each rotor after the reflector, the ring setting of
+ *  each of those rotors, and the character the plugboard takes each
+ *  character to, padded to a multiple of 8 bytes.
+ *  @author Vineet Vashist
+ */
+public final class KeySheet {
+
+    /** Write a key sheet as given by ARGS: CONFIG KEYLIST SHEET.  CONFIG
+     *  is a configuration file, as read by Main.  Each line of the file
+     *  KEYLIST is a key ID followed by a settings line; blank lines and
+     *  lines starting with "#" are skipped.  The sheet is written to the
+     *  file SHEET. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 3) {
+                throw error("Usage: java enigma.KeySheet CONFIG KEYLIST "
+                            + "SHEET");
+            }
+            Machine m = CipherServer.readMachine(args[0]);
+            ArrayList<String> lines = new ArrayList<>();
+            try (FileInputStream in = new FileInputStream(args[1])) {
+                LineReader keys = new LineReader(in);
+                while (keys.hasNextLine()) {
+                    lines.add(keys.nextLine());
+                }
+            } catch (IOException excp) {
+                throw error("could not read %s", args[1]);
+            }
+            build(m, lines).write(Paths.get(args[2]));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return a sheet, in a heap buffer, of the keys for M listed in
+     *  LINES, as in a KEYLIST file (see main). */
+    static KeySheet build(Machine m, Collection<String> lines) {
+        int n = m.alphabet().size();
+        if (n > BYTE_VALUES) {
+            throw error("key sheets need alphabets of at most %d "
+                        + "characters", BYTE_VALUES);
+        }
+        ArrayList<String> names = new ArrayList<>();
+        HashMap<String, Integer> numbers = new HashMap<>();
+        for (Rotor r : m.allRotors()) {
+            numbers.put(r.name(), names.size());
+            names.add(r.name());
+        }
+        if (names.size() > BYTE_VALUES) {
+            throw error("key sheets allow at most %d rotors", BYTE_VALUES);
+        }
+        ArrayList<Long> ids = new ArrayList<>();
+        ArrayList<String> settings = new ArrayList<>();
+        for (String line : lines) {
+            String text = line.trim();
+            if (text.isEmpty() || text.startsWith("#")) {
+                continue;
+            }
+            String[] parts = text.split("\\s+", 2);
+            if (parts.length < 2) {
+                throw error("no settings for key %s", parts[0]);
+            }
+            ids.add(id(parts[0]));
+            settings.add(parts[1]);
+        }
+
+        int slots = m.numRotors();
+        int keySize = keySize(slots, n);
+        int capacity = Integer.highestOneBit(Math.max(1, ids.size()) * 2);
+        byte[] nameBytes =
+            String.join("\n", names).getBytes(StandardCharsets.UTF_8);
+        int index = HEADER_BYTES + pad(nameBytes.length);
+        int first = index + capacity * INDEX_ENTRY;
+        long bytes = first + (long) ids.size() * keySize;
+        if (bytes > Integer.MAX_VALUE) {
+            throw error("too many keys: %d", ids.size());
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) bytes);
+        out.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(slots)
+            .putInt(ids.size()).putInt(capacity).putInt(nameBytes.length);
+        out.position(HEADER_BYTES);
+        out.put(nameBytes);
+
+        Machine key = m.copy();
+        for (int k = 0; k < ids.size(); k += 1) {
+            long id = ids.get(k);
+            int entry = index + slot(id, capacity) * INDEX_ENTRY;
+            while (out.getInt(entry + Long.BYTES) != 0) {
+                if (out.getLong(entry) == id) {
+                    throw error("key %s is listed twice", id);
+                }
+                entry += INDEX_ENTRY;
+                if (entry == first) {
+                    entry = index;
+                }
+            }
+            out.putLong(entry, id);
+            out.putInt(entry + Long.BYTES, k + 1);
+
+            Main.setUp(key, settings.get(k));
+            out.position(first + k * keySize);
+            out.putLong(id);
+            for (int s = 0; s < slots; s += 1) {
+                out.put((byte) (int) numbers.get(key.rotor(s).name()));
+            }
+            for (int s = 1; s < slots; s += 1) {
+                out.put((byte) key.rotor(s).setting());
+            }
+            for (int s = 1; s < slots; s += 1) {
+                out.put((byte) key.rotor(s).ring());
+            }
+            for (int x = 0; x < n; x += 1) {
+                out.put((byte) key.plugboard().permute(x));
+            }
+        }
+        return new KeySheet(out.clear(), m);
+    }
+
+    /** Return the sheet in the file FILE, mapped read-only, after
+     *  checking that it is for the rotors available to M. */
+    static KeySheet map(Path file, Machine m) {
+        try (FileChannel in = FileChannel.open(file, READ)) {
+            if (in.size() > Integer.MAX_VALUE) {
+                throw error("%s is too large to be a key sheet", file);
+            }
+            return new KeySheet(
+                in.map(FileChannel.MapMode.READ_ONLY, 0, in.size()), m);
+        } catch (IOException excp) {
+            throw error("could not map %s", file);
+        }
+    }
+
+    /** The sheet held in BUFFER, checked against the rotors available to
+     *  M. */
+    private KeySheet(ByteBuffer buffer, Machine m) {
+        _buffer = buffer;
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC
+            || buffer.getInt(Integer.BYTES) != VERSION) {
+            throw error("not a key sheet");
+        }
+        _size = buffer.getInt(SIZE_FIELD * Integer.BYTES);
+        _slots = buffer.getInt(SLOTS_FIELD * Integer.BYTES);
+        _count = buffer.getInt(COUNT_FIELD * Integer.BYTES);
+        _capacity = buffer.getInt(CAPACITY_FIELD * Integer.BYTES);
+        int nameLength = buffer.getInt(NAMES_FIELD * Integer.BYTES);
+        if (_size != m.alphabet().size() || _slots != m.numRotors()) {
+            throw error("key sheet does not match the configuration");
+        }
+        byte[] nameBytes = new byte[nameLength];
+        buffer.get(HEADER_BYTES, nameBytes);
+        _names = nameLength == 0 ? new String[0]
+            : new String(nameBytes, StandardCharsets.UTF_8).split("\n");
+        HashMap<String, Rotor> catalog = new HashMap<>();
+        for (Rotor r : m.allRotors()) {
+            catalog.put(r.name(), r);
+        }
+        for (String name : _names) {
+            if (!catalog.containsKey(name)) {
+                throw error("key sheet has rotor %s, which is not in the "
+                            + "configuration", name);
+            }
+        }
+        _index = HEADER_BYTES + pad(nameLength);
+        _first = _index + _capacity * INDEX_ENTRY;
+        _keySize = keySize(_slots, _size);
+        if (Integer.bitCount(_capacity) != 1
+            || buffer.limit() < _first + (long) _count * _keySize) {
+            throw error("key sheet truncated");
+        }
+    }
+
+    /** Write my contents to FILE. */
+    void write(Path file) {
+        try (FileChannel out = FileChannel.open(file, WRITE, CREATE,
+                                                TRUNCATE_EXISTING)) {
+            ByteBuffer all = _buffer.duplicate();
+            all.clear();
+            while (all.hasRemaining()) {
+                out.write(all);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return the number of keys I hold. */
+    int size() {
+        return _count;
+    }
+
+    /** Return the number of the key whose ID is ID, or -1 if I have
+     *  none. */
+    int find(long id) {
+        int slot = slot(id, _capacity);
+        while (true) {
+            int entry = _index + slot * INDEX_ENTRY;
+            int key = _buffer.getInt(entry + Long.BYTES);
+            if (key == 0) {
+                return -1;
+            } else if (_buffer.getLong(entry) == id) {
+                return key - 1;
+            }
+            slot = (slot + 1) & (_capacity - 1);
+        }
+    }
+
+    /** Return the number of the key whose ID is written ID, or -1 if I
+     *  have none. */
+    int find(String id) {
+        return find(id(id));
+    }
+
+    /** Return the ID of key number K. */
+    long id(int k) {
+        return _buffer.getLong(_first + k * _keySize);
+    }
+
+    /** Set M up with key number K, as Main.setUp would with its settings
+     *  line. */
+    void apply(Machine m, int k) {
+        int key = _first + k * _keySize + Long.BYTES;
+        String[] rotors = new String[_slots];
+        for (int s = 0; s < _slots; s += 1) {
+            rotors[s] = _names[_buffer.get(key + s) & BYTE_MASK];
+        }
+        m.insertRotors(rotors);
+        key += _slots;
+        int[] setting = new int[_slots - 1];
+        int[] rings = new int[_slots - 1];
+        for (int s = 0; s < setting.length; s += 1) {
+            setting[s] = _buffer.get(key + s) & BYTE_MASK;
+            rings[s] = _buffer.get(key + setting.length + s) & BYTE_MASK;
+        }
+        m.setRings(rings);
+        m.setRotors(setting);
+        key += 2 * setting.length;
+        int[] plugboard = new int[_size];
+        for (int x = 0; x < _size; x += 1) {
+            plugboard[x] = _buffer.get(key + x) & BYTE_MASK;
+        }
+        m.setPlugboard(plugboard);
+        if (Metrics.ENABLED) {
+            Metrics.settingsLine();
+        }
+    }
+
+    /** Set M up with the key whose ID is written ID. */
+    void apply(Machine m, String id) {
+        int k = find(id);
+        if (k < 0) {
+            throw error("no key %s in the key sheet", id);
+        }
+        apply(m, k);
+    }
+
+    /** Return the key ID written TEXT: a number, or a date as
+     *  YYYY-MM-DD, giving its epoch day. */
+    static long id(String text) {
+        try {
+            if (text.indexOf('-', 1) > 0) {
+                return LocalDate.parse(text).toEpochDay();
+            }
+            return Long.parseLong(text);
+        } catch (DateTimeParseException | NumberFormatException excp) {
+            throw error("bad key ID: %s", text);
+        }
+    }
+
+    /** Return the first index slot to probe for ID, among CAPACITY. */
+    private static int slot(long id, int capacity) {
+        long h = id * HASH_MULTIPLIER;
+        return (int) (h ^ (h >>> 32)) & (capacity - 1);
+    }
+
+    /** Return the number of bytes in a key for SLOTS slots and an
+     *  alphabet of N characters. */
+    private static int keySize(int slots, int n) {
+        return pad(Long.BYTES + slots + 2 * (slots - 1) + n);
+    }
+
+    /** Return N rounded up to a multiple of 8. */
+    private static int pad(int n) {
+        return (n + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    /** First int of a key sheet: "EKEY". */
+    private static final int MAGIC = 0x454b4559;
+
+    /** Key sheet format version. */
+    private static final int VERSION = 2;
+
+    /** Header field positions, in ints. */
+    private static final int SIZE_FIELD = 2, SLOTS_FIELD = 3,
+        COUNT_FIELD = 4, CAPACITY_FIELD = 5, NAMES_FIELD = 6;
+
+    /** Bytes in the header, padded to a multiple of 8. */
+    private static final int HEADER_BYTES = 8 * Integer.BYTES;
+
+    /** Bytes in an index entry. */
+    private static final int INDEX_ENTRY = 16;
+
+    /** Odd multiplier mixing the bits of key IDs. */
+    private static final long HASH_MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    /** Number of byte values. */
+    private static final int BYTE_VALUES = 256;
+
+    /** Mask selecting the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** The underlying heap or mapped buffer. */
+    private final ByteBuffer _buffer;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Rotor slots. */
+    private final int _slots;
+
+    /** Number of keys. */
+    private final int _count;
+
+    /** Entries in the index, a power of two. */
+    private final int _capacity;
+
+    /** Offset of the index. */
+    private final int _index;
+
+    /** Offset of the first key. */
+    private final int _first;
+
+    /** Bytes per key. */
+    private final int _keySize;
+
+    /** Rotor names, by number. */
+    private final String[] _names;
+}
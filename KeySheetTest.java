@@ -0,0 +1,77 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySheet class.
+ *  @author Vineet Vashist
+ */
+public class KeySheetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void appliesKeys() throws Exception {
+        Random rand = new Random(40);
+        ArrayList<String> lines = new ArrayList<>();
+        ArrayList<String[]> keys = new ArrayList<>();
+        LocalDate day = LocalDate.of(1942, 1, 1);
+        lines.add("# daily keys");
+        for (int i = 0; i < 500; i += 1) {
+            String[] key = randomKey(rand);
+            keys.add(key);
+            lines.add(day.plusDays(i) + " " + settingsLine(key));
+        }
+        lines.add("");
+        lines.add("7 * C Gamma VI VII VIII ZZZZ AQBM (AB)");
+
+        Path file = Files.createTempFile("keys", ".sheet");
+        KeySheet.build(navalCatalog(), lines).write(file);
+        Machine m = navalCatalog();
+        KeySheet sheet = KeySheet.map(file, m);
+        assertEquals(501, sheet.size());
+        for (int i = 0; i < keys.size(); i += 1) {
+            String id = day.plusDays(i).toString();
+            int k = sheet.find(id);
+            assertEquals(day.plusDays(i).toEpochDay(), sheet.id(k));
+            sheet.apply(m, id);
+            String msg = randomMessage(rand, 100);
+            assertEquals(id, machineFor(keys.get(i)).convert(msg),
+                         m.convert(msg));
+        }
+        Machine expected = navalCatalog();
+        Main.setUp(expected, "* C Gamma VI VII VIII ZZZZ AQBM (AB)");
+        Main.setUp(m, "* @7", sheet);
+        String msg = randomMessage(rand, 100);
+        assertEquals(expected.convert(msg), m.convert(msg));
+        assertEquals(-1, sheet.find(8));
+        assertEquals(-1, sheet.find("1941-12-31"));
+    }
+
+    @Test
+    public void rejectsDuplicates() {
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add("1 * B Beta I II III AAAA");
+        lines.add("1 * B Beta I II III AAAB");
+        try {
+            KeySheet.build(navalCatalog(), lines);
+            fail("duplicate key accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("twice"));
+        }
+    }
+}
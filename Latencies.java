@@ -0,0 +1,96 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A histogram of durations, in nanoseconds, that may be added to from
+ *  many threads at once without locking.  Durations are counted in
+ *  buckets whose width is 1/SUB_BUCKETS of their power of two, so
+ *  percentiles are reported to within about 6%.
+ *  @author Vineet Vashist
+ */
+class Latencies {
+
+    /** Count one duration of NANOS nanoseconds. */
+    void record(long nanos) {
+        _counts.incrementAndGet(bucket(Math.max(nanos, 0)));
+    }
+
+    /** Return the number of durations counted. */
+    long count() {
+        long total = 0;
+        for (int i = 0; i < _counts.length(); i += 1) {
+            total += _counts.get(i);
+        }
+        return total;
+    }
+
+    /** Return an upper bound on the duration, in nanoseconds, below which
+     *  fall the fraction P of those counted, or 0 if there are none. */
+    long percentile(double p) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int i = 0; i < _counts.length(); i += 1) {
+            seen += _counts.get(i);
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(_counts.length() - 1);
+    }
+
+    /** Return a summary of the counts, with times in microseconds. */
+    String summary() {
+        return summary("requests");
+    }
+
+    /** Return a summary of the counts, calling what was timed ITEMS. */
+    String summary(String items) {
+        return String.format("%d %s, p50 %.1f us, p99 %.1f us",
+                             count(), items,
+                             percentile(P50) / NANOS_PER_MICRO,
+                             percentile(P99) / NANOS_PER_MICRO);
+    }
+
+    /** Return the bucket counting NANOS. */
+    private static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int power = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (power - SUB_BITS)) - SUB_BUCKETS;
+        return (power - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** Return the largest duration counted in bucket I. */
+    private static long upperBound(int i) {
+        if (i < SUB_BUCKETS) {
+            return i;
+        }
+        int power = i / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = i % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << (power - SUB_BITS)) - 1;
+    }
+
+    /** Log2 of the number of buckets per power of two. */
+    private static final int SUB_BITS = 4;
+
+    /** Number of buckets per power of two. */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** Fraction for the median. */
+    static final double P50 = 0.50;
+
+    /** Fraction for the 99th percentile. */
+    static final double P99 = 0.99;
+
+    /** Nanoseconds per microsecond. */
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    /** Counts per bucket, covering every non-negative long. */
+    private final AtomicLongArray _counts =
+        new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+}
@@ -0,0 +1,154 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import static enigma.EnigmaException.*;
+
+/** A reader of text lines that knows exactly how many bytes of its
+ *  input it has consumed, so that a position between two lines can be
+ *  recorded and later sought to.  Lines end at \n, \r\n or \r, as for
+ *  Scanner.nextLine.
+ *  @author Vineet Vashist
+ */
+class LineReader {
+
+    /** A reader of the lines of IN, decoded with CHARSET. */
+    LineReader(InputStream in, Charset charset) {
+        _in = in;
+        _charset = charset;
+    }
+
+    /** A reader of the lines of IN in the default charset. */
+    LineReader(InputStream in) {
+        this(in, Charset.defaultCharset());
+    }
+
+    /** Return true iff there is another line of input. */
+    boolean hasNextLine() {
+        return fill();
+    }
+
+    /** Return the next line of input, without its terminator. */
+    String nextLine() {
+        int length = nextLineBytes();
+        return new String(_line, 0, length, _charset);
+    }
+
+    /** Read the next line of input, without its terminator, into
+     *  lineBytes(), and return its length in bytes. */
+    int nextLineBytes() {
+        if (!fill()) {
+            throw new NoSuchElementException("No line found");
+        }
+        int length = 0;
+        while (fill()) {
+            byte b = _buf[_pos];
+            _pos += 1;
+            _offset += 1;
+            if (b == '\n') {
+                break;
+            } else if (b == '\r') {
+                if (fill() && _buf[_pos] == '\n') {
+                    _pos += 1;
+                    _offset += 1;
+                }
+                break;
+            }
+            if (length == _line.length) {
+                _line = Arrays.copyOf(_line, 2 * length);
+            }
+            _line[length] = b;
+            length += 1;
+        }
+        return length;
+    }
+
+    /** Return the buffer holding the line last read by nextLineBytes,
+     *  which is valid until the next line is read. */
+    byte[] lineBytes() {
+        return _line;
+    }
+
+    /** Return the charset of the input. */
+    Charset charset() {
+        return _charset;
+    }
+
+    /** Return the number of bytes consumed so far, which is always at
+     *  the start of a line. */
+    long offset() {
+        return _offset;
+    }
+
+    /** Skip the next N bytes of input, which must end at a line
+     *  boundary. */
+    void skip(long n) {
+        long left = n;
+        try {
+            int buffered = Math.min(_end - _pos, (int) Math.min(left,
+                                                                _buf.length));
+            _pos += buffered;
+            left -= buffered;
+            while (left > 0) {
+                long skipped = _in.skip(left);
+                if (skipped <= 0) {
+                    if (_in.read() < 0) {
+                        throw error("input ends before offset %d", n);
+                    }
+                    skipped = 1;
+                }
+                left -= skipped;
+            }
+        } catch (IOException excp) {
+            throw error("could not skip input: %s", excp.getMessage());
+        }
+        _offset += n;
+    }
+
+    /** Make sure the buffer holds at least one unread byte, returning
+     *  false at end of input. */
+    private boolean fill() {
+        if (_pos < _end) {
+            return true;
+        }
+        try {
+            int n = _in.read(_buf);
+            while (n == 0) {
+                n = _in.read(_buf);
+            }
+            _pos = 0;
+            _end = Math.max(n, 0);
+            return n > 0;
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Size of the read buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Source of bytes. */
+    private final InputStream _in;
+
+    /** Charset of the input. */
+    private final Charset _charset;
+
+    /** Read buffer. */
+    private final byte[] _buf = new byte[BUFFER_SIZE];
+
+    /** Next unread byte in _buf. */
+    private int _pos;
+
+    /** End of the valid bytes in _buf. */
+    private int _end;
+
+    /** Bytes of the line being read. */
+    private byte[] _line = new byte[BUFFER_SIZE];
+
+    /** Bytes consumed so far. */
+    private long _offset;
+}
@@ -1,5 +1,6 @@
 package enigma;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -36,6 +37,30 @@ class Machine {
         }
 
         _allrotors = allRotors;
+        _compiler = new MachineCompiler();
+    }
+
+    /** A new machine configured as ORIGINAL, with copies of its
+     *  available rotors, and sharing its compiler and tables. */
+    private Machine(Machine original) {
+        _alphabet = original._alphabet;
+        _numslot = original._numslot;
+        _pawls = original._pawls;
+        _allrotors = new ArrayList<>();
+        for (Rotor r : original._allrotors) {
+            _allrotors.add(r.copy());
+        }
+        _compiler = original._compiler;
+        _interpreted = original._interpreted;
+        _tables = original._tables;
+    }
+
+    /** Return a new machine with my configuration and its own copies of
+     *  my available rotors, with no rotors inserted.  It shares the
+     *  stacks I have compiled, so it can be set up cheaply, and can be
+     *  used in another thread. */
+    Machine copy() {
+        return new Machine(this);
     }
 
     /** Return the number of rotor slots I have. */
@@ -48,10 +73,30 @@ class Machine {
         return _pawls;
     }
 
+    /** Return the rotor in slot K, where slot 0 holds the reflector.
+     *  Only valid after insertRotors. */
+    Rotor rotor(int k) {
+        syncRotors();
+        return selectedrotors.get(k);
+    }
+
+    /** Return all the rotors available to me. */
+    Collection<Rotor> allRotors() {
+        return _allrotors;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting and ring
+     *  setting. */
     void insertRotors(String[] rotors) {
+        syncRotors();
+        _compiled = null;
         _tempallrotors = _allrotors;
         selectedrotors = new ArrayList<>();
 
@@ -94,6 +139,10 @@ class Machine {
         if (lesscheck != numRotors()) {
             throw new EnigmaException("Unequal number of rotors found.");
         }
+        for (Rotor r : selectedrotors) {
+            r.setRing(0);
+        }
+        compile();
     }
 
     /** Set my rotors according to SETTING, which must be a string of
@@ -101,23 +150,131 @@ class Machine {
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
         int len = numRotors() - 1;
-        if (len != setting.length()) {
+        int[] posn = setting.codePoints().toArray();
+        if (len != posn.length) {
             throw new EnigmaException(" Rotor settings not "
                    + "defined for all the rotors, found : "
-                    + setting.length() + "instead of : " + len);
+                    + posn.length + "instead of : " + len);
         }
 
-        for (int i = 0; i < setting.length(); i++) {
-            char c = setting.charAt(i);
-            if (_alphabet.contains(c)) {
+        for (int i = 0; i < posn.length; i += 1) {
+            int c = _alphabet.indexOf(posn[i]);
+            if (c >= 0) {
                 selectedrotors.get(i + 1).set(c);
+                if (_compiled != null) {
+                    _compiled.positions()[i + 1] =
+                        selectedrotors.get(i + 1).setting();
+                }
+            }
+        }
+        if (_compiled != null) {
+            _compiled.positionsChanged();
+        }
+    }
+
+    /** Set my rotors to SETTING, the indices in my alphabet of the
+     *  settings of the rotors after the reflector, left to right. */
+    void setRotors(int[] setting) {
+        if (setting.length != numRotors() - 1) {
+            throw error("%d rotor settings for %d rotors", setting.length,
+                        numRotors() - 1);
+        }
+        for (int i = 0; i < setting.length; i += 1) {
+            selectedrotors.get(i + 1).set(setting[i]);
+            if (_compiled != null) {
+                _compiled.positions()[i + 1] =
+                    selectedrotors.get(i + 1).setting();
             }
         }
+        if (_compiled != null) {
+            _compiled.positionsChanged();
+        }
+    }
+
+    /** Set the rings of my rotors according to RINGS, a string of
+     *  numRotors()-1 characters in my alphabet, the first for the
+     *  leftmost rotor after the reflector. */
+    void setRings(String rings) {
+        int[] ring = rings.codePoints().toArray();
+        for (int i = 0; i < ring.length; i += 1) {
+            int c = _alphabet.indexOf(ring[i]);
+            if (c < 0) {
+                throw error("ring setting %s is not in the alphabet",
+                            new String(Character.toChars(ring[i])));
+            }
+            ring[i] = c;
+        }
+        setRings(ring);
+    }
+
+    /** Set the rings of my rotors to RINGS, the indices in my alphabet
+     *  of the ring settings of the rotors after the reflector, left to
+     *  right.  The rings are folded into the wirings, so the rotor stack
+     *  is set up again if any of them changes; the positions are
+     *  kept. */
+    void setRings(int[] rings) {
+        if (rings.length != numRotors() - 1) {
+            throw error("%d ring settings for %d rotors", rings.length,
+                        numRotors() - 1);
+        }
+        syncRotors();
+        boolean changed = false;
+        for (int i = 0; i < rings.length; i += 1) {
+            Rotor r = selectedrotors.get(i + 1);
+            int old = r.ring();
+            r.setRing(rings[i]);
+            changed |= r.ring() != old;
+        }
+        if (changed) {
+            _compiled = null;
+            compile();
+        }
+    }
+
+    /** Return the ring settings of my rotors, excluding the reflector,
+     *  in the form taken by setRings. */
+    String rings() {
+        StringBuilder result = new StringBuilder();
+        for (int k = 1; k < numRotors(); k += 1) {
+            result.appendCodePoint(_alphabet.toCodePoint(rotor(k).ring()));
+        }
+        return result.toString();
+    }
+
+    /** Return the current settings of my rotors, excluding the
+     *  reflector, in the form taken by setRotors. */
+    String positions() {
+        StringBuilder result = new StringBuilder();
+        for (int k = 1; k < numRotors(); k += 1) {
+            result.appendCodePoint(_alphabet.toCodePoint(rotor(k).setting()));
+        }
+        return result.toString();
     }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
+        if (_compiled != null) {
+            int[] table = new int[_alphabet.size()];
+            for (int x = 0; x < table.length; x += 1) {
+                table[x] = plugboard.permute(x);
+            }
+            _compiled.setPlugboard(table);
+        }
+    }
+
+    /** Set the plugboard to MAPPING, which takes index K to
+     *  MAPPING[K], and which becomes mine. */
+    void setPlugboard(int[] mapping) {
+        _plugboard = new Permutation(mapping, _alphabet);
+        if (_compiled != null) {
+            _compiled.setPlugboard(mapping);
+        }
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
     }
 
     /** Returns the result of converting the input character C (as an
@@ -129,10 +286,13 @@ class Machine {
      * ACBC  ACCA  AAAB
      * */
     int convert(int c) {
+        if (_compiled != null) {
+            return _compiled.convert(c);
+        }
         int temppawl = _pawls;
         Set<Rotor> advancecheck = new HashSet<>();
 
-        int pos = _plugboard.permute(_plugboard.wrap(c));
+        int pos = _plugboard.permute(c);
 
         for (int i = selectedrotors.size() - 1; i >= 0; i--) {
             Rotor r = selectedrotors.get(i);
@@ -153,38 +313,139 @@ class Machine {
         }
 
         for (int i = selectedrotors.size() - 1; i >= 0; i--) {
-            Rotor r = selectedrotors.get(i);
-            int var = r.permutation().wrap(pos);
-            pos = r.convertForward(var);
+            pos = selectedrotors.get(i).convertForward(pos);
         }
 
         for (int i = 1; i < selectedrotors.size(); i++) {
-            Rotor r = selectedrotors.get(i);
+            pos = selectedrotors.get(i).convertBackward(pos);
+        }
+        return _plugboard.permute(pos);
+    }
+
+    /** Return true iff I run on the Rotor objects rather than on a
+     *  compiled rotor stack. */
+    boolean interpreted() {
+        return _interpreted;
+    }
 
-            int var = r.permutation().wrap(pos);
-            pos = r.convertBackward(var);
+    /** Run on the Rotor objects if INTERPRETED, otherwise compile the
+     *  rotor stack at each insertRotors (see MachineCompiler).  The
+     *  default is compiled unless the system property enigma.interpret
+     *  is true.  Takes effect immediately if rotors are inserted. */
+    void setInterpreted(boolean interpreted) {
+        syncRotors();
+        _interpreted = interpreted;
+        _compiled = null;
+        if (selectedrotors != null) {
+            compile();
         }
-        int result =  _plugboard.permute(_plugboard.wrap(pos));
+    }
+
+    /** Run on TABLES, which must hold the wirings of all my available
+     *  rotors, instead of compiling or interpreting, or stop doing so if
+     *  TABLES is null.  Takes effect immediately if rotors are
+     *  inserted. */
+    void setTables(OffHeapTables tables) {
+        syncRotors();
+        _tables = tables;
+        _compiled = null;
+        if (selectedrotors != null) {
+            compile();
+        }
+    }
+
+    /** Set up the engine for the rotors just inserted: off-heap tables
+     *  if I have them, else, unless I am interpreted, a CarryMachine for
+     *  a stack of more than CARRY_SLOTS slots or a compiled stack. */
+    private void compile() {
+        if (_tables != null) {
+            _compiled = new OffHeapMachine(this, _tables);
+        } else if (!_interpreted && selectedrotors.size() > CARRY_SLOTS) {
+            _compiled = new CarryMachine(new RotorTables(this));
+        } else if (!_interpreted) {
+            String[] names = new String[selectedrotors.size()];
+            for (int i = 0; i < names.length; i += 1) {
+                names[i] = selectedrotors.get(i).name();
+            }
+            _compiled = _compiler.compile(this, String.join(" ", names));
+        }
+    }
 
-        return result;
+    /** Bring the settings of my Rotor objects up to date with the
+     *  compiled rotor stack, if there is one. */
+    private void syncRotors() {
+        if (_compiled != null) {
+            int[] posn = _compiled.positions();
+            for (int k = 1; k < posn.length; k += 1) {
+                selectedrotors.get(k).set(posn[k]);
+            }
+        }
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
+        int[] symbols = new int[msg.length()];
+        int n = _alphabet.toIndices(msg, symbols);
+        convert(symbols, 0, n);
+        return _alphabet.toString(symbols, 0, n);
+    }
 
-        String inmsg = msg;
-        String result = "";
-
-        for (int i = 0; i < inmsg.length(); i++) {
-            int intpos = _alphabet.toInt(inmsg.charAt(i));
-            int p = convert(intpos);
-            result += _alphabet.toChar(p);
+    /** Convert SYMBOLS[FROM..TO-1] in place, updating the state of the
+     *  rotors.  Each symbol must already be an index in my alphabet; the
+     *  engine does not check them. */
+    void convert(int[] symbols, int from, int to) {
+        if (_compiled != null) {
+            _compiled.convert(symbols, from, to);
+        } else {
+            for (int i = from; i < to; i += 1) {
+                symbols[i] = convert(symbols[i]);
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.characters(to - from);
         }
+    }
 
-        return result;
+    /** Convert the bytes remaining in IN, each the index of a character
+     *  in my alphabet, putting the results into OUT and updating the
+     *  state of the rotors.  IN and OUT may be the same buffer, for
+     *  conversion in place.  Both positions advance by the number of
+     *  bytes converted. */
+    void convert(ByteBuffer in, ByteBuffer out) {
+        int n = in.remaining();
+        if (out.remaining() < n) {
+            throw error("output buffer too small: %d bytes for %d",
+                        out.remaining(), n);
+        }
+        int size = _alphabet.size();
+        int from = in.position(), to = out.position();
+        if (size < Alphabet.BYTE_VALUES) {
+            for (int i = 0; i < n; i += 1) {
+                int c = in.get(from + i) & BYTE_MASK;
+                if (c >= size) {
+                    throw error("byte %d at offset %d is not in the "
+                                + "alphabet", c, i);
+                }
+            }
+        }
+        for (int i = 0; i < n; i += 1) {
+            out.put(to + i, (byte) convert(in.get(from + i) & BYTE_MASK));
+        }
+        in.position(from + n);
+        out.position(to + n);
+        if (Metrics.ENABLED) {
+            Metrics.characters(n);
+        }
     }
 
+    /** Largest number of slots whose stack is compiled rather than run
+     *  by a CarryMachine. */
+    static final int CARRY_SLOTS = 8;
+
+    /** Mask selecting the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
@@ -206,4 +467,20 @@ class Machine {
     /** Setting up the machines Plugboard. */
     private Permutation _plugboard;
 
+    /** True iff the compiled rotor stack is disabled by default. */
+    private static final boolean INTERPRETED =
+        Boolean.getBoolean("enigma.interpret");
+
+    /** True iff I run on the Rotor objects. */
+    private boolean _interpreted = INTERPRETED;
+
+    /** Compiler for my rotor selections. */
+    private final MachineCompiler _compiler;
+
+    /** Off-heap tables to run on, or null. */
+    private OffHeapTables _tables;
+
+    /** The compiled rotor stack in use, or null when interpreted. */
+    private CompiledMachine _compiled;
+
 }
@@ -0,0 +1,806 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import static enigma.EnigmaException.*;
+
+/** Compiles the rotor stack of a Machine into a hidden class whose
+ *  convert methods are unrolled for that exact number of rotors and
+ *  pawls.  The notch tables of the selected rotors become static final
+ *  fields of the generated class (handed over as class data), and the
+ *  wirings, with the ring settings folded in, final fields of each
+ *  engine, so one class serves a rotor selection at every ring
+ *  setting.  Both convert methods read the wirings, positions and
+ *  plugboard into locals once per call; the batch convert keeps the
+ *  settings there from the first character to the last.  Compiled
+ *  classes are cached by rotor selection, up to CACHE_SIZE of them.
+ *  @author Vineet Vashist
+ */
+class MachineCompiler {
+
+    /** Return an engine for the rotors currently inserted in M, whose
+     *  selection (the rotor names, but not their rings) is named KEY,
+     *  with its wirings and positions taken from M.  Returns
+     *  null if the stack is too large to compile, in which case M should
+     *  stay interpreted.  May be called from several threads. */
+    CompiledMachine compile(Machine m, String key) {
+        int slots = m.numRotors();
+        if (slots > MAX_SLOTS) {
+            return null;
+        }
+        MethodHandle ctor;
+        int[][] wirings = new int[2 * slots][];
+        synchronized (this) {
+            ctor = _cache.get(key);
+            if (ctor == null) {
+                ctor = define(new RotorTables(m));
+                if (ctor == null) {
+                    return null;
+                }
+                _cache.put(key, ctor);
+            }
+            for (int k = 0; k < slots; k += 1) {
+                int[][] doubled = doubled(m.rotor(k).permutation());
+                wirings[2 * k] = doubled[0];
+                wirings[2 * k + 1] = doubled[1];
+            }
+        }
+        int[] posn = new int[slots];
+        for (int k = 0; k < slots; k += 1) {
+            posn[k] = m.rotor(k).setting();
+        }
+        int[] plugboard = new int[m.alphabet().size()];
+        for (int x = 0; x < plugboard.length; x += 1) {
+            plugboard[x] =
+                m.plugboard() == null ? x : m.plugboard().permute(x);
+        }
+        try {
+            CompiledMachine result =
+                (CompiledMachine) ctor.invokeExact(posn, wirings);
+            result.setPlugboard(plugboard);
+            return result;
+        } catch (Throwable excp) {
+            throw error("could not instantiate compiled machine: %s", excp);
+        }
+    }
+
+    /** Return {forward, backward}, the wiring of PERM and its inverse,
+     *  each repeated twice so that an entry offset by a setting needs no
+     *  wrapping.  The tables are made once per permutation, which
+     *  Permutation.rotated shares among rotors at the same ring
+     *  setting. */
+    private int[][] doubled(Permutation perm) {
+        int[][] result = _doubled.get(perm);
+        if (result == null) {
+            int n = perm.size();
+            result = new int[2][2 * n];
+            for (int x = 0; x < n; x += 1) {
+                result[0][x] = result[0][x + n] = perm.permute(x);
+                result[1][x] = result[1][x + n] = perm.invert(x);
+            }
+            _doubled.put(perm, result);
+        }
+        return result;
+    }
+
+    /** Return a constructor, taking the initial positions and the
+     *  doubled wirings (see doubled) forward and backward for each slot
+     *  in turn, for a hidden class specialized to TABLES, or null if its
+     *  code would be too large. */
+    private MethodHandle define(RotorTables tables) {
+        ArrayList<Object> data = new ArrayList<>();
+        byte[] bytes = new Generator(tables, data).generate();
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            MethodHandles.Lookup hidden = MethodHandles.lookup()
+                .defineHiddenClassWithClassData(bytes, data.toArray(), true);
+            return hidden.findConstructor(hidden.lookupClass(),
+                MethodType.methodType(void.class, int[].class,
+                                      int[][].class))
+                .asType(MethodType.methodType(CompiledMachine.class,
+                                              int[].class, int[][].class));
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            throw error("could not define compiled machine: %s", excp);
+        }
+    }
+
+    /** Writes the class file for one rotor selection. */
+    private static class Generator {
+
+        /** A generator for TABLES that appends the values of the
+         *  generated notch fields, in slot order, to DATA. */
+        Generator(RotorTables tables, ArrayList<Object> data) {
+            _t = tables;
+            _data = data;
+            _size = tables.size();
+            _last = tables.numRotors() - 1;
+        }
+
+        /** Return the class file, or null if convert would be too
+         *  long. */
+        byte[] generate() {
+            int thisClass = _pool.classRef(NAME);
+            int superClass = _pool.classRef(BASE);
+            ArrayList<int[]> fields = new ArrayList<>();
+            for (int k = 0; k <= _last; k += 1) {
+                fields.add(new int[] {ACC_PRIVATE | ACC_FINAL,
+                                      _pool.utf8("F" + k), _pool.utf8("[I")});
+                fields.add(new int[] {ACC_PRIVATE | ACC_FINAL,
+                                      _pool.utf8("B" + k), _pool.utf8("[I")});
+                _data.add(_t.notch(k));
+                fields.add(new int[] {ACC_PRIVATE | ACC_STATIC | ACC_FINAL,
+                                      _pool.utf8("N" + k), _pool.utf8("[Z")});
+            }
+            byte[] init = init();
+            byte[] clinit = clinit();
+            byte[] convert = convert();
+            byte[] batch = batch();
+            if (batch.length > MAX_CODE) {
+                return null;
+            }
+            int code = _pool.utf8("Code");
+            int[] initSig = {_pool.utf8("<init>"), _pool.utf8(INIT)};
+            int[] clinitSig = {_pool.utf8("<clinit>"), _pool.utf8("()V")};
+            int[] convertSig = {_pool.utf8("convert"), _pool.utf8("(I)I")};
+            int[] batchSig = {_pool.utf8("convert"), _pool.utf8("([III)V")};
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(MAGIC);
+                out.writeShort(0);
+                out.writeShort(CLASS_VERSION);
+                _pool.write(out);
+                out.writeShort(ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC);
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(0);
+                out.writeShort(fields.size());
+                for (int[] f : fields) {
+                    out.writeShort(f[0]);
+                    out.writeShort(f[1]);
+                    out.writeShort(f[2]);
+                    out.writeShort(0);
+                }
+                out.writeShort(4);
+                method(out, 0, initSig, code, 3, 3, init);
+                method(out, ACC_STATIC, clinitSig, code, 3, 1, clinit);
+                method(out, 0, convertSig, code, MAX_STACK,
+                       wiring(CONVERT_LOCALS, 'B', _last) + 1, convert);
+                method(out, 0, batchSig, code, MAX_STACK + BATCH_STACK,
+                       wiring(BATCH_LOCALS, 'B', _last) + 1, batch);
+                out.writeShort(0);
+            } catch (IOException excp) {
+                throw error("could not write compiled machine: %s", excp);
+            }
+            return bytes.toByteArray();
+        }
+
+        /** Write to OUT a method with access FLAGS, name and descriptor
+         *  indices SIG, Code attribute name index CODEATTR, and the given
+         *  MAXSTACK, MAXLOCALS and CODE. */
+        private void method(DataOutputStream out, int flags, int[] sig,
+                            int codeAttr, int maxStack, int maxLocals,
+                            byte[] code) throws IOException {
+            out.writeShort(flags);
+            out.writeShort(sig[0]);
+            out.writeShort(sig[1]);
+            out.writeShort(1);
+            out.writeShort(codeAttr);
+            out.writeInt(code.length + CODE_OVERHEAD);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+
+        /** Return the code of the constructor, which passes the
+         *  positions up to CompiledMachine and stores the wirings, given
+         *  forward and backward for each slot in turn, in the wiring
+         *  fields. */
+        private byte[] init() {
+            Code c = new Code(_pool);
+            c.op(ALOAD_0);
+            c.op(ALOAD_1);
+            c.op(INVOKESPECIAL);
+            c.u2(_pool.methodRef(BASE, "<init>", "([I)V"));
+            for (int i = 0; i < 2 * (_last + 1); i += 1) {
+                String name = "FB".charAt(i % 2) + Integer.toString(i / 2);
+                c.op(ALOAD_0);
+                c.aload(2);
+                c.pushInt(i);
+                c.op(AALOAD);
+                c.op(PUTFIELD);
+                c.u2(_pool.fieldRef(NAME, name, "[I"));
+            }
+            c.op(RETURN);
+            return c.bytes();
+        }
+
+        /** Return the code of the static initializer, which unpacks the
+         *  class data into the notch fields. */
+        private byte[] clinit() {
+            Code c = new Code(_pool);
+            c.op(INVOKESTATIC);
+            c.u2(_pool.methodRef("java/lang/invoke/MethodHandles", "lookup",
+                                 "()Ljava/lang/invoke/MethodHandles$Lookup;"));
+            c.ldc(_pool.string("_"));
+            c.ldc(_pool.classRef("[Ljava/lang/Object;"));
+            c.op(INVOKESTATIC);
+            c.u2(_pool.methodRef("java/lang/invoke/MethodHandles",
+                                 "classData",
+                                 "(Ljava/lang/invoke/MethodHandles$Lookup;"
+                                 + "Ljava/lang/String;Ljava/lang/Class;)"
+                                 + "Ljava/lang/Object;"));
+            c.op(CHECKCAST);
+            c.u2(_pool.classRef("[Ljava/lang/Object;"));
+            c.op(ASTORE_0);
+            for (int k = 0; k < _data.size(); k += 1) {
+                c.op(ALOAD_0);
+                c.pushInt(k);
+                c.op(AALOAD);
+                c.op(CHECKCAST);
+                c.u2(_pool.classRef("[Z"));
+                c.op(PUTSTATIC);
+                c.u2(_pool.fieldRef(NAME, "N" + k, "[Z"));
+            }
+            c.op(RETURN);
+            return c.bytes();
+        }
+
+        /** Push the notch table of slot K. */
+        private void notch(Code c, int k) {
+            c.op(GETSTATIC);
+            c.u2(_pool.fieldRef(NAME, "N" + k, "[Z"));
+        }
+
+        /** Return the local variable holding the setting of slot K in a
+         *  method whose own locals end at BASE (see load). */
+        private int posn(int base, int k) {
+            return base + 2 + k - 1;
+        }
+
+        /** Return the local variable holding the wiring with PREFIX (F
+         *  or B) of slot K in a method whose own locals end at BASE (see
+         *  load). */
+        private int wiring(int base, char prefix, int k) {
+            return posn(base, _last) + 1 + 2 * k + (prefix == 'B' ? 1 : 0);
+        }
+
+        /** Return the code of convert(int): load the settings, convert
+         *  the argument and store back the settings that can have
+         *  moved. */
+        private byte[] convert() {
+            Code c = new Code(_pool);
+            load(c, CONVERT_LOCALS);
+            c.iload(1);
+            character(c, CONVERT_LOCALS);
+            store(c, CONVERT_LOCALS);
+            c.op(IRETURN);
+            return c.bytes();
+        }
+
+        /** Return the code of convert(int[] symbols, int from, int to),
+         *  which converts symbols[from..to-1] in place, loading the
+         *  settings before the loop and storing them after it. */
+        private byte[] batch() {
+            Code c = new Code(_pool);
+            load(c, BATCH_LOCALS);
+            Label loop = new Label(), test = new Label();
+            c.jump(GOTO, test);
+            c.mark(loop);
+            c.op(ALOAD_1);
+            c.iload(2);
+            c.op(ALOAD_1);
+            c.iload(2);
+            c.op(IALOAD);
+            character(c, BATCH_LOCALS);
+            c.op(IASTORE);
+            c.iinc(2, 1);
+            c.mark(test);
+            c.iload(2);
+            c.iload(3);
+            c.jump(IF_ICMPLT, loop);
+            store(c, BATCH_LOCALS);
+            c.op(RETURN);
+            return c.bytes();
+        }
+
+        /** Emit to C the loading of the positions and plugboard arrays into
+         *  locals BASE and BASE + 1, of the settings into the locals after
+         *  them, and of the wirings used into the locals after those. */
+        private void load(Code c, int base) {
+            c.op(ALOAD_0);
+            c.op(GETFIELD);
+            c.u2(_pool.fieldRef(BASE, "_posn", "[I"));
+            c.astore(base);
+            c.op(ALOAD_0);
+            c.op(GETFIELD);
+            c.u2(_pool.fieldRef(BASE, "_plug", "[I"));
+            c.astore(base + 1);
+            for (int k = 1; k <= _last; k += 1) {
+                c.aload(base);
+                c.pushInt(k);
+                c.op(IALOAD);
+                c.istore(posn(base, k));
+            }
+            loadWiring(c, base, 'F', 0);
+            for (int k = 1; k <= _last; k += 1) {
+                loadWiring(c, base, 'F', k);
+                loadWiring(c, base, 'B', k);
+            }
+        }
+
+        /** Emit to C the loading of the wiring field with PREFIX (F or B)
+         *  of slot K into its local (see wiring). */
+        private void loadWiring(Code c, int base, char prefix, int k) {
+            c.op(ALOAD_0);
+            c.op(GETFIELD);
+            c.u2(_pool.fieldRef(NAME, prefix + Integer.toString(k), "[I"));
+            c.astore(wiring(base, prefix, k));
+        }
+
+        /** Emit to C the conversion of the character on top of the stack:
+         *  step the pawled rotors and route the signal through the
+         *  unrolled stack, using the locals loaded at BASE. */
+        private void character(Code c, int base) {
+            for (int k = 1; k <= _last; k += 1) {
+                step(c, base, k);
+            }
+
+            c.aload(base + 1);
+            c.op(SWAP);
+            c.op(IALOAD);
+            for (int k = _last; k >= 1; k -= 1) {
+                through(c, base, 'F', k);
+            }
+            c.aload(wiring(base, 'F', 0));
+            c.op(SWAP);
+            c.op(IALOAD);
+            for (int k = 1; k <= _last; k += 1) {
+                through(c, base, 'B', k);
+            }
+            c.aload(base + 1);
+            c.op(SWAP);
+            c.op(IALOAD);
+        }
+
+        /** Emit to C the storing back of the settings, loaded at BASE,
+         *  that can have moved. */
+        private void store(Code c, int base) {
+            for (int k = 1; k <= _last; k += 1) {
+                if (_t.pawled(k) || _t.pawled(k - 1)) {
+                    c.aload(base);
+                    c.pushInt(k);
+                    c.iload(posn(base, k));
+                    c.op(IASTORE);
+                }
+            }
+        }
+
+        /** Emit to C the stepping test and advance of slot K, following
+         *  RotorTables.step, using the locals loaded at BASE. */
+        private void step(Code c, int base, int k) {
+            boolean always = _t.pawled(k) && k == _last;
+            boolean testRight = _t.pawled(k) && k != _last;
+            boolean testSelf = _t.pawled(k - 1);
+            if (!always && !testRight && !testSelf) {
+                return;
+            }
+            Label advance = new Label(), skip = new Label();
+            if (!always) {
+                if (testRight) {
+                    notch(c, k + 1);
+                    c.iload(posn(base, k + 1));
+                    c.op(BALOAD);
+                    c.jump(IFNE, advance);
+                }
+                if (testSelf) {
+                    notch(c, k);
+                    c.iload(posn(base, k));
+                    c.op(BALOAD);
+                    c.jump(IFNE, advance);
+                }
+                c.jump(GOTO, skip);
+            }
+            c.mark(advance);
+            c.iinc(posn(base, k), 1);
+            c.iload(posn(base, k));
+            c.pushInt(_size);
+            c.jump(IF_ICMPLT, skip);
+            c.op(ICONST_0);
+            c.istore(posn(base, k));
+            c.mark(skip);
+        }
+
+        /** Emit to C the passage of the signal on top of the stack through
+         *  the doubled table with PREFIX (F or B) of slot K at its current
+         *  setting, wrapping the result without a branch, using the
+         *  locals loaded at BASE. */
+        private void through(Code c, int base, char prefix, int k) {
+            c.aload(wiring(base, prefix, k));
+            c.op(SWAP);
+            c.iload(posn(base, k));
+            c.op(IADD);
+            c.op(IALOAD);
+            c.iload(posn(base, k));
+            c.op(ISUB);
+            c.op(DUP);
+            c.pushInt(SIGN_SHIFT);
+            c.op(ISHR);
+            c.pushInt(_size);
+            c.op(IAND);
+            c.op(IADD);
+        }
+
+        /** The rotor stack being compiled. */
+        private final RotorTables _t;
+
+        /** Values of the generated notch fields, in slot order. */
+        private final ArrayList<Object> _data;
+
+        /** Alphabet size. */
+        private final int _size;
+
+        /** Index of the rightmost slot. */
+        private final int _last;
+
+        /** Constant pool being built. */
+        private final Pool _pool = new Pool();
+    }
+
+    /** A class file constant pool. */
+    private static class Pool {
+
+        /** Return the index of the UTF8 constant S. */
+        int utf8(String s) {
+            return entry("U" + s, out -> {
+                out.writeByte(CONSTANT_UTF8);
+                out.writeUTF(s);
+            }, 1);
+        }
+
+        /** Return the index of the class constant for internal NAME. */
+        int classRef(String name) {
+            int n = utf8(name);
+            return entry("C" + name, out -> {
+                out.writeByte(CONSTANT_CLASS);
+                out.writeShort(n);
+            }, 1);
+        }
+
+        /** Return the index of the string constant S. */
+        int string(String s) {
+            int n = utf8(s);
+            return entry("S" + s, out -> {
+                out.writeByte(CONSTANT_STRING);
+                out.writeShort(n);
+            }, 1);
+        }
+
+        /** Return the index of the integer constant V. */
+        int integer(int v) {
+            return entry("I" + v, out -> {
+                out.writeByte(CONSTANT_INTEGER);
+                out.writeInt(v);
+            }, 1);
+        }
+
+        /** Return the index of the field reference OWNER.NAME:DESC. */
+        int fieldRef(String owner, String name, String desc) {
+            return memberRef(CONSTANT_FIELDREF, owner, name, desc);
+        }
+
+        /** Return the index of the method reference OWNER.NAME:DESC. */
+        int methodRef(String owner, String name, String desc) {
+            return memberRef(CONSTANT_METHODREF, owner, name, desc);
+        }
+
+        /** Return the index of a member reference with constant TAG to
+         *  OWNER.NAME:DESC. */
+        private int memberRef(int tag, String owner, String name,
+                              String desc) {
+            int cls = classRef(owner);
+            int n = utf8(name), d = utf8(desc);
+            int nat = entry("N" + name + ":" + desc, out -> {
+                out.writeByte(CONSTANT_NAME_AND_TYPE);
+                out.writeShort(n);
+                out.writeShort(d);
+            }, 1);
+            return entry("M" + tag + owner + "." + name + ":" + desc,
+                out -> {
+                    out.writeByte(tag);
+                    out.writeShort(cls);
+                    out.writeShort(nat);
+                }, 1);
+        }
+
+        /** Return the index of the entry identified by KEY, adding it
+         *  with writer BODY and WIDTH slots if it is new. */
+        private int entry(String key, Entry body, int width) {
+            Integer index = _index.get(key);
+            if (index == null) {
+                index = _next;
+                _next += width;
+                _index.put(key, index);
+                _entries.add(body);
+            }
+            return index;
+        }
+
+        /** Write the constant pool count and entries to OUT. */
+        void write(DataOutputStream out) throws IOException {
+            out.writeShort(_next);
+            for (Entry e : _entries) {
+                e.write(out);
+            }
+        }
+
+        /** Writes one constant pool entry. */
+        private interface Entry {
+            /** Write me to OUT. */
+            void write(DataOutputStream out) throws IOException;
+        }
+
+        /** Index of each entry by identifying key. */
+        private final HashMap<String, Integer> _index = new HashMap<>();
+
+        /** Entry writers in pool order. */
+        private final ArrayList<Entry> _entries = new ArrayList<>();
+
+        /** Next free pool index. */
+        private int _next = 1;
+    }
+
+    /** A branch target within a Code. */
+    private static class Label {
+        /** Offset of this label, or -1 if not yet marked. */
+        private int _pos = -1;
+        /** Offsets of the branch instructions that jump here. */
+        private final ArrayList<Integer> _uses = new ArrayList<>();
+    }
+
+    /** A method body under construction. */
+    private static class Code {
+
+        /** A method body whose constants go in POOL. */
+        Code(Pool pool) {
+            _pool = pool;
+        }
+
+        /** Append opcode OP. */
+        void op(int op) {
+            _out.write(op);
+        }
+
+        /** Append the unsigned 16-bit value V. */
+        void u2(int v) {
+            _out.write(v >> BYTE);
+            _out.write(v);
+        }
+
+        /** Push the int constant V. */
+        void pushInt(int v) {
+            if (v >= -1 && v <= ICONST_MAX) {
+                op(ICONST_0 + v);
+            } else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+                op(BIPUSH);
+                _out.write(v);
+            } else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+                op(SIPUSH);
+                u2(v);
+            } else {
+                ldc(_pool.integer(v));
+            }
+        }
+
+        /** Load the constant at pool INDEX. */
+        void ldc(int index) {
+            op(LDC_W);
+            u2(index);
+        }
+
+        /** Emit the local variable instruction OP on INDEX. */
+        private void local(int op, int index) {
+            if (index > MAX_NARROW_LOCAL) {
+                op(WIDE);
+                op(op);
+                u2(index);
+            } else {
+                op(op);
+                _out.write(index);
+            }
+        }
+
+        /** Load int local INDEX. */
+        void iload(int index) {
+            local(ILOAD, index);
+        }
+
+        /** Store int local INDEX. */
+        void istore(int index) {
+            local(ISTORE, index);
+        }
+
+        /** Load reference local INDEX. */
+        void aload(int index) {
+            local(ALOAD, index);
+        }
+
+        /** Store reference local INDEX. */
+        void astore(int index) {
+            local(ASTORE, index);
+        }
+
+        /** Add DELTA to int local INDEX. */
+        void iinc(int index, int delta) {
+            if (index > MAX_NARROW_LOCAL) {
+                op(WIDE);
+                op(IINC);
+                u2(index);
+                u2(delta);
+            } else {
+                op(IINC);
+                _out.write(index);
+                _out.write(delta);
+            }
+        }
+
+        /** Emit branch OP to TARGET. */
+        void jump(int op, Label target) {
+            target._uses.add(_out.size());
+            op(op);
+            u2(0);
+        }
+
+        /** Place TARGET at the current offset. */
+        void mark(Label target) {
+            target._pos = _out.size();
+            _labels.add(target);
+        }
+
+        /** Return the finished code with all branches resolved. */
+        byte[] bytes() {
+            byte[] code = _out.toByteArray();
+            for (Label l : _labels) {
+                for (int at : l._uses) {
+                    int delta = l._pos - at;
+                    code[at + 1] = (byte) (delta >> BYTE);
+                    code[at + 2] = (byte) delta;
+                }
+            }
+            return code;
+        }
+
+        /** Bytes emitted so far. */
+        private final ByteArrayOutputStream _out =
+            new ByteArrayOutputStream();
+
+        /** Labels that have been marked. */
+        private final ArrayList<Label> _labels = new ArrayList<>();
+
+        /** Constant pool of the class being written. */
+        private final Pool _pool;
+    }
+
+    /** Largest number of slots that is compiled. */
+    static final int MAX_SLOTS = 256;
+
+    /** Compiled constructors by rotor selection, least recently used
+     *  first.  Beyond CACHE_SIZE the least recently used is dropped,
+     *  and its hidden class, which nothing else holds once its engines
+     *  are gone, can be unloaded. */
+    private final Cache _cache = new Cache();
+
+    /** A map from rotor selection to compiled constructor that keeps
+     *  only the CACHE_SIZE most recently used. */
+    private static final class Cache
+        extends LinkedHashMap<String, MethodHandle> {
+        /** An empty cache. */
+        Cache() {
+            super(INITIAL_CAPACITY, LOAD_FACTOR, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,
+                                            MethodHandle> eldest) {
+            return size() > CACHE_SIZE;
+        }
+
+        /** For serialization. */
+        private static final long serialVersionUID = 1L;
+    }
+
+    /** Largest number of compiled classes cached. */
+    static final int CACHE_SIZE = 256;
+
+    /** Initial capacity of the cache. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Load factor of the cache. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** Doubled wirings by permutation; see doubled. */
+    private final WeakHashMap<Permutation, int[][]> _doubled =
+        new WeakHashMap<>();
+
+    /** Descriptor of the generated constructor. */
+    private static final String INIT = "([I[[I)V";
+
+    /** Internal name of the generated class. */
+    private static final String NAME = "enigma/CompiledMachine$Stack";
+
+    /** Internal name of the generated class's superclass. */
+    private static final String BASE = "enigma/CompiledMachine";
+
+    /** Class file magic number. */
+    private static final int MAGIC = 0xCAFEBABE;
+
+    /** Class file major version (Java 5), which needs no stack maps. */
+    private static final int CLASS_VERSION = 49;
+
+    /** Longest allowed method body. */
+    private static final int MAX_CODE = 65535;
+
+    /** Operand stack depth of convert. */
+    private static final int MAX_STACK = 6;
+
+    /** Bytes of a Code attribute beyond its code. */
+    private static final int CODE_OVERHEAD = 12;
+
+    /** Extra operand stack depth of the batch convert, which keeps the
+     *  array and index to store into below the character. */
+    private static final int BATCH_STACK = 2;
+
+    /** Locals of convert(int) holding its arguments. */
+    private static final int CONVERT_LOCALS = 2;
+
+    /** Locals of convert(int[], int, int) holding its arguments. */
+    private static final int BATCH_LOCALS = 4;
+
+    /** Shift that turns a negative int into all ones. */
+    private static final int SIGN_SHIFT = 31;
+
+    /** Bits per byte. */
+    private static final int BYTE = 8;
+
+    /** Largest local index usable without a wide prefix. */
+    private static final int MAX_NARROW_LOCAL = 255;
+
+    /** Largest value with an iconst instruction. */
+    private static final int ICONST_MAX = 5;
+
+    /** Access flags. */
+    private static final int ACC_PRIVATE = 0x0002, ACC_STATIC = 0x0008,
+        ACC_FINAL = 0x0010, ACC_SUPER = 0x0020, ACC_SYNTHETIC = 0x1000;
+
+    /** Constant pool tags. */
+    private static final int CONSTANT_UTF8 = 1, CONSTANT_INTEGER = 3,
+        CONSTANT_CLASS = 7, CONSTANT_STRING = 8, CONSTANT_FIELDREF = 9,
+        CONSTANT_METHODREF = 10, CONSTANT_NAME_AND_TYPE = 12;
+
+    /** Opcodes. */
+    private static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11,
+        LDC_W = 0x13, ILOAD = 0x15, ALOAD = 0x19, ALOAD_0 = 0x2a,
+        ALOAD_1 = 0x2b, IALOAD = 0x2e, AALOAD = 0x32, BALOAD = 0x33,
+        ISTORE = 0x36, ASTORE = 0x3a, ASTORE_0 = 0x4b, IASTORE = 0x4f,
+        DUP = 0x59, SWAP = 0x5f, IADD = 0x60, ISUB = 0x64, ISHR = 0x7a,
+        IAND = 0x7e, IINC = 0x84, IFNE = 0x9a, IF_ICMPLT = 0xa1,
+        GOTO = 0xa7, IRETURN = 0xac, RETURN = 0xb1, GETSTATIC = 0xb2,
+        PUTSTATIC = 0xb3, GETFIELD = 0xb4, PUTFIELD = 0xb5,
+        INVOKESPECIAL = 0xb7,
+        INVOKESTATIC = 0xb8, CHECKCAST = 0xc0, WIDE = 0xc4;
+}
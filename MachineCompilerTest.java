@@ -0,0 +1,182 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MachineCompiler class: compiled
+ *  rotor stacks must convert exactly as the interpreted Machine does.
+ *  @author Vineet Vashist
+ */
+public class MachineCompilerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Check that COMPILED, a compiled engine, converts the message MSG
+     *  as the interpreted machine REFERENCE does, one character at a
+     *  time. */
+    private static void checkEngine(CompiledMachine compiled,
+                                    Machine reference, int[] msg) {
+        for (int i = 0; i < msg.length; i += 1) {
+            assertEquals("character " + i, reference.convert(msg[i]),
+                         compiled.convert(msg[i]));
+        }
+    }
+
+    /** Return the machine for KEY with ring settings RINGS,
+     *  interpreted iff INTERPRETED. */
+    private static Machine machine(String[] key, String rings,
+                                   boolean interpreted) {
+        Machine m = machineFor(key);
+        m.setInterpreted(interpreted);
+        m.setRings(rings);
+        m.setRotors(key[5]);
+        return m;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void navalStacksMatchInterpreted() {
+        Random rand = new Random(27);
+        for (int trial = 0; trial < 50; trial += 1) {
+            String[] key = randomKey(rand);
+            String rings = randomMessage(rand, 4);
+            Machine interpreted = machine(key, rings, true);
+            Machine compiled = machine(key, rings, false);
+            assertTrue(interpreted.interpreted());
+            assertFalse(compiled.interpreted());
+
+            CompiledMachine engine =
+                new MachineCompiler().compile(compiled, "test");
+            assertNotNull(engine);
+            int[] symbols = new int[1000];
+            for (int i = 0; i < symbols.length; i += 1) {
+                symbols[i] = rand.nextInt(26);
+            }
+            checkEngine(engine, machine(key, rings, true), symbols);
+
+            String msg = randomMessage(rand, rand.nextInt(2000));
+            assertEquals(interpreted.convert(msg), compiled.convert(msg));
+            assertEquals(interpreted.positions(), compiled.positions());
+
+            int[] batch = symbols.clone();
+            int[] expected = symbols.clone();
+            interpreted.convert(expected, 0, expected.length);
+            compiled.convert(batch, 0, batch.length);
+            assertArrayEquals(expected, batch);
+            assertEquals(interpreted.positions(), compiled.positions());
+
+            String setting = randomMessage(rand, 4);
+            interpreted.setRotors(setting);
+            compiled.setRotors(setting);
+            Permutation plugboard = new Permutation("(AQ) (BZ) (XT) (MN)",
+                                                    interpreted.alphabet());
+            interpreted.setPlugboard(plugboard);
+            compiled.setPlugboard(plugboard);
+            msg = randomMessage(rand, 500);
+            assertEquals(interpreted.convert(msg), compiled.convert(msg));
+            assertEquals(interpreted.positions(), compiled.positions());
+        }
+    }
+
+    @Test
+    public void ringsShareOneClass() {
+        Random rand = new Random(46);
+        String[] key = randomKey(rand);
+        MachineCompiler compiler = new MachineCompiler();
+        Class<?> shared = null;
+        for (int trial = 0; trial < 20; trial += 1) {
+            String rings = randomMessage(rand, 4);
+            Machine compiled = machine(key, rings, false);
+            CompiledMachine engine = compiler.compile(compiled, "test");
+            if (shared == null) {
+                shared = engine.getClass();
+            }
+            assertSame(shared, engine.getClass());
+            int[] symbols = new int[500];
+            for (int i = 0; i < symbols.length; i += 1) {
+                symbols[i] = rand.nextInt(26);
+            }
+            checkEngine(engine, machine(key, rings, true), symbols);
+        }
+    }
+
+    @Test
+    public void cacheDropsLeastRecentlyUsed() {
+        Machine m = machine(randomKey(new Random(270)), "AAAA", false);
+        MachineCompiler compiler = new MachineCompiler();
+        Class<?> first = compiler.compile(m, "k0").getClass();
+        Class<?> second = compiler.compile(m, "k1").getClass();
+        for (int k = 2; k < MachineCompiler.CACHE_SIZE; k += 1) {
+            compiler.compile(m, "k" + k);
+        }
+        assertSame(first, compiler.compile(m, "k0").getClass());
+        compiler.compile(m, "k" + MachineCompiler.CACHE_SIZE);
+        assertSame(first, compiler.compile(m, "k0").getClass());
+        assertNotSame(second, compiler.compile(m, "k1").getClass());
+    }
+
+    @Test
+    public void reinsertedRotorsMatchInterpreted() {
+        Random rand = new Random(127);
+        String[] key = randomKey(rand);
+        Machine compiled = machine(key, "AAAA", false);
+        Machine interpreted = machine(key, "AAAA", true);
+        for (int trial = 0; trial < 20; trial += 1) {
+            String[] other = randomKey(rand);
+            String[] rotors = {other[0], other[1], other[2], other[3],
+                               other[4]};
+            String rings = randomMessage(rand, 4);
+            for (Machine m : new Machine[] {compiled, interpreted}) {
+                m.insertRotors(rotors);
+                m.setRings(rings);
+                m.setRotors(other[5]);
+                m.setPlugboard(new Permutation(other[6], m.alphabet()));
+            }
+            String msg = randomMessage(rand, 300);
+            assertEquals(interpreted.convert(msg), compiled.convert(msg));
+        }
+    }
+
+    @Test
+    public void randomStacksMatchInterpreted() {
+        Random rand = new Random(270);
+        int tried = 0;
+        while (tried < 100) {
+            EngineFuzzer.Case c = EngineFuzzer.random(rand, 300);
+            if (c.slots() > Machine.CARRY_SLOTS) {
+                continue;
+            }
+            tried += 1;
+            int[] expected = EngineFuzzer.reference(c);
+
+            int[] batch = c.message().clone();
+            c.machine(false).convert(batch, 0, batch.length);
+            assertArrayEquals(expected, batch);
+
+            Machine m = c.machine(false);
+            Machine reference = c.machine(true);
+            int[] msg = c.message();
+            for (int i = 0; i < msg.length; i += 1) {
+                assertEquals(expected[i], m.convert(msg[i]));
+                reference.convert(msg[i]);
+            }
+            assertEquals(reference.positions(), m.positions());
+
+            CompiledMachine engine =
+                new MachineCompiler().compile(c.machine(false), "test");
+            assertNotNull(engine);
+            checkEngine(engine, c.machine(true), msg);
+        }
+    }
+}
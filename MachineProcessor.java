@@ -0,0 +1,345 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.EnigmaException.*;
+
+/** A reactive stage that converts a stream of text with a Machine.
+ *  Upstream chunks are read as the input of Main is: a '*' starts a
+ *  settings line, which runs to the end of its line and resets the
+ *  machine as Main.setUp does; other characters are message text, in
+ *  which blanks are dropped, line ends are passed through, and the rest
+ *  are converted.  A chunk may end anywhere, even inside a settings
+ *  line.
+ *
+ *  <p>Small chunks are batched: converted text is held until it reaches
+ *  the batch size, the key changes, the stream ends, or the subscriber
+ *  has demand and nothing else to receive.  At most CAPACITY converted
+ *  chunks are held, and no more is requested from upstream than can be
+ *  held, so a slow subscriber throttles the publisher rather than
+ *  growing a buffer.  No method blocks.
+ *  @author Vineet Vashist
+ */
+class MachineProcessor implements Flow.Processor<CharBuffer, CharBuffer> {
+
+    /** A stage converting with M, holding up to CAPACITY output chunks of
+     *  about BATCH characters. */
+    MachineProcessor(Machine m, int capacity, int batch) {
+        if (capacity <= 0 || batch <= 0) {
+            throw error("capacity and batch size must be positive");
+        }
+        _machine = m;
+        _capacity = capacity;
+        _batch = batch;
+    }
+
+    /** A stage converting with M, with the default capacity and batch
+     *  size. */
+    MachineProcessor(Machine m) {
+        this(m, DEFAULT_CAPACITY, DEFAULT_BATCH);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super CharBuffer> subscriber) {
+        synchronized (this) {
+            if (_downstream != null) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(
+                    new IllegalStateException("already subscribed"));
+                return;
+            }
+            _downstream = subscriber;
+        }
+        subscriber.onSubscribe(new Output());
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        synchronized (this) {
+            if (_upstream != null || _cancelled) {
+                subscription.cancel();
+                return;
+            }
+            _upstream = subscription;
+        }
+        drain();
+    }
+
+    @Override
+    public void onNext(CharBuffer chunk) {
+        synchronized (this) {
+            _outstanding -= 1;
+            if (_done) {
+                return;
+            }
+            try {
+                while (chunk.hasRemaining()) {
+                    accept(chunk.get());
+                }
+                if (_text.length() >= _batch || starving()) {
+                    flush();
+                }
+            } catch (RuntimeException excp) {
+                fail(excp);
+            }
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        synchronized (this) {
+            if (_done) {
+                return;
+            }
+            _error = error;
+            _done = true;
+            _queue.clear();
+        }
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (this) {
+            if (_done) {
+                return;
+            }
+            try {
+                if (_settings != null) {
+                    Main.setUp(_machine, _settings.toString());
+                    _settings = null;
+                }
+                flush();
+                _done = true;
+            } catch (RuntimeException excp) {
+                fail(excp);
+            }
+        }
+        drain();
+    }
+
+    /** Take in the input character C. */
+    private void accept(char c) {
+        if (_settings != null) {
+            if (c == '\n' || c == '\r') {
+                flush();
+                Main.setUp(_machine, _settings.toString());
+                _settings = null;
+                _settingsEnd = c == '\r';
+            } else if (_settings.length() == MAX_SETTINGS) {
+                throw error("settings line longer than %d", MAX_SETTINGS);
+            } else {
+                _settings.append(c);
+            }
+        } else if (c == '*') {
+            _settings = new StringBuilder("*");
+        } else if (c == '\n' && _settingsEnd) {
+            _settingsEnd = false;
+        } else if (c != ' ') {
+            _settingsEnd = false;
+            _text.append(c);
+        }
+    }
+
+    /** Convert the message text taken in so far and queue the result. */
+    private void flush() {
+        if (_text.length() == 0) {
+            return;
+        }
+        StringBuilder out = new StringBuilder(_text.length());
+        int start = 0;
+        for (int i = 0; i <= _text.length(); i += 1) {
+            if (i == _text.length() || _text.charAt(i) == '\n'
+                || _text.charAt(i) == '\r') {
+                out.append(_machine.convert(_text.substring(start, i)));
+                if (i < _text.length()) {
+                    out.append(_text.charAt(i));
+                }
+                start = i + 1;
+            }
+        }
+        _text.setLength(0);
+        _queue.add(CharBuffer.wrap(out));
+    }
+
+    /** Return true iff the subscriber has demand and nothing queued.
+     *  Called with my lock held. */
+    private boolean starving() {
+        return _demand > 0 && _queue.isEmpty();
+    }
+
+    /** Abandon the stream because of ERROR: cancel upstream and pass
+     *  ERROR on.  Called with my lock held. */
+    private void fail(Throwable error) {
+        _error = error;
+        _done = true;
+        _queue.clear();
+        if (_upstream != null) {
+            _upstream.cancel();
+        }
+    }
+
+    /** Deliver what the subscriber has asked for and can be delivered,
+     *  then the end of the stream if it has been reached, then ask
+     *  upstream for as much as there is room for.  Runs in one thread at
+     *  a time; a call made while another is running makes that one go
+     *  round again. */
+    private void drain() {
+        if (_wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            while (true) {
+                Flow.Subscriber<? super CharBuffer> downstream;
+                CharBuffer next = null;
+                boolean finish = false;
+                Throwable error;
+                synchronized (this) {
+                    downstream = _downstream;
+                    error = _error;
+                    if (downstream == null || _cancelled) {
+                        break;
+                    }
+                    if (_demand > 0 && !_queue.isEmpty()) {
+                        next = _queue.poll();
+                        _demand -= 1;
+                    } else if (_done && _queue.isEmpty() && !_finished) {
+                        _finished = finish = true;
+                    } else {
+                        break;
+                    }
+                }
+                if (next != null) {
+                    downstream.onNext(next);
+                } else if (finish) {
+                    if (error != null) {
+                        downstream.onError(error);
+                    } else {
+                        downstream.onComplete();
+                    }
+                }
+            }
+            Flow.Subscription upstream;
+            long n;
+            synchronized (this) {
+                upstream = _upstream;
+                n = _done || _cancelled ? 0
+                    : _capacity - _queue.size() - _outstanding;
+                if (upstream != null && n > 0) {
+                    _outstanding += n;
+                }
+            }
+            if (upstream != null && n > 0) {
+                upstream.request(n);
+            }
+            missed = _wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /** My subscriber's subscription. */
+    private class Output implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+            synchronized (MachineProcessor.this) {
+                if (n <= 0) {
+                    fail(new IllegalArgumentException(
+                        "non-positive request: " + n));
+                } else {
+                    _demand = _demand + n < 0 ? Long.MAX_VALUE : _demand + n;
+                    try {
+                        if (!_done && starving()) {
+                            flush();
+                        }
+                    } catch (RuntimeException excp) {
+                        fail(excp);
+                    }
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            Flow.Subscription upstream;
+            synchronized (MachineProcessor.this) {
+                _cancelled = true;
+                _queue.clear();
+                upstream = _upstream;
+            }
+            if (upstream != null) {
+                upstream.cancel();
+            }
+        }
+    }
+
+    /** Default number of output chunks held. */
+    static final int DEFAULT_CAPACITY = 16;
+
+    /** Default number of characters converted together. */
+    static final int DEFAULT_BATCH = 8192;
+
+    /** Longest settings line taken in. */
+    static final int MAX_SETTINGS = 1 << 16;
+
+    /** The machine converting my input. */
+    private final Machine _machine;
+
+    /** Maximum number of output chunks held or requested. */
+    private final int _capacity;
+
+    /** Number of characters of message text converted together. */
+    private final int _batch;
+
+    /** Message text taken in but not yet converted. */
+    private final StringBuilder _text = new StringBuilder();
+
+    /** The settings line being taken in, or null. */
+    private StringBuilder _settings;
+
+    /** True iff the last character was the \r ending a settings line. */
+    private boolean _settingsEnd;
+
+    /** Converted chunks not yet delivered. */
+    private final ArrayDeque<CharBuffer> _queue = new ArrayDeque<>();
+
+    /** Subscription to my publisher, or null. */
+    private Flow.Subscription _upstream;
+
+    /** My subscriber, or null. */
+    private Flow.Subscriber<? super CharBuffer> _downstream;
+
+    /** Chunks requested from upstream and not yet received. */
+    private long _outstanding;
+
+    /** Chunks requested by my subscriber and not yet delivered. */
+    private long _demand;
+
+    /** True once no more input will be taken. */
+    private boolean _done;
+
+    /** True once my subscriber has been sent its final signal. */
+    private boolean _finished;
+
+    /** True once my subscriber has cancelled. */
+    private boolean _cancelled;
+
+    /** Error to pass on, or null. */
+    private Throwable _error;
+
+    /** Count of drain calls pending, for serializing delivery. */
+    private final AtomicInteger _wip = new AtomicInteger();
+}
@@ -0,0 +1,124 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.CharBuffer;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MachineProcessor class.
+ *  @author Vineet Vashist
+ */
+public class MachineProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A subscriber that collects what it receives, asking for one chunk
+     *  at a time. */
+    private static class Collector implements Flow.Subscriber<CharBuffer> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(CharBuffer chunk) {
+            _text.append(chunk);
+            _subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            _result.completeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete() {
+            _result.complete(_text.toString());
+        }
+
+        /** Return everything received, once the stream has ended. */
+        String result() throws Exception {
+            return _result.get();
+        }
+
+        /** My subscription. */
+        private Flow.Subscription _subscription;
+        /** Text received so far. */
+        private final StringBuilder _text = new StringBuilder();
+        /** Completed with the text received at the end of the stream. */
+        private final CompletableFuture<String> _result =
+            new CompletableFuture<>();
+    }
+
+    /** Return the output of a MachineProcessor over M with CAPACITY and
+     *  BATCH, given INPUT in random chunks from RAND. */
+    private String process(Machine m, int capacity, int batch, String input,
+                           Random rand) throws Exception {
+        MachineProcessor proc = new MachineProcessor(m, capacity, batch);
+        Collector out = new Collector();
+        proc.subscribe(out);
+        try (SubmissionPublisher<CharBuffer> pub =
+                 new SubmissionPublisher<>()) {
+            pub.subscribe(proc);
+            for (int i = 0; i < input.length(); ) {
+                int n = Math.min(input.length() - i, 1 + rand.nextInt(40));
+                pub.submit(CharBuffer.wrap(input, i, i + n));
+                i += n;
+            }
+        }
+        return out.result();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void matchesMachine() throws Exception {
+        Random rand = new Random(32);
+        for (int trial = 0; trial < 20; trial += 1) {
+            String[] key1 = randomKey(rand), key2 = randomKey(rand);
+            StringBuilder input = new StringBuilder();
+            StringBuilder expected = new StringBuilder();
+            Machine m = machineFor(key1);
+            for (String[] key : new String[][] { key1, key2 }) {
+                input.append(settingsLine(key)).append("\r\n");
+                m = machineFor(key);
+                for (int line = 0; line < 5; line += 1) {
+                    String msg = randomMessage(rand, rand.nextInt(60));
+                    input.append(msg.replaceAll("(.{5})", "$1 "))
+                        .append('\n');
+                    expected.append(m.convert(msg)).append('\n');
+                }
+            }
+            Machine start = machineFor(randomKey(rand));
+            assertEquals(expected.toString(),
+                         process(start, 1 + rand.nextInt(4),
+                                 1 + rand.nextInt(100), input.toString(),
+                                 rand));
+        }
+    }
+
+    @Test
+    public void badInputIsAnError() throws Exception {
+        Random rand = new Random(33);
+        Machine m = machineFor(randomKey(rand));
+        try {
+            process(m, 2, 8, "ABCDE\nabcde\n", rand);
+            fail("expected an error");
+        } catch (java.util.concurrent.ExecutionException excp) {
+            assertTrue(excp.getCause() instanceof EnigmaException);
+        }
+    }
+}
@@ -1,14 +1,27 @@
 package enigma;
 
-import java.io.File;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
 
+import static java.nio.file.StandardOpenOption.*;
 import static enigma.EnigmaException.*;
 
 /** Enigma simulator.
@@ -24,10 +37,44 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *  An input or output file whose name ends in ".gz" is read or
+     *  written gzip-compressed.  The message loop then runs as a
+     *  Pipeline, so that decompression, conversion and compression
+     *  proceed on separate threads.
+     *  With --bytes as ARGS[0], converts a binary file instead (see
+     *  ByteMain).  Options may precede ARGS[0]:
+     *      --tables FILE  run on off-heap rotor tables mapped from FILE,
+     *                     which is written first if it does not exist
+     *                     (see OffHeapTables).
+     *      --checkpoint FILE  record progress in FILE every
+     *                     CHECKPOINT_INTERVAL bytes of input; needs
+     *                     input and output files.
+     *      --resume       continue from the checkpoint in the
+     *                     --checkpoint FILE, if there is one.
+     *      --keys FILE    allow settings lines of the form "* @ID",
+     *                     which apply the key ID from the key sheet
+     *                     FILE (see KeySheet).
+     *      --normalize SPEC  normalize message text as SPEC says (see
+     *                     Normalizer) instead of rejecting every
+     *                     character but blanks not in the alphabet.
+     *      --pipeline     read, convert and write on separate threads
+     *                     (see Pipeline).
+     *      --pipeline-stats  the same, then print the work of each
+     *                     stage to the standard error. */
     public static void main(String... args) {
         try {
-            new Main(args).process();
+            if (args.length > 0 && args[0].equals("--bytes")) {
+                new ByteMain(Arrays.copyOfRange(args, 1, args.length))
+                    .process();
+            } else {
+                Main main = new Main(args);
+                try {
+                    main.process();
+                } finally {
+                    main.close();
+                }
+            }
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -37,38 +84,174 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        this(args, Paths.get(""), System.in, System.out);
+    }
+
+    /** Check ARGS and open the necessary files, as for main, with file
+     *  names relative to DIR, and STDIN and STDOUT standing for the
+     *  standard input and output. */
+    Main(String[] args, Path dir, InputStream stdin, PrintStream stdout) {
+        this(args, dir, stdin, stdout, System.err);
+    }
+
+    /** Check ARGS and open the necessary files, as for main, with file
+     *  names relative to DIR, and STDIN, STDOUT and STDERR standing for
+     *  the standard input, output and error. */
+    Main(String[] args, Path dir, InputStream stdin, PrintStream stdout,
+         PrintStream stderr) {
+        _dir = dir;
+        _stderr = stderr;
+        args = Arrays.copyOfRange(args, readOptions(args), args.length);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
+        _configPath = _dir.resolve(args[0]);
         _config = getInput(args[0]);
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].endsWith(GZIP_SUFFIX)) {
+                if (_checkpoint != null) {
+                    throw error("--checkpoint cannot be used with "
+                                + "compressed files");
+                }
+                _pipeline = true;
+            }
+        }
+        if (_checkpoint != null) {
+            if (args.length < 3) {
+                throw error("--checkpoint needs input and output files");
+            }
+            try {
+                _configBytes = Files.readAllBytes(_configPath);
+            } catch (IOException excp) {
+                throw error("could not open %s", args[0]);
+            }
+            if (_pipeline) {
+                throw error("--pipeline cannot be used with --checkpoint");
+            }
+        } else if (_resume) {
+            throw error("--resume needs --checkpoint");
+        }
 
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _input = new LineReader(getStream(args[1]));
         } else {
-            _input = new Scanner(System.in);
+            _input = new LineReader(stdin);
         }
 
         if (args.length > 2) {
             _output = getOutput(args[2]);
         } else {
-            _output = System.out;
+            _output = stdout;
         }
     }
 
+    /** An Enigma simulator reading its configuration from CONFIG and its
+     *  messages from INPUT, and writing to OUTPUT. */
+    Main(Scanner config, InputStream input, PrintStream output) {
+        _dir = Paths.get("");
+        _config = config;
+        _input = new LineReader(input);
+        _output = output;
+    }
+
+    /** Record the options at the start of ARGS and return the index of
+     *  the first argument after them. */
+    private int readOptions(String[] args) {
+        int i = 0;
+        while (i < args.length && args[i].startsWith("--")) {
+            String option = args[i];
+            if (option.equals("--resume")) {
+                _resume = true;
+                i += 1;
+                continue;
+            } else if (option.startsWith("--pipeline")) {
+                if (!option.equals("--pipeline")
+                    && !option.equals("--pipeline-stats")) {
+                    throw error("unknown option %s", option);
+                }
+                _pipeline = true;
+                _pipelineStats = option.equals("--pipeline-stats");
+                i += 1;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw error("%s needs an argument", option);
+            }
+            switch (option) {
+            case "--tables":
+                _tables = _dir.resolve(args[i + 1]);
+                break;
+            case "--checkpoint":
+                _checkpoint = _dir.resolve(args[i + 1]);
+                break;
+            case "--keys":
+                _keysPath = _dir.resolve(args[i + 1]);
+                break;
+            case "--normalize":
+                _normalize = args[i + 1];
+                break;
+            default:
+                throw error("unknown option %s", option);
+            }
+            i += 2;
+        }
+        return i;
+    }
+
     /** Return a Scanner reading from the file named NAME. */
     private Scanner getInput(String name) {
         try {
-            return new Scanner(new File(name));
+            Scanner result = new Scanner(_dir.resolve(name).toFile());
+            _opened.add(result);
+            return result;
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
+    /** Return a stream reading from the file named NAME, decompressing
+     *  it if NAME ends in GZIP_SUFFIX. */
+    private InputStream getStream(String name) {
+        try {
+            InputStream result =
+                new FileInputStream(_dir.resolve(name).toFile());
+            _opened.add(result);
+            if (name.endsWith(GZIP_SUFFIX)) {
+                result = new GZIPInputStream(result, GZIP_BUFFER);
+                _opened.add(result);
+            }
+            return result;
+        } catch (ZipException excp) {
+            throw error("%s is not in gzip format", name);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a PrintStream writing to the file named NAME, compressing
+     *  it if NAME ends in GZIP_SUFFIX.  When checkpointing, the file is
+     *  kept open as _outputChannel, and is not truncated until the
+     *  checkpoint to resume from is known. */
     private PrintStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            PrintStream result;
+            if (name.endsWith(GZIP_SUFFIX)) {
+                result = new PrintStream(new BufferedOutputStream(
+                    new GZIPOutputStream(new FileOutputStream(
+                        _dir.resolve(name).toFile()), GZIP_BUFFER),
+                    GZIP_BUFFER));
+            } else if (_checkpoint == null) {
+                result = new PrintStream(_dir.resolve(name).toFile());
+            } else {
+                _outputChannel = FileChannel.open(_dir.resolve(name), WRITE,
+                                                  CREATE);
+                result = new PrintStream(new BufferedOutputStream(
+                    Channels.newOutputStream(_outputChannel),
+                    OUTPUT_BUFFER));
+            }
+            _opened.add(result);
+            return result;
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -82,12 +265,42 @@ public final class Main {
      * HELLO WORLD
      * * B Beta I II III AAAA
      * ILBDA AMTAZ*/
-    private void process() {
+    void process() {
 
-        Machine M = readConfig();
+        Machine M;
+        if (_cache != null && _configPath != null) {
+            M = _cache.machine(_configPath, this::readConfig);
+        } else {
+            M = readConfig();
+        }
+        if (_tables != null) {
+            M.setTables(OffHeapTables.open(_tables, M));
+        }
+        if (_keysPath != null) {
+            _keys = KeySheet.map(_keysPath, M);
+        }
+        if (_normalize != null) {
+            _normalizer = Normalizer.parse(_normalize, M.alphabet());
+        }
+
+        if (_pipeline) {
+            Pipeline pipeline = new Pipeline(M, _input, _output);
+            pipeline.setKeys(_keys);
+            pipeline.setNormalizer(_normalizer);
+            try {
+                pipeline.run();
+            } finally {
+                if (_pipelineStats) {
+                    _stderr.print(pipeline.stats());
+                    _stderr.flush();
+                }
+            }
+            return;
+        }
 
-        if (_input.hasNextLine()) {
-            setUp(M, _input.nextLine());
+        if (!resume(M) && _input.hasNextLine()) {
+            _settings = _input.nextLine();
+            setUp(M, _settings, _keys);
         }
 
         String temp = "";
@@ -95,17 +308,111 @@ public final class Main {
             String convert = _input.nextLine();
             if (convert.contains("*")) {
                 temp += convert.substring(convert.indexOf("*"));
-                setUp(M, temp);
+                _settings = temp;
+                setUp(M, temp, _keys);
                 temp = "";
             } else {
-                printMessageLine(M.convert(convert.replaceAll(" ", "")));
+                long start = Metrics.ENABLED ? System.nanoTime() : 0;
+                String msg = _normalizer == null
+                    ? M.convert(convert.replaceAll(" ", ""))
+                    : convertNormalized(M, convert);
+                printMessageLine(msg);
+                if (Metrics.ENABLED) {
+                    Metrics.message(start, msg.length());
+                }
+            }
+            if (_checkpoint != null
+                && _input.offset() - _lastCheckpoint >= CHECKPOINT_INTERVAL) {
+                checkpoint(M);
+            }
+        }
+        if (_checkpoint != null) {
+            _output.flush();
+            try {
+                _outputChannel.truncate(_outputChannel.position());
+                Files.deleteIfExists(_checkpoint);
+            } catch (IOException excp) {
+                throw error("could not finish output: %s",
+                            excp.getMessage());
             }
         }
     }
 
+    /** Take configurations from CACHE where it has them, adding those
+     *  it does not. */
+    void setConfigCache(ConfigCache cache) {
+        _cache = cache;
+    }
+
+    /** Flush my output and close the files I opened. */
+    void close() {
+        _output.flush();
+        for (AutoCloseable file : _opened) {
+            try {
+                file.close();
+            } catch (Exception excp) {
+                /* Ignore */
+            }
+        }
+        _opened.clear();
+    }
+
+    /** If resuming from a checkpoint, skip the input and output it
+     *  covers and restore M to its state there, returning true.
+     *  Otherwise, start the output afresh and return false. */
+    private boolean resume(Machine M) {
+        if (_checkpoint == null) {
+            return false;
+        }
+        Checkpoint cp = _resume ? Checkpoint.read(_checkpoint) : null;
+        try {
+            if (cp == null) {
+                _outputChannel.truncate(0);
+                return false;
+            }
+            if (!cp.key().equals(Checkpoint.keyHash(_configBytes,
+                                                    cp.settings()))) {
+                throw error("checkpoint %s is for a different configuration",
+                            _checkpoint);
+            }
+            if (_outputChannel.size() < cp.output()) {
+                throw error("output is shorter than checkpoint %s",
+                            _checkpoint);
+            }
+            _outputChannel.truncate(cp.output());
+            _outputChannel.position(cp.output());
+        } catch (IOException excp) {
+            throw error("could not resume output: %s", excp.getMessage());
+        }
+        _input.skip(cp.input());
+        _lastCheckpoint = cp.input();
+        _settings = cp.settings();
+        setUp(M, _settings, _keys);
+        M.setRotors(cp.positions());
+        return true;
+    }
+
+    /** Record a checkpoint of M at the current line boundary, after
+     *  making sure that all output so far is on disk. */
+    private void checkpoint(Machine M) {
+        _output.flush();
+        try {
+            _outputChannel.force(false);
+            new Checkpoint(_input.offset(), _outputChannel.position(),
+                           _settings, M.positions(),
+                           Checkpoint.keyHash(_configBytes, _settings))
+                .write(_checkpoint);
+        } catch (IOException excp) {
+            throw error("could not checkpoint output: %s",
+                        excp.getMessage());
+        }
+        _lastCheckpoint = _input.offset();
+    }
+
     /** Return an Enigma machine configured from the contents of configuration
      *  file _config. */
-    private Machine readConfig() {
+    Machine readConfig() {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
         try {
             int numrotors;
             int pawls;
@@ -146,7 +453,12 @@ public final class Main {
                 cycles = c[2];
                 _allrotors.add(readRotor());
             }
-            return new Machine(_alphabet, numrotors, pawls, _allrotors);
+            Machine result =
+                new Machine(_alphabet, numrotors, pawls, _allrotors);
+            if (Metrics.ENABLED) {
+                Metrics.configLoad(start);
+            }
+            return result;
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
         }
@@ -158,15 +470,16 @@ public final class Main {
             if (rfeature.charAt(0) == 'M') {
                 String notch = rfeature.substring(1);
                 return new MovingRotor(rname,
-                        new Permutation(cycles, _alphabet), notch);
+                        PermutationPool.parse(cycles, _alphabet), notch);
 
             } else if (rfeature.charAt(0) == 'N') {
                 String notch = rfeature.substring(1);
                 return new FixedRotor(rname,
-                        new Permutation(cycles, _alphabet));
+                        PermutationPool.parse(cycles, _alphabet));
             } else if (rfeature.charAt(0) == 'R') {
                 String notch = rfeature.substring(1);
-                return new Reflector(rname, new Permutation(cycles, _alphabet));
+                return new Reflector(rname,
+                        PermutationPool.parse(cycles, _alphabet));
             } else {
                 throw new EnigmaException("Configuration setting invalid"
                         + " : failed in readrotor ");
@@ -177,9 +490,26 @@ public final class Main {
         }
     }
 
+    /** Set M according to SETTINGS, as for setUp(M, SETTINGS), except
+     *  that if KEYS is not null, SETTINGS may instead be "*", KEY_MARK
+     *  and the ID of a key to apply from KEYS. */
+    static void setUp(Machine M, String settings, KeySheet keys) {
+        if (keys != null && settings.startsWith("*")) {
+            String rest = settings.substring(1).trim();
+            if (rest.startsWith(KEY_MARK)) {
+                keys.apply(M, rest.substring(KEY_MARK.length()).trim());
+                return;
+            }
+        }
+        setUp(M, settings);
+    }
+
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
+     *  which must have the format specified in the assignment, except
+     *  that the rotor positions may be followed by the ring settings of
+     *  the same rotors, in the same form, before the plugboard.  Rings
+     *  default to the first character of the alphabet. */
+    static void setUp(Machine M, String settings) {
         if (settings.charAt(0) != '*') {
             throw error("Invalid setting : should start with '*'");
         }
@@ -199,39 +529,133 @@ public final class Main {
             rotorinslot[i] = indsetting[i];
         }
 
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
         M.insertRotors(rotorinslot);
+        if (Metrics.ENABLED) {
+            Metrics.setup(Metrics.Setup.INSERT_ROTORS, start);
+            start = System.nanoTime();
+        }
+        String plugcycle = indsetting.length == numofslot + 2
+            ? indsetting[numofslot + 1].trim() : "";
+        if (!plugcycle.isEmpty() && plugcycle.charAt(0) != '(') {
+            String[] rings = plugcycle.split(" ", 2);
+            M.setRings(rings[0]);
+            plugcycle = rings.length > 1 ? rings[1] : "";
+        }
         M.setRotors(indsetting[numofslot]);
+        if (Metrics.ENABLED) {
+            Metrics.setup(Metrics.Setup.SET_ROTORS, start);
+            start = System.nanoTime();
+        }
 
-        if (indsetting.length == numofslot + 2) {
-            String plugcycle = indsetting[indsetting.length - 1];
-            M.setPlugboard(new Permutation(plugcycle, _alphabet));
-        } else {
-            M.setPlugboard(new Permutation("", _alphabet));
+        M.setPlugboard(PermutationPool.parse(plugcycle, M.alphabet()));
+        if (Metrics.ENABLED) {
+            Metrics.setup(Metrics.Setup.PLUGBOARD, start);
+            Metrics.settingsLine();
+        }
+    }
+
+    /** Return the conversion by M of the message line LINE, normalized
+     *  by _normalizer. */
+    private String convertNormalized(Machine M, String line) {
+        if (_symbols.length < line.length()) {
+            _symbols = new int[line.length()];
         }
+        int n = _normalizer.normalize(line, _symbols, 0);
+        M.convert(_symbols, 0, n);
+        return M.alphabet().toString(_symbols, 0, n);
     }
 
     /** Print MSG in groups of five (except that the last group may
      *  have fewer letters). */
     private void printMessageLine(String msg) {
-        ArrayList<String> test = new ArrayList<>();
-
-        int len = msg.length();
-        for (int i = 0; i < len; i += 5) {
-            test.add(msg.substring(i, Math.min(len, i + 5)));
+        StringBuilder line = new StringBuilder(msg.length() + msg.length() / 5);
+        int count = 0;
+        for (int i = 0; i < msg.length(); count += 1) {
+            int cp = msg.codePointAt(i);
+            if (count > 0 && count % 5 == 0) {
+                line.append(' ');
+            }
+            line.appendCodePoint(cp);
+            i += Character.charCount(cp);
         }
-        String v = test.toString();
-        v =  v.replaceAll("[\\[]", "");
-        v =  v.replaceAll(", ", " ");
-        v = v.replaceAll("[\\]]", "");
-        _output.println(v);
-
+        _output.println(line);
     }
 
+    /** Off-heap table file to run on, or null. */
+    private Path _tables;
+
+    /** Key sheet file, or null. */
+    private Path _keysPath;
+
+    /** Key sheet from _keysPath, or null. */
+    private KeySheet _keys;
+
+    /** Normalization specification, or null. */
+    private String _normalize;
+
+    /** Normalizer from _normalize, or null. */
+    private Normalizer _normalizer;
+
+    /** Indices of the characters of a normalized message line. */
+    private int[] _symbols = new int[0];
+
+    /** Directory against which file names are resolved. */
+    private final Path _dir;
+
+    /** The configuration file, or null if not read from a file. */
+    private Path _configPath;
+
+    /** Parsed configurations to reuse, or null. */
+    private ConfigCache _cache;
+
+    /** Files I have opened. */
+    private final ArrayList<AutoCloseable> _opened = new ArrayList<>();
+
+    /** True iff running the message loop as a Pipeline. */
+    private boolean _pipeline;
+
+    /** True iff printing the statistics of the Pipeline. */
+    private boolean _pipelineStats;
+
+    /** Checkpoint file, or null if not checkpointing. */
+    private Path _checkpoint;
+
+    /** True iff resuming from _checkpoint. */
+    private boolean _resume;
+
+    /** Contents of the configuration file, when checkpointing. */
+    private byte[] _configBytes;
+
+    /** The output file, when checkpointing. */
+    private FileChannel _outputChannel;
+
+    /** Input offset of the last checkpoint. */
+    private long _lastCheckpoint;
+
+    /** The settings line in effect. */
+    private String _settings;
+
+    /** Bytes of input between checkpoints. */
+    static final long CHECKPOINT_INTERVAL = 1 << 20;
+
+    /** Size of the output buffer when checkpointing. */
+    private static final int OUTPUT_BUFFER = 1 << 16;
+
+    /** Mark introducing a key ID in a settings line. */
+    static final String KEY_MARK = "@";
+
+    /** Suffix of the names of gzip-compressed files. */
+    static final String GZIP_SUFFIX = ".gz";
+
+    /** Size of the buffers of compressed streams. */
+    private static final int GZIP_BUFFER = 1 << 18;
+
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private LineReader _input;
 
     /** Source of machine configuration. */
     private Scanner _config;
@@ -239,6 +663,9 @@ public final class Main {
     /** File for encoded/decoded messages. */
     private PrintStream _output;
 
+    /** Standard error, for the statistics of --pipeline-stats. */
+    private PrintStream _stderr = System.err;
+
     /** Collection of all the rotors of the machine. */
     private Collection<Rotor> _allrotors = new ArrayList<>();
 
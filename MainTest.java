@@ -0,0 +1,108 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Main class's handling of
+ *  compressed files.
+ *  @author Vineet Vashist
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Write BYTES, compressed, to FILE. */
+    private static void gzip(Path file, byte[] bytes) throws IOException {
+        try (OutputStream out =
+                 new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(bytes);
+        }
+    }
+
+    /** Return the decompressed contents of FILE. */
+    private static byte[] gunzip(Path file) throws IOException {
+        try (InputStream in =
+                 new GZIPInputStream(Files.newInputStream(file))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toByteArray();
+        }
+    }
+
+    /** Check that running Main in DIR on ARGS fails with a message
+     *  containing EXPECTED. */
+    private static void checkFails(Path dir, String expected,
+                                   String... args) {
+        String msg = run(dir, args);
+        assertNotNull(msg);
+        assertTrue(msg, msg.contains(expected));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void gzipRoundTrip() throws Exception {
+        Path dir = setUp(randomInput(new Random(39), 1 << 20));
+        byte[] input = Files.readAllBytes(dir.resolve("input"));
+        gzip(dir.resolve("input.gz"), input);
+        assertNull(run(dir, "naval.conf", "input", "plain"));
+        byte[] expected = Files.readAllBytes(dir.resolve("plain"));
+
+        assertNull(run(dir, "naval.conf", "input.gz", "out.gz"));
+        assertArrayEquals(expected, gunzip(dir.resolve("out.gz")));
+        assertNull(run(dir, "naval.conf", "input.gz", "out"));
+        assertArrayEquals(expected, Files.readAllBytes(dir.resolve("out")));
+        assertNull(run(dir, "naval.conf", "input", "out2.gz"));
+        assertArrayEquals(expected, gunzip(dir.resolve("out2.gz")));
+    }
+
+    @Test
+    public void badGzipInput() throws Exception {
+        Path dir = setUp(randomInput(new Random(390), 100000));
+        Files.copy(dir.resolve("input"), dir.resolve("plain.gz"));
+        checkFails(dir, "plain.gz is not in gzip format",
+                   "naval.conf", "plain.gz", "out");
+
+        gzip(dir.resolve("input.gz"),
+             Files.readAllBytes(dir.resolve("input")));
+        byte[] whole = Files.readAllBytes(dir.resolve("input.gz"));
+        Files.write(dir.resolve("cut.gz"),
+                    Arrays.copyOf(whole, whole.length / 2));
+        checkFails(dir, "could not read input", "naval.conf", "cut.gz",
+                   "out");
+    }
+
+    @Test
+    public void checkpointRejectsCompressedFiles() throws Exception {
+        Path dir = setUp(randomInput(new Random(391), 1000));
+        gzip(dir.resolve("input.gz"),
+             Files.readAllBytes(dir.resolve("input")));
+        String expected = "--checkpoint cannot be used with compressed files";
+        checkFails(dir, expected, "--checkpoint", "cp", "naval.conf",
+                   "input.gz", "out");
+        checkFails(dir, expected, "--checkpoint", "cp", "naval.conf",
+                   "input", "out.gz");
+        assertFalse(Files.exists(dir.resolve("out")));
+        assertFalse(Files.exists(dir.resolve("out.gz")));
+        assertFalse(Files.exists(dir.resolve("cp")));
+    }
+}
@@ -0,0 +1,240 @@
+package enigma;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/** Counters and timings of the simulator, published as the MBean
+ *  enigma:type=Metrics and as JDK Flight Recorder events.  Enabled by
+ *  -Denigma.metrics=true.  Every recording site tests ENABLED first; as
+ *  it is a constant, a disabled site compiles to nothing.  Characters
+ *  are counted per string, buffer or chunk converted, never per
+ *  character, so even when enabled the conversion loops are
+ *  untouched.
+ *  @author Vineet Vashist
+ */
+final class Metrics implements MetricsMBean {
+
+    /** True iff metrics are recorded. */
+    static final boolean ENABLED = Boolean.getBoolean("enigma.metrics");
+
+    /** The phases of setting up a machine that are timed. */
+    enum Setup {
+        /** Machine.insertRotors. */
+        INSERT_ROTORS,
+        /** Machine.setRotors. */
+        SET_ROTORS,
+        /** Building and installing the plugboard. */
+        PLUGBOARD
+    }
+
+    /** Count N characters converted. */
+    static void characters(long n) {
+        INSTANCE._characters.add(n);
+    }
+
+    /** Count a message of N characters, converted (and so counted by
+     *  Machine) and written since START. */
+    static void message(long start, int n) {
+        long nanos = System.nanoTime() - start;
+        INSTANCE._messages.increment();
+        INSTANCE._messageTimes.record(nanos);
+        MessageEvent event = new MessageEvent();
+        if (event.shouldCommit()) {
+            event.characters = n;
+            event.time = nanos;
+            event.commit();
+        }
+    }
+
+    /** Count LINES messages, converted as one batch (and so their
+     *  characters counted by Machine). */
+    static void messages(int lines) {
+        INSTANCE._messages.add(lines);
+    }
+
+    /** Count a settings line. */
+    static void settingsLine() {
+        INSTANCE._settingsLines.increment();
+    }
+
+    /** Record the setup phase PHASE, started at START. */
+    static void setup(Setup phase, long start) {
+        long nanos = System.nanoTime() - start;
+        INSTANCE._setupTimes[phase.ordinal()].record(nanos);
+        SetupEvent event = new SetupEvent();
+        if (event.shouldCommit()) {
+            event.phase = phase.name();
+            event.time = nanos;
+            event.commit();
+        }
+    }
+
+    /** Record the loading of a configuration, started at START. */
+    static void configLoad(long start) {
+        long nanos = System.nanoTime() - start;
+        INSTANCE._configLoads.increment();
+        INSTANCE._configNanos.add(nanos);
+        ConfigLoadEvent event = new ConfigLoadEvent();
+        if (event.shouldCommit()) {
+            event.time = nanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    public long getCharacters() {
+        return _characters.sum();
+    }
+
+    @Override
+    public long getMessages() {
+        return _messages.sum();
+    }
+
+    @Override
+    public long getSettingsLines() {
+        return _settingsLines.sum();
+    }
+
+    @Override
+    public long getConfigLoads() {
+        return _configLoads.sum();
+    }
+
+    @Override
+    public double getConfigLoadMillis() {
+        return _configNanos.sum() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMessageP50Micros() {
+        return _messageTimes.percentile(Latencies.P50) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getMessageP99Micros() {
+        return _messageTimes.percentile(Latencies.P99) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getInsertRotorsP99Micros() {
+        return setupP99(Setup.INSERT_ROTORS);
+    }
+
+    @Override
+    public double getSetRotorsP99Micros() {
+        return setupP99(Setup.SET_ROTORS);
+    }
+
+    @Override
+    public double getPlugboardP99Micros() {
+        return setupP99(Setup.PLUGBOARD);
+    }
+
+    @Override
+    public String getSummary() {
+        return String.format("%d characters, %d settings lines, %s",
+                             getCharacters(), getSettingsLines(),
+                             _messageTimes.summary("messages"));
+    }
+
+    /** Return the 99th percentile time of PHASE, in microseconds. */
+    private double setupP99(Setup phase) {
+        return _setupTimes[phase.ordinal()].percentile(Latencies.P99)
+            / NANOS_PER_MICRO;
+    }
+
+    /** A message converted by Main. */
+    @Name("enigma.Message")
+    @Label("Enigma Message")
+    @Category("Enigma")
+    static final class MessageEvent extends Event {
+        /** Characters in the message. */
+        @Label("Characters")
+        int characters;
+        /** Time to convert and write it. */
+        @Label("Time")
+        @Timespan
+        long time;
+    }
+
+    /** A phase of setting up a machine from a settings line. */
+    @Name("enigma.Setup")
+    @Label("Enigma Setup")
+    @Category("Enigma")
+    static final class SetupEvent extends Event {
+        /** The phase, as a Setup name. */
+        @Label("Phase")
+        String phase;
+        /** Time taken. */
+        @Label("Time")
+        @Timespan
+        long time;
+    }
+
+    /** The loading of a configuration file. */
+    @Name("enigma.ConfigLoad")
+    @Label("Enigma Configuration Load")
+    @Category("Enigma")
+    static final class ConfigLoadEvent extends Event {
+        /** Time taken. */
+        @Label("Time")
+        @Timespan
+        long time;
+    }
+
+    /** Nanoseconds per microsecond. */
+    private static final double NANOS_PER_MICRO = 1e3;
+
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** The metrics, registered with the platform MBean server if
+     *  enabled. */
+    private static final Metrics INSTANCE = new Metrics();
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(INSTANCE, MetricsMBean.class),
+                    new ObjectName("enigma:type=Metrics"));
+            } catch (JMException excp) {
+                System.err.printf("Warning: metrics not published: %s%n",
+                                  excp.getMessage());
+            }
+        }
+    }
+
+    /** Characters converted. */
+    private final LongAdder _characters = new LongAdder();
+
+    /** Messages converted. */
+    private final LongAdder _messages = new LongAdder();
+
+    /** Settings lines applied. */
+    private final LongAdder _settingsLines = new LongAdder();
+
+    /** Configurations loaded. */
+    private final LongAdder _configLoads = new LongAdder();
+
+    /** Total time loading configurations. */
+    private final LongAdder _configNanos = new LongAdder();
+
+    /** Times to convert and write each message. */
+    private final Latencies _messageTimes = new Latencies();
+
+    /** Times of each setup phase, indexed by Setup ordinal. */
+    private final Latencies[] _setupTimes = {
+        new Latencies(), new Latencies(), new Latencies()
+    };
+}
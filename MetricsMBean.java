@@ -0,0 +1,45 @@
+package enigma;
+
+/** The management interface of Metrics, as seen through JMX.
+ *  @author Vineet Vashist
+ */
+public interface MetricsMBean {
+
+    /** Return the number of characters converted. */
+    long getCharacters();
+
+    /** Return the number of messages converted. */
+    long getMessages();
+
+    /** Return the number of settings lines applied. */
+    long getSettingsLines();
+
+    /** Return the number of configurations loaded. */
+    long getConfigLoads();
+
+    /** Return the total time spent loading configurations, in
+     *  milliseconds. */
+    double getConfigLoadMillis();
+
+    /** Return the median time to convert and write a message, in
+     *  microseconds. */
+    double getMessageP50Micros();
+
+    /** Return the 99th percentile time to convert and write a message,
+     *  in microseconds. */
+    double getMessageP99Micros();
+
+    /** Return the 99th percentile time of insertRotors, in
+     *  microseconds. */
+    double getInsertRotorsP99Micros();
+
+    /** Return the 99th percentile time of setRotors, in microseconds. */
+    double getSetRotorsP99Micros();
+
+    /** Return the 99th percentile time to build and install a plugboard,
+     *  in microseconds. */
+    double getPlugboardP99Micros();
+
+    /** Return a one-line summary of the metrics. */
+    String getSummary();
+}
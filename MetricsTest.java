@@ -0,0 +1,164 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Metrics class.  As Metrics are
+ *  fixed at class initialization by -Denigma.metrics, the counters are
+ *  exercised by Probe in a separate JVM with metrics enabled.
+ *  @author Vineet Vashist
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Input to Main: two settings lines and three messages of 18
+     *  characters in all. */
+    private static final String INPUT =
+        "* B Beta I II III AAAA\nHELLO WORLD\nABC\n"
+        + "* B Gamma IV V VI BBBB (AB)\nXYZZY\n";
+
+    /** Converts in each of the ways Metrics counts, with metrics
+     *  enabled, printing for each a line of its name and the changes it
+     *  made to the characters, messages, settings lines and
+     *  configuration loads counted, as read from the MBean. */
+    public static class Probe {
+        /** Run the probe; ARGS is ignored. */
+        public static void main(String... args) throws Exception {
+            if (!Metrics.ENABLED) {
+                throw new AssertionError("metrics are not enabled");
+            }
+            Machine m = machineFor(randomKey(new Random(36)));
+            report("string", () -> m.convert("HELLOWORLD"));
+            report("array", () -> m.convert(new int[100], 0, 100));
+            report("buffer", () -> m.convert(ByteBuffer.allocate(50),
+                                              ByteBuffer.allocate(50)));
+
+            Path file = Files.createTempFile("keys", ".sheet");
+            KeySheet.build(navalCatalog(),
+                           List.of("1 * B Beta I II III AAAA")).write(file);
+            KeySheet sheet = KeySheet.map(file, m);
+            report("keysheet", () -> sheet.apply(m, 0));
+
+            Path dir = Files.createTempDirectory("metrics");
+            Files.writeString(dir.resolve("naval.conf"), navalConfig());
+            report("sequential", () -> main(dir, "naval.conf"));
+            report("pipeline", () -> main(dir, "--pipeline", "naval.conf"));
+        }
+
+        /** Run Main in DIR on ARGS, with INPUT as its standard input. */
+        private static void main(Path dir, String... args) {
+            Main main = new Main(args, dir,
+                                 new ByteArrayInputStream(
+                                     INPUT.getBytes(StandardCharsets.UTF_8)),
+                                 new PrintStream(new ByteArrayOutputStream()));
+            main.process();
+            main.close();
+        }
+
+        /** Print a line of NAME and the changes to the counters made by
+         *  running ACTION. */
+        private static void report(String name, Runnable action)
+            throws Exception {
+            long[] before = counters();
+            action.run();
+            long[] after = counters();
+            StringBuilder line = new StringBuilder(name);
+            for (int k = 0; k < after.length; k += 1) {
+                line.append('\t').append(after[k] - before[k]);
+            }
+            System.out.println(line);
+        }
+
+        /** Return the counters, as published by the MBean. */
+        private static long[] counters() throws Exception {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("enigma:type=Metrics");
+            String[] attributes = {
+                "Characters", "Messages", "SettingsLines", "ConfigLoads",
+            };
+            long[] result = new long[attributes.length];
+            for (int k = 0; k < result.length; k += 1) {
+                result[k] = (Long) server.getAttribute(name, attributes[k]);
+            }
+            return result;
+        }
+    }
+
+    /** Return the output of Probe, run with metrics enabled, as a map
+     *  from each step's name to its counter changes. */
+    private static HashMap<String, long[]> probe() throws Exception {
+        Process child = new ProcessBuilder(
+            Path.of(System.getProperty("java.home"), "bin", "java")
+                .toString(),
+            "-Denigma.metrics=true",
+            "-cp", System.getProperty("java.class.path"),
+            Probe.class.getName()).redirectErrorStream(true).start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = child.getInputStream()) {
+            in.transferTo(out);
+        }
+        assertTrue(child.waitFor(20, TimeUnit.SECONDS));
+        String text = out.toString();
+        assertEquals(text, 0, child.exitValue());
+        HashMap<String, long[]> result = new HashMap<>();
+        for (String line : text.split("\n")) {
+            String[] fields = line.split("\t");
+            long[] changes = new long[fields.length - 1];
+            for (int k = 0; k < changes.length; k += 1) {
+                changes[k] = Long.parseLong(fields[k + 1]);
+            }
+            result.put(fields[0], changes);
+        }
+        return result;
+    }
+
+    /** Check that STEPS records for the step NAME the changes EXPECTED
+     *  to the characters, messages, settings lines and configuration
+     *  loads. */
+    private static void checkStep(HashMap<String, long[]> steps,
+                                  String name, long... expected) {
+        long[] changes = steps.get(name);
+        assertNotNull(changes);
+        for (int k = 0; k < expected.length; k += 1) {
+            assertEquals(name + " counter " + k, expected[k], changes[k]);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void countersMove() throws Exception {
+        HashMap<String, long[]> steps = probe();
+        checkStep(steps, "string", 10, 0, 0, 0);
+        checkStep(steps, "array", 100, 0, 0, 0);
+        checkStep(steps, "buffer", 50, 0, 0, 0);
+        checkStep(steps, "keysheet", 0, 0, 1, 0);
+        checkStep(steps, "sequential", 18, 3, 2, 1);
+        checkStep(steps, "pipeline", 18, 3, 2, 1);
+    }
+}
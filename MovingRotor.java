@@ -12,19 +12,33 @@ class MovingRotor extends Rotor {
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
-        rotornotch = notches.split("");
+        _notches = new boolean[perm.size()];
+        notches.codePoints().forEach(cp ->
+            _notches[perm.alphabet().toIndex(cp)] = true);
+    }
+
+    /** A rotor named NAME with permutation PERM whose notch flags,
+     *  indexed by setting, are NOTCHES. */
+    private MovingRotor(String name, Permutation perm, boolean[] notches) {
+        super(name, perm);
+        _notches = notches;
+    }
+
+    @Override
+    Rotor copy() {
+        return new MovingRotor(name(), wiring(), _notches);
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     @Override
     boolean atNotch() {
-        for (String c : rotornotch) {
-            if (permutation().alphabet().toChar(setting()) == c.charAt(0)) {
-                return true;
-            }
-        }
-        return false;
+        return notchAt(setting());
+    }
+
+    @Override
+    boolean notchAt(int posn) {
+        return _notches[posn];
     }
 
     @Override
@@ -38,8 +52,8 @@ class MovingRotor extends Rotor {
         set(nextpos);
     }
 
-    /** Notches for the current rotor. */
-    private String[] rotornotch;
+    /** Notch flags for the current rotor, indexed by setting. */
+    private final boolean[] _notches;
 
 
 }
@@ -71,4 +71,55 @@ public class MovingRotorTest {
         checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 
+    @Test
+    public void checkRotorRing() {
+        setRotor("I", NAVALA, "");
+        rotor.setRing(1);
+        assertEquals(1, rotor.ring());
+        assertEquals(alpha.indexOf('K'), rotor.convertForward(0));
+        rotor.set(1);
+        checkRotor("Rotor I ring B at B", UPPER_STRING, NAVALA_MAP.get("I"));
+        rotor.setRing(26);
+        rotor.set(25);
+        checkRotor("Rotor I ring A", UPPER_STRING, NAVALZ_MAP.get("I"));
+    }
+
+    @Test
+    public void supplementaryNotches() {
+        Alphabet alphabet =
+            new Alphabet(text('A', 0x1D538, 'B', 0x1D539, 0x10400));
+        Permutation perm =
+            new Permutation(text('(', 'A', 0x1D539, ')'), alphabet);
+        Rotor r = new MovingRotor("S", perm, text(0x1D538, 0x10400));
+        boolean[] expected = {false, true, false, false, true};
+        for (int k = 0; k < 2 * expected.length; k += 1) {
+            assertEquals("setting " + r.setting(),
+                         expected[r.setting()], r.atNotch());
+            assertEquals(expected[k % expected.length], r.notchAt(k % 5));
+            r.advance();
+        }
+        assertEquals(0, r.setting());
+        try {
+            new MovingRotor("T", perm, text(0x1D53B));
+            fail("accepted a notch not in the alphabet");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void largeAlphabetNotches() {
+        int n = 70000;
+        Alphabet alphabet = new Alphabet(text(codePoints(0x10000, 1, n)));
+        Rotor r = new MovingRotor("L", new Permutation("", alphabet),
+                                  text(0x10000 + n - 1, 0x10000 + 65536));
+        for (int k = 0; k < n; k += 1) {
+            assertEquals(k == n - 1 || k == 65536, r.notchAt(k));
+        }
+        r.set(n - 1);
+        assertTrue(r.atNotch());
+        r.advance();
+        assertEquals(0, r.setting());
+        assertFalse(r.atNotch());
+    }
 }
@@ -0,0 +1,218 @@
+package enigma;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import static enigma.EnigmaException.*;
+
+/** A normalizer of message text, turning each character into the index
+ *  in an alphabet of the character the machine should see, or dropping
+ *  it.  Blanks are always dropped.  A character of the alphabet is
+ *  itself; otherwise, if folding case, it may be its other case, and
+ *  explicit mappings of single characters take precedence over both;
+ *  failing that it is handled by the policy for other characters:
+ *  rejected (the default), dropped, or replaced by one character.
+ *
+ *  <p>A normalizer is given by a specification: terms separated by
+ *  commas, each one of "fold", "reject", "drop", "replace:C" (replace
+ *  other characters with C) or "map:XY" (map X to Y, or drop X if there
+ *  is no Y).  A comma just after a colon is a character of its term.
+ *
+ *  <p>ASCII characters are classified by a table indexed by byte.
+ *  Lines of bytes in an ASCII-compatible charset are classified eight
+ *  bytes at a time while they contain no other characters, found by
+ *  testing the high bit of all eight bytes of a long at once, so only
+ *  lines with other characters are decoded.
+ *  @author Vineet Vashist
+ */
+final class Normalizer {
+
+    /** Return the normalizer given by SPEC for ALPHABET. */
+    static Normalizer parse(String spec, Alphabet alphabet) {
+        Normalizer result = new Normalizer(alphabet);
+        for (String term : spec.split(",(?<!:,)")) {
+            term = term.strip();
+            if (term.equals("fold")) {
+                result._fold = true;
+            } else if (term.equals("reject")) {
+                result._other = REJECT;
+            } else if (term.equals("drop")) {
+                result._other = DROP;
+            } else if (term.startsWith("replace:")
+                       && term.codePointCount(8, term.length()) == 1) {
+                result._other = alphabet.indexOf(term.codePointAt(8));
+                if (result._other < 0) {
+                    throw error("replacement %s is not in the alphabet",
+                                term.substring(8));
+                }
+            } else if (term.startsWith("map:")
+                       && term.codePointCount(4, term.length()) >= 1
+                       && term.codePointCount(4, term.length()) <= 2) {
+                int from = term.codePointAt(4);
+                int to = DROP;
+                if (term.codePointCount(4, term.length()) == 2) {
+                    to = alphabet.indexOf(term.codePointAt(
+                        term.offsetByCodePoints(4, 1)));
+                    if (to < 0) {
+                        throw error("%s maps to a character not in the "
+                                    + "alphabet", term);
+                    }
+                }
+                result._map.put(from, to);
+            } else if (!term.isEmpty()) {
+                throw error("bad normalization term: %s", term);
+            }
+        }
+        for (int b = 0; b < ASCII; b += 1) {
+            result._table[b] = result.classify(b);
+        }
+        return result;
+    }
+
+    /** A normalizer for ALPHABET that rejects everything not in it. */
+    private Normalizer(Alphabet alphabet) {
+        _alphabet = alphabet;
+    }
+
+    /** Put the indices of the characters of LINE, normalized, into OUT
+     *  from POS on, returning the position after the last.  OUT must
+     *  have room for LINE.length() indices. */
+    int normalize(CharSequence line, int[] out, int pos) {
+        for (int i = 0; i < line.length(); ) {
+            int cp = Character.codePointAt(line, i);
+            i += Character.charCount(cp);
+            int c = cp < ASCII ? _table[cp] : classify(cp);
+            if (c >= 0) {
+                out[pos] = c;
+                pos += 1;
+            } else if (c == REJECT) {
+                throw reject(cp);
+            }
+        }
+        return pos;
+    }
+
+    /** Put the indices of the characters of the LENGTH bytes of LINE, in
+     *  CHARSET, normalized, into OUT from POS on, returning the position
+     *  after the last.  OUT must have room for LENGTH indices. */
+    int normalize(byte[] line, int length, Charset charset, int[] out,
+                  int pos) {
+        if (!asciiCompatible(charset)) {
+            return normalize(new String(line, 0, length, charset), out, pos);
+        }
+        int[] table = _table;
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            long word = (long) LONGS.get(line, i);
+            if ((word & HIGH_BITS) != 0) {
+                break;
+            }
+            for (int k = 0; k < Long.BYTES; k += 1) {
+                int c = table[(int) (word >>> (k * Byte.SIZE)) & BYTE_MASK];
+                if (c >= 0) {
+                    out[pos] = c;
+                    pos += 1;
+                } else if (c == REJECT) {
+                    throw reject(line[i + k]);
+                }
+            }
+        }
+        for (; i < length; i += 1) {
+            int b = line[i];
+            if (b < 0) {
+                return normalize(new String(line, i, length - i, charset),
+                                 out, pos);
+            }
+            int c = table[b];
+            if (c >= 0) {
+                out[pos] = c;
+                pos += 1;
+            } else if (c == REJECT) {
+                throw reject(b);
+            }
+        }
+        return pos;
+    }
+
+    /** Return true iff CHARSET encodes the ASCII characters as single
+     *  bytes, and nothing else as bytes below 128. */
+    static boolean asciiCompatible(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+            || charset.equals(StandardCharsets.US_ASCII)
+            || charset.equals(StandardCharsets.ISO_8859_1);
+    }
+
+    /** Return the index of the character the code point CP stands for,
+     *  or DROP or REJECT. */
+    private int classify(int cp) {
+        int c = lookup(cp);
+        if (c == MISSING && _fold) {
+            c = lookup(Character.toUpperCase(cp));
+            if (c == MISSING) {
+                c = lookup(Character.toLowerCase(cp));
+            }
+        }
+        return c == MISSING ? _other : c;
+    }
+
+    /** Return the class of the code point CP by my mappings, blanks and
+     *  the alphabet alone, or MISSING. */
+    private int lookup(int cp) {
+        Integer mapped = _map.get(cp);
+        if (mapped != null) {
+            return mapped;
+        } else if (cp == ' ' || cp == '\t') {
+            return DROP;
+        }
+        int c = _alphabet.indexOf(cp);
+        return c >= 0 ? c : MISSING;
+    }
+
+    /** Return the error for the code point CP. */
+    private EnigmaException reject(int cp) {
+        return error("character %s is not in the alphabet",
+                     new String(Character.toChars(cp)));
+    }
+
+    /** Class of a character that is dropped. */
+    static final int DROP = -1;
+
+    /** Class of a character that is an error. */
+    static final int REJECT = -2;
+
+    /** Class of a character not yet classified. */
+    private static final int MISSING = -3;
+
+    /** Number of ASCII characters. */
+    private static final int ASCII = 128;
+
+    /** The high bit of each byte of a long. */
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /** Mask selecting the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Reads longs from byte arrays, the first byte lowest. */
+    private static final VarHandle LONGS = MethodHandles
+        .byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Class of each ASCII character; the rest of the table is never
+     *  read, as bytes from 128 up are not whole characters. */
+    private final int[] _table = new int[Alphabet.BYTE_VALUES];
+
+    /** Class of characters mapped explicitly. */
+    private final HashMap<Integer, Integer> _map = new HashMap<>();
+
+    /** True iff folding case. */
+    private boolean _fold;
+
+    /** Class of other characters. */
+    private int _other = REJECT;
+}
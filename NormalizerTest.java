@@ -0,0 +1,123 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the Normalizer class.
+ *  @author Vineet Vashist
+ */
+public class NormalizerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The alphabet of the tests. */
+    private static final Alphabet UPPER =
+        new Alphabet("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+
+    /** Return TEXT normalized by the normalizer given by SPEC, as
+     *  characters, normalizing its bytes in CHARSET. */
+    private static String bytes(String spec, String text, Charset charset) {
+        Normalizer n = Normalizer.parse(spec, UPPER);
+        byte[] line = text.getBytes(charset);
+        int[] out = new int[line.length + 1];
+        out[0] = -1;
+        int end = n.normalize(line, line.length, charset, out, 1);
+        assertEquals(-1, out[0]);
+        return chars(out, 1, end);
+    }
+
+    /** Return TEXT normalized by the normalizer given by SPEC, as
+     *  characters. */
+    private static String normalize(String spec, String text) {
+        Normalizer n = Normalizer.parse(spec, UPPER);
+        int[] out = new int[text.length()];
+        String result = chars(out, 0, n.normalize(text, out, 0));
+        assertEquals(result, bytes(spec, text, StandardCharsets.UTF_8));
+        return result;
+    }
+
+    /** Return the characters of UPPER with the indices OUT[FROM..TO-1]. */
+    private static String chars(int[] out, int from, int to) {
+        StringBuilder result = new StringBuilder();
+        for (int i = from; i < to; i += 1) {
+            result.append(UPPER.toChar(out[i]));
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void policies() {
+        assertEquals("HELLOWORLD", normalize("", "HELLO WORLD\t"));
+        assertEquals("HELLOWORLD", normalize("fold", "Hello World"));
+        assertEquals("HELLOWORLD", normalize("fold,drop", "Hello, World!"));
+        assertEquals("HELLOXWORLDX",
+                     normalize("fold, replace:X", "Hello, World!"));
+        assertEquals("HELLOWORLDX",
+                     normalize("fold,drop,map:.X", "hello world."));
+        assertEquals("HELLOCWORLD",
+                     normalize("fold,drop,map:,C,map:!", "Hello, World!"));
+        assertEquals("AEBC",
+                     normalize("fold,drop,map:\u00c4A", "\u00e4eb-c"));
+        assertEquals("COLE", normalize("fold,drop", "\u00e9cole"));
+    }
+
+    @Test
+    public void rejects() {
+        for (String text : new String[] {"hello", "HELLO, WORLD",
+                                         "ABCDEFGHIJKLMN\u00d6"}) {
+            try {
+                normalize("", text);
+                fail("accepted " + text);
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("not in the alphabet"));
+            }
+        }
+        for (String spec : new String[] {"upper", "replace:1",
+                                         "map:AB1", "replace:"}) {
+            try {
+                Normalizer.parse(spec, UPPER);
+                fail("accepted " + spec);
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void wordsMatchCharacters() {
+        Random rand = new Random(43);
+        String pool = "ABCXYZabcxyz .,;-'\t"
+            + "\u00c4\u00e4\u00c9\u00e9\u00df\u0152\u00a0";
+        for (int trial = 0; trial < 500; trial += 1) {
+            StringBuilder text = new StringBuilder();
+            int len = rand.nextInt(60);
+            boolean ascii = rand.nextBoolean();
+            for (int i = 0; i < len; i += 1) {
+                char c = pool.charAt(rand.nextInt(pool.length()));
+                text.append(ascii && c >= 128 ? 'q' : c);
+            }
+            String line = text.toString();
+            for (String spec : new String[] {"fold,drop", "replace:Q",
+                                             "fold,replace:Z,map:\u00dfS"}) {
+                String expected = normalize(spec, line);
+                assertEquals(expected,
+                             bytes(spec, line, StandardCharsets.UTF_16));
+                String latin = line.replaceAll("[^\\x00-\\xff]", "");
+                assertEquals(normalize(spec, latin),
+                             bytes(spec, latin, StandardCharsets.ISO_8859_1));
+            }
+        }
+    }
+}
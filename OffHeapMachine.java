@@ -0,0 +1,162 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/** The engine of a Machine that reads its wirings and notches straight
+ *  from OffHeapTables.  The reflector and the rotors to its right that
+ *  can never move are fused, whenever their settings change, into one
+ *  table held in a direct buffer, so a character only passes the rotors
+ *  that can move and that one table.  The tables are shared and hold
+ *  the wirings at ring setting 0, so a rotor's ring is taken off its
+ *  setting when its tables are read.
+ *  @author Vineet Vashist
+ */
+final class OffHeapMachine extends CompiledMachine {
+
+    /** An engine for the rotors currently inserted in M, reading
+     *  TABLES. */
+    OffHeapMachine(Machine m, OffHeapTables tables) {
+        this(new RotorTables(m), m, tables);
+    }
+
+    /** An engine for the rotors of M, whose snapshot is SNAPSHOT,
+     *  reading TABLES. */
+    private OffHeapMachine(RotorTables snapshot, Machine m,
+                           OffHeapTables tables) {
+        super(snapshot.positions());
+        setPlugboard(snapshot.plugboard());
+        _t = tables;
+        _size = tables.size();
+        _last = snapshot.numRotors() - 1;
+        _pawled = new boolean[_last + 1];
+        _notch = new int[_last + 1];
+        _forward = new int[_last + 1];
+        _backward = new int[_last + 1];
+        _ring = new int[_last + 1];
+        for (int k = 0; k <= _last; k += 1) {
+            int r = tables.index(m.rotor(k).name());
+            _ring[k] = m.rotor(k).ring();
+            _pawled[k] = snapshot.pawled(k);
+            _notch[k] = tables.notchBase(r);
+            _forward[k] = tables.forwardBase(r);
+            _backward[k] = tables.backwardBase(r);
+        }
+        int fixed = 0;
+        while (fixed < _last && !_pawled[fixed + 1] && !_pawled[fixed]) {
+            fixed += 1;
+        }
+        _fixed = fixed;
+        _fused = ByteBuffer.allocateDirect(_size * Integer.BYTES)
+            .order(ByteOrder.nativeOrder()).asIntBuffer();
+        positionsChanged();
+    }
+
+    @Override
+    void positionsChanged() {
+        for (int x = 0; x < _size; x += 1) {
+            int y = x;
+            for (int k = _fixed; k > 0; k -= 1) {
+                y = forward(k, y);
+            }
+            y = forward(0, y);
+            for (int k = 1; k <= _fixed; k += 1) {
+                y = backward(k, y);
+            }
+            _fused.put(x, y);
+        }
+    }
+
+    @Override
+    int convert(int c) {
+        int[] posn = _posn;
+        for (int k = _fixed + 1; k <= _last; k += 1) {
+            boolean move =
+                (_pawled[k] && (k == _last || notch(k + 1, posn[k + 1])))
+                || (_pawled[k - 1] && notch(k, posn[k]));
+            if (move) {
+                posn[k] = posn[k] + 1 == _size ? 0 : posn[k] + 1;
+            }
+        }
+        int x = _plug[c];
+        for (int k = _last; k > _fixed; k -= 1) {
+            x = forward(k, x);
+        }
+        x = _fused.get(x);
+        for (int k = _fixed + 1; k <= _last; k += 1) {
+            x = backward(k, x);
+        }
+        return _plug[x];
+    }
+
+    /** Return true iff the rotor in slot K is at a notch at setting
+     *  POSN. */
+    private boolean notch(int k, int posn) {
+        return _t.get(_notch[k] + posn) != 0;
+    }
+
+    /** Return the conversion of X by the rotor in slot K at its current
+     *  setting. */
+    private int forward(int k, int x) {
+        return pass(_forward[k], offset(k), x);
+    }
+
+    /** Return the inverse conversion of X by the rotor in slot K at its
+     *  current setting. */
+    private int backward(int k, int x) {
+        return pass(_backward[k], offset(k), x);
+    }
+
+    /** Return the setting of the rotor in slot K less its ring setting:
+     *  the setting at which its ring-0 tables are read. */
+    private int offset(int k) {
+        int offset = _posn[k] - _ring[k];
+        return offset < 0 ? offset + _size : offset;
+    }
+
+    /** Return X passed through the tables at BASE by a rotor at setting
+     *  POSN: a single lookup in a state table, otherwise a lookup in the
+     *  setting-0 table with the setting added and removed. */
+    private int pass(int base, int posn, int x) {
+        if (_t.stateTables()) {
+            return _t.get(base + posn * _size + x);
+        }
+        int entry = x + posn;
+        if (entry >= _size) {
+            entry -= _size;
+        }
+        int exit = _t.get(base + entry) - posn;
+        return exit < 0 ? exit + _size : exit;
+    }
+
+    /** The tables I read. */
+    private final OffHeapTables _t;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Index of the rightmost slot. */
+    private final int _last;
+
+    /** Highest slot that can never move; slots 0.._fixed are fused. */
+    private final int _fixed;
+
+    /** True for slots with a pawl. */
+    private final boolean[] _pawled;
+
+    /** Per slot, the offset of its rotor's notch flags in _t. */
+    private final int[] _notch;
+
+    /** Per slot, the offset of its rotor's forward tables in _t. */
+    private final int[] _forward;
+
+    /** Per slot, the offset of its rotor's inverse tables in _t. */
+    private final int[] _backward;
+
+    /** Per slot, the ring setting of its rotor. */
+    private final int[] _ring;
+
+    /** The reflector and the fixed rotors as one table. */
+    private final IntBuffer _fused;
+}
@@ -0,0 +1,320 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+import static java.nio.file.StandardCopyOption.*;
+import static java.nio.file.StandardOpenOption.*;
+import static enigma.EnigmaException.*;
+
+/** The wirings and notches of every rotor in a configuration, kept
+ *  outside the Java heap in a direct buffer or a memory-mapped file.
+ *  For alphabets of up to STATE_LIMIT characters each rotor also gets
+ *  its state tables: its forward and inverse wiring precomputed at every
+ *  setting, so that passing a rotor is a single lookup.  A table file
+ *  written by one JVM can be mapped read-only by any number of others
+ *  on the same host, which then share its pages instead of each holding
+ *  the tables on its heap.
+ *
+ *  A table file is a sequence of ints in the byte order recorded by its
+ *  ORDER_MARK: a header (magic, version, mark, alphabet size, rotor
+ *  count, state-table flag, length of the names in bytes), the rotor
+ *  names in UTF-8 separated by newlines and padded to a whole int, one
+ *  checksum per rotor, and then for each rotor its notch flags and its
+ *  forward and inverse tables.
+ *  @author Vineet Vashist
+ */
+final class OffHeapTables {
+
+    /** Return tables for all the rotors available to M, in a newly
+     *  allocated direct buffer. */
+    static OffHeapTables build(Machine m) {
+        Collection<Rotor> catalog = m.allRotors();
+        int n = m.alphabet().size();
+        boolean state = n <= STATE_LIMIT;
+        ArrayList<String> names = new ArrayList<>();
+        for (Rotor r : catalog) {
+            names.add(r.name());
+        }
+        byte[] nameBytes =
+            String.join("\n", names).getBytes(StandardCharsets.UTF_8);
+        long ints = HEADER + (nameBytes.length + 3) / 4 + catalog.size()
+            + (long) catalog.size() * rotorInts(n, state);
+        if (ints * Integer.BYTES > Integer.MAX_VALUE) {
+            throw error("tables for %d rotors of %d characters are too "
+                        + "large", catalog.size(), n);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) ints
+                                                      * Integer.BYTES)
+            .order(ByteOrder.nativeOrder());
+        IntBuffer out = buffer.asIntBuffer();
+        out.put(MAGIC).put(VERSION).put(ORDER_MARK).put(n)
+            .put(catalog.size()).put(state ? 1 : 0).put(nameBytes.length);
+        ByteBuffer names4 = ByteBuffer.allocate((nameBytes.length + 3) / 4
+                                                * Integer.BYTES)
+            .order(ByteOrder.nativeOrder());
+        names4.put(nameBytes).flip();
+        names4.limit(names4.capacity());
+        out.put(names4.asIntBuffer());
+        for (Rotor r : catalog) {
+            out.put(checksum(r));
+        }
+        for (Rotor r : catalog) {
+            Permutation perm = r.wiring();
+            for (int s = 0; s < n; s += 1) {
+                out.put(r.notchAt(s) ? 1 : 0);
+            }
+            int settings = state ? n : 1;
+            for (int s = 0; s < settings; s += 1) {
+                for (int x = 0; x < n; x += 1) {
+                    out.put(perm.wrap(perm.permute(x + s) - s));
+                }
+            }
+            for (int s = 0; s < settings; s += 1) {
+                for (int x = 0; x < n; x += 1) {
+                    out.put(perm.wrap(perm.invert(x + s) - s));
+                }
+            }
+        }
+        return new OffHeapTables(buffer, m);
+    }
+
+    /** Return the tables in the file FILE, mapped read-only, after
+     *  checking that they describe the rotors available to M. */
+    static OffHeapTables map(Path file, Machine m) {
+        try (FileChannel in = FileChannel.open(file, READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER * Integer.BYTES);
+            while (header.hasRemaining() && in.read(header) >= 0) {
+                continue;
+            }
+            if (header.hasRemaining()) {
+                throw error("%s is not an enigma table file", file);
+            }
+            if (header.getInt(2 * Integer.BYTES) != ORDER_MARK) {
+                header.order(ByteOrder.LITTLE_ENDIAN);
+            }
+            header.flip();
+            IntBuffer fields = header.asIntBuffer();
+            if (!validHeader(fields)) {
+                throw error("%s is not an enigma table file", file);
+            }
+            if (in.size() != length(fields) * Integer.BYTES) {
+                throw error("%s is truncated or has the wrong length",
+                            file);
+            }
+            ByteBuffer buffer =
+                in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            buffer.order(header.order());
+            return new OffHeapTables(buffer, m);
+        } catch (IOException excp) {
+            throw error("could not map %s", file);
+        }
+    }
+
+    /** Return the tables in the file FILE if it exists, otherwise build
+     *  them for M, write them to FILE and map that.  Several processes
+     *  may do this at once: each sees either no file or a whole one. */
+    static OffHeapTables open(Path file, Machine m) {
+        if (!file.toFile().exists()) {
+            build(m).write(file);
+        }
+        return map(file, m);
+    }
+
+    /** Tables held in BUFFER, checked against the rotors available to
+     *  M. */
+    private OffHeapTables(ByteBuffer buffer, Machine m) {
+        _buffer = buffer;
+        _ints = buffer.duplicate().order(buffer.order()).asIntBuffer();
+        if (!validHeader(_ints)) {
+            throw error("not an enigma table file");
+        }
+        if (_ints.limit() != length(_ints)) {
+            throw error("table file truncated");
+        }
+        _size = _ints.get(SIZE_FIELD);
+        int count = _ints.get(COUNT_FIELD);
+        _state = _ints.get(STATE_FIELD) != 0;
+        int nameLength = _ints.get(NAMES_FIELD);
+        byte[] nameBytes = new byte[nameLength];
+        ByteBuffer raw = buffer.duplicate();
+        raw.position(HEADER * Integer.BYTES);
+        raw.get(nameBytes);
+        String[] names = nameLength == 0 ? new String[0]
+            : new String(nameBytes, StandardCharsets.UTF_8).split("\n");
+        int base = HEADER + (nameLength + 3) / 4;
+
+        Collection<Rotor> catalog = m.allRotors();
+        if (_size != m.alphabet().size() || count != catalog.size()
+            || names.length != count) {
+            throw error("table file does not match the configuration");
+        }
+        int i = 0;
+        for (Rotor r : catalog) {
+            if (!names[i].equals(r.name())
+                || _ints.get(base + i) != checksum(r)) {
+                throw error("table file does not match rotor %s", r.name());
+            }
+            _index.put(r.name(), i);
+            i += 1;
+        }
+        _first = base + count;
+        _rotorInts = (int) rotorInts(_size, _state);
+    }
+
+    /** Return true iff INTS starts with the header of a table file in
+     *  its byte order, with no negative counts. */
+    private static boolean validHeader(IntBuffer ints) {
+        return ints.limit() >= HEADER && ints.get(0) == MAGIC
+            && ints.get(1) == VERSION && ints.get(2) == ORDER_MARK
+            && ints.get(SIZE_FIELD) >= 0 && ints.get(COUNT_FIELD) >= 0
+            && ints.get(NAMES_FIELD) >= 0;
+    }
+
+    /** Return the length, in ints, of the table file whose valid header
+     *  starts INTS. */
+    private static long length(IntBuffer ints) {
+        long count = ints.get(COUNT_FIELD);
+        return HEADER + (ints.get(NAMES_FIELD) + 3L) / 4 + count
+            + count * rotorInts(ints.get(SIZE_FIELD),
+                                ints.get(STATE_FIELD) != 0);
+    }
+
+    /** Write my contents to FILE, by writing a temporary file beside it
+     *  and renaming that over FILE, so that no reader of FILE ever sees
+     *  part of them. */
+    void write(Path file) {
+        Path temp = null;
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            temp = Files.createTempFile(dir, file.getFileName() + ".",
+                                        ".tmp");
+            try (FileChannel out = FileChannel.open(temp, WRITE)) {
+                ByteBuffer all = _buffer.duplicate();
+                all.clear();
+                while (all.hasRemaining()) {
+                    out.write(all);
+                }
+                out.force(true);
+            }
+            Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException excp) {
+                    /* Ignore */
+                }
+            }
+        }
+    }
+
+    /** Return the alphabet size. */
+    int size() {
+        return _size;
+    }
+
+    /** Return true iff I hold per-setting state tables. */
+    boolean stateTables() {
+        return _state;
+    }
+
+    /** Return the index of the rotor named NAME. */
+    int index(String name) {
+        Integer i = _index.get(name);
+        if (i == null) {
+            throw error("no tables for rotor %s", name);
+        }
+        return i;
+    }
+
+    /** Return the offset, in ints, of the notch flags of rotor R. */
+    int notchBase(int r) {
+        return _first + r * _rotorInts;
+    }
+
+    /** Return the offset, in ints, of the forward tables of rotor R. */
+    int forwardBase(int r) {
+        return notchBase(r) + _size;
+    }
+
+    /** Return the offset, in ints, of the inverse tables of rotor R. */
+    int backwardBase(int r) {
+        return forwardBase(r) + (_state ? _size * _size : _size);
+    }
+
+    /** Return the int at OFFSET. */
+    int get(int offset) {
+        return _ints.get(offset);
+    }
+
+    /** Return the number of ints each rotor occupies in tables for an
+     *  alphabet of N characters, with state tables iff STATE. */
+    private static long rotorInts(int n, boolean state) {
+        return n + 2L * n * (state ? n : 1);
+    }
+
+    /** Return a checksum of the kind, wiring and notches of R. */
+    private static int checksum(Rotor r) {
+        int n = r.size();
+        int[] content = new int[2 * n + 1];
+        content[0] = r.reflecting() ? 2 : r.rotates() ? 1 : 0;
+        for (int x = 0; x < n; x += 1) {
+            content[x + 1] = r.wiring().permute(x);
+            content[n + x + 1] = r.notchAt(x) ? 1 : 0;
+        }
+        return Arrays.hashCode(content);
+    }
+
+    /** Largest alphabet for which state tables are kept. */
+    static final int STATE_LIMIT = 1024;
+
+    /** First int of a table file. */
+    private static final int MAGIC = 0x454e4754;
+
+    /** Table file format version. */
+    private static final int VERSION = 1;
+
+    /** Int whose byte order identifies that of the file. */
+    private static final int ORDER_MARK = 0x01020304;
+
+    /** Header field positions. */
+    private static final int SIZE_FIELD = 3, COUNT_FIELD = 4,
+        STATE_FIELD = 5, NAMES_FIELD = 6;
+
+    /** Number of ints in the header. */
+    private static final int HEADER = 7;
+
+    /** The underlying direct or mapped buffer. */
+    private final ByteBuffer _buffer;
+
+    /** An int view of _buffer. */
+    private final IntBuffer _ints;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** True iff per-setting state tables are present. */
+    private final boolean _state;
+
+    /** Offset, in ints, of the first rotor's tables. */
+    private final int _first;
+
+    /** Ints per rotor. */
+    private final int _rotorInts;
+
+    /** Rotor index by name. */
+    private final HashMap<String, Integer> _index = new HashMap<>();
+}
@@ -0,0 +1,137 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the OffHeapTables class.
+ *  @author Vineet Vashist
+ */
+public class OffHeapTablesTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Check that machines using TABLES convert random messages from RAND
+     *  as the interpreted heap engine does. */
+    private static void checkAgainstHeap(OffHeapTables tables, Random rand) {
+        for (int trial = 0; trial < 20; trial += 1) {
+            String[] key = randomKey(rand);
+            String msg = randomMessage(rand, rand.nextInt(500));
+            Machine heap = machineFor(key);
+            heap.setInterpreted(true);
+            Machine offHeap = machineFor(key);
+            offHeap.setTables(tables);
+            assertEquals(heap.convert(msg), offHeap.convert(msg));
+        }
+    }
+
+    /** Return a file name in a new temporary directory. */
+    private static Path tableFile() throws Exception {
+        return Files.createTempDirectory("tables").resolve("naval.tables");
+    }
+
+    /** Return the number of files in DIR. */
+    private static long files(Path dir) throws Exception {
+        try (Stream<Path> list = Files.list(dir)) {
+            return list.count();
+        }
+    }
+
+    /** Check that mapping FILE fails with a message containing
+     *  EXPECTED. */
+    private static void checkRejected(Path file, String expected) {
+        try {
+            OffHeapTables.map(file, navalCatalog());
+            fail("mapped a bad table file");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage(),
+                       excp.getMessage().contains(expected));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void mappedTablesMatchHeap() throws Exception {
+        Random rand = new Random(30);
+        OffHeapTables built = OffHeapTables.build(navalCatalog());
+        assertTrue(built.stateTables());
+        checkAgainstHeap(built, rand);
+
+        Path file = tableFile();
+        built.write(file);
+        assertEquals(1, files(file.getParent()));
+        OffHeapTables mapped = OffHeapTables.map(file, navalCatalog());
+        assertEquals(26, mapped.size());
+        checkAgainstHeap(mapped, rand);
+        checkAgainstHeap(OffHeapTables.open(file, navalCatalog()), rand);
+    }
+
+    @Test
+    public void concurrentOpens() throws Exception {
+        Path file = tableFile();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            ArrayList<Future<OffHeapTables>> opened = new ArrayList<>();
+            for (int i = 0; i < 8; i += 1) {
+                opened.add(pool.submit(
+                    () -> OffHeapTables.open(file, navalCatalog())));
+            }
+            Random rand = new Random(31);
+            for (Future<OffHeapTables> tables : opened) {
+                checkAgainstHeap(tables.get(), rand);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(1, files(file.getParent()));
+    }
+
+    @Test
+    public void badFilesAreRejected() throws Exception {
+        Path file = tableFile();
+        OffHeapTables.build(navalCatalog()).write(file);
+        long size = Files.size(file);
+        try (FileChannel out = FileChannel.open(file, WRITE)) {
+            out.truncate(size - 4);
+        }
+        checkRejected(file, "wrong length");
+        try (FileChannel out = FileChannel.open(file, WRITE)) {
+            out.truncate(12);
+        }
+        checkRejected(file, "not an enigma table file");
+        Files.write(file, new byte[1000]);
+        checkRejected(file, "not an enigma table file");
+
+        OffHeapTables.build(navalCatalog()).write(file);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("II"),
+                                                        UPPER), "Q"));
+        try {
+            OffHeapTables.map(file, new Machine(UPPER, 2, 1, rotors));
+            fail("mapped tables of another configuration");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("does not match"));
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static enigma.EnigmaException.*;
+
+/** An analyzer of the stepping of a configuration's machines.  The
+ *  positions of the rotors follow each other deterministically, so from
+ *  any start they run through a tail of states never seen again and
+ *  then round a cycle forever; the length of the cycle is the period of
+ *  the keystream.  Both lengths depend on the notches of the rotors
+ *  under pawls and on double stepping, but not on the reflector, the
+ *  fixed rotors or the plugboard.  They are found with Brent's cycle
+ *  detection over the positions of the moving rotors packed into a
+ *  long, in constant space and without converting anything.  Each
+ *  order of the moving rotors is analyzed as a separate task, in
+ *  parallel.
+ *  @author Vineet Vashist
+ */
+public final class PeriodAnalyzer {
+
+    /** Print the report for the configuration in the file ARGS[0],
+     *  starting from the rotor positions ARGS[1], as in a settings line
+     *  (default, every rotor at the first character). */
+    public static void main(String... args) {
+        try {
+            if (args.length < 1 || args.length > 2) {
+                throw error("Usage: java enigma.PeriodAnalyzer CONFIG "
+                            + "[POSITIONS]");
+            }
+            PeriodAnalyzer analyzer =
+                new PeriodAnalyzer(CipherServer.readMachine(args[0]));
+            System.out.print(report(analyzer.analyze(
+                args.length > 1 ? args[1] : null)));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** An analyzer of the machines that can be built from the
+     *  configuration of M. */
+    PeriodAnalyzer(Machine m) {
+        _catalog = m;
+        int slots = m.numRotors();
+        int pawls = m.numPawls();
+        _base = new String[slots - pawls];
+        int fixed = 1;
+        for (Rotor r : m.allRotors()) {
+            if (r.reflecting()) {
+                if (_base[0] == null) {
+                    _base[0] = r.name();
+                }
+            } else if (r.rotates()) {
+                _moving.add(r.name());
+            } else if (fixed < _base.length) {
+                _base[fixed] = r.name();
+                fixed += 1;
+            }
+        }
+        if (_base[0] == null || fixed < _base.length
+            || _moving.size() < pawls) {
+            throw error("the configuration cannot fill its rotor slots");
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(m.alphabet().size() - 1);
+        if ((long) bits * pawls > Long.SIZE) {
+            throw error("%d moving rotors of %d characters are too many "
+                        + "to analyze", pawls, m.alphabet().size());
+        }
+    }
+
+    /** The outcome of analyzing one order of moving rotors. */
+    static final class Result {
+        /** The result for the moving rotors ROTORS, left to right, which
+         *  run through TAIL states before a cycle of PERIOD. */
+        Result(String[] rotors, long tail, long period) {
+            _rotors = rotors;
+            _tail = tail;
+            _period = period;
+        }
+
+        /** Return the moving rotors, left to right. */
+        String[] rotors() {
+            return _rotors;
+        }
+
+        /** Return the number of states before the cycle. */
+        long tail() {
+            return _tail;
+        }
+
+        /** Return the period. */
+        long period() {
+            return _period;
+        }
+
+        /** Return the number of distinct states reached. */
+        long states() {
+            return _tail + _period;
+        }
+
+        /** The moving rotors. */
+        private final String[] _rotors;
+        /** States before the cycle. */
+        private final long _tail;
+        /** Length of the cycle. */
+        private final long _period;
+    }
+
+    /** Return the results for every order of moving rotors, starting
+     *  from POSITIONS (null for the first character everywhere), sorted
+     *  by period. */
+    List<Result> analyze(String positions) {
+        ArrayList<String[]> orders = new ArrayList<>();
+        orders(new String[_catalog.numPawls()], 0, orders);
+        return orders.parallelStream()
+            .map(order -> analyze(order, positions))
+            .sorted(Comparator.comparingLong(Result::period)
+                    .thenComparing(r -> String.join(" ", r.rotors())))
+            .collect(Collectors.toList());
+    }
+
+    /** Return the result for the moving rotors ORDER, left to right,
+     *  starting from POSITIONS (null for the first character
+     *  everywhere). */
+    Result analyze(String[] order, String positions) {
+        Machine m = _catalog.copy();
+        m.setInterpreted(true);
+        String[] rotors = Arrays.copyOf(_base, _base.length + order.length);
+        System.arraycopy(order, 0, rotors, _base.length, order.length);
+        m.insertRotors(rotors);
+        if (positions != null) {
+            m.setRotors(positions);
+        }
+        Stepper stepper = new Stepper(new RotorTables(m), order.length);
+        long start = stepper.pack();
+
+        long power = 1, period = 1;
+        long tortoise = start, hare = stepper.next(start);
+        while (tortoise != hare) {
+            if (power == period) {
+                tortoise = hare;
+                power *= 2;
+                period = 0;
+            }
+            hare = stepper.next(hare);
+            period += 1;
+        }
+        tortoise = start;
+        hare = start;
+        for (long i = 0; i < period; i += 1) {
+            hare = stepper.next(hare);
+        }
+        long tail = 0;
+        while (tortoise != hare) {
+            tortoise = stepper.next(tortoise);
+            hare = stepper.next(hare);
+            tail += 1;
+        }
+        return new Result(order, tail, period);
+    }
+
+    /** Add to ORDERS every way of filling ORDER[K..] with distinct moving
+     *  rotors not in ORDER[0..K-1]. */
+    private void orders(String[] order, int k, List<String[]> orders) {
+        if (k == order.length) {
+            orders.add(order.clone());
+            return;
+        }
+        for (String name : _moving) {
+            boolean used = false;
+            for (int i = 0; i < k; i += 1) {
+                used |= order[i].equals(name);
+            }
+            if (!used) {
+                order[k] = name;
+                orders(order, k + 1, orders);
+            }
+        }
+    }
+
+    /** Return a report of RESULTS: one line per order of moving rotors,
+     *  and a summary of the periods. */
+    static String report(List<Result> results) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-24s %10s %12s %12s%n", "moving rotors",
+                                 "tail", "period", "states"));
+        TreeMap<Long, Integer> periods = new TreeMap<>();
+        for (Result r : results) {
+            out.append(String.format("%-24s %10d %12d %12d%n",
+                                     String.join(" ", r.rotors()), r.tail(),
+                                     r.period(), r.states()));
+            periods.merge(r.period(), 1, Integer::sum);
+        }
+        out.append(String.format("%d orders; periods:", results.size()));
+        periods.forEach((period, count) ->
+                        out.append(String.format(" %d (x%d)", period, count)));
+        out.append(String.format("%n"));
+        return out.toString();
+    }
+
+    /** The stepping of the moving rotors of one machine, on states packed
+     *  into longs. */
+    private static final class Stepper {
+
+        /** A stepper for the machine described by TABLES, whose last
+         *  PAWLS slots have pawls. */
+        Stepper(RotorTables tables, int pawls) {
+            _tables = tables;
+            _posn = tables.positions();
+            _first = _posn.length - pawls;
+            _bits = 32 - Integer.numberOfLeadingZeros(tables.size() - 1);
+        }
+
+        /** Return the packed current positions. */
+        long pack() {
+            long state = 0;
+            for (int k = _first; k < _posn.length; k += 1) {
+                state = (state << _bits) | _posn[k];
+            }
+            return state;
+        }
+
+        /** Return the state after STATE. */
+        long next(long state) {
+            long mask = (1L << _bits) - 1;
+            for (int k = _posn.length - 1; k >= _first; k -= 1) {
+                _posn[k] = (int) (state & mask);
+                state >>>= _bits;
+            }
+            _tables.step(_posn);
+            return pack();
+        }
+
+        /** The machine's tables. */
+        private final RotorTables _tables;
+        /** Positions being stepped, by slot. */
+        private final int[] _posn;
+        /** First slot with a pawl. */
+        private final int _first;
+        /** Bits per position. */
+        private final int _bits;
+    }
+
+    /** The configuration. */
+    private final Machine _catalog;
+
+    /** Reflector and fixed rotors used for every order. */
+    private final String[] _base;
+
+    /** Names of the moving rotors. */
+    private final ArrayList<String> _moving = new ArrayList<>();
+}
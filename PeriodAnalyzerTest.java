@@ -0,0 +1,80 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PeriodAnalyzer class.
+ *  @author Vineet Vashist
+ */
+public class PeriodAnalyzerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return {tail, period} for the naval machine with the moving rotors
+     *  ORDER at POSITIONS, found by remembering every state of an
+     *  interpreted machine stepped one character at a time. */
+    private static long[] bruteForce(String[] order, String positions) {
+        Machine m = navalCatalog();
+        m.insertRotors(new String[] {"B", "Beta", order[0], order[1],
+                                     order[2]});
+        m.setRotors(positions);
+        m.setPlugboard(new Permutation("", m.alphabet()));
+        m.setInterpreted(true);
+        HashMap<String, Long> seen = new HashMap<>();
+        for (long step = 0; ; step += 1) {
+            Long first = seen.putIfAbsent(m.positions(), step);
+            if (first != null) {
+                return new long[] {first, step - first};
+            }
+            m.convert(0);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void matchesBruteForce() {
+        PeriodAnalyzer analyzer = new PeriodAnalyzer(navalCatalog());
+        String[][] orders = {
+            {"I", "II", "III"}, {"VI", "VII", "VIII"}, {"III", "VIII", "I"},
+            {"V", "VI", "IV"},
+        };
+        String[] starts = {"AAAA", "AADQ", "ZZEV", "AMZZ"};
+        for (String[] order : orders) {
+            for (String start : starts) {
+                PeriodAnalyzer.Result r = analyzer.analyze(order, start);
+                long[] expected = bruteForce(order, start);
+                String id = String.join(" ", order) + " " + start;
+                assertEquals(id, expected[0], r.tail());
+                assertEquals(id, expected[1], r.period());
+            }
+        }
+        assertEquals(26 * 25 * 26,
+                     analyzer.analyze(new String[] {"I", "II", "III"},
+                                      null).period());
+    }
+
+    @Test
+    public void analyzesEveryOrder() {
+        List<PeriodAnalyzer.Result> results =
+            new PeriodAnalyzer(navalCatalog()).analyze(null);
+        assertEquals(8 * 7 * 6, results.size());
+        for (int i = 1; i < results.size(); i += 1) {
+            assertTrue(results.get(i - 1).period()
+                       <= results.get(i).period());
+        }
+        String report = PeriodAnalyzer.report(results);
+        assertTrue(report.contains("336 orders"));
+    }
+}
@@ -1,10 +1,9 @@
-
 package enigma;
-import java.util.HashMap;
-import java.util.Map;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
- *  to the characters of an alphabet.
+ *  to the characters of an alphabet.  The mapping and its inverse are
+ *  kept as primitive tables of the narrowest width that fits the
+ *  alphabet size.
  *  @author Vineet Vashist
  */
 class Permutation {
@@ -15,77 +14,98 @@ class Permutation {
      *  alphabet that are not included in any cycle map to themselves.
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
-        _alphabet = alphabet;
-
-        tempcycles = cycles;
-
-        tempcycles = tempcycles.replaceAll(" ", "");
-        checkval(tempcycles);
-        tempcycles = tempcycles.replaceAll("[(]", "");
-
-
-        permcycle = tempcycles.split("[)]");
-
-        for (String c : permcycle) {
-            addCycle(c);
-        }
-
-        for (Map.Entry<Character, Character> entry : fwdhash.entrySet()) {
-            bckhash.put(entry.getValue(), entry.getKey());
-        }
-    }
-
-    /** Function to check if there are equal number of '(' ')' in the cycles.
-     * And all c's are in Alphabet
-     * @param cycles = contains the string of cycles for the permutation.*/
-
-    void checkval(String cycles) {
-        int str = 0; int lst = 0; int num = 0;
-        char fr = '('; char lt = ')';
-        for (int i = 0; i < cycles.length(); i++) {
-            if (cycles.charAt(i) == fr) {
-                str++; num++;
-                continue;
-            } else if (cycles.charAt(i) == lt && num == 1) {
-                lst++; num--;
+        this(alphabet);
+        boolean[] seen = new boolean[size()];
+        int first = -1, prev = -1;
+        for (int i = 0; i < cycles.length(); ) {
+            int cp = cycles.codePointAt(i);
+            i += Character.charCount(cp);
+            if (Character.isWhitespace(cp)) {
                 continue;
+            } else if (cp == '(') {
+                if (first != -1 || prev == -2) {
+                    throw new EnigmaException("Invalid cycle format :"
+                            + " each cycle must be between '(' and  ')' ");
+                }
+                prev = -2;
+            } else if (cp == ')') {
+                if (prev == -1) {
+                    throw new EnigmaException("Invalid cycle format :"
+                           + " unequal number of '(' , ')' found");
+                }
+                if (first != -1) {
+                    link(prev, first);
+                }
+                first = -1;
+                prev = -1;
+            } else {
+                int c = alphabet.indexOf(cp);
+                if (c < 0) {
+                    throw new EnigmaException("Not a valid machine alphabet "
+                            + "@parenthcheck-permutation : " + cycles);
+                }
+                if (prev == -1) {
+                    throw new EnigmaException("Invalid cycle format :"
+                            + " each cycle must be between '(' and  ')' ");
+                }
+                if (seen[c]) {
+                    throw new EnigmaException("Found duplicate "
+                           + "values in the permutation cycle" + cycles
+                           + " !");
+                }
+                seen[c] = true;
+                if (first == -1) {
+                    first = c;
+                } else {
+                    link(prev, c);
+                }
+                prev = c;
             }
-            if (!alphabet().contains(cycles.charAt(i))) {
-                throw new EnigmaException("Not a valid machine alphabet "
-                        + "@parenthcheck-permutation : " + cycles);
-            }
-        }
-        if (num != 0) {
-            throw new EnigmaException("Invalid cycle format :"
-                    + " each cycle must be between '(' and  ')' ");
         }
-        if (str != lst) {
+        if (prev != -1) {
             throw new EnigmaException("Invalid cycle format :"
-                   + " unequal number of '(' , ')' found");
+                    + " unequal number of '(' , ')' found");
         }
     }
 
-
-    /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm.
-     * @param c = contains the string of cycles for the permutation.*/
-    private void addCycle(String c) {
-
-        for (int i = 0; i < c.length(); i++) {
-            if (!fwdhash.containsKey(c.charAt(i))) {
-                if (i == c.length() - 1) {
-                    fwdhash.put(c.charAt(i), c.charAt(0));
-                    break;
-                }
-                fwdhash.put(c.charAt(i), c.charAt(i + 1));
-
-            } else {
-                throw new EnigmaException("Found duplicate "
-                       + "values in the permutation cycle" + c + " !");
+    /** Set this Permutation to MAPPING over ALPHABET, so that index K
+     *  maps to MAPPING[K].  MAPPING must be a permutation of
+     *  0..ALPHABET.size()-1. */
+    Permutation(int[] mapping, Alphabet alphabet) {
+        this(alphabet);
+        if (mapping.length != alphabet.size()) {
+            throw new EnigmaException("Mapping has " + mapping.length
+                    + " entries for an alphabet of " + alphabet.size());
+        }
+        boolean[] seen = new boolean[mapping.length];
+        for (int i = 0; i < mapping.length; i += 1) {
+            int v = mapping[i];
+            if (v < 0 || v >= mapping.length || seen[v]) {
+                throw new EnigmaException("Mapping is not a permutation");
             }
+            seen[v] = true;
+            link(i, v);
         }
     }
 
+    /** The identity permutation on ALPHABET. */
+    private Permutation(Alphabet alphabet) {
+        _alphabet = alphabet;
+        int n = alphabet.size();
+        _forward = IntTable.create(n, n);
+        _backward = IntTable.create(n, n);
+        for (int i = 0; i < n; i += 1) {
+            _forward.set(i, i);
+            _backward.set(i, i);
+        }
+    }
+
+    /** Make index FROM map to index TO. */
+    private void link(int from, int to) {
+        _forward.set(from, to);
+        _backward.set(to, from);
+    }
+
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
         int r = p % size();
@@ -97,36 +117,31 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return alphabet().size();
+        return _forward.length();
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-
-        int myindex = wrap(p);
-        char c = alphabet().toChar(myindex);
-
-        if (fwdhash.containsKey(c)) {
-            char val = fwdhash.get(c);
-            return alphabet().toInt(val);
-        }
-        return myindex;
+        return _forward.get(wrap(p));
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
+        return _backward.get(wrap(c));
+    }
 
-        int myindex = wrap(c);
-
-        char ch = alphabet().toChar(myindex);
+    /** Return the result of applying this permutation to P, which must
+     *  already be in the range 0..size()-1. */
+    final int forward(int p) {
+        return _forward.get(p);
+    }
 
-        if (bckhash.containsKey(ch)) {
-            char val = bckhash.get(ch);
-            return alphabet().toInt(val);
-        }
-        return myindex;
+    /** Return the result of applying the inverse of this permutation to
+     *  C, which must already be in the range 0..size()-1. */
+    final int backward(int c) {
+        return _backward.get(c);
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -144,6 +159,31 @@ class Permutation {
         return alphabet().toChar(temp);
     }
 
+    /** Return this permutation seen through a ring turned by R
+     *  positions: the index P + R maps to the image of P plus R.  Each
+     *  is made once and kept, so rotors sharing a permutation (see
+     *  PermutationPool) share their ring settings' permutations too. */
+    synchronized Permutation rotated(int r) {
+        r = wrap(r);
+        if (_rotations == null) {
+            _rotations = new Permutation[size()];
+            _rotations[0] = this;
+        }
+        if (_rotations[r] == null) {
+            int[] mapping = new int[size()];
+            for (int p = 0; p < mapping.length; p += 1) {
+                mapping[wrap(p + r)] = wrap(forward(p) + r);
+            }
+            _rotations[r] = new Permutation(mapping, _alphabet);
+        }
+        return _rotations[r];
+    }
+
+    /** Return my table of images, which must not be changed. */
+    IntTable images() {
+        return _forward;
+    }
+
     /** Return the alphabet used to initialize this Permutation. */
     Alphabet alphabet() {
         return _alphabet;
@@ -152,11 +192,9 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (String c : permcycle) {
-            for (int i = 0; i < c.length(); i++) {
-                if (!_alphabet.contains(c.charAt(i))) {
-                    return false;
-                }
+        for (int i = 0; i < size(); i += 1) {
+            if (_forward.get(i) == i) {
+                return false;
             }
         }
         return true;
@@ -165,16 +203,13 @@ class Permutation {
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** String array containing independent cycle rotations. */
-    private String[] permcycle;
-
-    /** temporary placeholder string containing the all the cycles. */
-    private String tempcycles;
+    /** Image of each index. */
+    private final IntTable _forward;
 
-    /** Hashmap contianing forward key-value permutations in cycle rotations. */
-    private HashMap<Character, Character> fwdhash = new HashMap<>();
+    /** Preimage of each index. */
+    private final IntTable _backward;
 
-    /** Hashmap contianing forward key-value permutations in cycle rotations. */
-    private Map<Character, Character> bckhash = new HashMap<>();
+    /** My rotations made so far, by ring setting, or null. */
+    private Permutation[] _rotations;
 
 }
@@ -0,0 +1,182 @@
+package enigma;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.regex.Pattern;
+
+/** A pool of canonical permutations, so that equal permutations, such
+ *  as identical wirings under different rotor names, or the plugboard
+ *  of a settings line seen before, are one object with one pair of
+ *  tables, and share what is derived from them (see
+ *  Permutation.rotated).  Permutations are equal if they have the same
+ *  mapping over alphabets of the same characters.  The pool holds its
+ *  permutations weakly, so it keeps none that is no longer used.  The
+ *  permutations of the cycle strings it has parsed are also held
+ *  softly, by the cycles with blanks removed, so that a repeated
+ *  plugboard is not parsed again until memory runs short.  May be used
+ *  from several threads.
+ *  @author Vineet Vashist
+ */
+final class PermutationPool {
+
+    /** Not instantiable. */
+    private PermutationPool() {
+    }
+
+    /** Return the permutation in the pool equal to PERM, adding PERM if
+     *  there is none. */
+    static Permutation intern(Permutation perm) {
+        Key key = new Key(perm);
+        synchronized (PermutationPool.class) {
+            expunge();
+            Reference<Permutation> ref = _interned.get(key);
+            Permutation result = ref == null ? null : ref.get();
+            if (result == null) {
+                result = perm;
+                _interned.put(key, new Entry(key, perm, _cleared));
+            }
+            return result;
+        }
+    }
+
+    /** Return the pooled permutation given by CYCLES over ALPHABET, as
+     *  by new Permutation(CYCLES, ALPHABET). */
+    static Permutation parse(String cycles, Alphabet alphabet) {
+        String symbols = alphabet.toString();
+        String key = symbols.length() + ":" + symbols
+            + BLANKS.matcher(cycles).replaceAll("");
+        synchronized (PermutationPool.class) {
+            expunge();
+            Reference<Permutation> ref = _parsed.get(key);
+            Permutation result = ref == null ? null : ref.get();
+            if (result != null) {
+                return result;
+            }
+        }
+        Permutation result = intern(new Permutation(cycles, alphabet));
+        synchronized (PermutationPool.class) {
+            _parsed.put(key, new SoftEntry(key, result, _cleared));
+        }
+        return result;
+    }
+
+    /** Return the number of permutations in the pool. */
+    static synchronized int size() {
+        expunge();
+        return _interned.size();
+    }
+
+    /** Remove the entries whose permutations have been collected. */
+    private static void expunge() {
+        for (Reference<? extends Permutation> ref = _cleared.poll();
+             ref != null; ref = _cleared.poll()) {
+            if (ref instanceof Entry) {
+                Key key = ((Entry) ref)._key;
+                if (_interned.get(key) == ref) {
+                    _interned.remove(key);
+                }
+            } else {
+                String key = ((SoftEntry) ref)._key;
+                if (_parsed.get(key) == ref) {
+                    _parsed.remove(key);
+                }
+            }
+        }
+    }
+
+    /** The content of a permutation: its alphabet, compared by its
+     *  characters, and its table of images, shared with it rather than
+     *  copied, so that a key holds nothing the permutation did not. */
+    private static final class Key {
+        /** The key of PERM. */
+        Key(Permutation perm) {
+            _alphabet = perm.alphabet();
+            _images = perm.images();
+            int hash = _alphabet.toString().hashCode();
+            for (int p = 0; p < _images.length(); p += 1) {
+                hash = hash * HASH_MULTIPLIER + _images.get(p);
+            }
+            _hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            if (_hash != other._hash
+                || _images.length() != other._images.length()
+                || (_alphabet != other._alphabet
+                    && !_alphabet.toString().equals(
+                        other._alphabet.toString()))) {
+                return false;
+            }
+            for (int p = 0; p < _images.length(); p += 1) {
+                if (_images.get(p) != other._images.get(p)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** The alphabet. */
+        private final Alphabet _alphabet;
+        /** Image of each index. */
+        private final IntTable _images;
+        /** Hash of the above. */
+        private final int _hash;
+    }
+
+    /** A weak reference to a pooled permutation, knowing its key. */
+    private static final class Entry extends WeakReference<Permutation> {
+        /** A reference to PERM, under KEY, enqueued on QUEUE. */
+        Entry(Key key, Permutation perm,
+              ReferenceQueue<? super Permutation> queue) {
+            super(perm, queue);
+            _key = key;
+        }
+
+        /** The key of the permutation. */
+        private final Key _key;
+    }
+
+    /** A soft reference to a parsed permutation, knowing its key. */
+    private static final class SoftEntry extends SoftReference<Permutation> {
+        /** A reference to PERM, under KEY, enqueued on QUEUE. */
+        SoftEntry(String key, Permutation perm,
+                  ReferenceQueue<? super Permutation> queue) {
+            super(perm, queue);
+            _key = key;
+        }
+
+        /** The key of the permutation. */
+        private final String _key;
+    }
+
+    /** Multiplier combining the hashes of a key's parts. */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /** Blanks, which do not matter in cycles. */
+    private static final Pattern BLANKS = Pattern.compile("\\s+");
+
+    /** Pooled permutations, by content. */
+    private static final HashMap<Key, Reference<Permutation>> _interned =
+        new HashMap<>();
+
+    /** Parsed permutations, by alphabet and cycles without blanks. */
+    private static final HashMap<String, Reference<Permutation>> _parsed =
+        new HashMap<>();
+
+    /** Where the references to collected permutations are put. */
+    private static final ReferenceQueue<Permutation> _cleared =
+        new ReferenceQueue<>();
+}
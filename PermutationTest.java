@@ -139,4 +139,76 @@ public class PermutationTest {
         assertEquals(p.permute(21), 21);
 
     }
+
+    @Test
+    public void testPool() {
+        Permutation p = PermutationPool.parse("(PNH) (JC)", UPPER);
+        assertSame(p, PermutationPool.parse(" (PNH)(JC) ", UPPER));
+        assertSame(p, PermutationPool.parse("(CJ) (HPN)",
+                                            new Alphabet(UPPER_STRING)));
+        assertSame(p, PermutationPool.intern(
+            new Permutation("(NHP) (JC)", UPPER)));
+        assertNotSame(p, PermutationPool.parse("(PNH)", UPPER));
+        assertNotSame(p, PermutationPool.parse("(PNH) (JC)",
+                                               new Alphabet("CHJNP")));
+        assertSame(p, p.rotated(0));
+        assertSame(p.rotated(3), p.rotated(29));
+        assertEquals('S', p.rotated(3).permute('K'));
+        try {
+            PermutationPool.parse("(AB) (a)", UPPER);
+            fail("accepted a character not in the alphabet");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void supplementaryCycles() {
+        Alphabet alphabet =
+            new Alphabet(text('A', 0x1D538, 'B', 0x1D539, 0x10400, 'C'));
+        Permutation p = new Permutation(
+            text('(', 'A', 0x1D538, ')', ' ', '(', 0x1D539, 'C', 0x10400,
+                 ')'), alphabet);
+        assertArrayEquals(new int[] {1, 0, 2, 5, 3, 4}, p.images().toArray());
+        for (int k = 0; k < p.size(); k += 1) {
+            assertEquals(k, p.invert(p.permute(k)));
+        }
+        try {
+            new Permutation(text('(', 0x1D538, 'B', 0x1D538, ')'), alphabet);
+            fail("accepted a repeated character in a cycle");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("duplicate"));
+        }
+        try {
+            new Permutation(text('(', 0x1D53B, 'B', ')'), alphabet);
+            fail("accepted a character not in the alphabet");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void largeAlphabetPermutations() {
+        int n = 70000;
+        Alphabet alphabet = new Alphabet(text(codePoints(0x10000, 9, n)));
+        int[] mapping = new int[n];
+        for (int k = 0; k < n; k += 1) {
+            mapping[k] = (k + 1) % n;
+        }
+        Permutation p = new Permutation(mapping, alphabet);
+        assertEquals("Ints", p.images().getClass().getSimpleName());
+        assertArrayEquals(mapping, p.images().toArray());
+        assertEquals(0, p.permute(n - 1));
+        assertEquals(n - 1, p.invert(0));
+        assertEquals(n - 1, p.permute(-2));
+
+        Permutation cycle = new Permutation(
+            text('(', alphabet.toCodePoint(n - 1), alphabet.toCodePoint(0),
+                 alphabet.toCodePoint(65536), ')'), alphabet);
+        assertEquals(0, cycle.permute(n - 1));
+        assertEquals(65536, cycle.permute(0));
+        assertEquals(n - 1, cycle.permute(65536));
+        assertEquals(65536, cycle.invert(n - 1));
+        assertEquals(5, cycle.permute(5));
+    }
 }
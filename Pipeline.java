@@ -0,0 +1,424 @@
+package enigma;
+
+import java.io.PrintStream;
+
+import static enigma.EnigmaException.*;
+
+/** The message loop of Main split into three stages, each on its own
+ *  thread: reading, which splits the input into settings and message
+ *  lines and turns message characters into alphabet indices; converting,
+ *  which runs the machine; and writing, which groups and prints the
+ *  results.  The stages pass reusable Chunks through two RingBuffers.
+ *  Settings lines and errors travel in the chunks in order with the
+ *  text, so the output, and the point at which an error stops it, are
+ *  as for the single-threaded loop.
+ *  @author Vineet Vashist
+ */
+final class Pipeline {
+
+    /** A pipeline converting the lines of INPUT with M and printing the
+     *  results to OUTPUT. */
+    Pipeline(Machine m, LineReader input, PrintStream output) {
+        _machine = m;
+        _alphabet = m.alphabet();
+        _input = input;
+        _output = output;
+    }
+
+    /** Allow settings lines that select keys from KEYS (see Main.setUp),
+     *  if it is not null. */
+    void setKeys(KeySheet keys) {
+        _keys = keys;
+    }
+
+    /** Normalize message lines with NORMALIZER, if it is not null,
+     *  instead of rejecting every character but blanks not in the
+     *  alphabet.  Lines are then normalized from their bytes when the
+     *  input's charset allows. */
+    void setNormalizer(Normalizer normalizer) {
+        _normalizer = normalizer;
+    }
+
+    /** Run the stages to the end of the input.  An error in any of them
+     *  is thrown here, after the output that precedes it. */
+    void run() {
+        Thread[] threads = {
+            new Thread(() -> stage(_read, this::read), "enigma-read"),
+            new Thread(() -> stage(_convert, this::convert),
+                       "enigma-convert"),
+            new Thread(() -> stage(_write, this::write), "enigma-write"),
+        };
+        for (Thread t : threads) {
+            t.setDaemon(true);
+            t.start();
+        }
+        try {
+            for (Thread t : threads) {
+                t.join();
+            }
+        } catch (InterruptedException excp) {
+            abort();
+            throw error("interrupted");
+        }
+        _output.flush();
+        if (_error != null) {
+            throw _error;
+        }
+    }
+
+    /** Return a table of the work and waiting of each stage and the use
+     *  of each ring, for finding the bottleneck. */
+    String stats() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-8s %8s %12s %9s %9s %9s%n", "stage",
+                                 "chunks", "symbols", "busy ms", "wait ms",
+                                 "Msym/s"));
+        _read.append(out, 0, _toConvert.fullNanos());
+        _convert.append(out, _toConvert.emptyNanos(),
+                        _toWrite.fullNanos());
+        _write.append(out, _toWrite.emptyNanos(), 0);
+        out.append(String.format("%-8s %8s %12s %9s %9s%n", "ring",
+                                 "slots", "mean used", "full", "empty"));
+        appendRing(out, "read>cnv", _toConvert);
+        appendRing(out, "cnv>wrt", _toWrite);
+        return out.toString();
+    }
+
+    /** Append a line of statistics for RING, named NAME, to OUT. */
+    private static void appendRing(StringBuilder out, String name,
+                                   RingBuffer<Chunk> ring) {
+        out.append(String.format("%-8s %8d %12.2f %9d %9d%n", name,
+                                 ring.capacity(), ring.meanOccupancy(),
+                                 ring.fullWaits(), ring.emptyWaits()));
+    }
+
+    /** Run BODY as the stage recorded in STATS, aborting the pipeline if
+     *  it fails other than by an error passed along in a chunk. */
+    private void stage(Stage stats, Runnable body) {
+        long start = System.nanoTime();
+        try {
+            body.run();
+        } catch (RuntimeException excp) {
+            if (_error == null) {
+                _error = excp;
+            }
+            abort();
+        }
+        stats._nanos = System.nanoTime() - start;
+    }
+
+    /** Make every stage stop. */
+    private void abort() {
+        _toConvert.abort();
+        _toWrite.abort();
+    }
+
+    /** The reading stage. */
+    private void read() {
+        Chunk chunk = _toConvert.claim();
+        chunk.clear();
+        boolean first = true;
+        boolean bytes = _normalizer != null
+            && Normalizer.asciiCompatible(_input.charset());
+        while (_input.hasNextLine()) {
+            String line = null;
+            int length;
+            boolean settings;
+            if (bytes) {
+                length = _input.nextLineBytes();
+                settings = first || contains(_input.lineBytes(), length, '*');
+                if (settings) {
+                    line = new String(_input.lineBytes(), 0, length,
+                                      _input.charset());
+                }
+            } else {
+                line = _input.nextLine();
+                length = line.length();
+                settings = first || line.indexOf('*') >= 0;
+            }
+            if (settings) {
+                if (chunk._length > 0 || chunk._lines > 0
+                    || chunk._settings != null) {
+                    chunk = send(chunk);
+                }
+                chunk._settings =
+                    first ? line : line.substring(line.indexOf('*'));
+                first = false;
+                continue;
+            }
+            if (chunk._length + length > chunk._symbols.length
+                || chunk._lines == chunk._lineEnds.length) {
+                if (chunk._lines > 0 || chunk._settings != null) {
+                    chunk = send(chunk);
+                }
+                if (length > chunk._symbols.length) {
+                    chunk._symbols = new int[length];
+                }
+            }
+            try {
+                if (_normalizer == null) {
+                    chunk.add(line, _alphabet);
+                } else if (line == null) {
+                    chunk.endLine(_normalizer.normalize(
+                        _input.lineBytes(), length, _input.charset(),
+                        chunk._symbols, chunk._length));
+                } else {
+                    chunk.endLine(_normalizer.normalize(
+                        line, chunk._symbols, chunk._length));
+                }
+            } catch (EnigmaException excp) {
+                chunk._error = excp;
+                break;
+            }
+        }
+        chunk._last = true;
+        send(chunk);
+    }
+
+    /** Return true iff the first LENGTH bytes of LINE include C. */
+    private static boolean contains(byte[] line, int length, char c) {
+        for (int i = 0; i < length; i += 1) {
+            if (line[i] == c) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Publish CHUNK to the converting stage and return a fresh chunk to
+     *  fill. */
+    private Chunk send(Chunk chunk) {
+        _read._chunks += 1;
+        _read._symbols += chunk._length;
+        _toConvert.publish();
+        Chunk next = _toConvert.claim();
+        next.clear();
+        return next;
+    }
+
+    /** The converting stage. */
+    private void convert() {
+        while (true) {
+            Chunk in = _toConvert.take();
+            Chunk out = _toWrite.claim();
+            out.swap(in);
+            _toConvert.release();
+            try {
+                if (out._settings != null) {
+                    Main.setUp(_machine, out._settings, _keys);
+                }
+                _machine.convert(out._symbols, 0, out._length);
+            } catch (RuntimeException excp) {
+                out._error = excp;
+                out._lines = 0;
+                out._last = true;
+            }
+            _convert._chunks += 1;
+            _convert._symbols += out._length;
+            if (Metrics.ENABLED) {
+                Metrics.messages(out._lines);
+            }
+            boolean last = out._last;
+            RuntimeException error = out._error;
+            _toWrite.publish();
+            if (last) {
+                if (error != null) {
+                    _error = error;
+                    _toConvert.abort();
+                }
+                return;
+            }
+        }
+    }
+
+    /** The writing stage. */
+    private void write() {
+        String newline = System.lineSeparator();
+        StringBuilder text = new StringBuilder();
+        while (true) {
+            Chunk chunk = _toWrite.take();
+            text.setLength(0);
+            int start = 0;
+            for (int k = 0; k < chunk._lines; k += 1) {
+                int end = chunk._lineEnds[k];
+                for (int i = start; i < end; i += 1) {
+                    if (i > start && (i - start) % GROUP == 0) {
+                        text.append(' ');
+                    }
+                    text.appendCodePoint(
+                        _alphabet.toCodePoint(chunk._symbols[i]));
+                }
+                text.append(newline);
+                start = end;
+            }
+            _output.append(text);
+            _write._chunks += 1;
+            _write._symbols += chunk._length;
+            RuntimeException error = chunk._error;
+            boolean last = chunk._last;
+            _toWrite.release();
+            if (error != null) {
+                _error = error;
+            }
+            if (last) {
+                return;
+            }
+        }
+    }
+
+    /** A batch of message lines, as alphabet indices, optionally preceded
+     *  by a settings line, and possibly followed by an error. */
+    private static final class Chunk {
+
+        /** Empty me. */
+        void clear() {
+            _length = _lines = 0;
+            _settings = null;
+            _error = null;
+            _last = false;
+        }
+
+        /** Append the message line LINE, without its blanks, converting
+         *  its characters to indices in ALPHABET.  A character not in
+         *  ALPHABET is reported at its position in the line without
+         *  blanks, as Machine.convert(String) reports it. */
+        void add(String line, Alphabet alphabet) {
+            int n = _length;
+            int position = 0;
+            for (int i = 0; i < line.length(); ) {
+                int cp = line.codePointAt(i);
+                i += Character.charCount(cp);
+                if (cp != ' ') {
+                    int index = alphabet.indexOf(cp);
+                    if (index < 0) {
+                        throw alphabet.missing(cp, " at position "
+                                               + position);
+                    }
+                    _symbols[n] = index;
+                    n += 1;
+                    position += Character.charCount(cp);
+                }
+            }
+            endLine(n);
+        }
+
+        /** End the current line at END in _symbols. */
+        void endLine(int end) {
+            _length = end;
+            _lineEnds[_lines] = end;
+            _lines += 1;
+        }
+
+        /** Take over the contents of CHUNK, giving it my buffers in
+         *  exchange. */
+        void swap(Chunk chunk) {
+            int[] symbols = _symbols, lineEnds = _lineEnds;
+            _symbols = chunk._symbols;
+            _lineEnds = chunk._lineEnds;
+            chunk._symbols = symbols;
+            chunk._lineEnds = lineEnds;
+            _length = chunk._length;
+            _lines = chunk._lines;
+            _settings = chunk._settings;
+            _error = chunk._error;
+            _last = chunk._last;
+        }
+
+        /** Message symbols. */
+        private int[] _symbols = new int[CHUNK_SYMBOLS];
+        /** Number of symbols. */
+        private int _length;
+        /** End of each line in _symbols. */
+        private int[] _lineEnds = new int[CHUNK_LINES];
+        /** Number of lines. */
+        private int _lines;
+        /** Settings line to apply before my lines, or null. */
+        private String _settings;
+        /** Error to report after my lines, or null. */
+        private RuntimeException _error;
+        /** True iff I am the last chunk. */
+        private boolean _last;
+    }
+
+    /** The work done by one stage. */
+    private static final class Stage {
+
+        /** A stage called NAME. */
+        Stage(String name) {
+            _name = name;
+        }
+
+        /** Append my line of statistics to OUT, given that I waited
+         *  INWAIT nanoseconds for input and OUTWAIT for room for
+         *  output. */
+        void append(StringBuilder out, long inWait, long outWait) {
+            long wait = inWait + outWait;
+            long busy = Math.max(_nanos - wait, 1);
+            out.append(String.format("%-8s %8d %12d %9.1f %9.1f %9.1f%n",
+                                     _name, _chunks, _symbols,
+                                     busy / NANOS_PER_MILLI,
+                                     wait / NANOS_PER_MILLI,
+                                     _symbols * NANOS_PER_MICRO / busy));
+        }
+
+        /** Name of the stage. */
+        private final String _name;
+        /** Chunks passed on. */
+        private long _chunks;
+        /** Symbols passed on. */
+        private long _symbols;
+        /** Time from start to finish, in nanoseconds. */
+        private long _nanos;
+    }
+
+    /** Symbols in a chunk, unless a line is longer. */
+    static final int CHUNK_SYMBOLS = 1 << 16;
+
+    /** Most lines in a chunk. */
+    static final int CHUNK_LINES = 1 << 12;
+
+    /** Slots per ring. */
+    static final int RING_SLOTS = 8;
+
+    /** Characters per printed group. */
+    private static final int GROUP = 5;
+
+    /** Nanoseconds per microsecond. */
+    private static final double NANOS_PER_MICRO = 1e3;
+
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** The machine converting. */
+    private final Machine _machine;
+
+    /** Its alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Key sheet for settings lines, or null. */
+    private KeySheet _keys;
+
+    /** Normalizer of message lines, or null. */
+    private Normalizer _normalizer;
+
+    /** Source of lines. */
+    private final LineReader _input;
+
+    /** Destination of results. */
+    private final PrintStream _output;
+
+    /** Chunks from reading to converting. */
+    private final RingBuffer<Chunk> _toConvert =
+        new RingBuffer<>(RING_SLOTS, Chunk::new);
+
+    /** Chunks from converting to writing. */
+    private final RingBuffer<Chunk> _toWrite =
+        new RingBuffer<>(RING_SLOTS, Chunk::new);
+
+    /** Statistics of the stages. */
+    private final Stage _read = new Stage("read"),
+        _convert = new Stage("convert"), _write = new Stage("write");
+
+    /** The first error, to be thrown by run. */
+    private volatile RuntimeException _error;
+}
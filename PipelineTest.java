@@ -0,0 +1,138 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Pipeline class.
+ *  @author Vineet Vashist
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The output of a run, and the message of the error that ended it,
+     *  or null. */
+    private static final class Run {
+        /** Output. */
+        private String _output;
+        /** Error message, or null. */
+        private String _error;
+    }
+
+    /** Return an input from RAND of N keys, each followed by messages
+     *  of about CHARS characters in all. */
+    private static StringBuilder randomInput(Random rand, int n, int chars) {
+        StringBuilder input = new StringBuilder();
+        for (int k = 0; k < n; k += 1) {
+            input.append(settingsLine(randomKey(rand))).append('\n');
+            for (int c = 0; c < chars; ) {
+                int len = rand.nextInt(2000);
+                input.append(randomMessage(rand, len)).append('\n');
+                c += len;
+            }
+        }
+        return input;
+    }
+
+    /** Return the run of INPUT through the sequential message loop. */
+    private static Run sequential(String input) {
+        Run result = new Run();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            new Main(new Scanner(navalConfig()), new ByteArrayInputStream(
+                input.getBytes(StandardCharsets.UTF_8)),
+                new PrintStream(out)).process();
+        } catch (EnigmaException excp) {
+            result._error = excp.getMessage();
+        }
+        result._output = out.toString();
+        return result;
+    }
+
+    /** Return the run of INPUT through a Pipeline, failing if it takes
+     *  more than a few seconds. */
+    private static Run pipelined(String input) throws Exception {
+        Machine m = new Main(new Scanner(navalConfig()),
+                             new ByteArrayInputStream(new byte[0]),
+                             System.out).readConfig();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Pipeline pipeline = new Pipeline(m, new LineReader(
+            new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))),
+            new PrintStream(out));
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Run result = new Run();
+        try {
+            Future<?> run = pool.submit(pipeline::run);
+            run.get(10, TimeUnit.SECONDS);
+        } catch (java.util.concurrent.ExecutionException excp) {
+            assertTrue(excp.getCause() instanceof EnigmaException);
+            result._error = excp.getCause().getMessage();
+        } finally {
+            pool.shutdownNow();
+        }
+        result._output = out.toString();
+        return result;
+    }
+
+    /** Check that INPUT gives the same output and error in the pipeline
+     *  as in the sequential loop, and return the run. */
+    private static Run checkSame(String input) throws Exception {
+        Run expected = sequential(input);
+        Run actual = pipelined(input);
+        assertEquals(expected._error, actual._error);
+        assertEquals(expected._output, actual._output);
+        return actual;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void matchesSequentialLoop() throws Exception {
+        Random rand = new Random(35);
+        StringBuilder input = randomInput(rand, 20, 100000);
+        input.append("\n").append(randomMessage(rand, 200000)).append('\n');
+        Run run = checkSame(input.toString());
+        assertNull(run._error);
+        assertTrue(run._output.length() > 2000000);
+    }
+
+    @Test
+    public void converterErrorMidStream() throws Exception {
+        Random rand = new Random(36);
+        StringBuilder input = randomInput(rand, 3, 100000);
+        input.append("* B Beta I I III AAAA\n");
+        input.append(randomInput(rand, 10, 200000));
+        Run run = checkSame(input.toString());
+        assertNotNull(run._error);
+        assertTrue(run._output.length() > 300000);
+    }
+
+    @Test
+    public void readerErrorMidStream() throws Exception {
+        Random rand = new Random(37);
+        StringBuilder input = randomInput(rand, 3, 100000);
+        input.append("HELLO world\n");
+        input.append(randomInput(rand, 10, 200000));
+        Run run = checkSame(input.toString());
+        assertNotNull(run._error);
+    }
+}
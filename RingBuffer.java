@@ -0,0 +1,176 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded queue between one producer thread and one consumer thread,
+ *  whose slots are objects allocated once and reused.  The producer
+ *  claims the next free slot, fills it and publishes it; the consumer
+ *  takes the next published slot, uses it and releases it.  Neither
+ *  locks: each waits, spinning and then parking briefly, only when the
+ *  ring is full or empty.
+ *  @author Vineet Vashist
+ */
+final class RingBuffer<T> {
+
+    /** A ring of CAPACITY slots, a power of two, made by FACTORY. */
+    RingBuffer(int capacity, Supplier<T> factory) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw error("ring capacity must be a power of two: %d",
+                        capacity);
+        }
+        _mask = capacity - 1;
+        @SuppressWarnings("unchecked")
+        T[] slots = (T[]) new Object[capacity];
+        for (int i = 0; i < capacity; i += 1) {
+            slots[i] = factory.get();
+        }
+        _slots = slots;
+    }
+
+    /** Return the next free slot, waiting for one if the ring is full.
+     *  Producer only. */
+    T claim() {
+        long tail = _tail.get();
+        if (tail - _headCache > _mask) {
+            _headCache = _head.get();
+            if (tail - _headCache > _mask) {
+                long start = System.nanoTime();
+                _fullWaits += 1;
+                for (int spins = 0; tail - _headCache > _mask; spins += 1) {
+                    pause(spins);
+                    _headCache = _head.get();
+                }
+                _fullNanos += System.nanoTime() - start;
+            }
+        }
+        return _slots[(int) tail & _mask];
+    }
+
+    /** Make the slot last claimed available to the consumer.  Producer
+     *  only. */
+    void publish() {
+        long tail = _tail.get() + 1;
+        _occupancy += tail - _headCache;
+        _published += 1;
+        _tail.lazySet(tail);
+    }
+
+    /** Return the next published slot, waiting for one if the ring is
+     *  empty.  Consumer only. */
+    T take() {
+        long head = _head.get();
+        if (head == _tailCache) {
+            _tailCache = _tail.get();
+            if (head == _tailCache) {
+                long start = System.nanoTime();
+                _emptyWaits += 1;
+                for (int spins = 0; head == _tailCache; spins += 1) {
+                    pause(spins);
+                    _tailCache = _tail.get();
+                }
+                _emptyNanos += System.nanoTime() - start;
+            }
+        }
+        return _slots[(int) head & _mask];
+    }
+
+    /** Return the slot last taken to the producer.  Consumer only. */
+    void release() {
+        _head.lazySet(_head.get() + 1);
+    }
+
+    /** Make any thread waiting on me, now or later, fail. */
+    void abort() {
+        _aborted = true;
+    }
+
+    /** Return my number of slots. */
+    int capacity() {
+        return _slots.length;
+    }
+
+    /** Return the mean number of slots in use just after each publish. */
+    double meanOccupancy() {
+        return _published == 0 ? 0 : (double) _occupancy / _published;
+    }
+
+    /** Return the number of times the producer found me full. */
+    long fullWaits() {
+        return _fullWaits;
+    }
+
+    /** Return the time the producer spent waiting, in nanoseconds. */
+    long fullNanos() {
+        return _fullNanos;
+    }
+
+    /** Return the number of times the consumer found me empty. */
+    long emptyWaits() {
+        return _emptyWaits;
+    }
+
+    /** Return the time the consumer spent waiting, in nanoseconds. */
+    long emptyNanos() {
+        return _emptyNanos;
+    }
+
+    /** Wait a little, for the SPINS'th time in a row. */
+    private void pause(int spins) {
+        if (_aborted) {
+            throw error("pipeline aborted");
+        }
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+        } else if (spins < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /** Busy waits before yielding. */
+    private static final int SPINS = 256;
+
+    /** Yields before parking. */
+    private static final int YIELDS = 64;
+
+    /** Time parked per wait, in nanoseconds. */
+    private static final long PARK_NANOS = 20_000;
+
+    /** The slots, indexed by sequence number & _mask. */
+    private final T[] _slots;
+
+    /** Capacity - 1. */
+    private final int _mask;
+
+    /** Sequence number of the next slot to take. */
+    private final AtomicLong _head = new AtomicLong();
+
+    /** Sequence number of the next slot to claim. */
+    private final AtomicLong _tail = new AtomicLong();
+
+    /** The producer's last view of _head. */
+    private long _headCache;
+
+    /** The consumer's last view of _tail. */
+    private long _tailCache;
+
+    /** True once aborted. */
+    private volatile boolean _aborted;
+
+    /** Sum of occupancies after each publish.  Producer only. */
+    private long _occupancy;
+
+    /** Number of publishes.  Producer only. */
+    private long _published;
+
+    /** Statistics of the producer's waits. */
+    private long _fullWaits, _fullNanos;
+
+    /** Statistics of the consumer's waits. */
+    private long _emptyWaits, _emptyNanos;
+}
@@ -0,0 +1,128 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/** The suite of all JUnit tests for the RingBuffer class.
+ *  @author Vineet Vashist
+ */
+public class RingBufferTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Wait for TASK, which should fail because its ring was aborted. */
+    private static void checkAborted(Future<?> task) throws Exception {
+        try {
+            task.get(5, TimeUnit.SECONDS);
+            fail("waited through an abort");
+        } catch (java.util.concurrent.ExecutionException excp) {
+            assertTrue(excp.getCause() instanceof EnigmaException);
+            assertEquals("pipeline aborted", excp.getCause().getMessage());
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void wrapsAround() {
+        RingBuffer<int[]> ring = new RingBuffer<>(4, () -> new int[1]);
+        assertEquals(4, ring.capacity());
+        int next = 0, expected = 0;
+        for (int round = 0; round < 100; round += 1) {
+            for (int k = 0; k <= round % 4; k += 1) {
+                ring.claim()[0] = next;
+                ring.publish();
+                next += 1;
+            }
+            for (int k = 0; k <= round % 4; k += 1) {
+                assertEquals(expected, ring.take()[0]);
+                ring.release();
+                expected += 1;
+            }
+        }
+        assertEquals(0, ring.fullWaits());
+        assertEquals(0, ring.emptyWaits());
+    }
+
+    @Test
+    public void passesInOrderBetweenThreads() throws Exception {
+        RingBuffer<long[]> ring = new RingBuffer<>(8, () -> new long[1]);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> producer = pool.submit(() -> {
+                for (long i = 0; i < 100000; i += 1) {
+                    ring.claim()[0] = i;
+                    ring.publish();
+                }
+            });
+            for (long i = 0; i < 100000; i += 1) {
+                assertEquals(i, ring.take()[0]);
+                ring.release();
+            }
+            producer.get(5, TimeUnit.SECONDS);
+            assertTrue(ring.meanOccupancy() >= 1);
+            assertTrue(ring.meanOccupancy() <= 8);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void abortStopsParkedProducer() throws Exception {
+        RingBuffer<int[]> ring = new RingBuffer<>(2, () -> new int[1]);
+        ring.claim();
+        ring.publish();
+        ring.claim();
+        ring.publish();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> producer = pool.submit(() -> ring.claim());
+            Thread.sleep(50);
+            assertFalse(producer.isDone());
+            ring.abort();
+            checkAborted(producer);
+            assertEquals(1, ring.fullWaits());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void abortStopsParkedConsumer() throws Exception {
+        RingBuffer<int[]> ring = new RingBuffer<>(2, () -> new int[1]);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> consumer = pool.submit(() -> ring.take());
+            Thread.sleep(50);
+            assertFalse(consumer.isDone());
+            ring.abort();
+            checkAborted(consumer);
+            assertEquals(1, ring.emptyWaits());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void capacityMustBePowerOfTwo() {
+        for (int capacity : new int[] {0, 3, 6, -4}) {
+            try {
+                new RingBuffer<>(capacity, () -> new int[1]);
+                fail("made a ring of " + capacity);
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("power of two"));
+            }
+        }
+    }
+}
@@ -10,6 +10,7 @@ class Rotor {
     /** A rotor named NAME whose permutation is given by PERM. */
     Rotor(String name, Permutation perm) {
         _name = name;
+        _wiring = perm;
         _permutation = perm;
         _setting = 0;
     }
@@ -24,11 +25,29 @@ class Rotor {
         return _permutation.alphabet();
     }
 
-    /** Return my permutation. */
+    /** Return my permutation with my ring setting folded in, so that
+     *  converting at a setting needs no further offset. */
     Permutation permutation() {
         return _permutation;
     }
 
+    /** Return my permutation at ring setting 0. */
+    Permutation wiring() {
+        return _wiring;
+    }
+
+    /** Return my ring setting. */
+    int ring() {
+        return _ring;
+    }
+
+    /** Set ring() to RING, which turns the wiring against the letters by
+     *  which my settings are named (and my notches placed). */
+    void setRing(int ring) {
+        _ring = _wiring.wrap(ring);
+        _permutation = _wiring.rotated(_ring);
+    }
+
     /** Return the size of my alphabet. */
     int size() {
         return _permutation.size();
@@ -66,27 +85,29 @@ class Rotor {
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-
-        int entry = permutation().wrap(p + setting());
-
-        int fwdval = permutation().permute(entry);
-
-        int exit = permutation().wrap(fwdval - setting());
-
-        return exit;
+        Permutation perm = permutation();
+        return shift(perm.forward(shift(p, setting(), perm.size())),
+                     -setting(), perm.size());
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
+        Permutation perm = permutation();
+        return shift(perm.backward(shift(e, setting(), perm.size())),
+                     -setting(), perm.size());
+    }
 
-        int entry = permutation().wrap(e + setting());
-
-        int bckval = permutation().invert(entry);
-
-        int exit = permutation().wrap(bckval - setting());
-
-        return exit;
+    /** Return P + DELTA modulo SIZE, where P is in the range 0..SIZE-1
+     *  and -SIZE < DELTA < SIZE, without dividing. */
+    private static int shift(int p, int delta, int size) {
+        int r = p + delta;
+        if (r >= size) {
+            r -= size;
+        } else if (r < 0) {
+            r += size;
+        }
+        return r;
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
@@ -95,10 +116,22 @@ class Rotor {
         return false;
     }
 
+    /** Returns true iff I would allow the rotor to my left to advance
+     *  when set to POSN (an integer in the range 0..size()-1). */
+    boolean notchAt(int posn) {
+        return false;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
 
+    /** Return a new rotor like me, at setting 0 and ring setting 0,
+     *  sharing my wiring. */
+    Rotor copy() {
+        return new Rotor(_name, _wiring);
+    }
+
     @Override
     public String toString() {
 
@@ -108,9 +141,17 @@ class Rotor {
     /** My name. */
     private final String _name;
 
-    /** The permutation implemented by this rotor in its 0 position. */
+    /** The permutation implemented by this rotor in its 0 position, at
+     *  ring setting 0. */
+    private final Permutation _wiring;
+
+    /** The permutation implemented by this rotor in its 0 position, at
+     *  its ring setting. */
     private Permutation _permutation;
 
+    /** My ring setting. */
+    private int _ring;
+
     /** Defines the setting of the rotor at a point in time. */
     private Integer _setting;
 
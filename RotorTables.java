@@ -0,0 +1,153 @@
+package enigma;
+
+/** A flattened, table-driven snapshot of a configured Machine: the
+ *  wirings, notches, pawls, plugboard and rotor positions as primitive
+ *  arrays.  Engines that do not go through the Rotor objects start from
+ *  one of these.
+ *  @author Vineet Vashist
+ */
+final class RotorTables {
+
+    /** A snapshot of M, which must have its rotors inserted.  If M has
+     *  no plugboard yet, the identity is used. */
+    RotorTables(Machine m) {
+        _size = m.alphabet().size();
+        _slots = m.numRotors();
+        _forward = new int[_slots][_size];
+        _backward = new int[_slots][_size];
+        _notch = new boolean[_slots][_size];
+        _pawled = new boolean[_slots];
+        _positions = new int[_slots];
+        _plugboard = new int[_size];
+
+        int pawls = m.numPawls();
+        for (int k = _slots - 1; k >= 0; k -= 1) {
+            Rotor r = m.rotor(k);
+            Permutation perm = r.permutation();
+            for (int x = 0; x < _size; x += 1) {
+                _forward[k][x] = perm.permute(x);
+                _backward[k][x] = perm.invert(x);
+                _notch[k][x] = r.notchAt(x);
+            }
+            _positions[k] = r.setting();
+            if (r.rotates() && pawls != 0) {
+                _pawled[k] = true;
+                pawls -= 1;
+            }
+        }
+        for (int x = 0; x < _size; x += 1) {
+            _plugboard[x] =
+                m.plugboard() == null ? x : m.plugboard().permute(x);
+        }
+    }
+
+    /** Return the size of the alphabet. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of rotor slots, including the reflector. */
+    int numRotors() {
+        return _slots;
+    }
+
+    /** Return the wiring of slot K at setting 0. */
+    int[] forward(int k) {
+        return _forward[k];
+    }
+
+    /** Return the inverse wiring of slot K at setting 0. */
+    int[] backward(int k) {
+        return _backward[k];
+    }
+
+    /** Return the notch table of slot K, indexed by setting. */
+    boolean[] notch(int k) {
+        return _notch[k];
+    }
+
+    /** Return true iff slot K has a pawl. */
+    boolean pawled(int k) {
+        return _pawled[k];
+    }
+
+    /** Return the plugboard mapping. */
+    int[] plugboard() {
+        return _plugboard;
+    }
+
+    /** Return a fresh copy of the rotor positions at snapshot time. */
+    int[] positions() {
+        return _positions.clone();
+    }
+
+    /** Advance the rotors whose settings are POSN exactly as
+     *  Machine.convert does: a pawled rotor moves if it is rightmost or
+     *  its right neighbour is at a notch, and a rotor at a notch moves
+     *  along with a pawled left neighbour.  Slots are visited left to
+     *  right so that every test sees the settings from before the step. */
+    void step(int[] posn) {
+        int last = _slots - 1;
+        for (int k = 1; k <= last; k += 1) {
+            boolean move =
+                (_pawled[k] && (k == last || _notch[k + 1][posn[k + 1]]))
+                || (_pawled[k - 1] && _notch[k][posn[k]]);
+            if (move) {
+                posn[k] = posn[k] + 1 == _size ? 0 : posn[k] + 1;
+            }
+        }
+    }
+
+    /** Return the conversion of C after advancing the rotors whose
+     *  settings are POSN, which is updated.  This is the scalar
+     *  table-driven equivalent of Machine.convert. */
+    int convert(int[] posn, int c) {
+        step(posn);
+        int x = _plugboard[c];
+        for (int k = _slots - 1; k >= 0; k -= 1) {
+            x = shift(_forward[k], posn[k], x);
+        }
+        for (int k = 1; k < _slots; k += 1) {
+            x = shift(_backward[k], posn[k], x);
+        }
+        return _plugboard[x];
+    }
+
+    /** Return the result of TABLE applied to X by a rotor at setting
+     *  POSN. */
+    private int shift(int[] table, int posn, int x) {
+        int entry = x + posn;
+        if (entry >= _size) {
+            entry -= _size;
+        }
+        int exit = table[entry] - posn;
+        if (exit < 0) {
+            exit += _size;
+        }
+        return exit;
+    }
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Number of slots, including the reflector in slot 0. */
+    private final int _slots;
+
+    /** Per-slot wiring at setting 0. */
+    private final int[][] _forward;
+
+    /** Per-slot inverse wiring at setting 0. */
+    private final int[][] _backward;
+
+    /** Per-slot notch flags, indexed by setting. */
+    private final boolean[][] _notch;
+
+    /** True for slots that have a pawl. */
+    private final boolean[] _pawled;
+
+    /** Rotor settings when the snapshot was taken. */
+    private final int[] _positions;
+
+    /** Plugboard mapping. */
+    private final int[] _plugboard;
+}
@@ -0,0 +1,399 @@
+package enigma;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+import static enigma.EnigmaException.*;
+
+/** Batch conversion of a spool directory: each message file in an input
+ *  directory is run through Main, as if by "java enigma.Main CONFIG IN
+ *  OUT", with OUT the file of the same name in an output directory.
+ *  The configuration is parsed once and shared through a ConfigCache,
+ *  and files are converted concurrently, each on its own (virtual,
+ *  where the runtime has them) thread, at most a given number at once.
+ *  Names starting with "." are skipped, so that a file may be written
+ *  under such a name and renamed when complete.
+ *
+ *  <p>A line per file, and a summary at the end, are appended to the
+ *  report file REPORT in the output directory.  When watching, files
+ *  added to the input directory, or changed, are converted once they
+ *  have been left alone for SETTLE_MILLIS milliseconds, and files
+ *  removed from it are forgotten.
+ *  @author Vineet Vashist
+ */
+public final class Spool {
+
+    /** Convert the files as given by ARGS: options, then CONFIG INDIR
+     *  OUTDIR.  The options are
+     *      --jobs N   convert at most N files at once (default, the
+     *                 number of processors).
+     *      --watch    after converting the files present, keep
+     *                 converting those that arrive until killed.
+     *  Exits with code 1 if any file could not be converted. */
+    public static void main(String... args) {
+        try {
+            int jobs = Runtime.getRuntime().availableProcessors();
+            boolean watch = false;
+            int i;
+            for (i = 0; i < args.length && args[i].startsWith("--"); i += 1) {
+                if (args[i].equals("--watch")) {
+                    watch = true;
+                } else if (args[i].equals("--jobs") && i + 1 < args.length) {
+                    i += 1;
+                    jobs = Integer.parseInt(args[i]);
+                } else {
+                    throw error("unknown option %s", args[i]);
+                }
+            }
+            if (args.length - i != 3) {
+                throw error("Usage: java enigma.Spool [--jobs N] [--watch] "
+                            + "CONFIG INDIR OUTDIR");
+            }
+            Spool spool = new Spool(Paths.get(args[i]),
+                                    Paths.get(args[i + 1]),
+                                    Paths.get(args[i + 2]), jobs);
+            if (watch) {
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    spool.close();
+                    System.out.println(spool.summary());
+                }));
+                spool.watch();
+                return;
+            }
+            spool.run();
+            spool.close();
+            System.out.println(spool.summary());
+            if (spool.failed() == 0) {
+                return;
+            }
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A spool converting the files of INDIR into OUTDIR with the
+     *  configuration file CONFIG, at most JOBS at once. */
+    Spool(Path config, Path inDir, Path outDir, int jobs) {
+        if (jobs < 1) {
+            throw error("--jobs must be positive");
+        }
+        if (!Files.isDirectory(inDir)) {
+            throw error("%s is not a directory", inDir);
+        }
+        try {
+            Files.createDirectories(outDir);
+            if (Files.isSameFile(inDir, outDir)) {
+                throw error("input and output directories must differ");
+            }
+            _report = new PrintStream(new FileOutputStream(
+                outDir.resolve(REPORT).toFile(), true), true);
+        } catch (IOException excp) {
+            throw error("could not open %s: %s", outDir, excp.getMessage());
+        }
+        _config = config.toAbsolutePath();
+        _inDir = inDir;
+        _outDir = outDir;
+        _jobs = jobs;
+        _slots = new Semaphore(jobs);
+        _workers = CipherServer.threadPerTask("enigma-spool");
+        _started = System.nanoTime();
+    }
+
+    /** Convert the files now in the input directory, returning when all
+     *  are done. */
+    void run() {
+        for (Path file : list()) {
+            submit(file);
+        }
+        await();
+    }
+
+    /** Convert the files now in the input directory, and then those
+     *  that arrive, until closed or interrupted. */
+    void watch() {
+        WatchService watcher;
+        try {
+            watcher = _inDir.getFileSystem().newWatchService();
+            _inDir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY,
+                            ENTRY_DELETE);
+        } catch (IOException excp) {
+            throw error("could not watch %s: %s", _inDir, excp.getMessage());
+        }
+        _watcher = watcher;
+        run();
+        HashMap<Path, Long> pending = new HashMap<>();
+        try (watcher) {
+            while (true) {
+                WatchKey key = watcher.poll(SETTLE_MILLIS,
+                                            TimeUnit.MILLISECONDS);
+                long now = System.nanoTime();
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            ArrayList<Path> files = list();
+                            _done.keySet().retainAll(new HashSet<>(files));
+                            for (Path file : files) {
+                                pending.put(file, now);
+                            }
+                        } else {
+                            Path file =
+                                _inDir.resolve((Path) event.context());
+                            if (event.kind() == ENTRY_DELETE) {
+                                pending.remove(file);
+                                _done.remove(file);
+                            } else {
+                                pending.put(file, now);
+                            }
+                        }
+                    }
+                    key.reset();
+                }
+                Iterator<Map.Entry<Path, Long>> entries =
+                    pending.entrySet().iterator();
+                while (entries.hasNext()) {
+                    Map.Entry<Path, Long> entry = entries.next();
+                    if (now - entry.getValue()
+                        >= TimeUnit.MILLISECONDS.toNanos(SETTLE_MILLIS)) {
+                        entries.remove();
+                        if (isMessageFile(entry.getKey())) {
+                            submit(entry.getKey());
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException | IOException
+                 | ClosedWatchServiceException excp) {
+            /* Closed or interrupted: finish what has been started. */
+        }
+        await();
+    }
+
+    /** Stop watching, wait for the conversions started, and write the
+     *  summary to the report. */
+    void close() {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        if (_watcher != null) {
+            try {
+                _watcher.close();
+            } catch (IOException excp) {
+                /* Ignore */
+            }
+        }
+        await();
+        _workers.shutdown();
+        _report.println(summary());
+        _report.close();
+    }
+
+    /** Return the number of files converted without error. */
+    int converted() {
+        return _converted.get();
+    }
+
+    /** Return the number of input files whose last conversion I
+     *  remember. */
+    int tracked() {
+        return _done.size();
+    }
+
+    /** Return the number of files that could not be converted. */
+    int failed() {
+        return _failed.get();
+    }
+
+    /** Return a summary of the files converted so far. */
+    String summary() {
+        double seconds = (System.nanoTime() - _started) / NANOS_PER_SECOND;
+        return String.format("%d converted, %d failed, %d bytes in %.2f s; "
+                             + "%s", converted(), failed(), _bytes.sum(),
+                             seconds, _times.summary("files"));
+    }
+
+    /** Return the message files in the input directory. */
+    private ArrayList<Path> list() {
+        ArrayList<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(_inDir)) {
+            for (Path file : dir) {
+                if (isMessageFile(file)) {
+                    result.add(file);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s: %s", _inDir, excp.getMessage());
+        }
+        result.sort(null);
+        return result;
+    }
+
+    /** Return true iff FILE is a regular file not named with a leading
+     *  ".". */
+    private static boolean isMessageFile(Path file) {
+        return !file.getFileName().toString().startsWith(".")
+            && Files.isRegularFile(file);
+    }
+
+    /** Convert FILE on a worker, once fewer than _jobs are busy, unless
+     *  it has been converted since it last changed. */
+    private void submit(Path file) {
+        String stamp = stamp(file);
+        if (_closed || stamp == null || stamp.equals(_done.put(file, stamp))) {
+            return;
+        }
+        _slots.acquireUninterruptibly();
+        try {
+            _workers.execute(() -> {
+                try {
+                    convert(file);
+                } finally {
+                    _slots.release();
+                }
+            });
+        } catch (RuntimeException excp) {
+            _slots.release();
+            throw excp;
+        }
+    }
+
+    /** Wait until no conversions are in progress. */
+    private void await() {
+        _slots.acquireUninterruptibly(_jobs);
+        _slots.release(_jobs);
+    }
+
+    /** Convert FILE into the file of the same name in the output
+     *  directory, and report the outcome. */
+    private void convert(Path file) {
+        long start = System.nanoTime();
+        Path name = file.getFileName();
+        Main main = null;
+        String problem = null;
+        try {
+            main = new Main(new String[] {
+                    _config.toString(), file.toString(),
+                    _outDir.resolve(name).toString()
+                }, Paths.get(""), InputStream.nullInputStream(), System.out);
+            main.setConfigCache(_cache);
+            main.process();
+        } catch (EnigmaException excp) {
+            problem = excp.getMessage();
+        } catch (RuntimeException excp) {
+            problem = excp.toString();
+        } finally {
+            if (main != null) {
+                main.close();
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        _times.record(nanos);
+        if (problem == null) {
+            _converted.incrementAndGet();
+            long size = file.toFile().length();
+            _bytes.add(size);
+            _report.printf("OK      %s %d bytes %.1f ms%n", name, size,
+                           nanos / NANOS_PER_MILLI);
+        } else {
+            _failed.incrementAndGet();
+            _report.printf("FAILED  %s: %s%n", name, problem);
+        }
+    }
+
+    /** Return a string that changes when FILE does, or null if it cannot
+     *  be read. */
+    private static String stamp(Path file) {
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(file, BasicFileAttributes.class);
+            return attrs.lastModifiedTime() + " " + attrs.size();
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Name of the report file in the output directory. */
+    static final String REPORT = "spool-report.txt";
+
+    /** Time a file must be left alone before it is converted when
+     *  watching, in milliseconds. */
+    static final long SETTLE_MILLIS = 500;
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** The configuration file. */
+    private final Path _config;
+
+    /** Directory of files to convert. */
+    private final Path _inDir;
+
+    /** Directory for the converted files. */
+    private final Path _outDir;
+
+    /** Maximum conversions at once. */
+    private final int _jobs;
+
+    /** Permits for conversions, one per job. */
+    private final Semaphore _slots;
+
+    /** Runs each conversion on its own thread. */
+    private final ExecutorService _workers;
+
+    /** The parsed configuration, shared by all conversions. */
+    private final ConfigCache _cache = new ConfigCache();
+
+    /** Stamp of each file in the input directory when last
+     *  submitted. */
+    private final Map<Path, String> _done = new HashMap<>();
+
+    /** Where outcomes are reported. */
+    private final PrintStream _report;
+
+    /** The watcher of the input directory, or null. */
+    private volatile WatchService _watcher;
+
+    /** True once I have been closed. */
+    private volatile boolean _closed;
+
+    /** Time I was created, from System.nanoTime. */
+    private final long _started;
+
+    /** Files converted. */
+    private final AtomicInteger _converted = new AtomicInteger();
+
+    /** Files not converted. */
+    private final AtomicInteger _failed = new AtomicInteger();
+
+    /** Bytes of input converted. */
+    private final LongAdder _bytes = new LongAdder();
+
+    /** Time to convert each file. */
+    private final Latencies _times = new Latencies();
+}
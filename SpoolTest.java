@@ -0,0 +1,157 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Spool class.
+ *  @author Vineet Vashist
+ */
+public class SpoolTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return an input file of a few keys and messages from RAND. */
+    private static String randomInput(Random rand) {
+        StringBuilder input = new StringBuilder();
+        for (int k = 0; k < 3; k += 1) {
+            String[] key = randomKey(rand);
+            input.append(String.format("* %s %s %s %s %s %s %s%n", key[0],
+                                       key[1], key[2], key[3], key[4],
+                                       key[5], key[6]));
+            for (int m = 0; m < 4; m += 1) {
+                input.append(randomMessage(rand, rand.nextInt(60)))
+                    .append('\n');
+            }
+        }
+        return input.toString();
+    }
+
+    /** Return what Main writes for INPUT with the configuration
+     *  CONFIG. */
+    private static String expected(String config, String input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Main(new Scanner(config), new ByteArrayInputStream(
+            input.getBytes(StandardCharsets.UTF_8)), new PrintStream(out))
+            .process();
+        return out.toString();
+    }
+
+    /** Write TEXT to FILE. */
+    private static void write(Path file, String text) throws Exception {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Return the contents of FILE. */
+    private static String read(Path file) throws Exception {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void convertsDirectory() throws Exception {
+        Random rand = new Random(38);
+        Path dir = Files.createTempDirectory("spool");
+        Path in = Files.createDirectory(dir.resolve("in"));
+        Path config = dir.resolve("naval.conf");
+        write(config, navalConfig());
+        HashMap<String, String> inputs = new HashMap<>();
+        for (int i = 0; i < 40; i += 1) {
+            String input = randomInput(rand);
+            inputs.put("m" + i, input);
+            write(in.resolve("m" + i), input);
+        }
+        write(in.resolve("bad"), "HELLO\n");
+        write(in.resolve(".partial"), "* B Beta I II III AAAA\nHELLO\n");
+
+        Spool spool = new Spool(config, in, dir.resolve("out"), 4);
+        spool.run();
+        spool.close();
+        assertEquals(40, spool.converted());
+        assertEquals(1, spool.failed());
+        for (String name : inputs.keySet()) {
+            assertEquals(name, expected(navalConfig(), inputs.get(name)),
+                         read(dir.resolve("out").resolve(name)));
+        }
+        assertFalse(Files.exists(dir.resolve("out").resolve(".partial")));
+        List<String> report =
+            Files.readAllLines(dir.resolve("out").resolve(Spool.REPORT));
+        assertEquals(42, report.size());
+        assertTrue(report.get(41).startsWith("40 converted, 1 failed"));
+    }
+
+    @Test
+    public void watchesDirectory() throws Exception {
+        Random rand = new Random(39);
+        Path dir = Files.createTempDirectory("spool");
+        Path in = Files.createDirectory(dir.resolve("in"));
+        Path out = dir.resolve("out");
+        Path config = dir.resolve("naval.conf");
+        write(config, navalConfig());
+        Spool spool = new Spool(config, in, out, 2);
+        Thread watcher = new Thread(spool::watch);
+        watcher.start();
+
+        String input = randomInput(rand);
+        write(in.resolve(".msg"), input);
+        Files.move(in.resolve(".msg"), in.resolve("msg"));
+        while (spool.converted() == 0) {
+            Thread.sleep(10);
+        }
+        spool.close();
+        watcher.join();
+        assertEquals(expected(navalConfig(), input), read(out.resolve("msg")));
+        assertEquals(0, spool.failed());
+    }
+
+    @Test
+    public void watchForgetsRemovedFiles() throws Exception {
+        Random rand = new Random(40);
+        Path dir = Files.createTempDirectory("spool");
+        Path in = Files.createDirectory(dir.resolve("in"));
+        Path config = dir.resolve("naval.conf");
+        write(config, navalConfig());
+        Spool spool = new Spool(config, in, dir.resolve("out"), 2);
+        Thread watcher = new Thread(spool::watch);
+        watcher.start();
+
+        for (int k = 0; k < 3; k += 1) {
+            write(in.resolve(".msg"), randomInput(rand));
+            Files.move(in.resolve(".msg"), in.resolve("msg" + k));
+        }
+        while (spool.converted() < 3) {
+            Thread.sleep(10);
+        }
+        for (int k = 0; k < 3; k += 1) {
+            Files.delete(in.resolve("msg" + k));
+        }
+        write(in.resolve(".msg"), randomInput(rand));
+        Files.move(in.resolve(".msg"), in.resolve("last"));
+        while (spool.converted() < 4) {
+            Thread.sleep(10);
+        }
+        spool.close();
+        watcher.join();
+        assertEquals(1, spool.tracked());
+        assertEquals(0, spool.failed());
+    }
+}
@@ -1,6 +1,11 @@
 package enigma;
 
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
 
 /** Utility definitions for use in unit tests.
  *  @author P. N. Hilfinger
@@ -142,4 +147,158 @@ class TestUtils {
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
 
+    /** Return the string of the code points CODEPOINTS. */
+    static String text(int... codePoints) {
+        return new String(codePoints, 0, codePoints.length);
+    }
+
+    /** Return N code points, the Kth being FIRST + K * STEP. */
+    static int[] codePoints(int first, int step, int n) {
+        int[] result = new int[n];
+        for (int k = 0; k < n; k += 1) {
+            result[k] = first + k * step;
+        }
+        return result;
+    }
+
+    /** Names of the moving naval rotors. */
+    static final String[] MOVING = {
+        "I", "II", "III", "IV", "V", "VI", "VII", "VIII"
+    };
+
+    /** Notches of the rotors in MOVING. */
+    static final String[] NOTCHES = {
+        "Q", "E", "V", "J", "Z", "ZM", "ZM", "ZM"
+    };
+
+    /** Return a new five-slot naval machine with its own rotors, set
+     *  to ROTORS, SETTING and plugboard PLUGBOARD. */
+    static Machine navalMachine(String[] rotors, String setting,
+                                String plugboard) {
+        ArrayList<Rotor> all = new ArrayList<>();
+        for (int i = 0; i < MOVING.length; i += 1) {
+            all.add(new MovingRotor(MOVING[i],
+                    new Permutation(NAVALA.get(MOVING[i]), UPPER),
+                    NOTCHES[i]));
+        }
+        all.add(new FixedRotor("Beta", new Permutation(NAVALA.get("Beta"),
+                UPPER)));
+        all.add(new FixedRotor("Gamma", new Permutation(NAVALA.get("Gamma"),
+                UPPER)));
+        all.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        all.add(new Reflector("C", new Permutation(NAVALA.get("C"), UPPER)));
+        Machine m = new Machine(UPPER, 5, 3, all);
+        m.insertRotors(rotors);
+        m.setRotors(setting);
+        m.setPlugboard(new Permutation(plugboard, UPPER));
+        return m;
+    }
+
+    /** Return a random naval key from RAND as {rotor names..., setting,
+     *  plugboard}. */
+    static String[] randomKey(Random rand) {
+        String[] key = new String[7];
+        key[0] = rand.nextBoolean() ? "B" : "C";
+        key[1] = rand.nextBoolean() ? "Beta" : "Gamma";
+        ArrayList<String> names = new ArrayList<>();
+        for (String name : MOVING) {
+            names.add(name);
+        }
+        for (int k = 2; k < 5; k += 1) {
+            key[k] = names.remove(rand.nextInt(names.size()));
+        }
+        StringBuilder setting = new StringBuilder();
+        for (int k = 0; k < 4; k += 1) {
+            setting.append(UPPER_STRING.charAt(rand.nextInt(26)));
+        }
+        key[5] = setting.toString();
+        key[6] = rand.nextBoolean() ? "" : "(AQ) (BZ) (XT)";
+        return key;
+    }
+
+    /** Return the machine described by KEY, as from randomKey. */
+    static Machine machineFor(String[] key) {
+        String[] rotors = {key[0], key[1], key[2], key[3], key[4]};
+        return navalMachine(rotors, key[5], key[6]);
+    }
+
+    /** Return the settings line for KEY, as from randomKey. */
+    static String settingsLine(String[] key) {
+        return String.format("* %s %s %s %s %s %s %s", key[0], key[1],
+                             key[2], key[3], key[4], key[5], key[6]);
+    }
+
+    /** Return the text of a configuration file for the naval rotors. */
+    static String navalConfig() {
+        StringBuilder config = new StringBuilder(UPPER_STRING + "\n5 3\n");
+        for (int i = 0; i < MOVING.length; i += 1) {
+            config.append(String.format("%s M%s %s%n", MOVING[i], NOTCHES[i],
+                                        NAVALA.get(MOVING[i])));
+        }
+        for (String name : new String[] {"Beta", "Gamma"}) {
+            config.append(String.format("%s N %s%n", name, NAVALA.get(name)));
+        }
+        for (String name : new String[] {"B", "C"}) {
+            config.append(String.format("%s R %s%n", name, NAVALA.get(name)));
+        }
+        return config.toString();
+    }
+
+    /** Return a naval machine with no rotors inserted. */
+    static Machine navalCatalog() {
+        return navalMachine(new String[] {"B", "Beta", "I", "II", "III"},
+                            "AAAA", "").copy();
+    }
+
+    /** Return a random message of length LEN from RAND. */
+    static String randomMessage(Random rand, int len) {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < len; i += 1) {
+            msg.append(UPPER_STRING.charAt(rand.nextInt(26)));
+        }
+        return msg.toString();
+    }
+
+    /** Return input for Main from RAND: a settings line, then messages
+     *  and occasional new settings lines, of at least BYTES bytes. */
+    static String randomInput(Random rand, int bytes) {
+        StringBuilder input = new StringBuilder();
+        while (input.length() < bytes) {
+            if (input.length() == 0 || rand.nextInt(100) == 0) {
+                input.append(settingsLine(randomKey(rand)));
+            } else {
+                input.append(randomMessage(rand, rand.nextInt(300)));
+            }
+            input.append('\n');
+        }
+        return input.toString();
+    }
+
+    /** Run Main in DIR on ARGS, returning its error message, or null if
+     *  it finishes. */
+    static String run(Path dir, String... args) {
+        Main main = null;
+        try {
+            main = new Main(args, dir, InputStream.nullInputStream(),
+                            System.out);
+            main.process();
+            return null;
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        } finally {
+            if (main != null) {
+                main.close();
+            }
+        }
+    }
+
+    /** Return a new directory holding the naval configuration file
+     *  "naval.conf" and the input file "input" containing INPUT. */
+    static Path setUp(String input) throws Exception {
+        Path dir = Files.createTempDirectory("main");
+        Files.writeString(dir.resolve("naval.conf"), navalConfig());
+        Files.writeString(dir.resolve("input"), input);
+        return dir;
+    }
+
 }
@@ -10,7 +10,19 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(PermutationTest.class, MovingRotorTest.class);
+        textui.runClasses(PermutationTest.class, MovingRotorTest.class,
+                          BatchMachineTest.class, MachineCompilerTest.class,
+                          ByteMainTest.class, AlphabetTest.class,
+                          MachineProcessorTest.class, CipherServerTest.class,
+                          MetricsTest.class, EnigmaCipherTest.class,
+                          SpoolTest.class, MainTest.class, KeySheetTest.class,
+                          ArchiveTest.class, PeriodAnalyzerTest.class,
+                          NormalizerTest.class, CarryMachineTest.class,
+                          DepthFinderTest.class, CorpusStatsTest.class,
+                          EngineFuzzerTest.class, DaemonTest.class,
+                          OffHeapTablesTest.class,
+                          RingBufferTest.class, PipelineTest.class,
+                          CheckpointTest.class);
     }
 
 }